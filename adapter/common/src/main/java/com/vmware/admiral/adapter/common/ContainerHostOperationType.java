@@ -20,6 +20,7 @@ public enum ContainerHostOperationType {
     PING("Host.Container.Ping"),
     LIST_ENTITIES("Host.Generic.ListEntities"),
     LIST_CONTAINERS("Host.Container.ListContainers"),
+    LIST_CONTAINER_EVENTS("Host.Container.ListContainerEvents"),
     LIST_NETWORKS("Host.Network.ListNetworks"),
     LIST_VOLUMES("Host.Volume.ListVolumes"),
     STATS("Host.Container.Stats");
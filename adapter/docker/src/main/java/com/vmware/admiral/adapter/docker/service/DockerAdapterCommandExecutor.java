@@ -157,6 +157,8 @@ public interface DockerAdapterCommandExecutor {
     String DOCKER_IMAGE_TAG_PROP_NAME = "tag";
     String DOCKER_IMAGE_NAME_PROP_NAME = "imageName";
     String DOCKER_IMAGE_DATA_PROP_NAME = "imageData";
+    // image tarball to stream to the docker host instead of DOCKER_IMAGE_DATA_PROP_NAME
+    String DOCKER_IMAGE_FILE_PROP_NAME = "imageFile";
     String DOCKER_IMAGE_REGISTRY_AUTH = "X-Registry-Auth";
 
     String DOCKER_VOLUME_NAME_PROP_NAME = "Name";
@@ -185,6 +187,9 @@ public interface DockerAdapterCommandExecutor {
     String SINCE = "since";
     int DEFAULT_VALUE_TAIL = 1000;
 
+    // Fetch events query params
+    String UNTIL = "until";
+
     // Management operations:
     void stop();
 
@@ -227,6 +232,8 @@ public interface DockerAdapterCommandExecutor {
 
     void listContainers(CommandInput input, CompletionHandler completionHandler);
 
+    void fetchContainerEvents(CommandInput input, CompletionHandler completionHandler);
+
     // Network operations:
     void createNetwork(CommandInput input, CompletionHandler completionHandler);
 
@@ -58,7 +58,7 @@ import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExec
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_EXEC_ATTACH_STDERR_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_EXEC_ATTACH_STDOUT_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_EXEC_COMMAND_PROP_NAME;
-import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_DATA_PROP_NAME;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_FILE_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_FROM_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.SINCE;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.STD_ERR;
@@ -92,12 +92,14 @@ import com.vmware.admiral.adapter.docker.util.CommandUtil;
 import com.vmware.admiral.adapter.docker.util.DockerDevice;
 import com.vmware.admiral.adapter.docker.util.DockerImage;
 import com.vmware.admiral.adapter.docker.util.DockerPortMapping;
+import com.vmware.admiral.adapter.docker.util.DockerStreamUtil;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerLogStreamService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.LogConfig;
@@ -220,8 +222,10 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         }
 
         if (ContainerOperationType.EXEC == operationType
-                || ContainerOperationType.STATS == operationType) {
-            // Exec is direct operation, stats will complete operation after completion
+                || ContainerOperationType.STATS == operationType
+                || isLogStreamRequest(containerRequest)) {
+            // Exec is direct operation, stats and streamed logs will complete operation after
+            // completion
             context.operation = op;
         } else {
             op.complete();// TODO: can't return the operation if state not persisted.
@@ -337,6 +341,20 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                                 context.containerState.documentSelfLink,
                                 context.computeState.documentSelfLink);
                         fail(context.request, operation, excep);
+                        if (context.operation != null) {
+                            context.operation.fail(excep);
+                        }
+                    } else if (context.operation != null) {
+                        /* Return the demultiplexed log to the caller, it is not persisted */
+                        handleExceptions(context.request, context.operation, () -> {
+                            byte[] log = operation.getBodyRaw() != null
+                                    ? operation.getBody(byte[].class) : new byte[0];
+                            context.operation
+                                    .setBodyNoCloning(DockerStreamUtil.demultiplex(log))
+                                    .setContentType(Operation.MEDIA_TYPE_APPLICATION_OCTET_STREAM)
+                                    .complete();
+                            patchTaskStage(context.request, TaskStage.FINISHED, null);
+                        });
                     } else {
                         /* Write this to the log service */
                         handleExceptions(context.request, context.operation, () -> {
@@ -370,6 +388,14 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                 });
     }
 
+    private static boolean isLogStreamRequest(AdapterRequest request) {
+        return ContainerOperationType.FETCH_LOGS == ContainerOperationType.instanceById(
+                request.operationTypeId)
+                && request.customProperties != null
+                && Boolean.parseBoolean(request.customProperties.get(
+                        ContainerLogStreamService.LOG_STREAM_PROP_NAME));
+    }
+
     private CommandInput constructFetchLogCommandInput(AdapterRequest request,
             CommandInput commandInput, ContainerState containerState) {
         CommandInput fetchLogCommandInput = new CommandInput(commandInput);
@@ -480,8 +506,8 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                 .equals(context.containerDescription.image)) {
             String ref = SystemContainerDescriptions.AGENT_IMAGE_REFERENCE;
 
-            imageRetrievalManager.retrieveAgentImage(ref, context.request, (imageData) -> {
-                processLoadedImageData(context, imageData, ref, imageCompletionHandler);
+            imageRetrievalManager.retrieveAgentImage(ref, context.request, (imageFile) -> {
+                processLoadedImageData(context, imageFile, ref, imageCompletionHandler);
             });
         } else if (shouldTryCreateFromLocalImage(context.containerDescription)) {
             // try to create the container from a local image first. Only if the image is not
@@ -551,8 +577,8 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
     }
 
     /**
-     * read the temp file containing the downloaded image from the file system and proceed with
-     * imageCompletionHandler
+     * stream the file containing the downloaded image from the file system to the docker host and
+     * proceed with imageCompletionHandler
      *
      * @param context
      * @param tempFile
@@ -561,32 +587,23 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
     private void processDownloadedImage(RequestContext context, File tempFile,
             CompletionHandler imageCompletionHandler, boolean isTempFile) {
 
-        Operation fileReadOp = Operation.createPatch(null)
-                .setContextId(context.request.getRequestId())
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        fail(context.request, ex);
-                        return;
-                    }
-
-                    byte[] imageData = o.getBody(byte[].class);
-                    if (isTempFile && !tempFile.delete()) {
-                        this.logWarning("Failed to delete temp file: %s %s", tempFile,
-                                context.request.getRequestTrackingLog());
-                    }
-
-                    processLoadedImageData(context, imageData,
-                            context.containerDescription.imageReference.toString(),
-                            imageCompletionHandler);
-                });
+        CompletionHandler loadCompletionHandler = (o, ex) -> {
+            if (isTempFile && !tempFile.delete()) {
+                this.logWarning("Failed to delete temp file: %s %s", tempFile,
+                        context.request.getRequestTrackingLog());
+            }
+            imageCompletionHandler.handle(o, ex);
+        };
 
-        FileUtils.readFileAndComplete(fileReadOp, tempFile);
+        processLoadedImageData(context, tempFile,
+                context.containerDescription.imageReference.toString(),
+                loadCompletionHandler);
     }
 
-    private void processLoadedImageData(RequestContext context, byte[] imageData,
+    private void processLoadedImageData(RequestContext context, File imageFile,
             String fileName,
             CompletionHandler imageCompletionHandler) {
-        if (imageData == null || imageData.length == 0) {
+        if (imageFile == null || imageFile.length() == 0) {
             String errMsg = String.format("No content loaded for file: %s %s",
                     fileName, context.request.getRequestTrackingLog());
             this.logSevere(errMsg);
@@ -596,11 +613,11 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
             return;
         }
 
-        logInfo("Loaded content for file: %s %s. Now sending to host...", fileName,
+        logInfo("Found content for file: %s %s. Now streaming to host...", fileName,
                 context.request.getRequestTrackingLog());
 
         CommandInput loadCommandInput = new CommandInput(context.commandInput)
-                .withProperty(DOCKER_IMAGE_DATA_PROP_NAME, imageData);
+                .withProperty(DOCKER_IMAGE_FILE_PROP_NAME, imageFile);
         context.executor.loadImage(loadCommandInput, imageCompletionHandler);
     }
 
@@ -21,14 +21,19 @@ import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExec
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_VOLUME_DRIVER_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_VOLUME_NAME_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_VOLUME_SCOPE_PROP_NAME;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.SINCE;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.UNTIL;
 import static com.vmware.admiral.adapter.docker.service.DockerNetworkAdapterService.DOCKER_PREDEFINED_NETWORKS;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_ALIAS_PROP_NAME;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_CERT_PROP_NAME;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.adapter.common.ContainerHostOperationType;
@@ -38,6 +43,7 @@ import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerEvent;
 import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerListCallback;
 import com.vmware.admiral.compute.container.HostNetworkListDataCollection.NetworkListCallback;
 import com.vmware.admiral.compute.container.HostVolumeListDataCollection.VolumeListCallback;
@@ -72,6 +78,21 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
     private static final String VCH_CPU_LIMIT = " VCH CPU limit";
     private static final String VCH_CPU_USAGE = " VCH CPU usage";
 
+    // constants to parse docker events
+    private static final String DOCKER_EVENT_TYPE_PROP_NAME = "Type";
+    private static final String DOCKER_EVENT_TYPE_CONTAINER = "container";
+    private static final String DOCKER_EVENT_ACTION_PROP_NAME = "Action";
+    private static final String DOCKER_EVENT_ACTOR_PROP_NAME = "Actor";
+    private static final String DOCKER_EVENT_ACTOR_ID_PROP_NAME = "ID";
+    private static final String DOCKER_EVENT_ACTOR_ATTRIBUTES_PROP_NAME = "Attributes";
+    private static final String DOCKER_EVENT_NAME_ATTRIBUTE = "name";
+    private static final String DOCKER_EVENT_IMAGE_ATTRIBUTE = "image";
+    private static final String DOCKER_EVENT_TIME_PROP_NAME = "time";
+    private static final String DOCKER_EVENT_TIME_NANO_PROP_NAME = "timeNano";
+    private static final String DOCKER_EVENT_LEGACY_STATUS_PROP_NAME = "status";
+    private static final String DOCKER_EVENT_LEGACY_ID_PROP_NAME = "id";
+    private static final String DOCKER_EVENT_LEGACY_FROM_PROP_NAME = "from";
+
     @Override
     public void handlePatch(Operation op) {
         ContainerHostRequest request = op.getBody(ContainerHostRequest.class);
@@ -94,6 +115,11 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
             getContainerHost(request, op, request.resourceReference,
                     (computeState, commandInput) -> directListContainers(request, op, computeState,
                             commandInput));
+        } else if (ContainerHostOperationType.LIST_CONTAINER_EVENTS == request.getOperationType()
+                && request.serviceTaskCallback.isEmpty()) {
+            getContainerHost(request, op, request.resourceReference,
+                    (computeState, commandInput) -> directListContainerEvents(request, op,
+                            computeState, commandInput));
         } else if (ContainerHostOperationType.LIST_NETWORKS == request.getOperationType()
                 && request.serviceTaskCallback.isEmpty()) {
             getContainerHost(request, op, request.resourceReference,
@@ -127,6 +153,9 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
         case LIST_CONTAINERS:
             doListContainers(request, computeState, commandInput);
             break;
+        case LIST_CONTAINER_EVENTS:
+            doListContainerEvents(request, computeState, commandInput);
+            break;
         case LIST_NETWORKS:
             doListNetworks(request, computeState, commandInput);
             break;
@@ -315,6 +344,148 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
         return callbackResponse;
     }
 
+    private void doListContainerEvents(ContainerHostRequest request, ComputeState computeState,
+            CommandInput commandInput) {
+
+        updateSslTrust(request, commandInput);
+        updateEventsRange(request, commandInput);
+
+        getCommandExecutor().fetchContainerEvents(commandInput, (o, ex) -> {
+            if (ex != null) {
+                logWarning("Failure while listing container events of host [%s]",
+                        computeState.documentSelfLink);
+                fail(request, o, ex);
+            } else {
+                ContainerListCallback callbackResp = createContainerEventsCallback(computeState,
+                        o);
+                logFine("Collection returned %s container events %s",
+                        callbackResp.containerEvents.size(), request.getRequestTrackingLog());
+
+                patchTaskStage(request, TaskStage.FINISHED, null, callbackResp);
+            }
+        });
+    }
+
+    // get container events within the current operation without using callback
+    private void directListContainerEvents(ContainerHostRequest request, Operation op,
+            ComputeState computeState, CommandInput commandInput) {
+        updateSslTrust(request, commandInput);
+        updateEventsRange(request, commandInput);
+
+        getCommandExecutor().fetchContainerEvents(commandInput, (o, ex) -> {
+            if (ex != null) {
+                op.fail(ex);
+            } else {
+                try {
+                    ContainerListCallback callbackResp = createContainerEventsCallback(
+                            computeState, o);
+                    logFine("Collection returned %s container events %s",
+                            callbackResp.containerEvents.size(),
+                            request.getRequestTrackingLog());
+                    op.setBodyNoCloning(callbackResp);
+                    op.complete();
+                } catch (Exception e) {
+                    op.fail(e);
+                }
+            }
+        });
+    }
+
+    private void updateEventsRange(ContainerHostRequest request, CommandInput commandInput) {
+        if (request.customProperties == null) {
+            request.customProperties = new HashMap<>();
+        }
+        String until = request.customProperties.get(ContainerListCallback.EVENTS_UNTIL_PROP_NAME);
+        if (until == null) {
+            until = Long.toString(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        }
+        String since = request.customProperties.get(ContainerListCallback.EVENTS_SINCE_PROP_NAME);
+        if (since == null) {
+            since = until;
+        }
+        commandInput.withProperty(SINCE, since);
+        commandInput.withProperty(UNTIL, until);
+    }
+
+    private ContainerListCallback createContainerEventsCallback(ComputeState computeState,
+            Operation o) {
+        ContainerListCallback callbackResponse = new ContainerListCallback();
+        callbackResponse.containerHostLink = computeState.documentSelfLink;
+
+        Object rawBody = o.getBodyRaw();
+        String body;
+        if (rawBody instanceof byte[]) {
+            body = new String((byte[]) rawBody, StandardCharsets.UTF_8);
+        } else if (rawBody != null) {
+            body = rawBody instanceof String ? (String) rawBody : Utils.toJson(rawBody);
+        } else {
+            body = null;
+        }
+        callbackResponse.containerEvents = parseContainerEvents(body);
+        return callbackResponse;
+    }
+
+    /**
+     * The docker events endpoint responds with a sequence of JSON objects, one per line, so the
+     * body could not be parsed at once. Both the current (Type/Action/Actor) and the legacy
+     * (status/id/from) event formats are supported. Only container events are collected.
+     */
+    @SuppressWarnings("unchecked")
+    static List<ContainerEvent> parseContainerEvents(String body) {
+        List<ContainerEvent> events = new ArrayList<>();
+        if (body == null) {
+            return events;
+        }
+
+        for (String line : body.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            Map<String, Object> eventData = Utils.fromJson(line, Map.class);
+            ContainerEvent event = new ContainerEvent();
+            Object type = eventData.get(DOCKER_EVENT_TYPE_PROP_NAME);
+            if (type != null) {
+                if (!DOCKER_EVENT_TYPE_CONTAINER.equals(type)) {
+                    continue;
+                }
+                event.action = (String) eventData.get(DOCKER_EVENT_ACTION_PROP_NAME);
+                Map<String, Object> actor = (Map<String, Object>) eventData
+                        .get(DOCKER_EVENT_ACTOR_PROP_NAME);
+                if (actor != null) {
+                    event.id = (String) actor.get(DOCKER_EVENT_ACTOR_ID_PROP_NAME);
+                    Map<String, String> attributes = (Map<String, String>) actor
+                            .get(DOCKER_EVENT_ACTOR_ATTRIBUTES_PROP_NAME);
+                    if (attributes != null) {
+                        event.name = attributes.get(DOCKER_EVENT_NAME_ATTRIBUTE);
+                        event.image = attributes.get(DOCKER_EVENT_IMAGE_ATTRIBUTE);
+                    }
+                }
+            } else {
+                // legacy format, image events have no "from" property
+                if (eventData.get(DOCKER_EVENT_LEGACY_FROM_PROP_NAME) == null) {
+                    continue;
+                }
+                event.action = (String) eventData.get(DOCKER_EVENT_LEGACY_STATUS_PROP_NAME);
+                event.id = (String) eventData.get(DOCKER_EVENT_LEGACY_ID_PROP_NAME);
+                event.image = (String) eventData.get(DOCKER_EVENT_LEGACY_FROM_PROP_NAME);
+            }
+            if (event.id == null || event.action == null) {
+                continue;
+            }
+
+            Object timeNano = eventData.get(DOCKER_EVENT_TIME_NANO_PROP_NAME);
+            Object time = eventData.get(DOCKER_EVENT_TIME_PROP_NAME);
+            if (timeNano instanceof Number) {
+                event.timeNanos = ((Number) timeNano).longValue();
+            } else if (time instanceof Number) {
+                event.timeNanos = TimeUnit.SECONDS.toNanos(((Number) time).longValue());
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
     private void doListNetworks(ContainerHostRequest request, ComputeState computeState,
             CommandInput commandInput) {
 
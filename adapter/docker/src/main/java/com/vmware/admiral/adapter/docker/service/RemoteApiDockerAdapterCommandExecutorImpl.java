@@ -14,15 +14,28 @@ package com.vmware.admiral.adapter.docker.service;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_ALIAS_PROP_NAME;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_CERT_PROP_NAME;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509TrustManager;
@@ -34,13 +47,14 @@ import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.DelegatingX509KeyManager;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.common.util.ServiceClientFactory;
+import com.vmware.admiral.common.util.ServiceClientFactory.ClientProfile;
+import com.vmware.admiral.common.util.ServiceClientFactory.SharedServiceClient;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.photon.controller.model.security.util.CertificateUtil;
 import com.vmware.photon.controller.model.security.util.EncryptionUtils;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.CompletionHandler;
 import com.vmware.xenon.common.Service;
-import com.vmware.xenon.common.ServiceClient;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
@@ -62,17 +76,21 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
 
     public static final String MEDIA_TYPE_APPLICATION_TAR = "application/tar";
 
+    private static final int IMAGE_LOAD_RESPONSE_SIZE_LIMIT = 64 * 1024;
+
     private static volatile RemoteApiDockerAdapterCommandExecutorImpl INSTANCE;
 
     private static final Pattern ERROR_PATTERN = Pattern.compile("\"error\":\"(.*)\"");
     private final ServiceHost host;
-    private final ServiceClient serviceClient;
+    private final SharedServiceClient serviceClient;
     // Used for commands like exec start
-    private final ServiceClient attachServiceClient;
+    private final SharedServiceClient attachServiceClient;
     // Used for commands like load image from tar
-    private final ServiceClient largeDataClient;
-    private final DelegatingX509KeyManager keyManager = new DelegatingX509KeyManager();
+    private final SharedServiceClient largeDataClient;
+    private final DelegatingX509KeyManager keyManager;
     private ServerX509TrustManager trustManager;
+    // Used for streaming image tarballs from files, see loadImage
+    private final ExecutorService imageLoadExecutor;
 
     private final int DOCKER_REQUEST_PAYLOAD_SIZE_LIMIT = Integer.getInteger(
             "adapter.docker.api.client.request_payload_limit", 1024 * 1024 * 256);
@@ -83,6 +101,9 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     private final int DOCKER_IMAGE_REQUEST_TIMEOUT_SECONDS = Integer.getInteger(
             "adapter.docker.api.client.image_request_timeout_seconds", 60 * 10);
 
+    private final int DOCKER_IMAGE_LOAD_THREADS = Integer.getInteger(
+            "adapter.docker.api.client.image_load_threads", 4);
+
     private enum ClientMode {
         DEFAULT,
         ATTACH,
@@ -92,11 +113,20 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     protected RemoteApiDockerAdapterCommandExecutorImpl(ServiceHost host,
             TrustManager trustManager) {
         this.host = host;
-        this.serviceClient = ServiceClientFactory.createServiceClient(trustManager, keyManager);
-        this.attachServiceClient = ServiceClientFactory.createServiceClient(trustManager,
-                keyManager);
-        this.largeDataClient = ServiceClientFactory.createServiceClient(
-                trustManager, keyManager, DOCKER_REQUEST_PAYLOAD_SIZE_LIMIT);
+        // shared, so an executor created again gets the running clients
+        this.keyManager = ServiceClientFactory.getKeyManager("docker", trustManager);
+        this.serviceClient = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("docker", trustManager, keyManager));
+        this.attachServiceClient = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("docker-attach", trustManager, keyManager));
+        this.largeDataClient = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("docker-large-data", trustManager, keyManager)
+                        .setRequestPayloadSizeLimit(DOCKER_REQUEST_PAYLOAD_SIZE_LIMIT));
+        this.imageLoadExecutor = Executors.newFixedThreadPool(DOCKER_IMAGE_LOAD_THREADS, r -> {
+            Thread thread = new Thread(r, "docker-image-load");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         if (trustManager instanceof ServerX509TrustManager) {
             this.trustManager = (ServerX509TrustManager) trustManager;
@@ -193,11 +223,95 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     @Override
     public void loadImage(CommandInput input, CompletionHandler completionHandler) {
         createOrUpdateTargetSsl(input);
-        Object imageData = input.getProperties().get(DOCKER_IMAGE_DATA_PROP_NAME);
         URI targetUri = UriUtils.extendUri(input.getDockerUri(), "/images/load");
+        File imageFile = (File) input.getProperties().get(DOCKER_IMAGE_FILE_PROP_NAME);
+        if (imageFile != null) {
+            imageLoadExecutor.execute(() -> streamImage(targetUri, imageFile, completionHandler));
+            return;
+        }
+        Object imageData = input.getProperties().get(DOCKER_IMAGE_DATA_PROP_NAME);
         sendPost(targetUri, imageData, ClientMode.LARGE_DATA, completionHandler);
     }
 
+    /**
+     * Streams the image tarball from the file to the docker host in chunks, so the image is never
+     * held in memory. The service clients need the whole body in memory, so a blocking connection
+     * with the same trust and key managers is used instead, on a dedicated thread pool.
+     */
+    private void streamImage(URI targetUri, File imageFile, CompletionHandler completionHandler) {
+        Operation result = Operation.createPost(targetUri);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) targetUri.toURL()
+                    .openConnection(Proxy.NO_PROXY);
+            if (connection instanceof HttpsURLConnection) {
+                HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
+                // the SSLContext of the clients, so TLS sessions are resumed
+                httpsConnection.setSSLSocketFactory(
+                        largeDataClient.getSSLContext().getSocketFactory());
+                // the docker host is verified by its certificate like with the service clients,
+                // which don't verify the host name either
+                httpsConnection.setHostnameVerifier((hostname, session) -> true);
+            }
+            connection.setRequestMethod(Service.Action.POST.name());
+            connection.setRequestProperty(Operation.CONTENT_TYPE_HEADER,
+                    MEDIA_TYPE_APPLICATION_TAR);
+            connection.setConnectTimeout(
+                    (int) TimeUnit.SECONDS.toMillis(DOCKER_REQUEST_TIMEOUT_SECONDS));
+            connection.setReadTimeout(
+                    (int) TimeUnit.SECONDS.toMillis(DOCKER_IMAGE_REQUEST_TIMEOUT_SECONDS));
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(imageFile.length());
+
+            logger.info(String.format("Streaming %d bytes of image %s to %s",
+                    imageFile.length(), imageFile, targetUri));
+            try (OutputStream out = connection.getOutputStream()) {
+                Files.copy(imageFile.toPath(), out);
+            }
+
+            int statusCode = connection.getResponseCode();
+            String body;
+            try (InputStream in = statusCode < Operation.STATUS_CODE_FAILURE_THRESHOLD
+                    ? connection.getInputStream() : connection.getErrorStream()) {
+                body = readImageLoadResponse(in);
+            }
+            result.setStatusCode(statusCode).setBodyNoCloning(body);
+
+            if (statusCode >= Operation.STATUS_CODE_FAILURE_THRESHOLD) {
+                completionHandler.handle(result, new IllegalStateException(String.format(
+                        "Loading image failed with status %d: %s", statusCode, body)));
+                return;
+            }
+            // the response is a stream of json messages, which may report an error
+            Matcher matcher = ERROR_PATTERN.matcher(body);
+            if (matcher.find()) {
+                completionHandler.handle(result, new RuntimeException("Error: "
+                        + matcher.group(1)));
+                return;
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to stream image to " + targetUri, e);
+            completionHandler.handle(result, e);
+            return;
+        }
+        completionHandler.handle(result, null);
+    }
+
+    private static String readImageLoadResponse(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            // keep only the beginning of a long progress stream
+            if (out.size() < IMAGE_LOAD_RESPONSE_SIZE_LIMIT) {
+                out.write(buffer, 0, Math.min(read, IMAGE_LOAD_RESPONSE_SIZE_LIMIT - out.size()));
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
     @Override
     public void createImage(CommandInput input, CompletionHandler completionHandler) {
         createOrUpdateTargetSsl(input);
@@ -424,6 +538,24 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         sendGet(uri, null, completionHandler);
     }
 
+    /**
+     * https://docs.docker.com/engine/reference/api/docker_remote_api_v1.24/#/monitor-docker-s-events
+     * Both {@link DockerAdapterCommandExecutor#SINCE} and {@link DockerAdapterCommandExecutor#UNTIL}
+     * are expected in <code>input</code>, otherwise docker keeps the stream open.
+     */
+    @Override
+    public void fetchContainerEvents(CommandInput input, CompletionHandler completionHandler) {
+        createOrUpdateTargetSsl(input);
+
+        Map<String, Object> props = input.getProperties();
+        URI uri = UriUtils.extendUri(input.getDockerUri(), "/events");
+        uri = UriUtils.extendUriWithQuery(uri,
+                SINCE, String.valueOf(props.get(SINCE)),
+                UNTIL, String.valueOf(props.get(UNTIL)));
+
+        sendGet(uri, null, completionHandler);
+    }
+
     /**
      * https://docs.docker.com/engine/reference/api/docker_remote_api_v1.24/#create-a-network
      * Mandatory properties for <code>input</code>:
@@ -499,14 +631,15 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     @Override
     public void stop() {
         if (attachServiceClient != null) {
-            attachServiceClient.stop();
+            attachServiceClient.release();
         }
         if (this.serviceClient != null) {
-            this.serviceClient.stop();
+            this.serviceClient.release();
         }
         if (largeDataClient != null) {
-            largeDataClient.stop();
+            largeDataClient.release();
         }
+        imageLoadExecutor.shutdownNow();
 
         INSTANCE = null;
     }
@@ -12,6 +12,7 @@
 package com.vmware.admiral.adapter.docker.util;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.nio.ByteBuffer;
 
@@ -19,6 +20,7 @@ public class DockerStreamUtil {
 
     private static final int HEADER_SIZE = 8;
     private static final int FRAME_SIZE_OFFSET = 4;
+    private static final int MAX_STREAM_TYPE = 2;
 
     /**
      * Decodes a byte array as fetched by xenon client and from {@link com.vmware.xenon.common.Operation#getBodyRaw()}.
@@ -60,4 +62,40 @@ public class DockerStreamUtil {
 
         return sb.toString();
     }
+
+    /**
+     * Demultiplexes the stdin, stdout and stderr frames of a Docker stream, e.g. the logs of a
+     * container, into their payload. The stream of a container with a TTY is not multiplexed and
+     * is returned as is. Unlike {@link #decodeFullRawResponce(byte[])} an incomplete trailing
+     * frame doesn't fail the decoding, its payload is returned as far as it was received.
+     *
+     * @param body
+     * @return the payload of the frames
+     */
+    public static byte[] demultiplex(byte[] body) {
+        if (!isMultiplexed(body)) {
+            return body;
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(body.length);
+        int position = 0;
+        while (position + HEADER_SIZE <= body.length) {
+            int frameSize = ByteBuffer.wrap(body, position + FRAME_SIZE_OFFSET, Integer.BYTES)
+                    .getInt();
+            position += HEADER_SIZE;
+            int length = Math.min(frameSize, body.length - position);
+            payload.write(body, position, length);
+            position += length;
+        }
+        return payload.toByteArray();
+    }
+
+    private static boolean isMultiplexed(byte[] body) {
+        if (body == null || body.length < HEADER_SIZE || body[0] > MAX_STREAM_TYPE
+                || body[0] < 0) {
+            return false;
+        }
+        // the stream type is followed by 3 zero bytes
+        return body[1] == 0 && body[2] == 0 && body[3] == 0;
+    }
 }
@@ -13,13 +13,16 @@ package com.vmware.admiral.adapter.docker.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.TrustManager;
 
 import org.junit.Before;
@@ -37,6 +40,7 @@ import com.vmware.admiral.compute.container.ContainerFactoryService;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService.ContainerHostDataCollectionState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerEvent;
 import com.vmware.admiral.compute.container.PortBinding;
 import com.vmware.admiral.compute.container.SystemContainerDescriptions;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
@@ -170,6 +174,43 @@ public class DockerHostAdapterServiceTest extends BaseMockDockerTestCase {
         assertNull(numberOfContainersValue);
     }
 
+    @Test
+    public void testParseContainerEvents() {
+        String body = "{\"Type\":\"container\",\"Action\":\"create\",\"Actor\":{\"ID\":\"c1\","
+                + "\"Attributes\":{\"name\":\"name1\",\"image\":\"image1\"}},"
+                + "\"time\":1490000000,\"timeNano\":1490000000000000000}\n"
+                // image and network events are skipped
+                + "{\"Type\":\"image\",\"Action\":\"pull\",\"Actor\":{\"ID\":\"image1\"}}\n"
+                + "{\"Type\":\"network\",\"Action\":\"connect\",\"Actor\":{\"ID\":\"n1\"}}\n"
+                + "\n"
+                // legacy format
+                + "{\"status\":\"die\",\"id\":\"c2\",\"from\":\"image2\",\"time\":1490000001}\n"
+                // legacy image event without "from"
+                + "{\"status\":\"untag\",\"id\":\"image2\",\"time\":1490000002}\n"
+                // event without id
+                + "{\"Type\":\"container\",\"Action\":\"start\",\"Actor\":{}}\n";
+
+        List<ContainerEvent> events = DockerHostAdapterService.parseContainerEvents(body);
+        assertEquals(2, events.size());
+
+        ContainerEvent event = events.get(0);
+        assertEquals("c1", event.id);
+        assertEquals(ContainerEvent.ACTION_CREATE, event.action);
+        assertEquals("name1", event.name);
+        assertEquals("image1", event.image);
+        assertEquals(TimeUnit.SECONDS.toNanos(1490000000), event.timeNanos);
+
+        event = events.get(1);
+        assertEquals("c2", event.id);
+        assertEquals(ContainerEvent.ACTION_DIE, event.action);
+        assertNull(event.name);
+        assertEquals("image2", event.image);
+        assertEquals(TimeUnit.SECONDS.toNanos(1490000001), event.timeNanos);
+
+        assertTrue(DockerHostAdapterService.parseContainerEvents(null).isEmpty());
+        assertTrue(DockerHostAdapterService.parseContainerEvents("").isEmpty());
+    }
+
     @Test
     public void testHostAvailableAfterFailure() throws Throwable {
         ComputeState state = new ComputeState();
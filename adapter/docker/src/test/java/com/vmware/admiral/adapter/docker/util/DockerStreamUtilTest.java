@@ -11,6 +11,7 @@
 
 package com.vmware.admiral.adapter.docker.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -83,4 +84,17 @@ public class DockerStreamUtilTest {
         DockerStreamUtil.decodeFullRawResponce(raw);
     }
 
+    @Test
+    public void testDemultiplex() {
+        byte[] raw = new byte[] { 1, 0, 0, 0, 0, 0, 0, 4, 98, 105, 110, 10, 2, 0, 0, 0, 0, 0, 0,
+                4, 101, 116, 99, 10, 1, 0, 0, 0, 0, 0, 0, 4, 116, 109 };
+
+        // the payload of the incomplete trailing frame is kept
+        assertEquals("bin\netc\ntm", new String(DockerStreamUtil.demultiplex(raw)));
+
+        // a TTY stream is not multiplexed
+        byte[] tty = "bin\n".getBytes();
+        assertArrayEquals(tty, DockerStreamUtil.demultiplex(tty));
+    }
+
 }
@@ -47,6 +47,8 @@ import com.vmware.admiral.common.util.AuthUtils;
 import com.vmware.admiral.common.util.DelegatingX509KeyManager;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.common.util.ServiceClientFactory;
+import com.vmware.admiral.common.util.ServiceClientFactory.ClientProfile;
+import com.vmware.admiral.common.util.ServiceClientFactory.SharedServiceClient;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.kubernetes.KubernetesHostConstants;
@@ -64,7 +66,6 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Operation.CompletionHandler;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.Service.Action;
-import com.vmware.xenon.common.ServiceClient;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
@@ -84,14 +85,17 @@ public class KubernetesRemoteApiClient {
 
     private static final int REQUEST_TIMEOUT_SECONDS = 10;
 
-    private final ServiceClient serviceClient;
-    private final DelegatingX509KeyManager keyManager = new DelegatingX509KeyManager();
+    private final SharedServiceClient serviceClient;
+    private final DelegatingX509KeyManager keyManager;
     private ServerX509TrustManager trustManager;
 
     private static KubernetesRemoteApiClient INSTANCE = null;
 
     protected KubernetesRemoteApiClient(ServiceHost host, final TrustManager trustManager) {
-        this.serviceClient = ServiceClientFactory.createServiceClient(trustManager, keyManager);
+        // shared, so a client created again gets the running service client
+        this.keyManager = ServiceClientFactory.getKeyManager("kubernetes", trustManager);
+        this.serviceClient = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("kubernetes", trustManager, keyManager));
 
         if (trustManager instanceof ServerX509TrustManager) {
             this.trustManager = (ServerX509TrustManager) trustManager;
@@ -108,7 +112,7 @@ public class KubernetesRemoteApiClient {
 
     public void stop() {
         if (this.serviceClient != null) {
-            this.serviceClient.stop();
+            this.serviceClient.release();
         }
         INSTANCE = null;
     }
@@ -18,11 +18,16 @@ import static com.vmware.admiral.service.common.RegistryService.API_VERSION_PROP
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -34,6 +39,8 @@ import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.AuthUtils;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.common.util.ServiceClientFactory;
+import com.vmware.admiral.common.util.ServiceClientFactory.ClientProfile;
+import com.vmware.admiral.common.util.ServiceClientFactory.SharedServiceClient;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
 import com.vmware.admiral.service.common.RegistryService.ApiVersion;
@@ -42,11 +49,9 @@ import com.vmware.admiral.service.common.RegistryService.RegistryState;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
-import com.vmware.xenon.common.ServiceClient;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
-import com.vmware.xenon.common.http.netty.NettyHttpServiceClient;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
 
 /**
@@ -79,17 +84,49 @@ public class RegistryAdapterService extends StatelessService {
     // Use catalog endpoint instead of the API Version Check endpoint (/v2) because some solutions
     // like JFrog Artifactory (cse-artifactory.eng.vmware.com) does not support it.
     private static final String V2_PING_ENDPOINT = "/v2/_catalog?n=1";
+    private static final String V2_CATALOG_ENDPOINT = "/v2/_catalog";
+    private static final String V2_CATALOG_PAGE_SIZE_PARAM = "n";
+
+    private static final long CATALOG_REFRESH_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.adapter.registry.catalog.refresh.interval.micros",
+            TimeUnit.MINUTES.toMicros(5));
+    private static final int CATALOG_PAGE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.adapter.registry.catalog.page.size", 1000);
+    private static final int MAX_CACHED_CATALOGS = Integer.getInteger(
+            "com.vmware.admiral.adapter.registry.catalog.cache.size", 100);
+
+    private static final long MAX_TOKEN_TTL_MICROS = Long.getLong(
+            "com.vmware.admiral.adapter.registry.token.cache.max.ttl.micros",
+            TimeUnit.MINUTES.toMicros(5));
+    // default token lifetime according to the Docker token authentication specification
+    private static final long DEFAULT_TOKEN_TTL_SECONDS = 60;
+    private static final long TOKEN_EXPIRATION_MARGIN_SECONDS = 10;
+    private static final int MAX_CACHED_TOKENS = 1000;
 
     public static final String REGITRY_PROXY_PARAM_NAME = "registry.proxy";
     public static final String REGITRY_NO_PROXY_LIST_PARAM_NAME = "registry.no.proxy.list";
     public static final String REGISTRY_PROXY_NULL_VALUE = "__null";
 
-    private ServiceClient serviceClientProxy;
-    private ServiceClient serviceClientNoProxy;
+    private SharedServiceClient serviceClientProxy;
+    private SharedServiceClient serviceClientNoProxy;
     private Set<String> serviceClientNoProxyList;
 
     private ServerX509TrustManager trustManager;
 
+    // catalog indexes of V2 registries by address and credentials, least recently used first
+    private final Map<String, CatalogEntry> catalogs = Collections.synchronizedMap(
+            new LinkedHashMap<String, CatalogEntry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CatalogEntry> eldest) {
+                    return size() > MAX_CACHED_CATALOGS;
+                }
+            });
+
+    // bearer tokens by token service URI, which includes the scope, and credentials
+    private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+
     public class RegistryPingResponse {
         public ApiVersion apiVersion;
     }
@@ -99,13 +136,31 @@ public class RegistryAdapterService extends StatelessService {
     }
 
     private static class TokenServiceResponse {
-        @SuppressWarnings("unused")
         String expires_in;
         @SuppressWarnings("unused")
         String issued_at;
         String token;
     }
 
+    private static class CatalogEntry {
+        volatile RegistryCatalogIndex index;
+        volatile long refreshedMicros;
+
+        // guarded by this
+        boolean refreshing;
+        List<Consumer<Throwable>> waiters = new ArrayList<>();
+    }
+
+    private static class CachedToken {
+        final String authorization;
+        final long expirationMicros;
+
+        CachedToken(String authorization, long expirationMicros) {
+            this.authorization = authorization;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
     private static class V2ImageTagsResponse {
         @SuppressWarnings("unused")
         String name;
@@ -144,16 +199,12 @@ public class RegistryAdapterService extends StatelessService {
                 && !registryProxyAddress.equals(REGISTRY_PROXY_NULL_VALUE)) {
             try {
                 URI registryProxyURI = new URI(registryProxyAddress);
-                serviceClientProxy = ServiceClientFactory.createServiceClient(trustManager, null);
-
-                if (serviceClientProxy instanceof NettyHttpServiceClient) {
-                    ((NettyHttpServiceClient) serviceClientProxy).setHttpProxy(registryProxyURI);
-                } else {
-                    logSevere("Cannot set proxy for accessing registries. Expecting "
-                            + "NettyHttpServiceClient, actual: %s",
-                            serviceClientProxy.getClass().getSimpleName());
-                    serviceClientProxy = null;
-                }
+                serviceClientProxy = ServiceClientFactory.acquireServiceClient(
+                        ClientProfile.create("registry", trustManager, null)
+                                .setHttpProxy(registryProxyURI));
+            } catch (IllegalStateException e) {
+                logSevere("Cannot set proxy for accessing registries: %s", e.getMessage());
+                serviceClientProxy = null;
             } catch (Exception e) {
                 logSevere("Registry proxy URI invalid syntax: %s. Error: %s", e.getMessage(),
                         Utils.toString(e));
@@ -164,7 +215,8 @@ public class RegistryAdapterService extends StatelessService {
 
     private void initNoProxyClient(Map<String, String> props) {
         // create plain, no proxied client
-        serviceClientNoProxy = ServiceClientFactory.createServiceClient(trustManager, null);
+        serviceClientNoProxy = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("registry", trustManager, null));
 
         if (props != null) {
             String registryProxyAddress = props.get(REGITRY_PROXY_PARAM_NAME);
@@ -184,10 +236,10 @@ public class RegistryAdapterService extends StatelessService {
     @Override
     public void handleStop(Operation delete) {
         if (serviceClientNoProxy != null) {
-            serviceClientNoProxy.stop();
+            serviceClientNoProxy.release();
         }
         if (serviceClientProxy != null) {
-            serviceClientProxy.stop();
+            serviceClientProxy.release();
         }
         super.handleStop(delete);
     }
@@ -197,6 +249,8 @@ public class RegistryAdapterService extends StatelessService {
         public ImageRequest request;
         public RegistryAuthState registryState;
         public boolean tokenAlreadyRequested;
+        public String credentials;
+        public String cachedTokenKey;
     }
 
     @Override
@@ -302,6 +356,7 @@ public class RegistryAdapterService extends StatelessService {
             if (authorizationHeaderValue != null) {
                 context.request.customProperties.put(AUTHORIZATION_HEADER,
                         authorizationHeaderValue);
+                context.credentials = authorizationHeaderValue;
             }
         }
     }
@@ -376,35 +431,107 @@ public class RegistryAdapterService extends StatelessService {
         }
     }
 
+    /**
+     * Searches the catalog index of the registry. The index is built by the first search and
+     * refreshed in the background by the first search after the refresh interval, so searches
+     * don't walk the whole catalog.
+     */
     private void processV2SearchRequest(RequestContext context) {
         try {
-            URI searchUri = URI.create(context.registryState.address);
+            String searchTerm = context.request.customProperties.get(SEARCH_QUERY_PROP_NAME);
+            CatalogEntry entry = catalogs.computeIfAbsent(getCatalogKey(context.registryState),
+                    (k) -> new CatalogEntry());
+
+            RegistryCatalogIndex index = entry.index;
+            if (index != null) {
+                completeV2SearchRequest(context, index, searchTerm);
+                if (Utils.getNowMicrosUtc() - entry.refreshedMicros
+                        > CATALOG_REFRESH_INTERVAL_MICROS) {
+                    refreshCatalog(entry, context, null);
+                }
+                return;
+            }
 
-            searchUri = UriUtils.extendUri(searchUri, "/v2/_catalog");
+            refreshCatalog(entry, context, (e) -> {
+                if (e != null) {
+                    context.operation.fail(e);
+                    return;
+                }
+                completeV2SearchRequest(context, entry.index, searchTerm);
+            });
+        } catch (Exception x) {
+            context.operation.fail(x);
+        }
+    }
 
-            String searchTerm = context.request.customProperties.get(SEARCH_QUERY_PROP_NAME)
-                    .toLowerCase();
+    private void completeV2SearchRequest(RequestContext context, RegistryCatalogIndex index,
+            String searchTerm) {
+        RegistrySearchResponse response = new RegistrySearchResponse();
+        response.results = new ArrayList<>();
+        for (String repository : index.search(searchTerm)) {
+            Result r = new Result();
+            r.name = repository;
+            r.registry = context.registryState.address;
+            response.results.add(r);
+        }
+        response.numResults = response.results.size();
+        context.operation.setBody(response);
+        context.operation.complete();
+    }
 
-            RegistrySearchResponse response = new RegistrySearchResponse();
-            response.results = new ArrayList<>();
+    /**
+     * Walks the catalog of the registry page by page and replaces its index. The callback, if
+     * any, is called once the walk completes. Concurrent refreshes of the same catalog share a
+     * single walk.
+     */
+    private void refreshCatalog(CatalogEntry entry, RequestContext context,
+            Consumer<Throwable> callback) {
+        synchronized (entry) {
+            if (callback != null) {
+                entry.waiters.add(callback);
+            }
+            if (entry.refreshing) {
+                return;
+            }
+            entry.refreshing = true;
+        }
 
-            logInfo("Performing registry search: %s", searchUri);
-            sendV2SearchRequest(searchUri, searchTerm, response, context);
+        URI catalogUri = UriUtils.extendUri(URI.create(context.registryState.address),
+                V2_CATALOG_ENDPOINT);
+        catalogUri = UriUtils.extendUriWithQuery(catalogUri, V2_CATALOG_PAGE_SIZE_PARAM,
+                Integer.toString(CATALOG_PAGE_SIZE));
+
+        logInfo("Indexing registry catalog: %s", catalogUri);
+        fetchV2Catalog(catalogUri, new ArrayList<>(), context, (repositories, e) -> {
+            if (e != null) {
+                logWarning("Failed to index registry catalog %s: %s",
+                        context.registryState.address, Utils.toString(e));
+            } else {
+                entry.index = new RegistryCatalogIndex(repositories);
+                entry.refreshedMicros = Utils.getNowMicrosUtc();
+                logInfo("Indexed %d repositories of registry %s", entry.index.size(),
+                        context.registryState.address);
+            }
 
-        } catch (Exception x) {
-            context.operation.fail(x);
-        }
+            List<Consumer<Throwable>> waiters;
+            synchronized (entry) {
+                entry.refreshing = false;
+                waiters = entry.waiters;
+                entry.waiters = new ArrayList<>();
+            }
+            waiters.forEach((waiter) -> waiter.accept(e));
+        });
     }
 
-    private void sendV2SearchRequest(URI searchUri, String searchTerm,
-            RegistrySearchResponse response, RequestContext context) {
-        Operation search = Operation.createGet(searchUri)
+    private void fetchV2Catalog(URI pageUri, List<String> repositories, RequestContext context,
+            BiConsumer<List<String>, Throwable> callback) {
+        Operation fetch = Operation.createGet(pageUri)
                 .setReferer(getHost().getUri())
                 .setCompletion((o, ex) -> {
                     if (ex != null) {
                         if (o.getStatusCode() == 401) {
                             if (context.tokenAlreadyRequested) {
-                                context.operation.fail(ex);
+                                callback.accept(null, ex);
                                 return;
                             }
 
@@ -413,55 +540,56 @@ public class RegistryAdapterService extends StatelessService {
 
                             if (isBearerTokenChallenge(wwwAuthHeader)) {
                                 requestAuthorizationToken(wwwAuthHeader, context,
-                                        () -> sendV2SearchRequest(searchUri, searchTerm, response,
-                                                context),
-                                        (t) -> context.operation.fail(t));
+                                        () -> fetchV2Catalog(pageUri, repositories, context,
+                                                callback),
+                                        (t) -> callback.accept(null, t));
                                 return;
                             }
                         }
 
-                        context.operation.fail(ex);
+                        callback.accept(null, ex);
                         return;
-                    } else {
-                        V2RegistryCatalogResponse body =
-                                o.getBody(V2RegistryCatalogResponse.class);
-
-                        if (body.repositories != null) {
-                            for (String repository: body.repositories) {
-                                if (repository.toLowerCase().contains(searchTerm)) {
-                                    Result r = new Result();
-                                    r.name = repository;
-                                    r.registry = context.registryState.address;
-                                    response.results.add(r);
-                                }
-                            }
-                        }
+                    }
 
-                        String linkHeader = o.getResponseHeader(LINK_HEADER);
-                        if (linkHeader != null) {
-                            String nextPagePath = extractUrl(linkHeader);
-                            if (nextPagePath == null) {
-                                context.operation.fail(new LocalizableValidationException(
-                                        "Unexpected link header format: " + linkHeader,
-                                        "adapter.link.header.format", linkHeader));
-                                return;
-                            }
-                            URI nextPageUri = UriUtils.extendUri(
-                                    URI.create(context.registryState.address), nextPagePath);
-                            sendV2SearchRequest(nextPageUri, searchTerm, response, context);
-                        } else {
-                            response.numResults = response.results.size();
-                            context.operation.setBody(response);
-                            context.operation.complete();
-                        }
+                    V2RegistryCatalogResponse body = o.getBody(V2RegistryCatalogResponse.class);
+                    if (body.repositories != null) {
+                        repositories.addAll(Arrays.asList(body.repositories));
                     }
+
+                    String linkHeader = o.getResponseHeader(LINK_HEADER);
+                    if (linkHeader == null) {
+                        callback.accept(repositories, null);
+                        return;
+                    }
+
+                    String nextPagePath = extractUrl(linkHeader);
+                    if (nextPagePath == null) {
+                        callback.accept(null, new LocalizableValidationException(
+                                "Unexpected link header format: " + linkHeader,
+                                "adapter.link.header.format", linkHeader));
+                        return;
+                    }
+                    URI nextPageUri = UriUtils.extendUri(
+                            URI.create(context.registryState.address), nextPagePath);
+                    fetchV2Catalog(nextPageUri, repositories, context, callback);
                 });
 
         String authorization = context.request.customProperties.get(AUTHORIZATION_HEADER);
         if (authorization != null) {
-            search.addRequestHeader(AUTHORIZATION_HEADER, authorization);
+            fetch.addRequestHeader(AUTHORIZATION_HEADER, authorization);
         }
-        sendOperationWithClient(search, context);
+        sendOperationWithClient(fetch, context);
+    }
+
+    /**
+     * The catalog visible to different credentials may differ, so the credentials are part of
+     * the key, including their update time to drop the index when they change.
+     */
+    private static String getCatalogKey(RegistryAuthState registryState) {
+        AuthCredentialsServiceState credentials = registryState.authCredentials;
+        return String.join("|", registryState.address,
+                credentials != null ? credentials.documentSelfLink : "",
+                credentials != null ? Long.toString(credentials.documentUpdateTimeMicros) : "");
     }
 
     private String extractUrl(String linkHeader) {
@@ -710,6 +838,22 @@ public class RegistryAdapterService extends StatelessService {
             tokenServiceUri = UriUtils.extendUriWithQuery(tokenServiceUri,
                     SERVICE_WWW_AUTH_PROP, service, SCOPE_WWW_AUTH_PROP, scope);
 
+            String tokenKey = tokenServiceUri.toString() + "|"
+                    + (context.credentials != null ? context.credentials : "");
+            CachedToken cachedToken = tokens.get(tokenKey);
+            if (cachedToken != null) {
+                if (cachedToken.expirationMicros > Utils.getNowMicrosUtc()
+                        && !tokenKey.equals(context.cachedTokenKey)) {
+                    context.request.customProperties.put(AUTHORIZATION_HEADER,
+                            cachedToken.authorization);
+                    // a cached token which is rejected is requested again
+                    context.cachedTokenKey = tokenKey;
+                    successCallback.run();
+                    return;
+                }
+                tokens.remove(tokenKey, cachedToken);
+            }
+
             logInfo("Requesting token from %s", tokenServiceUri.toString());
             Operation getTokenOp = Operation.createGet(tokenServiceUri)
                     .setReferer(getUri())
@@ -726,6 +870,8 @@ public class RegistryAdapterService extends StatelessService {
                         context.request.customProperties.put(AUTHORIZATION_HEADER,
                                 authorizationHeaderValue);
                         context.tokenAlreadyRequested = true;
+                        cacheToken(tokenKey, authorizationHeaderValue,
+                                tokenServiceResponse.expires_in);
 
                         successCallback.run();
                     });
@@ -741,6 +887,30 @@ public class RegistryAdapterService extends StatelessService {
         }
     }
 
+    private void cacheToken(String tokenKey, String authorization, String expiresIn) {
+        long ttlSeconds = DEFAULT_TOKEN_TTL_SECONDS;
+        if (expiresIn != null) {
+            try {
+                ttlSeconds = Long.parseLong(expiresIn);
+            } catch (NumberFormatException e) {
+                logFine("Unexpected token expiration: %s", expiresIn);
+            }
+        }
+        long ttlMicros = Math.min(TimeUnit.SECONDS.toMicros(
+                ttlSeconds - TOKEN_EXPIRATION_MARGIN_SECONDS), MAX_TOKEN_TTL_MICROS);
+        if (ttlMicros <= 0) {
+            return;
+        }
+
+        long now = Utils.getNowMicrosUtc();
+        if (tokens.size() >= MAX_CACHED_TOKENS) {
+            tokens.values().removeIf((t) -> t.expirationMicros <= now);
+        }
+        if (tokens.size() < MAX_CACHED_TOKENS) {
+            tokens.put(tokenKey, new CachedToken(authorization, now + ttlMicros));
+        }
+    }
+
     private void sendOperationWithClient(Operation op, RequestContext context) {
         String registryAddress = getRegistryHostAddress(context);
         if (serviceClientProxy == null ||
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.registry.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the repositories in the catalog of a V2 registry for case insensitive
+ * substring search. Each repository is indexed by the trigrams of its name. A term of at least
+ * three characters is looked up in the repositories of its rarest trigram, a shorter term is
+ * matched against all repositories.
+ */
+class RegistryCatalogIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int[] NO_REPOSITORIES = new int[0];
+
+    private final String[] repositories;
+    private final String[] lowerCaseRepositories;
+    private final Map<String, int[]> repositoriesByGram;
+
+    RegistryCatalogIndex(Collection<String> repositories) {
+        this.repositories = repositories.toArray(new String[repositories.size()]);
+        this.lowerCaseRepositories = new String[this.repositories.length];
+
+        Map<String, List<Integer>> grams = new HashMap<>();
+        for (int i = 0; i < this.repositories.length; i++) {
+            String name = this.repositories[i].toLowerCase();
+            lowerCaseRepositories[i] = name;
+            for (String gram : getGrams(name)) {
+                grams.computeIfAbsent(gram, (k) -> new ArrayList<>()).add(i);
+            }
+        }
+
+        repositoriesByGram = new HashMap<>(grams.size() * 4 / 3 + 1);
+        grams.forEach((gram, indexes) -> repositoriesByGram.put(gram,
+                indexes.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Returns the repositories which contain the term, in catalog order.
+     */
+    List<String> search(String term) {
+        String lowerCaseTerm = term.toLowerCase();
+        List<String> result = new ArrayList<>();
+        if (lowerCaseTerm.length() < GRAM_LENGTH) {
+            for (int i = 0; i < repositories.length; i++) {
+                if (lowerCaseRepositories[i].contains(lowerCaseTerm)) {
+                    result.add(repositories[i]);
+                }
+            }
+            return result;
+        }
+
+        int[] candidates = null;
+        for (String gram : getGrams(lowerCaseTerm)) {
+            int[] indexes = repositoriesByGram.getOrDefault(gram, NO_REPOSITORIES);
+            if (candidates == null || indexes.length < candidates.length) {
+                candidates = indexes;
+            }
+        }
+        for (int i : candidates) {
+            if (lowerCaseRepositories[i].contains(lowerCaseTerm)) {
+                result.add(repositories[i]);
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return repositories.length;
+    }
+
+    private static Set<String> getGrams(String name) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+            grams.add(name.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
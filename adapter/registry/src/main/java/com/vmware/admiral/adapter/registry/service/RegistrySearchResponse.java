@@ -13,6 +13,7 @@ package com.vmware.admiral.adapter.registry.service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.annotations.SerializedName;
 
@@ -40,6 +41,14 @@ public class RegistrySearchResponse {
     @SerializedName("is_partial_result")
     public boolean isPartialResult;
 
+    // status of the search in each registry by registry link, set by a fan-out search only
+    @SerializedName("registry_status")
+    public Map<String, RegistrySearchStatus> registryStatus;
+
+    public static enum RegistrySearchStatus {
+        COMPLETED, CACHED, FAILED, TIMED_OUT, CANCELLED
+    }
+
     public static class Result {
         public String name;
         public String description;
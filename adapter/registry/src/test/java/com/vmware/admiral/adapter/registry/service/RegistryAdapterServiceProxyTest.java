@@ -27,6 +27,7 @@ import org.junit.Test;
 import com.vmware.admiral.adapter.common.service.mock.MockTaskFactoryService;
 import com.vmware.admiral.adapter.registry.mock.BaseMockRegistryTestCase;
 import com.vmware.admiral.common.test.HostInitTestDcpServicesConfig;
+import com.vmware.admiral.common.util.ServiceClientFactory.SharedServiceClient;
 import com.vmware.admiral.host.HostInitCommonServiceConfig;
 import com.vmware.admiral.host.HostInitRegistryAdapterServiceConfig;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
@@ -149,8 +150,10 @@ public class RegistryAdapterServiceProxyTest extends BaseMockRegistryTestCase {
 
         Field field = RegistryAdapterService.class.getDeclaredField("serviceClientProxy");
         field.setAccessible(true);
-        NettyHttpServiceClient serviceClientProxy = (NettyHttpServiceClient) field
+        SharedServiceClient sharedServiceClientProxy = (SharedServiceClient) field
                 .get(registryAdapterService);
+        NettyHttpServiceClient serviceClientProxy = sharedServiceClientProxy != null
+                ? (NettyHttpServiceClient) sharedServiceClientProxy.getServiceClient() : null;
         if (proxyAddress.equals(RegistryAdapterService.REGISTRY_PROXY_NULL_VALUE)) {
             assertNull("When no proxy is set the serviceClientProxy should be null.",
                     serviceClientProxy);
@@ -169,8 +172,10 @@ public class RegistryAdapterServiceProxyTest extends BaseMockRegistryTestCase {
 
         field = RegistryAdapterService.class.getDeclaredField("serviceClientNoProxy");
         field.setAccessible(true);
-        NettyHttpServiceClient serviceClientNoProxy = (NettyHttpServiceClient) field
+        SharedServiceClient sharedServiceClientNoProxy = (SharedServiceClient) field
                 .get(registryAdapterService);
+        NettyHttpServiceClient serviceClientNoProxy = sharedServiceClientNoProxy != null
+                ? (NettyHttpServiceClient) sharedServiceClientNoProxy.getServiceClient() : null;
         assertNotNull("When no proxy is set the serviceClientNoProxy should not be null.",
                 serviceClientNoProxy);
         field = NettyHttpServiceClient.class.getDeclaredField("httpProxy");
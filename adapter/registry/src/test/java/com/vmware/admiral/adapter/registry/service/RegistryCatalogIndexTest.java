@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.registry.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class RegistryCatalogIndexTest {
+
+    private static final List<String> REPOSITORIES = Arrays.asList(
+            "library/alpine", "library/nginx", "test/v2image", "test/V2Image-Tools",
+            "vmware/admiral", "vmware/photon", "nginx");
+
+    @Test
+    public void testSearchSubstring() {
+        RegistryCatalogIndex index = new RegistryCatalogIndex(REPOSITORIES);
+        assertEquals(REPOSITORIES.size(), index.size());
+
+        assertEquals(Arrays.asList("library/nginx", "nginx"), index.search("nginx"));
+        assertEquals(Arrays.asList("vmware/admiral", "vmware/photon"), index.search("vmware/"));
+        assertEquals(Arrays.asList("test/v2image", "test/V2Image-Tools"),
+                index.search("V2IMAGE"));
+        assertEquals(Collections.singletonList("test/V2Image-Tools"), index.search("e-to"));
+        assertTrue(index.search("nginx-alpine").isEmpty());
+        assertTrue(index.search("xyz").isEmpty());
+    }
+
+    @Test
+    public void testSearchShortTerm() {
+        RegistryCatalogIndex index = new RegistryCatalogIndex(REPOSITORIES);
+
+        assertEquals(Arrays.asList("test/v2image", "test/V2Image-Tools"), index.search("v2"));
+        assertEquals(REPOSITORIES, index.search(""));
+    }
+
+    @Test
+    public void testSearchSameAsScan() {
+        List<String> repositories = Arrays.asList("aaa", "aaaa", "abab", "baba", "aab/aab",
+                "ab", "a", "bbb/aaa");
+        RegistryCatalogIndex index = new RegistryCatalogIndex(repositories);
+
+        for (String term : Arrays.asList("a", "aa", "aaa", "aaaa", "aba", "bab", "b/a", "aab/",
+                "bbb/aaa", "aaaaa")) {
+            List<String> expected = repositories.stream()
+                    .filter((r) -> r.contains(term))
+                    .collect(Collectors.toList());
+            assertEquals(term, expected, index.search(term));
+        }
+    }
+}
@@ -33,6 +33,8 @@ public class SessionService extends StatelessService {
         provider = AuthUtil.getPreferredProvider(LogoutProvider.class);
         provider.init(this);
         startPost.complete();
+
+        SecurityContextUtil.subscribeForSecurityContextChanges(this);
     }
 
     @Override
@@ -22,8 +22,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -59,38 +57,45 @@ public class PrincipalRolesUtil {
 
     public static DeferredResult<Set<AuthRole>> getDirectlyAssignedSystemRolesForUser(
             Service requestorService, Principal principal) {
-        return getUserState(requestorService, principal.id).thenApply(userState -> {
-            if ((userState == null) || (userState.userGroupLinks == null)
-                    || (userState.userGroupLinks.isEmpty())) {
-                return Collections.emptySet();
-            }
-
-            Set<AuthRole> roles = new HashSet<>();
-            AuthUtil.MAP_ROLE_TO_SYSTEM_USER_GROUP.entrySet()
-                    .forEach((entry) -> {
-                        if (userState.userGroupLinks.contains(entry.getValue())) {
-                            roles.add(entry.getKey());
-                        }
-                    });
-            return roles;
-        });
+        return getUserState(requestorService, principal.id)
+                .thenApply(PrincipalRolesUtil::getDirectlyAssignedSystemRoles);
     }
 
     public static DeferredResult<List<ProjectEntry>> getDirectlyAssignedProjectRolesForUser(
             Service requestorService, Principal principal) {
-        return getUserState(requestorService, principal.id).thenCompose(userState -> {
-            if ((userState == null) || (userState.userGroupLinks == null)
-                    || (userState.userGroupLinks.isEmpty())) {
-                return DeferredResult.completed(Collections.emptyList());
-            }
+        return getUserState(requestorService, principal.id).thenCompose(
+                userState -> getDirectlyAssignedProjectRoles(requestorService, userState));
+    }
 
-            Query query = ProjectUtil.buildQueryProjectsFromGroups(userState.userGroupLinks);
+    private static Set<AuthRole> getDirectlyAssignedSystemRoles(UserState userState) {
+        if ((userState == null) || (userState.userGroupLinks == null)
+                || (userState.userGroupLinks.isEmpty())) {
+            return Collections.emptySet();
+        }
 
-            return new QueryByPages<>(requestorService.getHost(), query, ProjectState.class, null)
-                    .collectDocuments(Collectors.toList())
-                    .thenApply(
-                            (projects) -> buildProjectEntries(projects, userState.userGroupLinks));
-        });
+        Set<AuthRole> roles = new HashSet<>();
+        AuthUtil.MAP_ROLE_TO_SYSTEM_USER_GROUP.entrySet()
+                .forEach((entry) -> {
+                    if (userState.userGroupLinks.contains(entry.getValue())) {
+                        roles.add(entry.getKey());
+                    }
+                });
+        return roles;
+    }
+
+    private static DeferredResult<List<ProjectEntry>> getDirectlyAssignedProjectRoles(
+            Service requestorService, UserState userState) {
+        if ((userState == null) || (userState.userGroupLinks == null)
+                || (userState.userGroupLinks.isEmpty())) {
+            return DeferredResult.completed(Collections.emptyList());
+        }
+
+        Query query = ProjectUtil.buildQueryProjectsFromGroups(userState.userGroupLinks);
+
+        return new QueryByPages<>(requestorService.getHost(), query, ProjectState.class, null)
+                .collectDocuments(Collectors.toList())
+                .thenApply(
+                        (projects) -> buildProjectEntries(projects, userState.userGroupLinks));
     }
 
     public static DeferredResult<Set<AuthRole>> getDirectlyAssignedSystemRolesForGroup(
@@ -210,16 +215,19 @@ public class PrincipalRolesUtil {
                 })
                 .thenCompose(ignore -> {
                     if (principal.type == PrincipalType.GROUP) {
-                        return getDirectlyAssignedSystemRolesForGroup(requestorService, principal);
+                        return getDirectlyAssignedSystemRolesForGroup(requestorService, principal)
+                                .thenAccept(systemRoles -> returnRoles.roles.addAll(systemRoles))
+                                .thenCompose(ignored -> getDirectlyAssignedProjectRolesForGroup(
+                                        requestorService, principal));
                     }
-                    return getDirectlyAssignedSystemRolesForUser(requestorService, principal);
-                })
-                .thenAccept(systemRoles -> returnRoles.roles.addAll(systemRoles))
-                .thenCompose(ignore -> {
-                    if (principal.type == PrincipalType.GROUP) {
-                        return getDirectlyAssignedProjectRolesForGroup(requestorService, principal);
-                    }
-                    return getDirectlyAssignedProjectRolesForUser(requestorService, principal);
+                    // the user state holds both the system and the project roles of the user
+                    return getUserState(requestorService, principal.id)
+                            .thenCompose(userState -> {
+                                returnRoles.roles.addAll(
+                                        getDirectlyAssignedSystemRoles(userState));
+                                return getDirectlyAssignedProjectRoles(requestorService,
+                                        userState);
+                            });
                 })
                 .thenApply(projectEntries -> {
                     returnRoles.projects.addAll(projectEntries);
@@ -235,40 +243,36 @@ public class PrincipalRolesUtil {
             return DeferredResult.completed(new HashMap<>());
         }
 
-        AtomicInteger counter = new AtomicInteger(groups.size());
-        AtomicBoolean hasError = new AtomicBoolean(false);
-
-        DeferredResult<Map<String, List<RoleState>>> returnResult = new DeferredResult<>();
+        // the roles of all groups are queried at once and then grouped by their user group
+        Map<String, String> groupsByLink = new HashMap<>();
         Map<String, List<RoleState>> result = new HashMap<>();
-
         for (String group : groups) {
-            String groupLink = UriUtils.buildUriPath(UserGroupService.FACTORY_LINK, group);
-            Query query = QueryUtil.addListValueClause(RoleState.FIELD_NAME_USER_GROUP_LINK,
-                    Collections.singletonList(groupLink), MatchType.TERM);
+            groupsByLink.put(UriUtils.buildUriPath(UserGroupService.FACTORY_LINK, group), group);
+            result.put(group, new ArrayList<>());
+        }
 
-            QueryTask queryTask = QueryUtil.buildQuery(RoleState.class, true, query);
-            QueryUtil.addExpandOption(queryTask);
+        Query query = QueryUtil.addListValueClause(RoleState.FIELD_NAME_USER_GROUP_LINK,
+                groupsByLink.keySet(), MatchType.TERM);
 
-            List<RoleState> roles = new ArrayList<>();
+        QueryTask queryTask = QueryUtil.buildQuery(RoleState.class, true, query);
+        QueryUtil.addExpandOption(queryTask);
 
-            new ServiceDocumentQuery<>(host, RoleState.class).query(queryTask, r -> {
-                if (r.hasException()) {
-                    if (hasError.compareAndSet(false, true)) {
-                        returnResult.fail(r.getException());
-                    } else {
-                        host.log(Level.WARNING, "Getting roles for group: %s failed with: %s",
-                                group, Utils.toString(r.getException()));
-                    }
-                } else if (r.hasResult()) {
-                    roles.add(r.getResult());
-                } else {
-                    result.put(group, roles);
-                    if (counter.decrementAndGet() == 0 && !hasError.get()) {
-                        returnResult.complete(result);
-                    }
+        DeferredResult<Map<String, List<RoleState>>> returnResult = new DeferredResult<>();
+
+        new ServiceDocumentQuery<>(host, RoleState.class).query(queryTask, r -> {
+            if (r.hasException()) {
+                host.log(Level.WARNING, "Getting roles for groups: %s failed with: %s",
+                        groups, Utils.toString(r.getException()));
+                returnResult.fail(r.getException());
+            } else if (r.hasResult()) {
+                String group = groupsByLink.get(r.getResult().userGroupLink);
+                if (group != null) {
+                    result.get(group).add(r.getResult());
                 }
-            });
-        }
+            } else {
+                returnResult.complete(result);
+            }
+        });
 
         return returnResult;
     }
@@ -286,18 +290,29 @@ public class PrincipalRolesUtil {
         }
 
         Set<AuthRole> systemRoles = new HashSet<>();
-        List<DeferredResult<ProjectEntry>> projectEntries = new ArrayList<>();
+        Map<String, Set<AuthRole>> projectRoles = new HashMap<>();
 
         for (RoleState roleState : roleStates) {
             if (isProjectRole(roleState)) {
-                projectEntries.add(extractProjectEntryFromRoleState(host, roleState));
+                String roleStateId = Service.getId(roleState.documentSelfLink);
+                String[] roleStateIdData = extractDataFromRoleStateId(roleStateId);
+
+                if (roleStateIdData.length != 3) {
+                    return DeferredResult.failed(new RuntimeException("Cannot extract project "
+                            + "entry from role state with invalid id: "
+                            + roleState.documentSelfLink));
+                }
+
+                String projectLink = UriUtils.buildUriPath(ProjectFactoryService.SELF_LINK,
+                        roleStateIdData[0]);
+                projectRoles.computeIfAbsent(projectLink, (k) -> new HashSet<>())
+                        .add(AuthRole.fromSuffix(roleStateIdData[2]));
             } else {
                 systemRoles.add(extractSystemRoleFromRoleState(roleState));
             }
         }
 
-        return DeferredResult.allOf(projectEntries)
-                .thenApply(entries -> mergeProjectEntries(entries))
+        return getProjectEntries(host, projectRoles)
                 .thenAccept(entries -> result.projects = entries)
                 .thenApply(ignore -> {
                     result.roles = systemRoles;
@@ -305,30 +320,41 @@ public class PrincipalRolesUtil {
                 });
     }
 
-    private static DeferredResult<ProjectEntry> extractProjectEntryFromRoleState(ServiceHost host,
-            RoleState roleState) {
-
-        ProjectEntry entry = new ProjectEntry();
+    /**
+     * Builds the entries of the projects with the given roles, retrieving the projects with a
+     * single query. Roles of projects which no longer exist are skipped.
+     */
+    private static DeferredResult<List<ProjectEntry>> getProjectEntries(ServiceHost host,
+            Map<String, Set<AuthRole>> projectRoles) {
+        if (projectRoles.isEmpty()) {
+            return DeferredResult.completed(new ArrayList<>());
+        }
 
-        String roleStateId = Service.getId(roleState.documentSelfLink);
-        String[] roleStateIdData = extractDataFromRoleStateId(roleStateId);
+        Query query = QueryUtil.addListValueClause(ServiceDocument.FIELD_NAME_SELF_LINK,
+                projectRoles.keySet(), MatchType.TERM);
 
-        if (roleStateIdData.length != 3) {
-            return DeferredResult.failed(new RuntimeException("Cannot extract project entry from "
-                    + "role state with invalid id: " + roleState.documentSelfLink));
-        }
+        QueryTask queryTask = QueryUtil.buildQuery(ProjectState.class, true, query);
+        QueryUtil.addExpandOption(queryTask);
 
-        String projectId = roleStateIdData[0];
-        AuthRole projectRole = AuthRole.fromSuffix(roleStateIdData[2]);
+        List<ProjectEntry> entries = new ArrayList<>();
+        DeferredResult<List<ProjectEntry>> result = new DeferredResult<>();
 
-        entry.roles = Collections.singleton(projectRole);
+        new ServiceDocumentQuery<>(host, ProjectState.class).query(queryTask, r -> {
+            if (r.hasException()) {
+                result.fail(r.getException());
+            } else if (r.hasResult()) {
+                ProjectState projectState = r.getResult();
+                ProjectEntry entry = new ProjectEntry();
+                entry.documentSelfLink = projectState.documentSelfLink;
+                entry.name = projectState.name;
+                entry.roles = projectRoles.get(projectState.documentSelfLink);
+                entries.add(entry);
+            } else {
+                result.complete(entries);
+            }
+        });
 
-        return getProjectState(host, projectId)
-                .thenApply(projectState -> {
-                    entry.documentSelfLink = projectState.documentSelfLink;
-                    entry.name = projectState.name;
-                    return entry;
-                });
+        return result;
     }
 
     private static AuthRole extractSystemRoleFromRoleState(RoleState roleState) {
@@ -367,16 +393,6 @@ public class PrincipalRolesUtil {
                 || roleState.documentSelfLink.contains(AuthRole.PROJECT_MEMBER.getSuffix());
     }
 
-    private static DeferredResult<ProjectState> getProjectState(ServiceHost host,
-            String projectId) {
-
-        String projectSelfLink = UriUtils.buildUriPath(ProjectFactoryService.SELF_LINK, projectId);
-        Operation getOp = Operation.createGet(host, projectSelfLink)
-                .setReferer(host.getUri());
-
-        return host.sendWithDeferredResult(getOp, ProjectState.class);
-    }
-
     private static List<ProjectEntry> mergeProjectEntries(List<ProjectEntry> projectEntries) {
         Map<String, ProjectEntry> mergedEntries = new HashMap<>();
 
@@ -11,11 +11,17 @@
 
 package com.vmware.admiral.auth.util;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 import org.apache.commons.collections.CollectionUtils;
@@ -28,11 +34,54 @@ import com.vmware.admiral.auth.project.ProjectService.ProjectState;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceSubscriptionState.ServiceSubscriber;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.RoleService.RoleState;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+import com.vmware.xenon.services.common.UserGroupService.UserGroupState;
+import com.vmware.xenon.services.common.UserService.UserState;
 
 public class SecurityContextUtil {
 
-    // TODO - Improve the caching with VBV-1406
-    private static final Map<String, SecurityContext> securityContextCache = new ConcurrentHashMap<>();
+    private static final int SECURITY_CONTEXT_CACHE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.auth.security.context.cache.size", 1000);
+
+    private static final long SECURITY_CONTEXT_CACHE_TTL_MICROS = Long.getLong(
+            "com.vmware.admiral.auth.security.context.cache.ttl.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    private static final long QUERY_TASK_EXPIRATION_DAYS = 5 * 365; // 5 years
+
+    private static class CachedSecurityContext {
+        final SecurityContext securityContext;
+        final long expirationTimeMicros;
+
+        CachedSecurityContext(SecurityContext securityContext) {
+            this.securityContext = securityContext;
+            this.expirationTimeMicros = Utils.fromNowMicrosUtc(SECURITY_CONTEXT_CACHE_TTL_MICROS);
+        }
+    }
+
+    // guarded by securityContextCache, least recently used first out
+    private static final Map<String, CachedSecurityContext> securityContextCache =
+            new LinkedHashMap<String, CachedSecurityContext>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, CachedSecurityContext> eldest) {
+                    return size() > SECURITY_CONTEXT_CACHE_SIZE;
+                }
+            };
+
+    // incremented on invalidation, so contexts built from stale documents are not cached
+    private static final AtomicLong securityContextCacheVersion = new AtomicLong();
 
     /**
      * Gets the {@link SecurityContext} for the currently authenticated user
@@ -44,12 +93,72 @@ public class SecurityContextUtil {
     }
 
     public static void clearSecurityContext(Operation requestorOperation) {
-        securityContextCache.remove(
-                AuthUtil.getAuthorizedUserId(requestorOperation.getAuthorizationContext()));
+        synchronized (securityContextCache) {
+            securityContextCache.remove(
+                    AuthUtil.getAuthorizedUserId(requestorOperation.getAuthorizationContext()));
+        }
     }
 
     public static void clearAllSecurityContexts() {
-        securityContextCache.clear();
+        synchronized (securityContextCache) {
+            securityContextCacheVersion.incrementAndGet();
+            securityContextCache.clear();
+        }
+    }
+
+    /**
+     * Subscribes for changes of the users, user groups, roles and projects, which make up the
+     * security contexts, and clears the cached security contexts on change. Any change clears all
+     * contexts since a change of a group or project affects all of its members. The given
+     * service must be privileged, the query is run with the system authorization context.
+     */
+    public static void subscribeForSecurityContextChanges(Service requestorService) {
+        ServiceHost host = requestorService.getHost();
+        Query query = Query.Builder.create()
+                .addInClause(ServiceDocument.FIELD_NAME_KIND, Arrays.asList(
+                        Utils.buildKind(UserState.class),
+                        Utils.buildKind(UserGroupState.class),
+                        Utils.buildKind(RoleState.class),
+                        Utils.buildKind(ProjectState.class)))
+                .build();
+        QueryTask task = QueryTask.Builder.create()
+                .addOptions(EnumSet.of(QueryOption.CONTINUOUS))
+                .setQuery(query)
+                .build();
+        task.documentSelfLink = UUID.randomUUID().toString() + "-security-contexts";
+        task.documentExpirationTimeMicros = Utils.fromNowMicrosUtc(
+                TimeUnit.DAYS.toMicros(QUERY_TASK_EXPIRATION_DAYS));
+
+        Operation queryPost = Operation.createPost(host, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS)
+                .setBody(task)
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.log(Level.SEVERE, "Failed to create security contexts query: %s",
+                                Utils.toString(e));
+                        return;
+                    }
+
+                    String taskUriPath = UriUtils.buildUriPath(
+                            ServiceUriPaths.CORE_LOCAL_QUERY_TASKS, task.documentSelfLink);
+                    Operation subscribePost = Operation.createPost(host, taskUriPath)
+                            .setReferer(host.getUri())
+                            .setCompletion((op, ex) -> {
+                                if (ex != null) {
+                                    host.log(Level.SEVERE, Utils.toString(ex));
+                                }
+                            });
+                    requestorService.setAuthorizationContext(subscribePost,
+                            requestorService.getSystemAuthorizationContext());
+
+                    host.startSubscriptionService(subscribePost, notification -> {
+                        notification.complete();
+                        clearAllSecurityContexts();
+                    }, ServiceSubscriber.create(false));
+                });
+        requestorService.setAuthorizationContext(queryPost,
+                requestorService.getSystemAuthorizationContext());
+        queryPost.sendWith(host);
     }
 
     /**
@@ -58,9 +167,16 @@ public class SecurityContextUtil {
     public static DeferredResult<SecurityContext> getSecurityContext(Service requestorService,
             Operation requestorOperation, String userId) {
 
-        SecurityContext securityContext = securityContextCache.get(userId);
-        if (securityContext != null) {
-            return DeferredResult.completed(securityContext);
+        long version;
+        synchronized (securityContextCache) {
+            CachedSecurityContext cached = securityContextCache.get(userId);
+            if (cached != null) {
+                if (cached.expirationTimeMicros > Utils.getNowMicrosUtc()) {
+                    return DeferredResult.completed(cached.securityContext);
+                }
+                securityContextCache.remove(userId);
+            }
+            version = securityContextCacheVersion.get();
         }
 
         return PrincipalUtil.getPrincipal(requestorService, requestorOperation, userId)
@@ -68,7 +184,11 @@ public class SecurityContextUtil {
                         requestorService, requestorOperation, principal))
                 .thenApply(SecurityContextUtil::fromPrincipalRolesToSecurityContext)
                 .thenApply(sc -> {
-                    securityContextCache.put(userId, sc);
+                    synchronized (securityContextCache) {
+                        if (securityContextCacheVersion.get() == version) {
+                            securityContextCache.put(userId, new CachedSecurityContext(sc));
+                        }
+                    }
                     return sc;
                 });
     }
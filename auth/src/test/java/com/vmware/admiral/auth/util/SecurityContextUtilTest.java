@@ -13,6 +13,7 @@ package com.vmware.admiral.auth.util;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.security.GeneralSecurityException;
@@ -150,6 +151,30 @@ public class SecurityContextUtilTest extends AuthBaseTest {
         assertTrue(context[0].projects.get(0).roles.contains(AuthRole.PROJECT_VIEWER));
     }
 
+    @Test
+    public void testSecurityContextInvalidatedOnProjectChange() throws Throwable {
+        Operation testOperationByAdmin = createAuthorizedOperation(
+                host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN)));
+
+        SecurityContext securityContext = getSecurityContext(testOperationByAdmin);
+        assertTrue(securityContext.projects.isEmpty());
+        // served from the cache
+        assertSame(securityContext, getSecurityContext(testOperationByAdmin));
+
+        ProjectState project = createProject("invalidationProject");
+        ProjectRoles projectRoles = new ProjectRoles();
+        PrincipalRoleAssignment admins = new PrincipalRoleAssignment();
+        admins.add = Collections.singletonList(USER_EMAIL_ADMIN);
+        projectRoles.administrators = admins;
+        doPatch(projectRoles, project.documentSelfLink);
+
+        waitFor(() -> {
+            SecurityContext context = getSecurityContext(testOperationByAdmin);
+            return context.projects.size() == 1
+                    && context.projects.get(0).roles.contains(AuthRole.PROJECT_ADMIN);
+        });
+    }
+
     @Test
     public void testSecurityContextContainsAllRolesForMultipleProjects() throws Throwable {
         Operation testOperationByAdmin = createAuthorizedOperation(
@@ -341,4 +366,20 @@ public class SecurityContextUtilTest extends AuthBaseTest {
         assertEquals(2, secondProjectEntry.roles.size());
         assertTrue(secondProjectEntry.roles.contains(AuthRole.PROJECT_MEMBER));
     }
+
+    private SecurityContext getSecurityContext(Operation requestorOperation) {
+        final SecurityContext[] context = new SecurityContext[1];
+        TestContext ctx = testCreate(1);
+        SecurityContextUtil.getSecurityContext(privilegedTestService, requestorOperation)
+                .whenComplete((securityContext, ex) -> {
+                    if (ex != null) {
+                        ctx.failIteration(ex);
+                        return;
+                    }
+                    context[0] = securityContext;
+                    ctx.completeIteration();
+                });
+        ctx.await();
+        return context[0];
+    }
 }
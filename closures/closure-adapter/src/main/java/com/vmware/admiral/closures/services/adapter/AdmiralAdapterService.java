@@ -721,7 +721,7 @@ public class AdmiralAdapterService extends
             AdmiralAdapterTaskState state) {
         // Create allocation closure
         ContainerAllocationTaskState allocationTask = prepareContainerAllocationTask(containerDesc,
-                1, state.groupResourcePlacementLink);
+                1, state.groupResourcePlacementLink, state.serviceTaskCallback);
 
         HostSelectionFilter.HostSelection hostSelection = new HostSelectionFilter.HostSelection();
         hostSelection.resourceCount = 1;
@@ -779,8 +779,11 @@ public class AdmiralAdapterService extends
 
     private ContainerAllocationTaskState prepareContainerAllocationTask(
             ContainerDescription containerDesc,
-            long resourceCount, String placemenStateLink) {
-        String taskLink = buildTaskLink(containerDesc);
+            long resourceCount, String placemenStateLink, ServiceTaskCallback callback) {
+        // the container is reported to the requester of the provisioning, a closure or a closure
+        // runner pool
+        String taskLink = callback != null && !callback.isEmpty() ? callback.serviceSelfLink
+                : buildTaskLink(containerDesc);
 
         ContainerAllocationTaskState allocationTask = new ContainerAllocationTaskState();
         allocationTask.resourceDescriptionLink = containerDesc.documentSelfLink;
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers.docker;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.closures.util.ClosureProps;
+import com.vmware.xenon.common.Operation;
+
+/**
+ * Bookkeeping of the warm runner containers of the docker execution drivers. A runner is a
+ * pre-started runtime container which asks for closures to execute in a loop, so a closure leased
+ * to an idle runner doesn't wait for the provisioning of a new container.
+ *
+ * The runners are grouped by a pool key which covers everything the container is created with
+ * (runtime, image, resources, placement and tenant). The size of every group follows the peak
+ * number of concurrently executed closures in the last demand windows, bounded by the configured
+ * min and max sizes, and the runners idle for longer than the idle timeout above that size are
+ * evicted.
+ */
+public class ClosureRunnerPool {
+
+    public static final int MIN_SIZE = Integer.getInteger(
+            "com.vmware.admiral.closures.runner.pool.min.size", 0);
+
+    /**
+     * Max number of warm runners per pool key. The pool is disabled when it is 0.
+     */
+    public static final int MAX_SIZE = Integer.getInteger(
+            "com.vmware.admiral.closures.runner.pool.max.size", 0);
+
+    public static final long DEMAND_WINDOW_MICROS = Long.getLong(
+            "com.vmware.admiral.closures.runner.pool.demand.window.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    public static final long IDLE_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.closures.runner.pool.idle.timeout.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    public static final long STARTUP_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.closures.runner.pool.startup.timeout.micros",
+            TimeUnit.MINUTES.toMicros(10));
+
+    public static final long POLL_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.closures.runner.pool.poll.timeout.micros",
+            TimeUnit.SECONDS.toMicros(30));
+
+    private static final long LEASE_TIMEOUT_MICROS = TimeUnit.SECONDS.toMicros(
+            ClosureProps.MAX_EXEC_TIMEOUT_SECONDS) + POLL_TIMEOUT_MICROS;
+
+    public enum RunnerStage {
+        /** The container is being provisioned */
+        STARTING,
+        /** The runner waits for a closure */
+        IDLE,
+        /** The runner executes a closure */
+        LEASED
+    }
+
+    /**
+     * Closure handed to a runner.
+     */
+    public static class RunnerLease {
+        public final String taskUri;
+        public final String token;
+
+        public RunnerLease(String taskUri, String token) {
+            this.taskUri = taskUri;
+            this.token = token;
+        }
+    }
+
+    public static class Runner {
+        public final String id;
+        public final String poolKey;
+        public final long createdMicros;
+        /** Known only to the runner container, the polls of the runner are checked against it. */
+        private final String secret = UUID.randomUUID().toString();
+        public String containerLink;
+        public RunnerStage stage = RunnerStage.STARTING;
+        public long idleSinceMicros;
+        public long leasedMicros;
+
+        private RunnerLease lease;
+        private boolean leaseDelivered;
+        private Operation pendingPoll;
+        private long pendingPollMicros;
+
+        Runner(String id, String poolKey, long createdMicros) {
+            this.id = id;
+            this.poolKey = poolKey;
+            this.createdMicros = createdMicros;
+        }
+
+        /**
+         * Returns the parked poll of the runner, if any. The poll of an evicted runner is failed
+         * so the runner exits.
+         */
+        Operation takePendingPoll() {
+            Operation poll = pendingPoll;
+            pendingPoll = null;
+            return poll;
+        }
+    }
+
+    /**
+     * A closure leased to a runner. The pending poll of the runner, if any, has to be completed
+     * with the lease.
+     */
+    public static class Grant {
+        public final String containerLink;
+        public final Operation poll;
+
+        Grant(String containerLink, Operation poll) {
+            this.containerLink = containerLink;
+            this.poll = poll;
+        }
+    }
+
+    private static class Demand {
+        long windowStartMicros;
+        int peak;
+        int previousPeak;
+    }
+
+    private final int minSize;
+    private final int maxSize;
+
+    private final Map<String, Runner> runners = new HashMap<>();
+    private final Map<String, Demand> demands = new HashMap<>();
+
+    public ClosureRunnerPool() {
+        this(MIN_SIZE, MAX_SIZE);
+    }
+
+    public ClosureRunnerPool(int minSize, int maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Leases a closure to an idle runner of the given pool. Returns {@code null} if there is no
+     * idle runner and the closure has to be executed in a new container.
+     */
+    public synchronized Grant acquire(String poolKey, RunnerLease lease, long nowMicros) {
+        Runner idle = null;
+        int leased = 0;
+        for (Runner runner : runners.values()) {
+            if (!runner.poolKey.equals(poolKey)) {
+                continue;
+            }
+            if (runner.stage == RunnerStage.LEASED) {
+                leased++;
+            } else if (runner.stage == RunnerStage.IDLE && runner.containerLink != null
+                    && (idle == null || runner.idleSinceMicros > idle.idleSinceMicros)) {
+                // the most recently used runner is taken so the others can become idle long enough
+                // to be evicted
+                idle = runner;
+            }
+        }
+        recordDemand(poolKey, leased + 1, nowMicros);
+
+        if (idle == null) {
+            return null;
+        }
+
+        idle.stage = RunnerStage.LEASED;
+        idle.leasedMicros = nowMicros;
+        idle.lease = lease;
+        idle.leaseDelivered = idle.pendingPoll != null;
+        Operation poll = idle.pendingPoll;
+        idle.pendingPoll = null;
+        return new Grant(idle.containerLink, poll);
+    }
+
+    /**
+     * Adds runners to the given pool up to its target size and returns the ids of the runners the
+     * caller has to start.
+     */
+    public synchronized List<String> replenish(String poolKey, long nowMicros) {
+        int count = 0;
+        for (Runner runner : runners.values()) {
+            if (runner.poolKey.equals(poolKey)) {
+                count++;
+            }
+        }
+
+        List<String> runnerIds = new ArrayList<>();
+        for (int i = count; i < getTargetSize(poolKey, nowMicros); i++) {
+            Runner runner = new Runner(UUID.randomUUID().toString(), poolKey, nowMicros);
+            runners.put(runner.id, runner);
+            runnerIds.add(runner.id);
+        }
+        return runnerIds;
+    }
+
+    /**
+     * Returns the secret the runner has to poll with, or {@code null} if the runner is no longer
+     * part of the pool.
+     */
+    public synchronized String getSecret(String runnerId) {
+        Runner runner = runners.get(runnerId);
+        return runner != null ? runner.secret : null;
+    }
+
+    /**
+     * Checks the secret of a poll of a runner. A runner which is not part of the pool is left to
+     * {@link #poll(String, Operation, long)}.
+     */
+    public synchronized boolean isAuthorized(String runnerId, String secret) {
+        Runner runner = runners.get(runnerId);
+        if (runner == null) {
+            return true;
+        }
+        return secret != null && MessageDigest.isEqual(
+                runner.secret.getBytes(StandardCharsets.UTF_8),
+                secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Binds the provisioned container to a runner. Returns {@code false} if the runner is no longer
+     * part of the pool.
+     */
+    public synchronized boolean bindContainer(String runnerId, String containerLink) {
+        Runner runner = runners.get(runnerId);
+        if (runner == null) {
+            return false;
+        }
+        runner.containerLink = containerLink;
+        return true;
+    }
+
+    /**
+     * Handles a poll of a runner for a closure. The runner polls again when it is done with the
+     * leased closure, so a poll after the lease was delivered returns the runner to the pool.
+     * Returns the lease to complete the poll with, or {@code null} if the poll is parked until a
+     * closure is leased or the poll times out.
+     *
+     * @throws IllegalStateException if the runner is not part of the pool
+     */
+    public synchronized RunnerLease poll(String runnerId, Operation poll, long nowMicros) {
+        Runner runner = runners.get(runnerId);
+        if (runner == null) {
+            throw new IllegalStateException("Unknown runner: " + runnerId);
+        }
+
+        if (runner.stage == RunnerStage.LEASED && !runner.leaseDelivered) {
+            runner.leaseDelivered = true;
+            return runner.lease;
+        }
+
+        if (runner.stage != RunnerStage.IDLE) {
+            runner.stage = RunnerStage.IDLE;
+            runner.lease = null;
+            runner.idleSinceMicros = nowMicros;
+        }
+        Operation previousPoll = runner.pendingPoll;
+        runner.pendingPoll = poll;
+        runner.pendingPollMicros = nowMicros;
+        if (previousPoll != null) {
+            // a runner has a single poll at a time, the previous one was abandoned
+            previousPoll.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED).complete();
+        }
+        return null;
+    }
+
+    /**
+     * Removes the runner with the given container from the pool, e.g. when its closure was
+     * cancelled. Returns {@code false} if the container is not a runner.
+     */
+    public synchronized boolean removeByContainer(String containerLink) {
+        Iterator<Runner> it = runners.values().iterator();
+        while (it.hasNext()) {
+            if (containerLink.equals(it.next().containerLink)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean isRunner(String containerLink) {
+        return runners.values().stream()
+                .anyMatch((r) -> containerLink.equals(r.containerLink));
+    }
+
+    public synchronized void remove(String runnerId) {
+        runners.remove(runnerId);
+    }
+
+    /**
+     * Returns the polls parked for longer than the poll timeout. They have to be completed without
+     * a lease and the runners poll again.
+     */
+    public synchronized List<Operation> expirePolls(long nowMicros) {
+        List<Operation> expired = new ArrayList<>();
+        for (Runner runner : runners.values()) {
+            if (runner.pendingPoll != null
+                    && nowMicros - runner.pendingPollMicros >= POLL_TIMEOUT_MICROS) {
+                expired.add(runner.pendingPoll);
+                runner.pendingPoll = null;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Removes from the pool the runners idle for longer than the idle timeout above the target
+     * size of their pool, the runners which didn't start in time and the runners which didn't
+     * return from a closure within the max execution timeout.
+     */
+    public synchronized List<Runner> evict(long nowMicros) {
+        Map<String, List<Runner>> idleByKey = new HashMap<>();
+        Map<String, Integer> countByKey = new HashMap<>();
+        List<Runner> evicted = new ArrayList<>();
+
+        Iterator<Runner> it = runners.values().iterator();
+        while (it.hasNext()) {
+            Runner runner = it.next();
+            if ((runner.stage == RunnerStage.STARTING
+                    && nowMicros - runner.createdMicros > STARTUP_TIMEOUT_MICROS)
+                    || (runner.stage == RunnerStage.LEASED
+                    && nowMicros - runner.leasedMicros > LEASE_TIMEOUT_MICROS)) {
+                it.remove();
+                evicted.add(runner);
+                continue;
+            }
+            countByKey.merge(runner.poolKey, 1, Integer::sum);
+            if (runner.stage == RunnerStage.IDLE
+                    && nowMicros - runner.idleSinceMicros > IDLE_TIMEOUT_MICROS) {
+                idleByKey.computeIfAbsent(runner.poolKey, (k) -> new ArrayList<>()).add(runner);
+            }
+        }
+
+        idleByKey.forEach((poolKey, idle) -> {
+            int surplus = countByKey.get(poolKey) - getTargetSize(poolKey, nowMicros);
+            idle.sort((r1, r2) -> Long.compare(r1.idleSinceMicros, r2.idleSinceMicros));
+            for (int i = 0; i < Math.min(surplus, idle.size()); i++) {
+                runners.remove(idle.get(i).id);
+                evicted.add(idle.get(i));
+            }
+        });
+
+        demands.keySet().removeIf((poolKey) -> getTargetSize(poolKey, nowMicros) == 0
+                && !countByKey.containsKey(poolKey));
+        return evicted;
+    }
+
+    public synchronized int size() {
+        return runners.size();
+    }
+
+    int getTargetSize(String poolKey, long nowMicros) {
+        Demand demand = demands.get(poolKey);
+        int peak = 0;
+        if (demand != null) {
+            rollWindow(demand, nowMicros);
+            peak = Math.max(demand.peak, demand.previousPeak);
+        }
+        return Math.min(Math.max(peak, minSize), maxSize);
+    }
+
+    private void recordDemand(String poolKey, int concurrency, long nowMicros) {
+        Demand demand = demands.computeIfAbsent(poolKey, (k) -> new Demand());
+        rollWindow(demand, nowMicros);
+        demand.peak = Math.max(demand.peak, concurrency);
+    }
+
+    private static void rollWindow(Demand demand, long nowMicros) {
+        long elapsed = nowMicros - demand.windowStartMicros;
+        if (elapsed < DEMAND_WINDOW_MICROS) {
+            return;
+        }
+        demand.previousPeak = elapsed < 2 * DEMAND_WINDOW_MICROS ? demand.peak : 0;
+        demand.peak = 0;
+        demand.windowStartMicros = nowMicros;
+    }
+}
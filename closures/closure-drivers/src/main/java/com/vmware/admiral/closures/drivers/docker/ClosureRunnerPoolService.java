@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers.docker;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.closures.drivers.ClosureDockerClientFactory;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool.Runner;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool.RunnerLease;
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Endpoint of the warm closure runners of this node. A runner polls
+ * {@code SELF_LINK/<runner id>} with its secret for a closure to execute and the poll is parked
+ * until a closure is leased to the runner or the poll times out. The provisioning of a runner container reports
+ * the container to {@code SELF_LINK/<runner id>} as well.
+ */
+public class ClosureRunnerPoolService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.CLOSURES_RUNNER_POOL;
+    public static final String RUNNER_SECRET_HEADER = "x-closure-runner-secret";
+
+    private final ClosureRunnerPool runnerPool;
+    private final ClosureDockerClientFactory dockerClientFactory;
+
+    /**
+     * Body of the provisioning callback of a runner container.
+     */
+    public static class RunnerProvisioningResponse extends ServiceTaskCallbackResponse {
+        public Set<String> resourceLinks;
+    }
+
+    public ClosureRunnerPoolService(ClosureRunnerPool runnerPool,
+            ClosureDockerClientFactory dockerClientFactory) {
+        super.toggleOption(ServiceOption.URI_NAMESPACE_OWNER, true);
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(TimeUnit.SECONDS.toMicros(5));
+        this.runnerPool = runnerPool;
+        this.dockerClientFactory = dockerClientFactory;
+    }
+
+    /**
+     * The runners poll with no token. A poll is authorized by the secret of the runner in
+     * {@link #RUNNER_SECRET_HEADER}, which is known only to the runner container and this node,
+     * see {@link #handleGet(Operation)}. The runner id is not a secret, it is part of the URI and
+     * of the container name.
+     */
+    @Override
+    public void authorizeRequest(Operation op) {
+        if (op.getAction() == Action.GET) {
+            op.complete();
+            return;
+        }
+        super.authorizeRequest(op);
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        String runnerId = getRunnerId(get);
+        if (runnerId == null) {
+            get.fail(new IllegalArgumentException("Runner id expected in the URI path."));
+            return;
+        }
+
+        if (!runnerPool.isAuthorized(runnerId, get.getRequestHeader(RUNNER_SECRET_HEADER))) {
+            logWarning("Poll of closure runner %s with invalid secret", runnerId);
+            get.fail(Operation.STATUS_CODE_FORBIDDEN);
+            return;
+        }
+
+        RunnerLease lease;
+        try {
+            lease = runnerPool.poll(runnerId, get, Utils.getNowMicrosUtc());
+        } catch (IllegalStateException e) {
+            logFine("Poll of closure runner %s failed: %s", runnerId, e.getMessage());
+            // the runner was evicted, it has to exit
+            get.fail(Operation.STATUS_CODE_NOT_FOUND);
+            return;
+        }
+
+        if (lease != null) {
+            completeLease(get, lease);
+        }
+    }
+
+    @Override
+    public void handlePatch(Operation patch) {
+        String runnerId = getRunnerId(patch);
+        if (runnerId == null) {
+            patch.fail(new IllegalArgumentException("Runner id expected in the URI path."));
+            return;
+        }
+
+        RunnerProvisioningResponse response = patch.getBody(RunnerProvisioningResponse.class);
+        if (TaskState.isFailed(response.taskInfo) || TaskState.isCancelled(response.taskInfo)) {
+            logWarning("Provisioning of closure runner %s failed: %s", runnerId,
+                    response.taskInfo.failure != null ? response.taskInfo.failure.message : "");
+            runnerPool.remove(runnerId);
+        } else if (response.resourceLinks != null && !response.resourceLinks.isEmpty()) {
+            String containerLink = response.resourceLinks.iterator().next();
+            if (!runnerPool.bindContainer(runnerId, containerLink)) {
+                logWarning("Closure runner %s with container %s is not part of the pool",
+                        runnerId, containerLink);
+            }
+        }
+        patch.complete();
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        long now = Utils.getNowMicrosUtc();
+        runnerPool.expirePolls(now).forEach((poll) -> poll
+                .setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED)
+                .complete());
+
+        List<Runner> evicted = runnerPool.evict(now);
+        for (Runner runner : evicted) {
+            logInfo("Evicting closure runner %s, stage: %s", runner.id, runner.stage);
+            Operation poll = runner.takePendingPoll();
+            if (poll != null) {
+                poll.fail(Operation.STATUS_CODE_NOT_FOUND);
+            }
+            if (runner.containerLink != null) {
+                dockerClientFactory.getClient().removeContainer(runner.containerLink,
+                        (e) -> logWarning("Unable to remove closure runner %s: %s",
+                                runner.containerLink, Utils.toString(e)));
+            }
+        }
+        post.complete();
+    }
+
+    /**
+     * Completes the poll of a runner with the closure to execute. The lease is sent as plain text
+     * with the closure URI and the token on separate lines, so the runner script can read it with
+     * no JSON tools.
+     */
+    public static void completeLease(Operation poll, RunnerLease lease) {
+        String body = lease.taskUri + "\n" + (lease.token != null ? lease.token : "") + "\n";
+        poll.setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN)
+                .setBody(body)
+                .complete();
+    }
+
+    private String getRunnerId(Operation op) {
+        String path = op.getUri().getPath();
+        if (path.length() <= SELF_LINK.length() + 1) {
+            return null;
+        }
+        return UriUtils.getLastPathSegment(path);
+    }
+}
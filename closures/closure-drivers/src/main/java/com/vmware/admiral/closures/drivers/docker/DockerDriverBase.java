@@ -13,6 +13,8 @@ package com.vmware.admiral.closures.drivers.docker;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.logging.Level;
@@ -23,14 +25,18 @@ import com.vmware.admiral.closures.drivers.ContainerConfiguration;
 import com.vmware.admiral.closures.drivers.DriverRegistry;
 import com.vmware.admiral.closures.drivers.ExecutionDriver;
 import com.vmware.admiral.closures.drivers.ImageConfiguration;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool.Grant;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool.RunnerLease;
 import com.vmware.admiral.closures.services.closure.Closure;
 import com.vmware.admiral.closures.services.closuredescription.ClosureDescription;
 import com.vmware.admiral.closures.util.ClosureProps;
 import com.vmware.admiral.closures.util.ClosureUtils;
 import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.common.util.FileUtil;
+import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
@@ -43,6 +49,7 @@ public abstract class DockerDriverBase implements ExecutionDriver {
     private final ServiceHost serviceHost;
     private final DriverRegistry driverRegistry;
     private final ClosureDockerClientFactory dockerClientFactory;
+    private final ClosureRunnerPool runnerPool;
 
     private static final String TRUST_CERT_PATH = getConfigProperty(
             ClosureProps.CALLBACK_TRUST_CERT_FILE_PATH);
@@ -53,9 +60,15 @@ public abstract class DockerDriverBase implements ExecutionDriver {
 
     public DockerDriverBase(ServiceHost serviceHost, DriverRegistry driverRegistry,
             ClosureDockerClientFactory dockerClientFactory) {
+        this(serviceHost, driverRegistry, dockerClientFactory, null);
+    }
+
+    public DockerDriverBase(ServiceHost serviceHost, DriverRegistry driverRegistry,
+            ClosureDockerClientFactory dockerClientFactory, ClosureRunnerPool runnerPool) {
         this.serviceHost = serviceHost;
         this.driverRegistry = driverRegistry;
         this.dockerClientFactory = dockerClientFactory;
+        this.runnerPool = runnerPool;
     }
 
     @Override
@@ -74,10 +87,6 @@ public abstract class DockerDriverBase implements ExecutionDriver {
         configuration.sourceURL = closureDesc.sourceURL;
         configuration.dependencies = closureDesc.dependencies;
 
-        List<String> vars = populateEnvs(closure, token);
-        configuration.envVars = vars.toArray(new String[vars.size()]);
-        logInfo("Creating closure with envs: %s", vars.get(0));
-
         String containerImage = getDockerImage();
 
         ImageConfiguration imageConfig = new ImageConfiguration();
@@ -90,11 +99,115 @@ public abstract class DockerDriverBase implements ExecutionDriver {
         imageConfig.registry = getConfigProperty(
                 ClosureProps.CLOSURE_RUNTIME_IMAGE_REGISTRY + closureDesc.runtime);
 
+        if (isPoolable(closureDesc)
+                && executeInRunner(dockerClient, closure, token, imageConfig, configuration)) {
+            errorHandler.accept(null);
+            return;
+        }
+
+        List<String> vars = populateEnvs(closure, token);
+        configuration.envVars = vars.toArray(new String[vars.size()]);
+        logInfo("Creating closure with envs: %s", vars.get(0));
+
         logInfo("Creating container with name: %s image: %s", containerName, containerImage);
         dockerClient.createAndStartContainer(closure, imageConfig, configuration, errorHandler);
         logInfo("Code execution request sent.");
     }
 
+    private boolean isPoolable(ClosureDescription closureDesc) {
+        // the images of closures with dependencies or a source URL are built for the closure
+        return runnerPool != null && runnerPool.isEnabled()
+                && ClosureUtils.isEmpty(closureDesc.dependencies)
+                && ClosureUtils.isEmpty(closureDesc.sourceURL);
+    }
+
+    /**
+     * Leases the closure to an idle warm runner, if any, and starts new runners up to the size
+     * of the pool. Returns {@code false} if the closure has to be executed in a new container.
+     */
+    private boolean executeInRunner(ClosureDockerClient dockerClient, Closure closure,
+            String token, ImageConfiguration imageConfig, ContainerConfiguration configuration) {
+        String poolKey = buildPoolKey(closure, imageConfig, configuration);
+        long now = Utils.getNowMicrosUtc();
+        RunnerLease lease = new RunnerLease(prepareCallbackUri(closure.documentSelfLink)
+                .toString(), token);
+
+        Grant grant = runnerPool.acquire(poolKey, lease, now);
+        for (String runnerId : runnerPool.replenish(poolKey, now)) {
+            startRunner(dockerClient, runnerId, closure, imageConfig, configuration);
+        }
+        if (grant == null) {
+            return false;
+        }
+
+        logInfo("Closure %s leased to runner %s", closure.documentSelfLink,
+                grant.containerLink);
+        Closure patch = new Closure();
+        patch.state = null;
+        patch.resourceLinks = new HashSet<>(Collections.singletonList(grant.containerLink));
+        getServiceHost().sendRequest(Operation
+                .createPatch(getServiceHost(), closure.documentSelfLink)
+                .setBody(patch)
+                .setReferer(getServiceHost().getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        Utils.logWarning("Unable to set the runner of closure %s: %s",
+                                closure.documentSelfLink, Utils.toString(e));
+                    }
+                    // the runner gets the closure after the closure refers to the runner
+                    if (grant.poll != null) {
+                        ClosureRunnerPoolService.completeLease(grant.poll, lease);
+                    }
+                }));
+        return true;
+    }
+
+    private void startRunner(ClosureDockerClient dockerClient, String runnerId, Closure closure,
+            ImageConfiguration imageConfig, ContainerConfiguration template) {
+        String secret = runnerPool.getSecret(runnerId);
+        if (secret == null) {
+            return;
+        }
+
+        // the runner is provisioned like a closure whose callbacks go to the runner pool
+        Closure runner = new Closure();
+        runner.documentSelfLink = UriUtils.buildUriPath(ClosureRunnerPoolService.SELF_LINK,
+                runnerId);
+        runner.tenantLinks = closure.tenantLinks;
+        runner.customProperties = closure.customProperties;
+
+        ContainerConfiguration configuration = new ContainerConfiguration(
+                generateContainerName(runner));
+        configuration.memoryMB = template.memoryMB;
+        configuration.cpuShares = template.cpuShares;
+        configuration.logConfiguration = template.logConfiguration;
+
+        List<String> vars = new ArrayList<>();
+        vars.add(ClosureProps.ENV_RUNNER_LEASE_URI + "="
+                + prepareCallbackUri(runner.documentSelfLink));
+        vars.add(ClosureProps.ENV_RUNNER_SECRET + "=" + secret);
+        vars.add(ClosureProps.ENV_TRUST_CERTS + "=" + getTrustCerts());
+        configuration.envVars = vars.toArray(new String[vars.size()]);
+
+        logInfo("Starting closure runner %s with image: %s", runnerId, imageConfig.imageName);
+        dockerClient.createAndStartContainer(runner, imageConfig, configuration, (error) -> {
+            if (error != null) {
+                runnerPool.remove(runnerId);
+            }
+        });
+    }
+
+    private String buildPoolKey(Closure closure, ImageConfiguration imageConfig,
+            ContainerConfiguration configuration) {
+        String placement = closure.customProperties != null
+                ? closure.customProperties.get(ClosureProps.CUSTOM_PROPERTY_PLACEMENT) : null;
+        return ClosureUtils.calculateHash(new String[] { imageConfig.imageName, ":",
+                imageConfig.imageNameVersion, ":", String.valueOf(configuration.memoryMB), ":",
+                String.valueOf(configuration.cpuShares), ":",
+                String.valueOf(configuration.logConfiguration), ":", placement, ":",
+                String.valueOf(closure.tenantLinks) });
+    }
+
     private static String getConfigProperty(String propertyName) {
         return ConfigurationUtil.getProperty(propertyName);
     }
@@ -116,6 +229,14 @@ public abstract class DockerDriverBase implements ExecutionDriver {
 
         logInfo("Killing container with for closure: %s", closure.documentSelfLink);
         for (String containerLink : closure.resourceLinks) {
+            if (runnerPool != null && runnerPool.isRunner(containerLink)) {
+                if (closure.state != TaskStage.CANCELLED) {
+                    // the runner returns to the pool by itself
+                    continue;
+                }
+                // the runner may be still executing the closure
+                runnerPool.removeByContainer(containerLink);
+            }
             try {
                 logInfo("Removing container with Id: %s", containerLink);
                 dockerClient.removeContainer(containerLink, errorHandler);
@@ -183,34 +304,36 @@ public abstract class DockerDriverBase implements ExecutionDriver {
     private List<String> populateEnvs(Closure closure, String token) {
         List<String> vars = new ArrayList<>();
 
-        URI callbackUri = prepareCallbackUri(closure);
+        URI callbackUri = prepareCallbackUri(closure.documentSelfLink);
         vars.add(ClosureProps.ENV_PROP_TASK_URI + "=" + callbackUri);
         logInfo("Setting TASK_URI %s for closure: %s", callbackUri, closure.descriptionLink);
         if (!ClosureUtils.isEmpty(token)) {
             vars.add(ClosureProps.ENV_PROP_TOKEN + "=" + token);
         }
+        vars.add(ClosureProps.ENV_TRUST_CERTS + "=" + getTrustCerts());
+
+        return vars;
+    }
+
+    private String getTrustCerts() {
         String cert = "";
         if (TRUST_CERT_PATH != null) {
             cert = FileUtil.getResourceAsString(TRUST_CERT_PATH, false);
         }
-        vars.add(ClosureProps.ENV_TRUST_CERTS + "=" + cert);
-
-        return vars;
+        return cert;
     }
 
-    private URI prepareCallbackUri(Closure closure) {
+    private URI prepareCallbackUri(String link) {
         URI callbackUri = null;
         if (CLOSURE_SERVICE_CALLBACK_URI != null) {
-            callbackUri = buildConfiguredCallbackUri(CLOSURE_SERVICE_CALLBACK_URI,
-                    closure.documentSelfLink);
+            callbackUri = buildConfiguredCallbackUri(CLOSURE_SERVICE_CALLBACK_URI, link);
         }
 
         if (callbackUri == null) {
             // fallback to publicUri as defined in xenon
-            callbackUri = UriUtils.buildPublicUri(getServiceHost(), closure.documentSelfLink);
+            callbackUri = UriUtils.buildPublicUri(getServiceHost(), link);
         }
-        logFine("Computed closure callback URI: %s, closure: %s", callbackUri, closure
-                .documentSelfLink);
+        logFine("Computed closure callback URI: %s, link: %s", callbackUri, link);
         return callbackUri;
     }
 
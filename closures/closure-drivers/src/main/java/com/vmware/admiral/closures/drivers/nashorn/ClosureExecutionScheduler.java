@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers.nashorn;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Executes the closures of the local execution drivers on a fixed number of threads. The closures
+ * waiting for a thread are kept in a bounded queue per tenant and the tenants take turns, so a
+ * tenant with many closures doesn't delay the closures of the others. A closure which doesn't
+ * complete within its timeout, including the time spent in the queue, is cancelled.
+ */
+public class ClosureExecutionScheduler {
+
+    private static final int TASK_QUEUED = 0;
+    private static final int TASK_RUNNING = 1;
+    private static final int TASK_DONE = 2;
+    private static final int TASK_CANCELLED = 3;
+
+    /**
+     * Snapshot of the scheduler statistics.
+     */
+    public static class ClosureExecutionStats {
+        public int queued;
+        public int running;
+        public long completed;
+        public long rejected;
+        public long timedOut;
+        public long cancelled;
+        public double averageQueueTimeMillis;
+        public double averageExecutionTimeMillis;
+    }
+
+    private static class Task<T> {
+        final String key;
+        final String tenant;
+        final Supplier<T> action;
+        final Consumer<T> completion;
+        final Runnable timeoutHandler;
+        final long submittedNanos;
+        final AtomicInteger state = new AtomicInteger(TASK_QUEUED);
+        volatile ScheduledFuture<?> timeout;
+
+        // guarded by this, the thread executing the action
+        Thread thread;
+
+        Task(String key, String tenant, Supplier<T> action, Consumer<T> completion,
+                Runnable timeoutHandler) {
+            this.key = key;
+            this.tenant = tenant;
+            this.action = action;
+            this.completion = completion;
+            this.timeoutHandler = timeoutHandler;
+            this.submittedNanos = System.nanoTime();
+        }
+    }
+
+    private final int queueCapacity;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+
+    private final Map<String, Task<?>> tasks = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private final Map<String, ArrayDeque<Task<?>>> queues = new HashMap<>();
+    private final ArrayDeque<String> tenantTurns = new ArrayDeque<>();
+    private int queued;
+    private int reserved;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong totalExecutionNanos = new AtomicLong();
+
+    public ClosureExecutionScheduler(int threads, int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        this.workers = Executors.newFixedThreadPool(threads,
+                daemonThreadFactory("closure-executor-"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                daemonThreadFactory("closure-executor-timeout-"));
+    }
+
+    /**
+     * Reserves a place in the queue for a closure which will be submitted later. Returns
+     * {@code false} if the queue is full and the closure has to be rejected.
+     */
+    public synchronized boolean tryReserve() {
+        if (queued + reserved >= queueCapacity) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        reserved++;
+        return true;
+    }
+
+    /**
+     * Releases a reservation which will not be submitted.
+     */
+    public synchronized void release() {
+        reserved--;
+    }
+
+    /**
+     * Queues the action of a closure in place of a reservation. The completion is called with the
+     * result of the action unless the closure was cancelled or timed out before the action
+     * completed, in which case the timeout handler is called on timeout.
+     */
+    public <T> void submit(String key, String tenant, long timeoutMillis, Supplier<T> action,
+            Consumer<T> completion, Runnable timeoutHandler) {
+        Task<T> task = new Task<>(key, tenant != null ? tenant : "", action, completion,
+                timeoutHandler);
+        Task<?> previous = tasks.put(key, task);
+        if (previous != null) {
+            cancel(previous);
+        }
+
+        task.timeout = timer.schedule(() -> onTimeout(task), timeoutMillis,
+                TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            reserved--;
+            queued++;
+            ArrayDeque<Task<?>> queue = queues.get(task.tenant);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(task.tenant, queue);
+                tenantTurns.add(task.tenant);
+            }
+            queue.add(task);
+        }
+
+        try {
+            workers.execute(this::runNext);
+        } catch (RejectedExecutionException e) {
+            // the scheduler is shut down
+            cancel(task);
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels a queued or running closure. Returns {@code false} if there is no such closure.
+     */
+    public boolean cancel(String key) {
+        Task<?> task = tasks.get(key);
+        return task != null && cancel(task);
+    }
+
+    public ClosureExecutionStats getStats() {
+        ClosureExecutionStats stats = new ClosureExecutionStats();
+        synchronized (this) {
+            stats.queued = queued;
+        }
+        stats.running = running.get();
+        stats.completed = completed.get();
+        stats.rejected = rejected.get();
+        stats.timedOut = timedOut.get();
+        stats.cancelled = cancelled.get();
+        long startedCount = started.get();
+        if (startedCount > 0) {
+            stats.averageQueueTimeMillis = TimeUnit.NANOSECONDS.toMicros(totalQueueNanos.get())
+                    / 1000.0 / startedCount;
+        }
+        if (stats.completed > 0) {
+            stats.averageExecutionTimeMillis = TimeUnit.NANOSECONDS
+                    .toMicros(totalExecutionNanos.get()) / 1000.0 / stats.completed;
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the number of queued and running closures.
+     */
+    public int size() {
+        return tasks.size();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private void runNext() {
+        Task<?> task = pollNext();
+        if (task != null) {
+            run(task);
+        }
+    }
+
+    private synchronized Task<?> pollNext() {
+        while (!tenantTurns.isEmpty()) {
+            String tenant = tenantTurns.poll();
+            ArrayDeque<Task<?>> queue = queues.get(tenant);
+            Task<?> task = queue.poll();
+            if (queue.isEmpty()) {
+                queues.remove(tenant);
+            } else {
+                tenantTurns.add(tenant);
+            }
+            if (task != null) {
+                queued--;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private <T> void run(Task<T> task) {
+        synchronized (task) {
+            if (!task.state.compareAndSet(TASK_QUEUED, TASK_RUNNING)) {
+                return;
+            }
+            task.thread = Thread.currentThread();
+        }
+
+        long startNanos = System.nanoTime();
+        started.incrementAndGet();
+        totalQueueNanos.addAndGet(startNanos - task.submittedNanos);
+        running.incrementAndGet();
+        T result = null;
+        Throwable failure = null;
+        try {
+            result = task.action.get();
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            running.decrementAndGet();
+            synchronized (task) {
+                task.thread = null;
+                // clear the interrupt of a cancellation which came after the action has completed
+                Thread.interrupted();
+            }
+        }
+
+        if (!task.state.compareAndSet(TASK_RUNNING, TASK_DONE)) {
+            return;
+        }
+        completed.incrementAndGet();
+        totalExecutionNanos.addAndGet(System.nanoTime() - startNanos);
+        task.timeout.cancel(false);
+        tasks.remove(task.key, task);
+
+        if (failure != null) {
+            log(Level.WARNING, "Execution of closure %s failed: %s", task.key,
+                    Utils.toString(failure));
+            return;
+        }
+        task.completion.accept(result);
+    }
+
+    private void onTimeout(Task<?> task) {
+        if (cancel(task)) {
+            timedOut.incrementAndGet();
+            log(Level.INFO, "Execution of closure %s timed out", task.key);
+            task.timeoutHandler.run();
+        }
+    }
+
+    private boolean cancel(Task<?> task) {
+        int state = task.state.get();
+        if ((state != TASK_QUEUED && state != TASK_RUNNING)
+                || !task.state.compareAndSet(state, TASK_CANCELLED)) {
+            return false;
+        }
+
+        tasks.remove(task.key, task);
+        if (task.timeout != null) {
+            task.timeout.cancel(false);
+        }
+        if (state == TASK_QUEUED) {
+            removeQueued(task);
+        } else {
+            synchronized (task) {
+                if (task.thread != null) {
+                    task.thread.interrupt();
+                }
+            }
+        }
+        cancelled.incrementAndGet();
+        return true;
+    }
+
+    private synchronized void removeQueued(Task<?> task) {
+        ArrayDeque<Task<?>> queue = queues.get(task.tenant);
+        if (queue != null && queue.remove(task)) {
+            queued--;
+            if (queue.isEmpty()) {
+                queues.remove(task.tenant);
+                tenantTurns.remove(task.tenant);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return (r) -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void log(Level level, String message, Object... values) {
+        Utils.log(getClass(), getClass().getSimpleName(), level, message, values);
+    }
+}
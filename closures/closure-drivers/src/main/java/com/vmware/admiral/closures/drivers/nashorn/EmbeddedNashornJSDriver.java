@@ -14,15 +14,21 @@ package com.vmware.admiral.closures.drivers.nashorn;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.function.Consumer;
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -44,12 +50,55 @@ import com.vmware.xenon.common.Utils;
  */
 public class EmbeddedNashornJSDriver extends LocalDriverBase {
 
+    private static final int ENGINE_POOL_SIZE = Integer.getInteger(
+            "com.vmware.admiral.closures.nashorn.engine.pool.size", 10);
+
+    private static final int SCRIPT_CACHE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.closures.nashorn.script.cache.size", 100);
+
     private final ServiceHost serviceHost;
 
+    private final ScriptEngineManager engineManager = new ScriptEngineManager();
+
+    /** Idle engines, an engine is used by a single execution at a time. */
+    private final BlockingQueue<PooledEngine> enginePool = new ArrayBlockingQueue<>(
+            ENGINE_POOL_SIZE);
+
     public interface JsDateWrap {
         long getTime();
     }
 
+    /**
+     * A script engine with the scripts compiled by it. A compiled script is evaluated by the
+     * engine which has compiled it.
+     */
+    private static class PooledEngine {
+        final ScriptEngine engine;
+
+        @SuppressWarnings("serial")
+        final Map<String, CachedScript> scripts = new LinkedHashMap<String, CachedScript>(16,
+                0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedScript> eldest) {
+                return size() > SCRIPT_CACHE_SIZE;
+            }
+        };
+
+        PooledEngine(ScriptEngine engine) {
+            this.engine = engine;
+        }
+    }
+
+    private static class CachedScript {
+        final String source;
+        final CompiledScript script;
+
+        CachedScript(String source, CompiledScript script) {
+            this.source = source;
+            this.script = script;
+        }
+    }
+
     public EmbeddedNashornJSDriver(ServiceHost serviceHost) {
         this.serviceHost = serviceHost;
     }
@@ -78,16 +127,17 @@ public class EmbeddedNashornJSDriver extends LocalDriverBase {
         Closure closureResult = new Closure();
 
         Map<String, JsonElement> outputs = new HashMap<>();
-        ScriptEngineManager manager = new ScriptEngineManager();
-        ScriptEngine engine = manager.getEngineByName(DriverConstants.RUNTIME_NASHORN);
-        if (engine == null) {
-            throw new IllegalStateException("Unable to execute script with runtime: "
-                    + taskDef.runtime);
+        PooledEngine pooledEngine = enginePool.poll();
+        if (pooledEngine == null) {
+            pooledEngine = createEngine(taskDef);
         }
 
+        ScriptEngine engine = pooledEngine.engine;
+        // every execution gets its own global scope, the engine is shared only by the pool
+        Bindings bindings = engine.createBindings();
         try {
-            setBindings(closure, engine);
-            executeScript(closure, taskDef, engine);
+            setBindings(closure, bindings);
+            executeScript(closure, taskDef, pooledEngine, bindings);
             closureResult.state = TaskStage.FINISHED;
 
         } catch (ScriptException e) {
@@ -97,15 +147,27 @@ public class EmbeddedNashornJSDriver extends LocalDriverBase {
         }
 
         // populate outputs
-        populateOutputs(engine, taskDef.outputNames, outputs);
+        populateOutputs(engine, bindings, taskDef.outputNames, outputs);
         closureResult.outputs = outputs;
+
+        // the engine is dropped if the pool is full
+        enginePool.offer(pooledEngine);
         return closureResult;
 
     }
 
-    private void populateOutputs(ScriptEngine engine, List<String> outputNames, Map<String, JsonElement> outputs) {
+    private PooledEngine createEngine(ClosureDescription taskDef) {
+        ScriptEngine engine = engineManager.getEngineByName(DriverConstants.RUNTIME_NASHORN);
+        if (engine == null) {
+            throw new IllegalStateException("Unable to execute script with runtime: "
+                    + taskDef.runtime);
+        }
+        return new PooledEngine(engine);
+    }
+
+    private void populateOutputs(ScriptEngine engine, Bindings outBindings,
+            List<String> outputNames, Map<String, JsonElement> outputs) {
         if (outputNames != null) {
-            final Bindings outBindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
             for (String name : outputNames) {
                 Object val = outBindings.get(name);
                 logInfo("Output parameter: name: %s value: %s", name, val);
@@ -115,33 +177,75 @@ public class EmbeddedNashornJSDriver extends LocalDriverBase {
         }
     }
 
-    private void executeScript(Closure closureRequest, ClosureDescription taskDef, ScriptEngine engine)
-            throws ScriptException {
+    private void executeScript(Closure closureRequest, ClosureDescription taskDef,
+            PooledEngine pooledEngine, Bindings bindings) throws ScriptException {
         String scriptSource = taskDef.source;
         ResourceConstraints resConstraints = taskDef.resources;
         logInfo("Using resource constraints: cpuShares = %s, ram = %s, timeout = %s",
                 resConstraints.cpuShares, resConstraints.ramMB, resConstraints.timeoutSeconds);
         logInfo("Executing script of %s:\n%s", closureRequest.documentSelfLink, scriptSource);
 
-        engine.eval(scriptSource);
-    }
+        String scriptKey = taskDef.documentSelfLink != null
+                ? taskDef.documentSelfLink + ":" + taskDef.documentVersion
+                : scriptSource;
+        CachedScript cachedScript = pooledEngine.scripts.get(scriptKey);
+        if (cachedScript == null || !cachedScript.source.equals(scriptSource)) {
+            cachedScript = new CachedScript(scriptSource,
+                    ((Compilable) pooledEngine.engine).compile(scriptSource));
+            pooledEngine.scripts.put(scriptKey, cachedScript);
+        }
 
-    private void setBindings(Closure closureRequest, ScriptEngine engine) throws ScriptException {
-        final Bindings inBindings = engine.createBindings();
+        ScriptContext context = new SimpleScriptContext();
+        context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        cachedScript.script.eval(context);
+    }
 
+    private void setBindings(Closure closureRequest, Bindings inBindings) {
         inBindings.put("result", null);
         Map<String, JsonElement> inputs = closureRequest.inputs;
-        JsonObject element = new JsonObject();
         if (inputs != null) {
+            JsonObject element = new JsonObject();
             inputs.forEach(element::add);
-            inBindings.put("inputs", convertValue(engine, element));
+            inBindings.put("inputs", toScriptObject(inBindings, element));
         }
-
-        engine.setBindings(inBindings, ScriptContext.ENGINE_SCOPE);
     }
 
-    private Object convertValue(ScriptEngine engine, JsonElement var) throws ScriptException {
-        return engine.eval("JSON.parse('" + var.toString() + "')", engine.getContext());
+    /**
+     * Converts a JSON value to a native script value of the global scope of the given bindings,
+     * i.e. what JSON.parse() would return, without evaluating a script.
+     */
+    @SuppressWarnings("restriction")
+    private Object toScriptObject(Bindings bindings, JsonElement var) {
+        if (var == null || var.isJsonNull()) {
+            return null;
+        } else if (var.isJsonPrimitive()) {
+            JsonPrimitive primitive = var.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            } else if (primitive.isNumber()) {
+                double number = primitive.getAsDouble();
+                if (number == Math.rint(number) && number >= Integer.MIN_VALUE
+                        && number <= Integer.MAX_VALUE) {
+                    return (int) number;
+                }
+                return number;
+            }
+            return primitive.getAsString();
+        } else if (var.isJsonArray()) {
+            ScriptObjectMirror array = (ScriptObjectMirror) ((ScriptObjectMirror) bindings
+                    .get("Array")).newObject();
+            for (JsonElement item : var.getAsJsonArray()) {
+                array.callMember("push", toScriptObject(bindings, item));
+            }
+            return array;
+        }
+
+        ScriptObjectMirror object = (ScriptObjectMirror) ((ScriptObjectMirror) bindings
+                .get("Object")).newObject();
+        for (Map.Entry<String, JsonElement> entry : var.getAsJsonObject().entrySet()) {
+            object.setMember(entry.getKey(), toScriptObject(bindings, entry.getValue()));
+        }
+        return object;
     }
 
     @SuppressWarnings({ "restriction", "unchecked" })
@@ -13,18 +13,17 @@ package com.vmware.admiral.closures.drivers.nashorn;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
 import com.vmware.admiral.closures.drivers.ExecutionDriver;
+import com.vmware.admiral.closures.drivers.nashorn.ClosureExecutionScheduler.ClosureExecutionStats;
 import com.vmware.admiral.closures.services.closure.Closure;
 import com.vmware.admiral.closures.services.closure.ClosureFactoryService;
 import com.vmware.admiral.closures.services.closuredescription.ClosureDescription;
+import com.vmware.admiral.closures.util.ClosureProps;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
@@ -32,14 +31,37 @@ import com.vmware.xenon.common.Utils;
 
 public abstract class LocalDriverBase implements ExecutionDriver {
 
-    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(10,
-            new ThreadPoolExecutor.AbortPolicy());
+    private static final int EXECUTOR_THREADS = Integer.getInteger(
+            "com.vmware.admiral.closures.local.executor.threads", 10);
 
-    private final Map<String, Future<?>> submittedTasks = new HashMap<>();
+    private static final int EXECUTOR_QUEUE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.closures.local.executor.queue.size", 100);
 
+    private static final ClosureExecutionScheduler scheduler = new ClosureExecutionScheduler(
+            EXECUTOR_THREADS, EXECUTOR_QUEUE_SIZE);
+
+    /**
+     * Returns the queue depth and latency statistics of the local closure executions.
+     */
+    public static ClosureExecutionStats getExecutionStats() {
+        return scheduler.getStats();
+    }
+
+    /**
+     * Leases the closure and queues its execution. The closure is rejected with a
+     * {@link RejectedExecutionException} before it is leased when the execution queue is full.
+     */
     @Override
     public void executeClosure(Closure closureRequest, ClosureDescription taskDef, String token, Consumer<Throwable>
             errorHandler) {
+        if (!scheduler.tryReserve()) {
+            logInfo("Execution queue is full, rejecting closure: %s",
+                    closureRequest.documentSelfLink);
+            errorHandler.accept(new RejectedExecutionException(
+                    "Too many closures are being executed, try again later."));
+            return;
+        }
+
         // Lease the closure and proceed
         Closure leasedClosure = new Closure();
         closureRequest.copyTo(leasedClosure);
@@ -58,6 +80,7 @@ public abstract class LocalDriverBase implements ExecutionDriver {
                         Utils.logWarning("Closure execution aborted! Unable to lease closure with"
                                         + " URI: %s, Reason: %s",
                                 uri.toString(), Utils.toString(ex));
+                        scheduler.release();
                         errorHandler.accept(ex);
                         return;
                     }
@@ -71,16 +94,9 @@ public abstract class LocalDriverBase implements ExecutionDriver {
         logInfo("Cancelling execution of closure : %s", closure.documentSelfLink);
 
         String documentSelfLink = closure.documentSelfLink;
-
-        Future<?> futureTask = submittedTasks.get(documentSelfLink);
-        if (futureTask == null) {
+        if (!scheduler.cancel(documentSelfLink)) {
             Utils.logWarning("Unable to cancel closure: %s", documentSelfLink);
-            return;
         }
-
-        futureTask.cancel(true);
-
-        submittedTasks.remove(documentSelfLink);
     }
 
     private void proceedWithExecution(Closure closureRequest, ClosureDescription taskDef) {
@@ -92,6 +108,7 @@ public abstract class LocalDriverBase implements ExecutionDriver {
                     if (ex != null) {
                         Utils.logWarning("Failed to fetch closure before execution! Reason: %s",
                                 ex.getMessage());
+                        scheduler.release();
                         o.fail(new Exception("Unable to fetch closure."));
                     } else {
                         Closure closure = o.getBody(Closure.class);
@@ -104,15 +121,28 @@ public abstract class LocalDriverBase implements ExecutionDriver {
 
     private void executeLocal(Closure closureRequest, ClosureDescription taskDef) {
         String taskSelfLink = buildSelfLink(closureRequest);
-        Future<?> futureTask = executor.submit(() -> {
-            Closure result = doExecute(closureRequest, taskDef);
-            result.inputs = closureRequest.inputs;
-            result.closureSemaphore = closureRequest.closureSemaphore;
-            result.documentSelfLink = taskSelfLink;
-            sendSelfPatch(result);
-        });
-
-        submittedTasks.put(taskSelfLink, futureTask);
+        String tenant = closureRequest.tenantLinks != null && !closureRequest.tenantLinks.isEmpty()
+                ? closureRequest.tenantLinks.get(0) : null;
+        int timeoutSeconds = taskDef.resources != null && taskDef.resources.timeoutSeconds != null
+                ? taskDef.resources.timeoutSeconds : ClosureProps.DEFAULT_EXEC_TIMEOUT_SECONDS;
+
+        scheduler.submit(taskSelfLink, tenant, TimeUnit.SECONDS.toMillis(timeoutSeconds),
+                () -> doExecute(closureRequest, taskDef),
+                (result) -> {
+                    result.inputs = closureRequest.inputs;
+                    result.closureSemaphore = closureRequest.closureSemaphore;
+                    result.documentSelfLink = taskSelfLink;
+                    sendSelfPatch(result);
+                },
+                () -> {
+                    Closure result = new Closure();
+                    result.state = TaskStage.CANCELLED;
+                    result.errorMsg = String.format("Configured timeout of [%s] seconds has"
+                            + " expired. Closure %s is cancelled.", timeoutSeconds, taskSelfLink);
+                    result.closureSemaphore = closureRequest.closureSemaphore;
+                    result.documentSelfLink = taskSelfLink;
+                    sendSelfPatch(result);
+                });
     }
 
     private String buildSelfLink(Closure closureRequest) {
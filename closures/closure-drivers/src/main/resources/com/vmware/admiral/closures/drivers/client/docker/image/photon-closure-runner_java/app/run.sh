@@ -2,4 +2,35 @@
 
 mkdir ./user_scripts || echo "File exits"
 echo "${TRUST_CERTS}" > trust.pem
-java -cp .:\* com/vmware/admiral/closure/runner/AppRunner
\ No newline at end of file
+
+run_closure() {
+    java -cp .:\* com/vmware/admiral/closure/runner/AppRunner
+}
+
+if [ -z "${RUNNER_LEASE_URI}" ]; then
+    run_closure
+    exit
+fi
+
+# Warm runner: execute the closures leased to this runner until it is evicted from the pool
+while true; do
+    lease=$(curl -sfL --cacert trust.pem -H "x-closure-runner-secret: ${RUNNER_SECRET}" \
+        "${RUNNER_LEASE_URI}")
+    status=$?
+    if [ ${status} -eq 22 ]; then
+        # the runner is no longer part of the pool
+        exit 0
+    elif [ ${status} -ne 0 ]; then
+        sleep 1
+        continue
+    fi
+    if [ -z "${lease}" ]; then
+        # no closure leased before the poll timeout
+        continue
+    fi
+
+    export TASK_URI=$(echo "${lease}" | sed -n 1p)
+    export TOKEN=$(echo "${lease}" | sed -n 2p)
+    rm -rf ./user_scripts/*
+    (run_closure)
+done
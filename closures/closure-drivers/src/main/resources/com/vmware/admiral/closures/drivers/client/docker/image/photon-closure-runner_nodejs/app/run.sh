@@ -2,10 +2,39 @@
 
 echo "${TRUST_CERTS}" > trust.pem
 
-node ./appmain.js
+run_closure() {
+    node ./appmain.js
 
-#PATCH the closure with the response saved by node in file response.json
-curl -sL --cacert trust.pem \
-         --request PATCH -H "Content-Type: application/json" \
-                         -H "x-xenon-auth-token: ${TOKEN}" -d @response.json ${TASK_URI} > /dev/null
+    #PATCH the closure with the response saved by node in file response.json
+    curl -sL --cacert trust.pem \
+             --request PATCH -H "Content-Type: application/json" \
+                             -H "x-xenon-auth-token: ${TOKEN}" -d @response.json ${TASK_URI} > /dev/null
+}
 
+if [ -z "${RUNNER_LEASE_URI}" ]; then
+    run_closure
+    exit
+fi
+
+# Warm runner: execute the closures leased to this runner until it is evicted from the pool
+while true; do
+    lease=$(curl -sfL --cacert trust.pem -H "x-closure-runner-secret: ${RUNNER_SECRET}" \
+        "${RUNNER_LEASE_URI}")
+    status=$?
+    if [ ${status} -eq 22 ]; then
+        # the runner is no longer part of the pool
+        exit 0
+    elif [ ${status} -ne 0 ]; then
+        sleep 1
+        continue
+    fi
+    if [ -z "${lease}" ]; then
+        # no closure leased before the poll timeout
+        continue
+    fi
+
+    export TASK_URI=$(echo "${lease}" | sed -n 1p)
+    export TOKEN=$(echo "${lease}" | sed -n 2p)
+    rm -f response.json
+    (run_closure)
+done
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.vmware.admiral.closures.drivers.nashorn.ClosureExecutionScheduler;
+import com.vmware.admiral.closures.drivers.nashorn.ClosureExecutionScheduler.ClosureExecutionStats;
+
+public class ClosureExecutionSchedulerTest {
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private ClosureExecutionScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testTenantsTakeTurns() throws InterruptedException {
+        scheduler = new ClosureExecutionScheduler(1, 10);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> executed = new CopyOnWriteArrayList<>();
+
+        block("tenant-c", blocked, executed);
+        for (String key : Arrays.asList("a1", "a2", "a3")) {
+            submit(key, "tenant-a", () -> key, executed, done);
+        }
+        submit("b1", "tenant-b", () -> "b1", executed, done);
+        assertEquals(4, scheduler.getStats().queued);
+
+        blocked.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocker", "a1", "b1", "a2", "a3"), executed);
+
+        ClosureExecutionStats stats = scheduler.getStats();
+        assertEquals(0, stats.queued);
+        assertEquals(5, stats.completed);
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() {
+        scheduler = new ClosureExecutionScheduler(1, 1);
+        assertTrue(scheduler.tryReserve());
+        assertFalse(scheduler.tryReserve());
+        assertEquals(1, scheduler.getStats().rejected);
+
+        scheduler.release();
+        assertTrue(scheduler.tryReserve());
+    }
+
+    @Test
+    public void testCancelOnTimeout() throws InterruptedException {
+        scheduler = new ClosureExecutionScheduler(1, 10);
+        CountDownLatch timedOut = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<String> executed = new CopyOnWriteArrayList<>();
+
+        assertTrue(scheduler.tryReserve());
+        scheduler.submit("slow", "tenant", 100, () -> {
+            try {
+                Thread.sleep(TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "slow";
+        }, executed::add, timedOut::countDown);
+
+        assertTrue(timedOut.await(10, TimeUnit.SECONDS));
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(executed.isEmpty());
+        assertEquals(0, scheduler.size());
+        assertEquals(1, scheduler.getStats().timedOut);
+
+        // a cancelled closure is not executed
+        CountDownLatch blocked = new CountDownLatch(1);
+        block("tenant", blocked, executed);
+        submit("cancelled", "tenant", () -> "cancelled", executed, null);
+        assertTrue(scheduler.cancel("cancelled"));
+        assertFalse(scheduler.cancel("unknown"));
+        assertEquals(0, scheduler.getStats().queued);
+        blocked.countDown();
+    }
+
+    private void submit(String key, String tenant, Supplier<String> action,
+            List<String> executed, CountDownLatch done) {
+        assertTrue(scheduler.tryReserve());
+        scheduler.submit(key, tenant, TIMEOUT_MILLIS, action, (result) -> {
+            executed.add(result);
+            if (done != null) {
+                done.countDown();
+            }
+        }, () -> {
+        });
+    }
+
+    /**
+     * Occupies the single worker thread until the latch is released.
+     */
+    private void block(String tenant, CountDownLatch blocked, List<String> executed)
+            throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        submit("blocker", tenant, () -> {
+            running.countDown();
+            await(blocked);
+            return "blocker";
+        }, executed, null);
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
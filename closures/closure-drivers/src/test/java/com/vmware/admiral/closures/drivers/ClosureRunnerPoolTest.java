@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool.Grant;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool.RunnerLease;
+import com.vmware.xenon.common.Operation;
+
+public class ClosureRunnerPoolTest {
+    private static final String POOL_KEY = "nodejs";
+    private static final String CONTAINER_LINK = "/resources/containers/runner";
+
+    private long now = TimeUnit.DAYS.toMicros(1);
+
+    @Test
+    public void testLeaseAndRecycleRunner() {
+        ClosureRunnerPool pool = new ClosureRunnerPool(0, 2);
+        RunnerLease lease = new RunnerLease("/resources/closures/c1", "token");
+
+        // the first closure is executed in a new container and a runner is started
+        assertNull(pool.acquire(POOL_KEY, lease, now));
+        List<String> runnerIds = pool.replenish(POOL_KEY, now);
+        assertEquals(1, runnerIds.size());
+        String runnerId = runnerIds.get(0);
+
+        Operation poll = createPoll();
+        assertNull(pool.poll(runnerId, poll, now));
+        // a runner is leased only after its container is known
+        assertNull(pool.acquire(POOL_KEY, lease, now));
+        assertTrue(pool.bindContainer(runnerId, CONTAINER_LINK));
+
+        Grant grant = pool.acquire(POOL_KEY, lease, now);
+        assertEquals(CONTAINER_LINK, grant.containerLink);
+        assertSame(poll, grant.poll);
+        assertTrue(pool.isRunner(CONTAINER_LINK));
+
+        // the next poll returns the runner to the pool
+        poll = createPoll();
+        assertNull(pool.poll(runnerId, poll, now));
+        grant = pool.acquire(POOL_KEY, new RunnerLease("/resources/closures/c2", "token"), now);
+        assertEquals(CONTAINER_LINK, grant.containerLink);
+        assertSame(poll, grant.poll);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testLeaseDeliveredOnNextPoll() {
+        ClosureRunnerPool pool = new ClosureRunnerPool(0, 2);
+        String runnerId = startRunner(pool);
+
+        // the parked poll timed out and the runner didn't poll again yet
+        assertEquals(1, pool.expirePolls(now + ClosureRunnerPool.POLL_TIMEOUT_MICROS).size());
+
+        RunnerLease lease = new RunnerLease("/resources/closures/c1", "token");
+        Grant grant = pool.acquire(POOL_KEY, lease, now);
+        assertNull(grant.poll);
+        assertSame(lease, pool.poll(runnerId, createPoll(), now));
+    }
+
+    @Test
+    public void testPollIsAuthorizedBySecret() {
+        ClosureRunnerPool pool = new ClosureRunnerPool(0, 2);
+        String runnerId = startRunner(pool);
+
+        String secret = pool.getSecret(runnerId);
+        assertTrue(pool.isAuthorized(runnerId, secret));
+        assertFalse(pool.isAuthorized(runnerId, null));
+        assertFalse(pool.isAuthorized(runnerId, runnerId));
+        assertFalse(pool.isAuthorized(runnerId, secret + "x"));
+
+        // an unknown runner is not part of the pool and is rejected by the poll itself
+        pool.remove(runnerId);
+        assertNull(pool.getSecret(runnerId));
+        assertTrue(pool.isAuthorized(runnerId, null));
+    }
+
+    @Test
+    public void testSizeFollowsDemandWithinBounds() {
+        ClosureRunnerPool pool = new ClosureRunnerPool(0, 2);
+        for (int i = 0; i < 5; i++) {
+            assertNull(pool.acquire(POOL_KEY, new RunnerLease("/c" + i, null), now));
+        }
+        assertEquals(2, pool.replenish(POOL_KEY, now).size());
+        assertTrue(pool.replenish(POOL_KEY, now).isEmpty());
+        assertTrue(pool.replenish("python", now).isEmpty());
+    }
+
+    @Test
+    public void testEvictIdleRunners() {
+        ClosureRunnerPool pool = new ClosureRunnerPool(0, 2);
+        String runnerId = startRunner(pool);
+
+        // the demand of the last windows keeps the runner
+        long idle = now + ClosureRunnerPool.IDLE_TIMEOUT_MICROS + 1;
+        assertTrue(pool.evict(idle).isEmpty());
+
+        long noDemand = now + 2 * ClosureRunnerPool.DEMAND_WINDOW_MICROS
+                + ClosureRunnerPool.IDLE_TIMEOUT_MICROS;
+        assertEquals(runnerId, pool.evict(noDemand).get(0).id);
+        assertEquals(0, pool.size());
+        assertFalse(pool.isRunner(CONTAINER_LINK));
+
+        try {
+            pool.poll(runnerId, createPoll(), noDemand);
+        } catch (IllegalStateException e) {
+            return;
+        }
+        throw new AssertionError("Poll of an evicted runner should fail");
+    }
+
+    @Test
+    public void testKeepMinSize() {
+        ClosureRunnerPool pool = new ClosureRunnerPool(1, 2);
+        startRunner(pool);
+
+        long noDemand = now + 2 * ClosureRunnerPool.DEMAND_WINDOW_MICROS
+                + ClosureRunnerPool.IDLE_TIMEOUT_MICROS;
+        assertTrue(pool.evict(noDemand).isEmpty());
+        assertEquals(1, pool.size());
+
+        // a cancelled closure removes its runner
+        assertTrue(pool.removeByContainer(CONTAINER_LINK));
+        assertEquals(0, pool.size());
+    }
+
+    private String startRunner(ClosureRunnerPool pool) {
+        assertNull(pool.acquire(POOL_KEY, new RunnerLease("/resources/closures/c0", null), now));
+        String runnerId = pool.replenish(POOL_KEY, now).get(0);
+        pool.bindContainer(runnerId, CONTAINER_LINK);
+        assertNull(pool.poll(runnerId, createPoll(), now));
+        return runnerId;
+    }
+
+    private static Operation createPoll() {
+        return Operation.createGet(URI.create("http://localhost/resources/closure-runners/r"));
+    }
+}
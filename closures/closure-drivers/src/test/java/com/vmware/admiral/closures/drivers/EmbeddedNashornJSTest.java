@@ -11,12 +11,27 @@
 
 package com.vmware.admiral.closures.drivers;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.mock;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
 import org.junit.Test;
 
 import com.vmware.admiral.closures.drivers.nashorn.EmbeddedNashornJSDriver;
+import com.vmware.admiral.closures.services.closure.Closure;
+import com.vmware.admiral.closures.services.closuredescription.ClosureDescription;
+import com.vmware.admiral.closures.services.closuredescription.ResourceConstraints;
 import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.TaskState.TaskStage;
 
 /**
  */
@@ -29,4 +44,60 @@ public class EmbeddedNashornJSTest {
         ExecutionDriver execDriver = new EmbeddedNashornJSDriver(host);
 
     }
+
+    @Test
+    public void testRepeatedExecutionsAreIsolated() {
+        EmbeddedNashornJSDriver execDriver = new EmbeddedNashornJSDriver(
+                mock(ServiceHost.class));
+
+        ClosureDescription taskDef = new ClosureDescription();
+        taskDef.documentSelfLink = "/resources/closure-descriptions/test";
+        taskDef.runtime = DriverConstants.RUNTIME_NASHORN;
+        taskDef.resources = new ResourceConstraints();
+        taskDef.outputNames = Arrays.asList("result", "previous");
+        taskDef.source = "var previous = typeof counter === 'undefined' ? 'none' : counter;"
+                + " var counter = inputs.a + inputs.list.length;"
+                + " var result = inputs.name + ':' + counter;";
+
+        for (int i = 0; i < 3; i++) {
+            Closure closure = new Closure();
+            closure.inputs = new HashMap<>();
+            closure.inputs.put("a", new JsonPrimitive(i));
+            JsonArray list = new JsonArray();
+            list.add(new JsonPrimitive("x"));
+            list.add(new JsonPrimitive("y"));
+            closure.inputs.put("list", list);
+            closure.inputs.put("name", new JsonPrimitive("it's"));
+
+            Closure result = execDriver.doExecute(closure, taskDef);
+
+            assertEquals(TaskStage.FINISHED, result.state);
+            assertEquals("it's:" + (i + 2), result.outputs.get("result").getAsString());
+            // globals of a previous execution are not visible
+            assertEquals("none", result.outputs.get("previous").getAsString());
+        }
+
+        // an updated description is compiled again
+        taskDef.documentVersion = 1;
+        taskDef.source = "var result = 'updated';";
+        Closure closure = new Closure();
+        closure.inputs = Collections.emptyMap();
+        Map<String, JsonElement> outputs = execDriver.doExecute(closure, taskDef).outputs;
+        assertEquals("updated", outputs.get("result").getAsString());
+    }
+
+    @Test
+    public void testCompilationFailure() {
+        EmbeddedNashornJSDriver execDriver = new EmbeddedNashornJSDriver(
+                mock(ServiceHost.class));
+
+        ClosureDescription taskDef = new ClosureDescription();
+        taskDef.runtime = DriverConstants.RUNTIME_NASHORN;
+        taskDef.resources = new ResourceConstraints();
+        taskDef.source = "var result = ;";
+
+        Closure result = execDriver.doExecute(new Closure(), taskDef);
+        assertEquals(TaskStage.FAILED, result.state);
+        assertNotNull(result.errorMsg);
+    }
 }
@@ -26,13 +26,13 @@ public final class DriverRegistryImpl implements DriverRegistry {
 
     private static final Logger logger = LoggerFactory.getLogger(DriverRegistryImpl.class);
 
-    private final String NODEJS_IMAGE_VERSION = "1.0";
+    private final String NODEJS_IMAGE_VERSION = "1.1";
     private final String NODEJS_BASE_IMAGE_VERSION = "1.0";
-    private final String PYTHON_IMAGE_VERSION = "1.0";
+    private final String PYTHON_IMAGE_VERSION = "1.1";
     private final String PYTHON_BASE_IMAGE_VERSION = "1.0";
-    private final String POWERSHELL_IMAGE_VERSION = "1.0";
+    private final String POWERSHELL_IMAGE_VERSION = "1.1";
     private final String POWERSHELL_BASE_IMAGE_VERSION = "1.0";
-    private final String JAVA_IMAGE_VERSION = "1.0";
+    private final String JAVA_IMAGE_VERSION = "1.1";
     private final String JAVA_BASE_IMAGE_VERSION = "1.0";
 
     private final Map<String, String> supportedRuntimes = new HashMap<>();
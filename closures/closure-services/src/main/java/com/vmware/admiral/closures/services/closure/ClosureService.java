@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import com.vmware.admiral.closures.drivers.DriverRegistry;
@@ -812,13 +813,29 @@ public class ClosureService<T extends TaskServiceDocument<E>, E extends Enum<E>>
         sendSelfPatch(closure);
 
         String token = getToken(op);
+        boolean[] submitted = { false };
+        Throwable[] rejection = { null };
         execDriver.executeClosure(closure, closureDesc, token, (error) -> {
+            if (error instanceof RejectedExecutionException && !submitted[0]) {
+                rejection[0] = error;
+                return;
+            }
             if (error != null) {
                 closure.state = TaskStage.FAILED;
                 closure.errorMsg = error.getMessage();
                 sendSelfPatch(closure);
             }
         });
+        submitted[0] = true;
+
+        if (rejection[0] != null) {
+            // the driver is overloaded, the closure is not leased and can be executed later
+            logWarning("Execution of closure %s rejected: %s", closure.documentSelfLink,
+                    rejection[0].getMessage());
+            op.setStatusCode(Operation.STATUS_CODE_UNAVAILABLE);
+            op.fail(rejection[0]);
+            return;
+        }
 
         this.setState(op, closure);
         op.setBody(closure).complete();
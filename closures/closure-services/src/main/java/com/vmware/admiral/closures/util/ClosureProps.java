@@ -83,6 +83,8 @@ public class ClosureProps {
     public static final String ENV_PROP_TASK_URI = "TASK_URI";
     public static final String ENV_PROP_TOKEN = "TOKEN";
     public static final String ENV_TRUST_CERTS = "TRUST_CERTS";
+    public static final String ENV_RUNNER_LEASE_URI = "RUNNER_LEASE_URI";
+    public static final String ENV_RUNNER_SECRET = "RUNNER_SECRET";
 
     // Custom properties
     public static final String CUSTOM_PROPERTY_PLACEMENT = "__closures_placement";
@@ -12,6 +12,7 @@
 package com.vmware.admiral.common.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -20,15 +21,19 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.service.common.MultiTenantDocument;
+import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Query;
 import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
 import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
 
 public class QueryUtilTest {
@@ -344,4 +349,19 @@ public class QueryUtilTest {
                 TLINK_U2
         );
     }
+
+    @Test
+    public void testAddSelectFieldsOption() {
+        QueryTask q = QueryUtil.buildQuery(MultiTenantDocument.class, false);
+        QueryUtil.addExpandOption(q);
+
+        QueryUtil.addSelectFieldsOption(q, "name", "name", "id");
+
+        assertTrue(q.querySpec.options.contains(QueryOption.EXPAND_SELECTED_FIELDS));
+        assertFalse(q.querySpec.options.contains(QueryOption.EXPAND_CONTENT));
+        assertEquals(Arrays.asList(ServiceDocument.FIELD_NAME_SELF_LINK, "name", "id"),
+                q.querySpec.selectTerms.stream()
+                        .map(t -> t.propertyName)
+                        .collect(Collectors.toList()));
+    }
 }
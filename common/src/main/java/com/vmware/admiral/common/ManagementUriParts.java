@@ -42,6 +42,7 @@ public interface ManagementUriParts {
 
     String UTIL = "/util";
     String LONG_URI_GET = UTIL + "/long-uri-get";
+    String SERVICE_CLIENT_STATS = UTIL + "/service-client-stats";
 
     String CERT_DISTRIBUTION_ADD_REGISTRY = CONFIG + "/cert-dist-add-reg";
     String CERT_DISTRIBUTION_ADD_HOST = CONFIG + "/certs-dist-add-host";
@@ -61,6 +62,7 @@ public interface ManagementUriParts {
 
     String RESOURCES = "/resources";
     String RESOURCE_GROUP_PLACEMENTS = RESOURCES + "/group-placements";
+    String RESOURCE_GROUP_PLACEMENT_ESCROW = RESOURCES + "/group-placement-escrow";
     String RESOURCE_NAME_PREFIXES = RESOURCES + "/name-prefixes";
     String DEPLOYMENT_POLICIES = RESOURCES + "/deployment-policies";
     String HOST_PORT_PROFILES = RESOURCES + "/host-port-profiles";
@@ -96,7 +98,9 @@ public interface ManagementUriParts {
 
     String CONTAINERS = RESOURCES + "/containers";
     String CONTAINER_STATS = RESOURCES + "/container-stats";
+    String CONTAINER_METRICS = RESOURCES + "/container-metrics";
     String CONTAINER_LOGS = RESOURCES + "/container-logs";
+    String CONTAINER_LOG_STREAM = RESOURCES + "/container-log-stream";
     String CONTAINER_SHELL = RESOURCES + "/container-shell";
     String CONTAINER_DESC = RESOURCES + "/container" + DESCRIPTION_SUFFIX;
     String COMPOSITE_DESC = RESOURCES + "/composite" + DESCRIPTION_SUFFIX;
@@ -109,6 +113,7 @@ public interface ManagementUriParts {
     String CLOSURES_DESC = RESOURCES + "/closure" + DESCRIPTION_SUFFIX;
     String CLOSURES_IMAGES = RESOURCES + "/closure-images";
     String CLOSURES_CONTAINER_DESC = CONTAINER_DESC + "/closure-container-desc";
+    String CLOSURES_RUNNER_POOL = RESOURCES + "/closure-runners";
 
     String CONTAINER_LOAD_BALANCERS = RESOURCES + "/container-load-balancers";
     String CONTAINER_LOAD_BALANCER_DESC = RESOURCES + "/container-load-balancer"
@@ -122,8 +127,10 @@ public interface ManagementUriParts {
     String HOST_VOLUME_LIST_DATA_COLLECTION = RESOURCES + "/host-volume-list-data-collection";
     String KUBERNETES_ENTITY_DATA_COLLECTION = RESOURCES
             + "/host-kubernetes-entity-data-collection";
+    String HOST_DATA_COLLECTION_COMPLETIONS = RESOURCES + "/host-data-collection-completions";
 
     String EVENT_LOG = RESOURCES + "/event-logs";
+    String EVENT_LOG_INGESTION = RESOURCES + "/event-log-ingestion";
     String NOTIFICATIONS = RESOURCES + "/notifications";
 
     String CONTAINER_NETWORKS = RESOURCES + "/container-networks";
@@ -200,6 +207,7 @@ public interface ManagementUriParts {
             + "/provision-composite-kubernetes-tasks";
     String REQUEST_PROVISION_PLACEMENT_TASKS = REQUEST + "/placement-tasks";
     String REQUEST_PROVISION_COMPUTE_PLACEMENT_TASKS = REQUEST + "/compute-placement-tasks";
+    String REQUEST_PLACEMENT_HOST_INDEX = REQUEST + "/placement-host-index";
     String REQUEST_PROVISION_NAME_PREFIXES_TASKS = REQUEST + "/resource-prefix-tasks";
     String REQUEST_PROVISION_SERVICE_LINKS_TASKS = REQUEST + "/service-link-processing-tasks";
     String REQUEST_PROVISION_EXPOSE_SERVICE_TASKS = REQUEST + "/expose-service-processing-tasks";
@@ -19,6 +19,7 @@ import java.util.logging.Level;
 
 import com.vmware.admiral.service.common.EventTopicService.EventTopicState;
 import com.vmware.admiral.service.common.ExtensibilitySubscriptionService.ExtensibilitySubscription;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.resources.ComputeService.LifecycleState;
 import com.vmware.xenon.common.LocalizableValidationException;
@@ -75,7 +76,19 @@ public class CommonContinuousQueries {
         /**
          * Query for all {@link ExtensibilitySubscription}
          */
-        EXTENSIBILITY_SUBSCRIPTIONS
+        EXTENSIBILITY_SUBSCRIPTIONS,
+
+        /**
+         * Query for all {@link ComputeState}s in the local index (including the ones owned by
+         * other nodes) with expanded content.
+         */
+        LOCAL_COMPUTES,
+
+        /**
+         * Query for all {@link ComputeDescription}s in the local index (including the ones owned
+         * by other nodes) with expanded content.
+         */
+        LOCAL_COMPUTE_DESCRIPTIONS
     }
 
     /**
@@ -148,6 +161,20 @@ public class CommonContinuousQueries {
                     .addOptions(EnumSet.of(QueryOption.CONTINUOUS, QueryOption.EXPAND_CONTENT))
                     .setQuery(extensibilitySubscriptionQuery).build();
             break;
+        case LOCAL_COMPUTES:
+            task = QueryTask.Builder.create()
+                    .addOptions(EnumSet.of(QueryOption.CONTINUOUS, QueryOption.EXPAND_CONTENT))
+                    .setQuery(Query.Builder.create().addKindFieldClause(ComputeState.class)
+                            .build())
+                    .build();
+            break;
+        case LOCAL_COMPUTE_DESCRIPTIONS:
+            task = QueryTask.Builder.create()
+                    .addOptions(EnumSet.of(QueryOption.CONTINUOUS, QueryOption.EXPAND_CONTENT))
+                    .setQuery(Query.Builder.create().addKindFieldClause(ComputeDescription.class)
+                            .build())
+                    .build();
+            break;
         default:
             throw new LocalizableValidationException("Unrecognized common query: " + queryId, "compute.quieries.unrecognized", queryId);
         }
@@ -23,6 +23,7 @@ import java.util.logging.Logger;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509KeyManager;
 
@@ -60,7 +61,25 @@ public class DelegatingX509KeyManager extends X509ExtendedKeyManager {
 
     @Override
     public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
-        throw new UnsupportedOperationException();
+        if (!(socket instanceof SSLSocket)) {
+            logger.info("Cannot choose client alias: not a SSL socket");
+            return null;
+        }
+
+        String alias = getAliasByRemoteCert(((SSLSocket) socket).getHandshakeSession());
+        if (alias != null) {
+            return alias;
+        }
+
+        for (X509KeyManager delegate : delegates.values()) {
+            alias = delegate.chooseClientAlias(keyType, issuers, socket);
+            if (alias != null) {
+                return alias;
+            }
+        }
+
+        logger.warning("Cannot choose client alias by CA: no delegate found");
+        return null;
     }
 
     @Override
@@ -121,7 +140,10 @@ public class DelegatingX509KeyManager extends X509ExtendedKeyManager {
             return null;
         }
 
-        SSLSession handshakeSession = engine.getHandshakeSession();
+        return getAliasByRemoteCert(engine.getHandshakeSession());
+    }
+
+    private String getAliasByRemoteCert(SSLSession handshakeSession) {
         if (handshakeSession == null) {
             logger.info("Cannot choose client alias: HandshakeSession is null");
             return null;
@@ -11,6 +11,7 @@
 
 package com.vmware.admiral.common.util;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -28,6 +29,7 @@ import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Query;
 import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm;
 import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
 
 public class QueryUtil {
@@ -202,6 +204,39 @@ public class QueryUtil {
         return addOption(queryTask, QueryOption.EXPAND_CONTENT);
     }
 
+    /**
+     * Adds the {@link QueryOption#EXPAND_SELECTED_FIELDS} option, so only the given fields of the
+     * matching documents are returned instead of the whole documents. The
+     * {@link ServiceDocument#documentSelfLink} is always selected. Replaces the
+     * {@link QueryOption#EXPAND_CONTENT} option if already added.
+     */
+    public static QueryTask addSelectFieldsOption(QueryTask queryTask, String... fieldNames) {
+        if (queryTask.querySpec.options != null) {
+            queryTask.querySpec.options.remove(QueryOption.EXPAND_CONTENT);
+        }
+        addOption(queryTask, QueryOption.EXPAND_SELECTED_FIELDS);
+
+        if (queryTask.querySpec.selectTerms == null) {
+            queryTask.querySpec.selectTerms = new ArrayList<>();
+        }
+        addSelectTerm(queryTask, ServiceDocument.FIELD_NAME_SELF_LINK);
+        for (String fieldName : fieldNames) {
+            addSelectTerm(queryTask, fieldName);
+        }
+        return queryTask;
+    }
+
+    private static void addSelectTerm(QueryTask queryTask, String fieldName) {
+        for (QueryTerm term : queryTask.querySpec.selectTerms) {
+            if (fieldName.equals(term.propertyName)) {
+                return;
+            }
+        }
+        QueryTerm term = new QueryTerm();
+        term.propertyName = fieldName;
+        queryTask.querySpec.selectTerms.add(term);
+    }
+
     public static QueryTask addCountOption(QueryTask queryTask) {
         return addOption(queryTask, QueryOption.COUNT);
     }
@@ -11,25 +11,342 @@
 
 package com.vmware.admiral.common.util;
 
+import java.net.Socket;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
 
 import com.vmware.photon.controller.model.security.util.CertificateUtil;
+import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceClient;
+import com.vmware.xenon.common.ServiceClient.ConnectionPoolMetrics;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.common.http.netty.NettyHttpServiceClient;
 
 /**
  * Factory for ServiceClient instances with support for providing custom SSLContext
- *
- * TODO cache SSLContext/client for a given sslTrust instead of recreating for every request
+ * <p>
+ * Besides creating clients owned by the caller, the factory keeps a registry of shared clients
+ * by {@link ClientProfile}, see {@link #acquireServiceClient(ClientProfile)}. A shared client
+ * and its connection pool, I/O threads and SSLContext are reused by all users of the same
+ * profile. The clients of profiles with the same trust and key material share the SSLContext
+ * and so its TLS session cache. A client which is no longer used is stopped after an idle
+ * timeout.
+ * <p>
+ * The profiles are compared by the identity of their trust and key managers, so the users of
+ * a {@link DelegatingX509KeyManager} get it from {@link #getKeyManager(String, TrustManager)}
+ * instead of creating their own, e.g. on every adapter restart.
  */
 public class ServiceClientFactory {
 
+    private static final Logger logger = Logger.getLogger(ServiceClientFactory.class.getName());
+
+    private static final long SHARED_CLIENT_IDLE_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.service.client.idle.timeout.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    public static final int DEFAULT_CONNECTION_LIMIT_PER_HOST = Integer.getInteger(
+            "com.vmware.admiral.service.client.connection.limit.per.host", 0);
+
+    // guarded by sharedClients
+    private static final Map<ClientProfile, SharedServiceClient> sharedClients = new HashMap<>();
+
+    // key managers by name and trust manager
+    private static final Map<List<Object>, DelegatingX509KeyManager> keyManagers =
+            new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService idleClientsExecutor = Executors
+            .newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, ServiceClientFactory.class.getSimpleName()
+                        + "-idle");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Settings of a shared ServiceClient. Profiles are equal when they have the same trust and
+     * key manager instances and equal settings. The name separates clients with the same
+     * settings but different use, e.g. long running requests which hold a connection.
+     */
+    public static class ClientProfile {
+        private final String name;
+        private final TrustManager trustManager;
+        private final KeyManager keyManager;
+        private URI httpProxy;
+        private int requestPayloadSizeLimit;
+        private int connectionLimitPerHost = DEFAULT_CONNECTION_LIMIT_PER_HOST;
+
+        private ClientProfile(String name, TrustManager trustManager, KeyManager keyManager) {
+            this.name = name;
+            this.trustManager = trustManager;
+            this.keyManager = keyManager;
+        }
+
+        public static ClientProfile create(String name, TrustManager trustManager,
+                KeyManager keyManager) {
+            return new ClientProfile(name, trustManager, keyManager);
+        }
+
+        public ClientProfile setHttpProxy(URI httpProxy) {
+            this.httpProxy = httpProxy;
+            return this;
+        }
+
+        public ClientProfile setRequestPayloadSizeLimit(int requestPayloadSizeLimit) {
+            this.requestPayloadSizeLimit = requestPayloadSizeLimit;
+            return this;
+        }
+
+        public ClientProfile setConnectionLimitPerHost(int connectionLimitPerHost) {
+            this.connectionLimitPerHost = connectionLimitPerHost;
+            return this;
+        }
+
+        private boolean hasSameMaterial(ClientProfile other) {
+            return trustManager == other.trustManager && keyManager == other.keyManager;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ClientProfile)) {
+                return false;
+            }
+            ClientProfile other = (ClientProfile) obj;
+            return hasSameMaterial(other)
+                    && Objects.equals(name, other.name)
+                    && Objects.equals(httpProxy, other.httpProxy)
+                    && requestPayloadSizeLimit == other.requestPayloadSizeLimit
+                    && connectionLimitPerHost == other.connectionLimitPerHost;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, System.identityHashCode(trustManager),
+                    System.identityHashCode(keyManager), httpProxy, requestPayloadSizeLimit,
+                    connectionLimitPerHost);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[proxy=%s, payloadLimit=%d, connectionLimit=%d]", name,
+                    httpProxy, requestPayloadSizeLimit, connectionLimitPerHost);
+        }
+    }
+
+    /**
+     * A ServiceClient shared by the users of a {@link ClientProfile}. Users send their requests
+     * through {@link #send(Operation)}, so pending requests are counted, and call
+     * {@link #release()} instead of stopping the client.
+     */
+    public static class SharedServiceClient {
+        private final ClientProfile profile;
+        private final ServiceClient serviceClient;
+        private final TlsMaterial tlsMaterial;
+        private final AtomicLong pendingRequests = new AtomicLong();
+        private final AtomicLong sentRequests = new AtomicLong();
+        private final AtomicLong failedRequests = new AtomicLong();
+
+        // guarded by sharedClients
+        private int references;
+        private long releasedMicros;
+
+        private SharedServiceClient(ClientProfile profile, ServiceClient serviceClient,
+                TlsMaterial tlsMaterial) {
+            this.profile = profile;
+            this.serviceClient = serviceClient;
+            this.tlsMaterial = tlsMaterial;
+        }
+
+        public void send(Operation op) {
+            pendingRequests.incrementAndGet();
+            sentRequests.incrementAndGet();
+            op.nestCompletion((o, e) -> {
+                pendingRequests.decrementAndGet();
+                if (e != null) {
+                    failedRequests.incrementAndGet();
+                    o.fail(e);
+                } else {
+                    o.complete();
+                }
+            });
+            serviceClient.send(op);
+        }
+
+        public void handleMaintenance(Operation post) {
+            serviceClient.handleMaintenance(post);
+        }
+
+        /**
+         * Returns the underlying client, requests sent directly to it are not counted.
+         */
+        public ServiceClient getServiceClient() {
+            return serviceClient;
+        }
+
+        public SSLContext getSSLContext() {
+            return tlsMaterial.sslContext;
+        }
+
+        public void release() {
+            releaseServiceClient(this);
+        }
+    }
+
+    /**
+     * Statistics of a shared ServiceClient.
+     */
+    public static class ServiceClientStats {
+        public String profile;
+        public int references;
+        public long pendingRequests;
+        public long sentRequests;
+        public long failedRequests;
+        /** Connections of the default connection tag, in use and available in the pool. */
+        public int inUseConnections;
+        public int availableConnections;
+        /** Requests waiting for a connection of the default connection tag. */
+        public int queuedRequests;
+        /**
+         * TLS sessions cached for resumption and full TLS handshakes done, shared by the clients
+         * with the same material. The handshakes are -1 if they are not counted, e.g. with the
+         * default trust manager.
+         */
+        public int tlsSessions;
+        public long tlsFullHandshakes;
+    }
+
+    /**
+     * SSLContext shared by the clients with the same trust and key material.
+     */
+    private static class TlsMaterial {
+        private final SSLContext sslContext;
+        // -1 if not counted
+        private final AtomicLong fullHandshakes;
+
+        private TlsMaterial(SSLContext sslContext, AtomicLong fullHandshakes) {
+            this.sslContext = sslContext;
+            this.fullHandshakes = fullHandshakes;
+        }
+    }
+
+    /**
+     * Counts the server certificate checks, which are done on full TLS handshakes only and not
+     * when a session is resumed.
+     */
+    private static class HandshakeCountingTrustManager implements X509TrustManager {
+        private final X509TrustManager delegate;
+        private final AtomicLong fullHandshakes;
+
+        private HandshakeCountingTrustManager(X509TrustManager delegate,
+                AtomicLong fullHandshakes) {
+            this.delegate = delegate;
+            this.fullHandshakes = fullHandshakes;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType)
+                throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+                throws CertificateException {
+            fullHandshakes.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+
+    /**
+     * {@link HandshakeCountingTrustManager} for extended trust managers, so the JSSE calls them
+     * with the socket or engine as before.
+     */
+    private static class ExtendedHandshakeCountingTrustManager extends X509ExtendedTrustManager {
+        private final X509ExtendedTrustManager delegate;
+        private final AtomicLong fullHandshakes;
+
+        private ExtendedHandshakeCountingTrustManager(X509ExtendedTrustManager delegate,
+                AtomicLong fullHandshakes) {
+            this.delegate = delegate;
+            this.fullHandshakes = fullHandshakes;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType)
+                throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+                throws CertificateException {
+            delegate.checkClientTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType,
+                SSLEngine engine) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+                throws CertificateException {
+            fullHandshakes.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+                throws CertificateException {
+            fullHandshakes.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType,
+                SSLEngine engine) throws CertificateException {
+            fullHandshakes.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+
     /**
      * Create a ServiceClient instance using the given TrustManager and KeyManager
      *
@@ -100,4 +417,161 @@ public class ServiceClientFactory {
             throw new RuntimeException("Failed to create ServiceClient", e);
         }
     }
+
+    /**
+     * Returns the shared ServiceClient of the given profile, creating it if there is none. The
+     * client must be released with {@link SharedServiceClient#release()} when no longer used.
+     *
+     * @param profile
+     * @return
+     */
+    public static SharedServiceClient acquireServiceClient(ClientProfile profile) {
+        synchronized (sharedClients) {
+            SharedServiceClient sharedClient = sharedClients.get(profile);
+            if (sharedClient == null) {
+                sharedClient = createSharedServiceClient(profile);
+                sharedClients.put(profile, sharedClient);
+                logger.fine(String.format("Created shared service client %s, clients: %d",
+                        profile, sharedClients.size()));
+            }
+            sharedClient.references++;
+            return sharedClient;
+        }
+    }
+
+    /**
+     * Returns the key manager with the given name for clients using the given trust manager. The
+     * key manager is created once, so the profiles of clients created again with it, e.g. by a
+     * restarted adapter, are equal and the running shared clients are reused.
+     *
+     * @param name
+     * @param trustManager
+     * @return
+     */
+    public static DelegatingX509KeyManager getKeyManager(String name, TrustManager trustManager) {
+        return keyManagers.computeIfAbsent(Arrays.asList(name, trustManager),
+                (k) -> new DelegatingX509KeyManager());
+    }
+
+    /**
+     * Returns the statistics of the shared ServiceClients.
+     *
+     * @return
+     */
+    public static List<ServiceClientStats> getServiceClientStats() {
+        List<ServiceClientStats> result = new ArrayList<>();
+        synchronized (sharedClients) {
+            for (SharedServiceClient sharedClient : sharedClients.values()) {
+                ServiceClientStats stats = new ServiceClientStats();
+                stats.profile = sharedClient.profile.toString();
+                stats.references = sharedClient.references;
+                stats.pendingRequests = sharedClient.pendingRequests.get();
+                stats.sentRequests = sharedClient.sentRequests.get();
+                stats.failedRequests = sharedClient.failedRequests.get();
+                ConnectionPoolMetrics poolMetrics = sharedClient.serviceClient
+                        .getConnectionPoolMetrics(ServiceClient.CONNECTION_TAG_DEFAULT);
+                if (poolMetrics != null) {
+                    stats.inUseConnections = poolMetrics.inUseConnectionCount;
+                    stats.availableConnections = poolMetrics.availableConnectionCount;
+                    stats.queuedRequests = poolMetrics.pendingRequestCount;
+                }
+                SSLSessionContext sessionContext = sharedClient.tlsMaterial.sslContext
+                        .getClientSessionContext();
+                stats.tlsSessions = sessionContext != null
+                        ? Collections.list(sessionContext.getIds()).size() : 0;
+                stats.tlsFullHandshakes = sharedClient.tlsMaterial.fullHandshakes.get();
+                result.add(stats);
+            }
+        }
+        return result;
+    }
+
+    private static SharedServiceClient createSharedServiceClient(ClientProfile profile) {
+        // reuse the SSLContext, and so the TLS sessions, of a client with the same material
+        TlsMaterial tlsMaterial = null;
+        for (SharedServiceClient sharedClient : sharedClients.values()) {
+            if (sharedClient.profile.hasSameMaterial(profile)) {
+                tlsMaterial = sharedClient.tlsMaterial;
+                break;
+            }
+        }
+        if (tlsMaterial == null) {
+            tlsMaterial = createTlsMaterial(profile);
+        }
+
+        ServiceClient serviceClient = createServiceClient(tlsMaterial.sslContext,
+                profile.requestPayloadSizeLimit);
+        if (profile.connectionLimitPerHost > 0) {
+            serviceClient.setConnectionLimitPerHost(profile.connectionLimitPerHost);
+        }
+        if (profile.httpProxy != null) {
+            if (!(serviceClient instanceof NettyHttpServiceClient)) {
+                serviceClient.stop();
+                throw new IllegalStateException(String.format(
+                        "Cannot set proxy, expecting NettyHttpServiceClient, actual: %s",
+                        serviceClient.getClass().getSimpleName()));
+            }
+            ((NettyHttpServiceClient) serviceClient).setHttpProxy(profile.httpProxy);
+        }
+        return new SharedServiceClient(profile, serviceClient, tlsMaterial);
+    }
+
+    private static TlsMaterial createTlsMaterial(ClientProfile profile) {
+        TrustManager trustManager = profile.trustManager;
+        AtomicLong fullHandshakes = new AtomicLong();
+        if (trustManager instanceof X509ExtendedTrustManager) {
+            trustManager = new ExtendedHandshakeCountingTrustManager(
+                    (X509ExtendedTrustManager) trustManager, fullHandshakes);
+        } else if (trustManager instanceof X509TrustManager) {
+            trustManager = new HandshakeCountingTrustManager((X509TrustManager) trustManager,
+                    fullHandshakes);
+        } else {
+            fullHandshakes.set(-1);
+        }
+        return new TlsMaterial(CertificateUtil.createSSLContext(trustManager,
+                profile.keyManager), fullHandshakes);
+    }
+
+    private static void releaseServiceClient(SharedServiceClient sharedClient) {
+        synchronized (sharedClients) {
+            if (sharedClient.references <= 0) {
+                return;
+            }
+            if (--sharedClient.references == 0) {
+                sharedClient.releasedMicros = Utils.getNowMicrosUtc();
+                idleClientsExecutor.schedule(
+                        () -> stopUnusedServiceClients(SHARED_CLIENT_IDLE_TIMEOUT_MICROS),
+                        SHARED_CLIENT_IDLE_TIMEOUT_MICROS, TimeUnit.MICROSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Stops the shared clients which have not been used for the given time.
+     */
+    static void stopUnusedServiceClients(long idleMicros) {
+        List<SharedServiceClient> unused = new ArrayList<>();
+        synchronized (sharedClients) {
+            long now = Utils.getNowMicrosUtc();
+            sharedClients.values().removeIf(sharedClient -> {
+                if (sharedClient.references == 0
+                        && now - sharedClient.releasedMicros >= idleMicros) {
+                    unused.add(sharedClient);
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        for (SharedServiceClient sharedClient : unused) {
+            try {
+                sharedClient.serviceClient.stop();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, String.format("Failed to stop service client %s: %s",
+                        sharedClient.profile, e.getMessage()), e);
+            }
+            logger.fine(String.format("Stopped unused service client %s",
+                    sharedClient.profile));
+        }
+    }
 }
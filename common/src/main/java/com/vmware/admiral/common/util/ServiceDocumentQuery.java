@@ -11,10 +11,12 @@
 
 package com.vmware.admiral.common.util;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
@@ -174,6 +176,59 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
      */
     public void query(QueryTask q,
             Consumer<ServiceDocumentQueryElementResult<T>> completionHandler) {
+        startQuery(q, qrt -> processQuery(qrt, completionHandler),
+                e -> completionHandler.accept(error(e)));
+    }
+
+    /**
+     * Streaming variant of {@link #query(QueryTask, Consumer)} delivering the results page by
+     * page. While the page handler processes a page, the next page is already being fetched, but
+     * at most one page is fetched ahead: the following page is delivered only after
+     * {@link ServiceDocumentQueryPage#requestNext()} is called for the current one. Not calling it
+     * stops the query.
+     *
+     * The documents of expanded queries are deserialized lazily, on the first
+     * {@link ServiceDocumentQueryElementResult#getResult()} call. Callers needing only a few fields
+     * could use {@link ServiceDocumentQueryElementResult#getResultAs(Class)} with a lightweight
+     * type or {@link ServiceDocumentQueryElementResult#getRawResult()} instead.
+     *
+     * @param q
+     *            Fully defined {@link QueryTask}
+     * @param pageHandler
+     *            The handler to be called for every page. The last page is marked with
+     *            {@link ServiceDocumentQueryPage#isLastPage()}. In case of error a last page with
+     *            the exception is delivered.
+     */
+    public void queryPages(QueryTask q, Consumer<ServiceDocumentQueryPage<T>> pageHandler) {
+        AssertUtil.assertNotNull(pageHandler, "pageHandler");
+        startQuery(q, qrt -> waitForQuery(qrt,
+                rsp -> new PageStream(pageHandler).start(rsp),
+                e -> pageHandler.accept(ServiceDocumentQueryPage.error(e))),
+                e -> pageHandler.accept(ServiceDocumentQueryPage.error(e)));
+    }
+
+    /**
+     * Projection variant of {@link #query(QueryTask, Consumer)}. Only the given fields of the
+     * matching documents are retrieved, so the results are documents of the query type with only
+     * these fields (and {@link ServiceDocument#documentSelfLink}) set.
+     *
+     * @param q
+     *            Fully defined {@link QueryTask}
+     * @param fieldNames
+     *            The names of the fields to retrieve.
+     * @param completionHandler
+     *            The completion handler to be called. Either the list of projected ServiceDocuments
+     *            will be passed as parameter or exception in case of errors.
+     */
+    public void queryFields(QueryTask q, Collection<String> fieldNames,
+            Consumer<ServiceDocumentQueryElementResult<T>> completionHandler) {
+        AssertUtil.assertNotEmpty(fieldNames, "fieldNames");
+        QueryUtil.addSelectFieldsOption(q, fieldNames.toArray(new String[fieldNames.size()]));
+        query(q, completionHandler);
+    }
+
+    private void startQuery(QueryTask q, Consumer<QueryTask> onCreated,
+            Consumer<Throwable> onError) {
         if (q.documentExpirationTimeMicros == 0) {
             q.documentExpirationTimeMicros = getDefaultQueryExpiration();
         }
@@ -188,24 +243,29 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
                 .setReferer(host.getUri())
                 .setCompletion((o, e) -> {
                     if (e != null) {
-                        completionHandler.accept(error(e));
+                        onError.accept(e);
                         return;
                     }
                     QueryTask qrt = o.getBody(QueryTask.class);
-                    processQuery(qrt, completionHandler);
+                    onCreated.accept(qrt);
                 }));
     }
 
     private void processQuery(QueryTask q,
             Consumer<ServiceDocumentQueryElementResult<T>> handler) {
+        waitForQuery(q, rsp -> processQueryResult(rsp, handler),
+                e -> handler.accept(error(e)));
+    }
+
+    private void waitForQuery(QueryTask q, Consumer<QueryTask> onFinished,
+            Consumer<Throwable> onError) {
         if (TaskState.isFailed(q.taskInfo)) {
-            handler.accept(error(new IllegalStateException(
-                    q.taskInfo.failure.message)));
+            onError.accept(new IllegalStateException(q.taskInfo.failure.message));
             return;
         }
 
         if (q.taskInfo.isDirect || TaskState.isFinished(q.taskInfo)) {
-            processQueryResult(q, handler);
+            onFinished.accept(q);
             return;
         }
 
@@ -214,7 +274,7 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
                 .setReferer(host.getUri())
                 .setCompletion((o, e) -> {
                     if (e != null) {
-                        handler.accept(error(e));
+                        onError.accept(e);
                         return;
                     }
 
@@ -224,12 +284,12 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
                         host.log(Level.FINE,
                                 "Resource query not complete yet, retrying...");
                         host.schedule(() -> {
-                            processQuery(rsp, handler);
+                            waitForQuery(rsp, onFinished, onError);
                         }, QueryUtil.QUERY_RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
                         return;
                     }
 
-                    processQueryResult(rsp, handler);
+                    onFinished.accept(rsp);
                 }));
     }
 
@@ -318,9 +378,116 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
         }
     }
 
+    /**
+     * Delivers the pages of a finished query, keeping at most one page fetched ahead of the page
+     * handler.
+     */
+    private class PageStream {
+        private final Consumer<ServiceDocumentQueryPage<T>> pageHandler;
+        private ServiceDocumentQueryPage<T> fetchedPage;
+        private boolean nextPageRequested;
+
+        PageStream(Consumer<ServiceDocumentQueryPage<T>> pageHandler) {
+            this.pageHandler = pageHandler;
+        }
+
+        void start(QueryTask rsp) {
+            try {
+                if (!isPaginatedQuery(rsp)) {
+                    deliver(toPage(rsp, false));
+                    return;
+                }
+                if (rsp.results.nextPageLink == null) {
+                    deliver(new ServiceDocumentQueryPage<>());
+                    return;
+                }
+                nextPageRequested = true;
+                fetch(rsp.results.nextPageLink);
+            } catch (Throwable ex) {
+                pageHandler.accept(ServiceDocumentQueryPage.error(ex));
+            }
+        }
+
+        private void fetch(String pageLink) {
+            host.sendRequest(Operation
+                    .createGet(UriUtils.buildUri(host, pageLink))
+                    .setReferer(host.getUri())
+                    .setCompletion((o, e) -> {
+                        ServiceDocumentQueryPage<T> page;
+                        if (e != null) {
+                            page = ServiceDocumentQueryPage.error(e);
+                        } else {
+                            try {
+                                page = toPage(o.getBody(QueryTask.class), true);
+                            } catch (Throwable ex) {
+                                page = ServiceDocumentQueryPage.error(ex);
+                            }
+                        }
+                        onFetched(page);
+                    }));
+        }
+
+        private void onFetched(ServiceDocumentQueryPage<T> page) {
+            synchronized (this) {
+                if (!nextPageRequested) {
+                    // keep the page until the handler is ready for it
+                    fetchedPage = page;
+                    return;
+                }
+                nextPageRequested = false;
+            }
+            deliver(page);
+        }
+
+        private void requestNext() {
+            ServiceDocumentQueryPage<T> page;
+            synchronized (this) {
+                page = fetchedPage;
+                fetchedPage = null;
+                nextPageRequested = page == null;
+            }
+            if (page != null) {
+                deliver(page);
+            }
+        }
+
+        private void deliver(ServiceDocumentQueryPage<T> page) {
+            if (!page.isLastPage()) {
+                page.nextPageRequest = this::requestNext;
+                // prefetch the next page while the current one is processed
+                fetch(page.nextPageLink);
+            }
+            pageHandler.accept(page);
+        }
+
+        private ServiceDocumentQueryPage<T> toPage(QueryTask rsp, boolean paginated) {
+            ServiceDocumentQueryPage<T> page = new ServiceDocumentQueryPage<>();
+            List<String> links = rsp.results.documentLinks;
+            if (isCountQuery(rsp)) {
+                page.results.add(countResult(rsp.results.documentCount));
+            } else if (links != null) {
+                boolean expand = isExpandQuery(rsp) && rsp.results.documents != null;
+                for (String link : links) {
+                    page.results.add(expand
+                            ? lazyResult(link, rsp.results.documents.get(link), links.size(), type)
+                            : resultLink(link, links.size()));
+                }
+            }
+            page.nextPageLink = paginated ? rsp.results.nextPageLink : null;
+            return page;
+        }
+    }
+
+    private boolean isPaginatedQuery(QueryTask q) {
+        return !q.querySpec.options.contains(QueryOption.TOP_RESULTS)
+                && q.querySpec.resultLimit != null
+                && q.querySpec.resultLimit != Integer.MAX_VALUE;
+    }
+
     private boolean isExpandQuery(QueryTask q) {
         return q.querySpec.options != null
-                && q.querySpec.options.contains(QueryOption.EXPAND_CONTENT);
+                && (q.querySpec.options.contains(QueryOption.EXPAND_CONTENT)
+                        || q.querySpec.options.contains(QueryOption.EXPAND_SELECTED_FIELDS));
     }
 
     private boolean isCountQuery(QueryTask q) {
@@ -372,6 +539,20 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
         return r;
     }
 
+    /**
+     * Creates a result which deserializes the document only when it is requested.
+     */
+    public static <S extends ServiceDocument> ServiceDocumentQueryElementResult<S> lazyResult(
+            String selfLink, Object json, long count, Class<S> type) {
+
+        ServiceDocumentQueryElementResult<S> r = new ServiceDocumentQueryElementResult<>();
+        r.rawResult = json;
+        r.type = type;
+        r.documentSelfLink = selfLink;
+        r.count = count;
+        return r;
+    }
+
     public static <S extends ServiceDocument> ServiceDocumentQueryElementResult<S> resultLink(
             String selfLink, long count) {
 
@@ -396,6 +577,7 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
         private Throwable exception;
         private T result;
         private Object rawResult;
+        private Class<T> type;
         private String documentSelfLink;
         private long count;
 
@@ -412,9 +594,23 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
         }
 
         public T getResult() {
+            if (result == null && rawResult != null && type != null) {
+                result = Utils.fromJson(rawResult, type);
+            }
             return result;
         }
 
+        /**
+         * Deserializes the document to the given type, e.g. a lightweight class declaring only
+         * the needed fields.
+         */
+        public <S> S getResultAs(Class<S> resultType) {
+            if (rawResult != null) {
+                return Utils.fromJson(rawResult, resultType);
+            }
+            return result == null ? null : Utils.fromJson(Utils.toJson(result), resultType);
+        }
+
         public Object getRawResult() {
             return rawResult;
         }
@@ -435,4 +631,46 @@ public class ServiceDocumentQuery<T extends ServiceDocument> {
         }
     }
 
+    /**
+     * A page of results delivered by {@link ServiceDocumentQuery#queryPages(QueryTask, Consumer)}.
+     */
+    public static class ServiceDocumentQueryPage<T extends ServiceDocument> {
+        private Throwable exception;
+        private final List<ServiceDocumentQueryElementResult<T>> results = new ArrayList<>();
+        private String nextPageLink;
+        private Runnable nextPageRequest;
+        private final AtomicBoolean nextPageRequested = new AtomicBoolean();
+
+        static <S extends ServiceDocument> ServiceDocumentQueryPage<S> error(Throwable exception) {
+            ServiceDocumentQueryPage<S> page = new ServiceDocumentQueryPage<>();
+            page.exception = exception;
+            return page;
+        }
+
+        public boolean hasException() {
+            return exception != null;
+        }
+
+        public Throwable getException() {
+            return exception;
+        }
+
+        public List<ServiceDocumentQueryElementResult<T>> getResults() {
+            return results;
+        }
+
+        public boolean isLastPage() {
+            return exception != null || nextPageLink == null;
+        }
+
+        /**
+         * Requests the delivery of the next page. Subsequent calls for the same page are ignored.
+         */
+        public void requestNext() {
+            if (nextPageRequest != null && nextPageRequested.compareAndSet(false, true)) {
+                nextPageRequest.run();
+            }
+        }
+    }
+
 }
@@ -16,6 +16,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
+import com.vmware.admiral.log.EventLogIngestionService;
 import com.vmware.admiral.log.EventLogService;
 import com.vmware.admiral.service.common.ClusterMonitoringService;
 import com.vmware.admiral.service.common.CommonInitialBootService;
@@ -32,6 +33,7 @@ import com.vmware.admiral.service.common.NodeMigrationService;
 import com.vmware.admiral.service.common.RegistryService;
 import com.vmware.admiral.service.common.ResourceNamePrefixService;
 import com.vmware.admiral.service.common.ReverseProxyService;
+import com.vmware.admiral.service.common.ServiceClientStatsService;
 import com.vmware.admiral.service.common.SslTrustCertificateFactoryService;
 import com.vmware.admiral.service.common.SslTrustImportService;
 import com.vmware.admiral.service.common.mock.MockHbrApiProxyService;
@@ -57,7 +59,9 @@ public class HostInitCommonServiceConfig extends HostInitServiceHelper {
             CommonInitialBootService.class,
             ReverseProxyService.class,
             ExtensibilitySubscriptionFactoryService.class,
-            LongURIGetService.class
+            LongURIGetService.class,
+            EventLogIngestionService.class,
+            ServiceClientStatsService.class
     };
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.log;
+
+import static com.vmware.admiral.common.util.AssertUtil.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.log.EventLogService.EventLogState;
+import com.vmware.admiral.service.common.MultiTenantDocument;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+/**
+ * Write-behind ingestion of event logs for sources which may produce event storms, like a
+ * flapping host or container. The events are buffered in memory and written to the
+ * {@link EventLogService} in batches. Identical events within a deduplication window are written
+ * as a single event log with an occurrence counter. The number of event logs per tenant is capped
+ * by deleting the oldest ones.
+ * <p>
+ * A POST is completed with the event log as it will be written, before it is actually written.
+ */
+public class EventLogIngestionService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.EVENT_LOG_INGESTION;
+
+    private static final long FLUSH_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.log.eventlog.ingestion.flush.interval.micros",
+            TimeUnit.SECONDS.toMicros(2));
+    private static final long DEDUPLICATION_WINDOW_MICROS = Long.getLong(
+            "com.vmware.admiral.log.eventlog.ingestion.deduplication.window.micros",
+            TimeUnit.MINUTES.toMicros(5));
+    private static final int BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.log.eventlog.ingestion.batch.size", 100);
+    private static final int MAX_BUFFERED_EVENTS = Integer.getInteger(
+            "com.vmware.admiral.log.eventlog.ingestion.max.buffered", 10000);
+    private static final int MAX_EVENT_LOGS_PER_TENANT = Integer.getInteger(
+            "com.vmware.admiral.log.eventlog.max.per.tenant", 1000);
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private static class BufferedEvent {
+        final EventLogState state;
+        final String tenantKey;
+        final long windowEndMicros;
+        long occurrences;
+        long writingOccurrences;
+        long writtenOccurrences;
+        boolean created;
+        boolean writing;
+        int failedAttempts;
+
+        BufferedEvent(EventLogState state, String tenantKey, long windowEndMicros) {
+            this.state = state;
+            this.tenantKey = tenantKey;
+            this.windowEndMicros = windowEndMicros;
+        }
+    }
+
+    // guarded by this
+    private final Map<String, BufferedEvent> events = new HashMap<>();
+    private final Set<BufferedEvent> pendingEvents = new LinkedHashSet<>();
+
+    // approximate number of event logs per tenant, corrected on each trim
+    private final Map<String, Long> eventLogsPerTenant = new ConcurrentHashMap<>();
+    private final Set<String> trimmedTenants = ConcurrentHashMap.newKeySet();
+
+    public EventLogIngestionService() {
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(FLUSH_INTERVAL_MICROS);
+    }
+
+    @Override
+    public void handlePost(Operation post) {
+        if (!post.hasBody()) {
+            post.fail(new IllegalArgumentException("empty body"));
+            return;
+        }
+
+        EventLogState event = post.getBody(EventLogState.class);
+        try {
+            assertNotNull(event.description, "description");
+            assertNotNull(event.resourceType, "resourceType");
+            assertNotNull(event.eventLogType, "eventLogType");
+        } catch (Throwable e) {
+            post.fail(e);
+            return;
+        }
+
+        long now = Utils.getNowMicrosUtc();
+        String key = getDeduplicationKey(event);
+        BufferedEvent buffered;
+        boolean flush;
+        synchronized (this) {
+            buffered = events.get(key);
+            if (buffered == null || buffered.windowEndMicros < now) {
+                if (events.size() >= MAX_BUFFERED_EVENTS) {
+                    removeExpired(now);
+                }
+                if (events.size() < MAX_BUFFERED_EVENTS) {
+                    event.documentSelfLink = UriUtils.buildUriPath(EventLogService.FACTORY_LINK,
+                            UUID.randomUUID().toString());
+                    buffered = new BufferedEvent(event, getTenantKey(event.tenantLinks),
+                            now + DEDUPLICATION_WINDOW_MICROS);
+                    events.put(key, buffered);
+                } else {
+                    buffered = null;
+                }
+            }
+            if (buffered != null) {
+                buffered.occurrences++;
+                pendingEvents.add(buffered);
+            }
+            flush = pendingEvents.size() >= BATCH_SIZE;
+        }
+
+        if (buffered == null) {
+            logWarning("Too many buffered event logs, writing event log directly");
+            sendRequest(Operation.createPost(this, EventLogService.FACTORY_LINK)
+                    .setBodyNoCloning(event)
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            post.fail(e);
+                            return;
+                        }
+                        post.setBodyNoCloning(o.getBody(EventLogState.class)).complete();
+                    }));
+            return;
+        }
+
+        post.setStatusCode(Operation.STATUS_CODE_ACCEPTED)
+                .setBody(buffered.state)
+                .complete();
+        if (flush) {
+            flush();
+        }
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        flush();
+        post.complete();
+    }
+
+    @Override
+    public void handleStop(Operation delete) {
+        flush();
+        super.handleStop(delete);
+    }
+
+    private void flush() {
+        List<BufferedEvent> batch = new ArrayList<>();
+        List<Operation> writes = new ArrayList<>();
+        synchronized (this) {
+            removeExpired(Utils.getNowMicrosUtc());
+            Iterator<BufferedEvent> it = pendingEvents.iterator();
+            while (it.hasNext()) {
+                BufferedEvent buffered = it.next();
+                if (buffered.writing) {
+                    // written again once the current write completes
+                    continue;
+                }
+                it.remove();
+                buffered.writing = true;
+                batch.add(buffered);
+                writes.add(createWrite(buffered));
+            }
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        OperationJoin.create(writes)
+                .setCompletion((ops, failures) -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        long id = writes.get(i).getId();
+                        onWriteCompleted(batch.get(i),
+                                failures != null ? failures.get(id) : null);
+                    }
+                })
+                .sendWith(this);
+    }
+
+    // guarded by this
+    private Operation createWrite(BufferedEvent buffered) {
+        EventLogState body = buffered.created ? new EventLogState()
+                : Utils.clone(buffered.state);
+        body.occurrences = buffered.occurrences;
+        buffered.writingOccurrences = buffered.occurrences;
+
+        return buffered.created
+                ? Operation.createPatch(this, buffered.state.documentSelfLink).setBody(body)
+                : Operation.createPost(this, EventLogService.FACTORY_LINK).setBody(body);
+    }
+
+    private void onWriteCompleted(BufferedEvent buffered, Throwable failure) {
+        boolean created = false;
+        synchronized (this) {
+            buffered.writing = false;
+            if (failure != null) {
+                if (++buffered.failedAttempts < MAX_WRITE_ATTEMPTS) {
+                    pendingEvents.add(buffered);
+                }
+            } else {
+                created = !buffered.created;
+                buffered.created = true;
+                buffered.failedAttempts = 0;
+                buffered.writtenOccurrences = buffered.writingOccurrences;
+                if (buffered.writtenOccurrences < buffered.occurrences) {
+                    pendingEvents.add(buffered);
+                }
+            }
+        }
+
+        if (failure != null) {
+            logWarning("Failed to write event log %s: %s", buffered.state.documentSelfLink,
+                    Utils.toString(failure));
+        } else if (created && buffered.tenantKey != null) {
+            long count = eventLogsPerTenant.merge(buffered.tenantKey, 1L, Long::sum);
+            if (count > MAX_EVENT_LOGS_PER_TENANT && trimmedTenants.add(buffered.tenantKey)) {
+                trimTenant(buffered.tenantKey);
+            }
+        }
+    }
+
+    /**
+     * Deletes the oldest event logs of a tenant down to 90% of the cap, so that the tenant is not
+     * trimmed again on each new event log.
+     */
+    private void trimTenant(String tenantKey) {
+        List<String> tenantLinks = tenantKey.isEmpty() ? null
+                : Collections.singletonList(tenantKey);
+        QueryTask q = QueryUtil.buildQuery(EventLogState.class, false,
+                QueryUtil.addTenantClause(tenantLinks));
+        QueryUtil.addExpandOption(q);
+
+        List<EventLogState> eventLogs = new ArrayList<>();
+        new ServiceDocumentQuery<>(getHost(), EventLogState.class).query(q, (r) -> {
+            if (r.hasException()) {
+                logWarning("Failed to query event logs of %s: %s", tenantKey,
+                        Utils.toString(r.getException()));
+                trimmedTenants.remove(tenantKey);
+            } else if (r.hasResult()) {
+                eventLogs.add(r.getResult());
+            } else {
+                int keep = MAX_EVENT_LOGS_PER_TENANT * 9 / 10;
+                int toDelete = eventLogs.size() > MAX_EVENT_LOGS_PER_TENANT
+                        ? eventLogs.size() - keep : 0;
+                eventLogsPerTenant.put(tenantKey, (long) eventLogs.size() - toDelete);
+                trimmedTenants.remove(tenantKey);
+                if (toDelete == 0) {
+                    return;
+                }
+
+                logInfo("Deleting %d event logs of %s over the limit of %d", toDelete,
+                        tenantKey.isEmpty() ? "global scope" : tenantKey,
+                        MAX_EVENT_LOGS_PER_TENANT);
+                eventLogs.sort(Comparator.comparingLong((s) -> s.documentUpdateTimeMicros));
+                eventLogs.subList(0, toDelete).forEach((s) -> sendRequest(Operation
+                        .createDelete(this, s.documentSelfLink)
+                        .setCompletion((o, e) -> {
+                            if (e != null) {
+                                logFine("Failed to delete event log %s: %s", s.documentSelfLink,
+                                        Utils.toString(e));
+                            }
+                        })));
+            }
+        });
+    }
+
+    // guarded by this
+    private void removeExpired(long now) {
+        events.values().removeIf((buffered) -> buffered.windowEndMicros < now);
+    }
+
+    private static String getDeduplicationKey(EventLogState event) {
+        return String.join("\n",
+                event.tenantLinks != null ? String.join(",", event.tenantLinks) : "",
+                event.resourceType,
+                event.eventLogType.name(),
+                event.description,
+                event.customProperties != null
+                        ? new TreeMap<>(event.customProperties).toString() : "");
+    }
+
+    /**
+     * Returns the tenant or project of the event log, an empty string for a global event log and
+     * {@code null} for an event log of a group or user only, which is not capped.
+     */
+    private static String getTenantKey(List<String> tenantLinks) {
+        if (tenantLinks == null || tenantLinks.isEmpty()) {
+            return "";
+        }
+        for (String tenantLink : tenantLinks) {
+            if ((tenantLink.startsWith(MultiTenantDocument.TENANTS_PREFIX)
+                    || tenantLink.startsWith(MultiTenantDocument.PROJECTS_IDENTIFIER))
+                    && !tenantLink.contains(MultiTenantDocument.GROUP_IDENTIFIER)) {
+                return tenantLink;
+            }
+        }
+        return null;
+    }
+}
@@ -76,6 +76,11 @@ public class EventLogService extends StatefulService {
         @Documentation(description = "Additional data like operation request/response body, Request IP, etc.")
         @UsageOption(option = PropertyUsageOption.OPTIONAL)
         public Map<String, String> customProperties;
+
+        /** Number of identical events merged in this event log. */
+        @Documentation(description = "Number of identical events merged in this event log.")
+        @UsageOption(option = PropertyUsageOption.OPTIONAL)
+        public Long occurrences;
     }
 
     public EventLogService() {
@@ -105,6 +110,20 @@ public class EventLogService extends StatefulService {
         }
     }
 
+    /**
+     * Only the number of occurrences of an event log can be updated and it only grows.
+     */
+    @Override
+    public void handlePatch(Operation patch) {
+        EventLogState currentState = getState(patch);
+        EventLogState patchBody = patch.getBody(EventLogState.class);
+        if (patchBody.occurrences != null && (currentState.occurrences == null
+                || patchBody.occurrences > currentState.occurrences)) {
+            currentState.occurrences = patchBody.occurrences;
+        }
+        patch.setBody(currentState).complete();
+    }
+
     @Override
     public void handlePut(Operation put) {
         Operation.failActionNotSupported(put);
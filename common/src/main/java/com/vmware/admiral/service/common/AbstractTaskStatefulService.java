@@ -412,37 +412,50 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
 
     protected void updateRequestTracker(T state, int retryCount) {
         if (state != null && state.requestTrackerLink != null) {
-            sendRequest(Operation
-                    .createPatch(this, state.requestTrackerLink)
-                    .setBody(fromTask(state))
-                    .setCompletion((o, ex) -> {
-                        if (ex != null) {
-                            // log but don't fail the task
-                            if (ex instanceof CancellationException) {
-                                logFine("CancellationException: Failed to update request tracker:"
-                                        + " %s", state.requestTrackerLink);
-                                // retry only the finished and failed updates. The others are not so
-                                // important
-                            } else if (TaskStage.FINISHED.name()
-                                    .equals(state.taskInfo.stage.name())
-                                    || TaskStage.FAILED.name().equals(state.taskInfo.stage.name())
-                                    && retryCount > 0) {
-                                getHost().schedule(
-                                        () -> updateRequestTracker(state, retryCount - 1),
-                                        QueryUtil.QUERY_RETRY_INTERVAL_MILLIS,
-                                        TimeUnit.MILLISECONDS);
-                            } else {
-                                logWarning("Failed to update request tracker: %s. Error: %s",
-                                        state.requestTrackerLink, Utils.toString(ex));
-                            }
-                        }
-                    }));
-
+            if (!RequestTrackerUpdateAggregator.isEnabled()) {
+                sendRequestTrackerUpdate(state, retryCount);
+            } else if (state.taskInfo == null
+                    || state.taskInfo.stage.ordinal() > TaskStage.STARTED.ordinal()) {
+                // the final update is not delayed but must not be overridden by pending ones
+                RequestTrackerUpdateAggregator.flush(this, state.requestTrackerLink,
+                        () -> sendRequestTrackerUpdate(state, retryCount));
+            } else {
+                RequestTrackerUpdateAggregator.enqueue(this, state.requestTrackerLink,
+                        fromTask(state));
+            }
         } else if (state != null && state.documentSelfLink != null) {
             logFine("Task doesn't have a requestTrackerLink set: %s ", state.documentSelfLink);
         }
     }
 
+    private void sendRequestTrackerUpdate(T state, int retryCount) {
+        sendRequest(Operation
+                .createPatch(this, state.requestTrackerLink)
+                .setBody(fromTask(state))
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        // log but don't fail the task
+                        if (ex instanceof CancellationException) {
+                            logFine("CancellationException: Failed to update request tracker:"
+                                    + " %s", state.requestTrackerLink);
+                            // retry only the finished and failed updates. The others are not so
+                            // important
+                        } else if (TaskStage.FINISHED.name()
+                                .equals(state.taskInfo.stage.name())
+                                || TaskStage.FAILED.name().equals(state.taskInfo.stage.name())
+                                && retryCount > 0) {
+                            getHost().schedule(
+                                    () -> updateRequestTracker(state, retryCount - 1),
+                                    QueryUtil.QUERY_RETRY_INTERVAL_MILLIS,
+                                    TimeUnit.MILLISECONDS);
+                        } else {
+                            logWarning("Failed to update request tracker: %s. Error: %s",
+                                    state.requestTrackerLink, Utils.toString(ex));
+                        }
+                    }
+                }));
+    }
+
     protected void handleStagePatch(T state) {
         if (getInstance().shouldFail(state.taskSubStage)) {
             failTask("Fail task in stage [" + state.taskSubStage
@@ -610,6 +623,15 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
         CounterSubTaskService.createSubTask(this, subTaskInitState, callbackFunction);
     }
 
+    /**
+     * Whether the counter sub tasks of this task should track the completions in memory and
+     * persist only checkpoints. By default enabled for the task types listed in the
+     * {@link CounterSubTaskService#IN_MEMORY_TASK_TYPES_PROPERTY} system property.
+     */
+    protected boolean useInMemoryCounter() {
+        return CounterSubTaskService.isInMemoryModeEnabled(getClass());
+    }
+
     protected void createCounterSubTaskCallback(T state, long count, boolean external,
             Consumer<ServiceTaskCallback> callbackFunction) {
         createCounterSubTaskCallback(state, count, external, DefaultSubStage.COMPLETED,
@@ -13,7 +13,11 @@ package com.vmware.admiral.service.common;
 
 import static com.vmware.admiral.common.util.PropertyUtils.mergeCustomProperties;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
 
@@ -33,10 +37,27 @@ import com.vmware.xenon.common.Utils;
  * Task tracking the progress of parallel progressing services/tasks. When all services complete the
  * operation issues a PATCH to original service with the taskInfo.stage set to FINISHED, or if the
  * operation fails, set to FAILED
+ * <p>
+ * In the in-memory mode the completions are tracked only by the owner node and the document is
+ * updated every {@link #CHECKPOINT_INTERVAL} completions. The completions since the last
+ * checkpoint are acknowledged but not persisted, so when they are lost because the owner has
+ * changed or restarted, the counter is failed instead of waiting for completions that will never
+ * come.
  */
 public class CounterSubTaskService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.COUNTER_SUB_TASKS;
 
+    /** Comma separated simple class names of the task services using the in-memory mode. */
+    public static final String IN_MEMORY_TASK_TYPES_PROPERTY =
+            "com.vmware.admiral.service.counter.in.memory.task.types";
+
+    public static final long CHECKPOINT_INTERVAL = Long.getLong(
+            "com.vmware.admiral.service.counter.in.memory.checkpoint.interval", 10);
+
+    private static final Set<String> IN_MEMORY_TASK_TYPES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(System.getProperty(IN_MEMORY_TASK_TYPES_PROPERTY, "")
+                    .split("\\s*,\\s*"))));
+
     public static class CounterSubTaskState extends ServiceDocument {
         public TaskState taskInfo = new TaskState();
         public long completionsRemaining = 1;
@@ -52,6 +73,12 @@ public class CounterSubTaskService extends StatefulService {
         /** (Optional) Custom properties */
         public volatile Map<String, String> customProperties;
 
+        /** Whether to track the completions in memory and persist only checkpoints. */
+        public boolean inMemory;
+
+        /** The id of the node tracking the completions in memory. */
+        public String inMemoryOwnerId;
+
         protected ServiceTaskCallbackResponse getFinishedResponse() {
             return serviceTaskCallback.getFinishedResponse();
         }
@@ -66,6 +93,10 @@ public class CounterSubTaskService extends StatefulService {
         }
     }
 
+    /** The completions tracked in memory. Set only on the owner node in the in-memory mode. */
+    private CounterSubTaskState inMemoryState;
+    private long completionsSinceCheckpoint;
+
     public CounterSubTaskService() {
         super(CounterSubTaskState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -82,6 +113,7 @@ public class CounterSubTaskService extends StatefulService {
             subTaskInitState.documentSelfLink = link;
             subTaskInitState.documentExpirationTimeMicros = ServiceUtils
                     .getDefaultTaskExpirationTimeInMicros();
+            subTaskInitState.inMemory |= service.useInMemoryCounter();
 
             Operation postOp = Operation.createPost(service, CounterSubTaskService.FACTORY_LINK)
                     .setBody(subTaskInitState)
@@ -102,10 +134,18 @@ public class CounterSubTaskService extends StatefulService {
         }
     }
 
+    /**
+     * Returns whether counter sub tasks created by the given task type should use the in-memory
+     * mode.
+     */
+    public static boolean isInMemoryModeEnabled(Class<?> taskType) {
+        return IN_MEMORY_TASK_TYPES.contains(taskType.getSimpleName());
+    }
+
     @Override
     public void handleCreate(Operation post) {
         super.handleCreate(post);
-        logInfo("CounterSubTask created.");
+        logFine("CounterSubTask created.");
     }
 
     @Override
@@ -119,10 +159,87 @@ public class CounterSubTaskService extends StatefulService {
             return;
         }
 
+        if (!currentState.inMemory || currentState.completionsRemaining <= 0) {
+            // another owner may have completed the counter meanwhile
+            inMemoryState = null;
+        } else if (inMemoryState != null
+                && getHost().getId().equals(currentState.inMemoryOwnerId)) {
+            handleInMemoryPatch(patch, patchBody, currentState);
+            return;
+        } else if (currentState.inMemoryOwnerId == null) {
+            // first completion, pin the counter to the current owner
+            currentState.inMemoryOwnerId = getHost().getId();
+        } else {
+            failLostCompletions(patch, currentState);
+            return;
+        }
+
+        if (!applyCompletion(patch, patchBody, currentState)) {
+            return;
+        }
+
+        if (currentState.inMemory) {
+            inMemoryState = Utils.clone(currentState);
+            completionsSinceCheckpoint = 0;
+        }
+        completePatch(patch, patchBody, currentState);
+    }
+
+    private void handleInMemoryPatch(Operation patch, CounterSubTaskState patchBody,
+            CounterSubTaskState currentState) {
+        if (!applyCompletion(patch, patchBody, inMemoryState)) {
+            return;
+        }
+
+        if (inMemoryState.completionsRemaining != 0
+                && ++completionsSinceCheckpoint < CHECKPOINT_INTERVAL) {
+            patch.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
+            completePatch(patch, patchBody, inMemoryState);
+            return;
+        }
+
+        // checkpoint
+        completionsSinceCheckpoint = 0;
+        currentState.completionsRemaining = inMemoryState.completionsRemaining;
+        currentState.finishedCount = inMemoryState.finishedCount;
+        currentState.failCount = inMemoryState.failCount;
+        currentState.customProperties = inMemoryState.customProperties;
+        completePatch(patch, patchBody, inMemoryState);
+    }
+
+    /**
+     * The completions tracked in memory by the previous owner, or by this node before a restart,
+     * are lost. The number of completions since the last checkpoint is not known, so the counter
+     * can't be continued and is failed.
+     */
+    private void failLostCompletions(Operation patch, CounterSubTaskState currentState) {
+        String error = String.format("Counter owner changed from %s, the completions since the"
+                + " last checkpoint are lost", currentState.inMemoryOwnerId);
+        logWarning("%s. Failing counter with %d remaining", error,
+                currentState.completionsRemaining);
+
+        currentState.inMemory = false;
+        currentState.failCount += currentState.completionsRemaining;
+        currentState.completionsRemaining = 0;
+        inMemoryState = null;
+
+        CounterSubTaskState failedBody = new CounterSubTaskState();
+        failedBody.taskInfo.stage = TaskStage.FAILED;
+        failedBody.taskInfo.failure = Utils.toServiceErrorResponse(
+                new IllegalStateException(error));
+        completePatch(patch, failedBody, currentState);
+    }
+
+    /**
+     * Applies the completion from the patch body to the given state. Returns <code>false</code>
+     * when the patch is already completed and there is nothing more to do.
+     */
+    private boolean applyCompletion(Operation patch, CounterSubTaskState patchBody,
+            CounterSubTaskState currentState) {
         if (currentState.completionsRemaining <= 0) {
             logWarning("Already completed. Ignoring patch from %s", patch.getReferer());
             patch.complete();
-            return;
+            return false;
         }
 
         switch (patchBody.taskInfo.stage) {
@@ -153,16 +270,20 @@ public class CounterSubTaskService extends StatefulService {
         default:
             logInfo("ignoring patch from %s", patch.getReferer());
             patch.complete();
-            return;
+            return false;
         }
+        return true;
+    }
 
+    private void completePatch(Operation patch, CounterSubTaskState patchBody,
+            CounterSubTaskState currentState) {
         // any operation on state before a operation is completed,
         // is guaranteed to be atomic (service is synchronized)
         boolean isFinished = currentState.completionsRemaining == 0;
         patch.complete();
 
         if (!isFinished) {
-            logInfo("Remaining %d", currentState.completionsRemaining);
+            logFine("Remaining %d", currentState.completionsRemaining);
             return;
         }
 
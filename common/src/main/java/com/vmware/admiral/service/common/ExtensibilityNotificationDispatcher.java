@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Sends the extensibility notifications to the subscribers. The notifications to a subscriber
+ * reuse the connections of a dedicated connection tag and at most {@link #IN_FLIGHT_WINDOW} of
+ * them are in flight at a time, the rest are queued. The asynchronous notifications to
+ * subscribers which opted in are sent in batches as a JSON array. A failed notification is
+ * retried with an exponential backoff and when no retries are left the task is failed.
+ */
+class ExtensibilityNotificationDispatcher {
+
+    static final String CONNECTION_TAG = "extensibility-notification";
+
+    static final int IN_FLIGHT_WINDOW = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.window", 16);
+    private static final int BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.batch.size", 50);
+    private static final long BATCH_DELAY_MILLIS = Long.getLong(
+            "com.vmware.admiral.service.extensibility.notification.batch.delay.millis", 500);
+    private static final long MAX_RETRY_WAIT_SECONDS = Long.getLong(
+            "com.vmware.admiral.service.extensibility.notification.max.wait", 300);
+
+    /**
+     * Notification statistics of a subscriber.
+     */
+    public static class SubscriberStats {
+        public int queued;
+        public int inFlight;
+        public long sent;
+        public long failed;
+        public long retried;
+        public long batches;
+        public double averageLatencyMillis;
+        public long maxLatencyMillis;
+    }
+
+    private static class Notification {
+        final String body;
+        final String taskLink;
+
+        Notification(String body, String taskLink) {
+            this.body = body;
+            this.taskLink = taskLink;
+        }
+    }
+
+    private static class Delivery {
+        final List<Notification> notifications;
+        final String body;
+        int attempts;
+
+        Delivery(List<Notification> notifications, String body) {
+            this.notifications = notifications;
+            this.body = body;
+        }
+    }
+
+    private static class Subscriber {
+        final URI uri;
+
+        // guarded by this
+        final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+        List<Notification> batch = new ArrayList<>();
+        boolean batchScheduled;
+        int inFlight;
+        long sent;
+        long failed;
+        long retried;
+        long batches;
+        long totalLatencyMicros;
+        long maxLatencyMicros;
+
+        Subscriber(URI uri) {
+            this.uri = uri;
+        }
+    }
+
+    private final Service service;
+    private final int retryCount;
+    private final long retryWaitSeconds;
+    private final BiConsumer<String, String> failTask;
+
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * @param service          service which sends the notifications
+     * @param retryCount       number of attempts to send a notification
+     * @param retryWaitSeconds wait before the first retry, doubled for each next one
+     * @param failTask         called with the error message and the task link of a notification
+     *                         which could not be sent
+     */
+    ExtensibilityNotificationDispatcher(Service service, int retryCount, long retryWaitSeconds,
+            BiConsumer<String, String> failTask) {
+        this.service = service;
+        this.retryCount = retryCount;
+        this.retryWaitSeconds = retryWaitSeconds;
+        this.failTask = failTask;
+    }
+
+    /**
+     * Limits the connections to a subscriber to the size of the in-flight window.
+     */
+    void start() {
+        service.getHost().getClient().setConnectionLimitPerTag(CONNECTION_TAG,
+                IN_FLIGHT_WINDOW);
+    }
+
+    /**
+     * Sends a notification with a JSON body to a subscriber.
+     *
+     * @param callbackReference subscriber URI
+     * @param body              notification as JSON
+     * @param taskLink          link of the task to fail if the notification can't be sent
+     * @param batch             whether the notification may be sent in a batch
+     */
+    void send(URI callbackReference, String body, String taskLink, boolean batch) {
+        Subscriber subscriber = subscribers.computeIfAbsent(callbackReference.toString(),
+                (k) -> new Subscriber(callbackReference));
+        Notification notification = new Notification(body, taskLink);
+
+        if (!batch) {
+            enqueue(subscriber, new Delivery(Collections.singletonList(notification), body));
+            return;
+        }
+
+        boolean flush = false;
+        synchronized (subscriber) {
+            subscriber.batch.add(notification);
+            if (subscriber.batch.size() >= BATCH_SIZE) {
+                flush = true;
+            } else if (!subscriber.batchScheduled) {
+                subscriber.batchScheduled = true;
+                service.getHost().schedule(() -> flushBatch(subscriber), BATCH_DELAY_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flush) {
+            flushBatch(subscriber);
+        }
+    }
+
+    Map<String, SubscriberStats> getStats() {
+        return subscribers.values().stream()
+                .collect(Collectors.toMap((s) -> s.uri.toString(), this::getStats,
+                        (s1, s2) -> s1, TreeMap::new));
+    }
+
+    private SubscriberStats getStats(Subscriber subscriber) {
+        SubscriberStats stats = new SubscriberStats();
+        synchronized (subscriber) {
+            stats.queued = subscriber.queue.size() + subscriber.batch.size();
+            stats.inFlight = subscriber.inFlight;
+            stats.sent = subscriber.sent;
+            stats.failed = subscriber.failed;
+            stats.retried = subscriber.retried;
+            stats.batches = subscriber.batches;
+            long requests = subscriber.sent + subscriber.failed;
+            if (requests > 0) {
+                stats.averageLatencyMillis = subscriber.totalLatencyMicros / 1000.0 / requests;
+            }
+            stats.maxLatencyMillis = TimeUnit.MICROSECONDS.toMillis(subscriber.maxLatencyMicros);
+        }
+        return stats;
+    }
+
+    private void flushBatch(Subscriber subscriber) {
+        List<Notification> notifications;
+        synchronized (subscriber) {
+            notifications = subscriber.batch;
+            subscriber.batch = new ArrayList<>();
+            subscriber.batchScheduled = false;
+            if (notifications.isEmpty()) {
+                return;
+            }
+            subscriber.batches++;
+        }
+
+        String body = notifications.stream()
+                .map((n) -> n.body)
+                .collect(Collectors.joining(",", "[", "]"));
+        enqueue(subscriber, new Delivery(notifications, body));
+    }
+
+    private void enqueue(Subscriber subscriber, Delivery delivery) {
+        synchronized (subscriber) {
+            subscriber.queue.add(delivery);
+        }
+        drain(subscriber);
+    }
+
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            Delivery delivery;
+            synchronized (subscriber) {
+                if (subscriber.inFlight >= IN_FLIGHT_WINDOW || subscriber.queue.isEmpty()) {
+                    return;
+                }
+                delivery = subscriber.queue.poll();
+                subscriber.inFlight++;
+            }
+            post(subscriber, delivery);
+        }
+    }
+
+    private void post(Subscriber subscriber, Delivery delivery) {
+        delivery.attempts++;
+        long startMicros = Utils.getNowMicrosUtc();
+        service.sendRequest(Operation.createPost(subscriber.uri)
+                .setBodyNoCloning(delivery.body)
+                .setContentType(Operation.MEDIA_TYPE_APPLICATION_JSON)
+                .setConnectionTag(CONNECTION_TAG)
+                .setCompletion((o, e) -> {
+                    long latencyMicros = Utils.getNowMicrosUtc() - startMicros;
+                    synchronized (subscriber) {
+                        subscriber.inFlight--;
+                        subscriber.totalLatencyMicros += latencyMicros;
+                        subscriber.maxLatencyMicros = Math.max(subscriber.maxLatencyMicros,
+                                latencyMicros);
+                        if (e != null) {
+                            subscriber.failed++;
+                        } else {
+                            subscriber.sent++;
+                        }
+                    }
+
+                    if (e != null) {
+                        handleFailure(subscriber, delivery, o, e);
+                    }
+                    drain(subscriber);
+                }));
+    }
+
+    private void handleFailure(Subscriber subscriber, Delivery delivery, Operation o,
+            Throwable e) {
+        int retriesLeft = retryCount - delivery.attempts + 1;
+        log(Level.WARNING, "Retrying [%s] times to notify [%s]. Error: [%s]",
+                retriesLeft, subscriber.uri, e.getMessage());
+
+        if (retriesLeft <= 1) {
+            for (Notification notification : delivery.notifications) {
+                log(Level.WARNING, "Cannot notify [%s] for task [%s]. Error: %s",
+                        subscriber.uri, notification.taskLink, e.getMessage());
+                failTask.accept(e.getMessage(), notification.taskLink);
+            }
+        } else if (o.getStatusCode() == Operation.STATUS_CODE_TIMEOUT) {
+            // Call to ExtensibilitySubscriptionCallback will resume the service task.
+            log(Level.WARNING, "Request to [%s] for %d task(s) expired!", subscriber.uri,
+                    delivery.notifications.size());
+        } else {
+            long wait = Math.min(retryWaitSeconds << Math.min(delivery.attempts - 1, 20),
+                    MAX_RETRY_WAIT_SECONDS);
+            synchronized (subscriber) {
+                subscriber.retried++;
+            }
+            service.getHost().schedule(() -> enqueue(subscriber, delivery), wait,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    private void log(Level level, String message, Object... values) {
+        Utils.log(getClass(), getClass().getSimpleName(), level, message, values);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Maps a task state to an extensibility payload class and back by copying the fields with the
+ * same name. The result is the same as serializing the source to JSON and deserializing it as the
+ * target class, but the fields to copy are resolved once per pair of classes. A value which is
+ * not assignable to the target field, e.g. a task sub stage stored as an {@code Object}, is
+ * converted through JSON.
+ */
+final class ExtensibilityPayloadMapper {
+
+    private static final Map<Class<?>, Map<Class<?>, Copier<?>>> COPIERS =
+            new ConcurrentHashMap<>();
+
+    private ExtensibilityPayloadMapper() {
+    }
+
+    /**
+     * Creates an instance of the target class with the fields of the source. Fields with
+     * {@code null} value are not copied, so the target keeps its defaults as if deserialized.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T map(Object source, Class<T> targetClass) {
+        Copier<T> copier = (Copier<T>) COPIERS
+                .computeIfAbsent(source.getClass(), (k) -> new ConcurrentHashMap<>())
+                .computeIfAbsent(targetClass, (k) -> new Copier<>(source.getClass(),
+                        targetClass));
+        return copier.copy(source);
+    }
+
+    private static class Copier<T> {
+        private final Class<T> targetClass;
+        private final Constructor<T> constructor;
+        private final List<FieldCopier> fields = new ArrayList<>();
+
+        Copier(Class<?> sourceClass, Class<T> targetClass) {
+            this.targetClass = targetClass;
+            this.constructor = getConstructor(targetClass);
+
+            Map<String, Field> targetFields = getSerializedFields(targetClass);
+            Map<TypeVariable<?>, Type> typeArguments = getTypeArguments(targetClass);
+            for (Field sourceField : getSerializedFields(sourceClass).values()) {
+                Field targetField = targetFields.get(sourceField.getName());
+                if (targetField != null) {
+                    fields.add(new FieldCopier(sourceField, targetField,
+                            resolveType(targetField, typeArguments)));
+                }
+            }
+        }
+
+        T copy(Object source) {
+            if (constructor == null) {
+                return Utils.fromJson(Utils.toJson(source), targetClass);
+            }
+
+            try {
+                T target = constructor.newInstance();
+                for (FieldCopier field : fields) {
+                    Object value = field.source.get(source);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (!field.type.isInstance(value)) {
+                        value = Utils.fromJson(Utils.toJson(value), field.type);
+                    }
+                    field.target.set(target, value);
+                }
+                return target;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(String.format("Cannot map %s to %s",
+                        source.getClass().getName(), targetClass.getName()), e);
+            }
+        }
+    }
+
+    private static class FieldCopier {
+        final Field source;
+        final Field target;
+        final Class<?> type;
+
+        FieldCopier(Field source, Field target, Class<?> type) {
+            this.source = source;
+            this.target = target;
+            this.type = wrap(type);
+        }
+    }
+
+    /**
+     * Returns the fields serialized to JSON, the ones of a subclass hiding the ones of its
+     * superclasses with the same name.
+     */
+    private static Map<String, Field> getSerializedFields(Class<?> type) {
+        Map<String, Field> fields = new LinkedHashMap<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+                        || field.isSynthetic() || fields.containsKey(field.getName())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.put(field.getName(), field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Maps the type variables of the superclasses of a class to their actual types, e.g. the
+     * sub stage of a task state.
+     */
+    private static Map<TypeVariable<?>, Type> getTypeArguments(Class<?> type) {
+        Map<TypeVariable<?>, Type> arguments = new HashMap<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            Type superclass = c.getGenericSuperclass();
+            if (!(superclass instanceof ParameterizedType)) {
+                continue;
+            }
+            ParameterizedType parameterized = (ParameterizedType) superclass;
+            TypeVariable<?>[] variables = ((Class<?>) parameterized.getRawType())
+                    .getTypeParameters();
+            Type[] actual = parameterized.getActualTypeArguments();
+            for (int i = 0; i < variables.length; i++) {
+                arguments.put(variables[i], arguments.getOrDefault(actual[i], actual[i]));
+            }
+        }
+        return arguments;
+    }
+
+    private static Class<?> resolveType(Field field, Map<TypeVariable<?>, Type> typeArguments) {
+        Type type = typeArguments.get(field.getGenericType());
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return field.getType();
+    }
+
+    private static <T> Constructor<T> getConstructor(Class<T> type) {
+        try {
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException e) {
+            // no default constructor, fall back to JSON
+            return null;
+        }
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        }
+        return Character.class;
+    }
+}
@@ -14,8 +14,8 @@ package com.vmware.admiral.service.common;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -48,6 +48,9 @@ import com.vmware.xenon.services.common.QueryTask;
  * Notifications can be asynchronous or synchronous (blocking). The first are sent and the task
  * proceeds with its execution. The latter block further task execution and wait callback to be
  * received.
+ * <p>
+ * The notifications are sent by an {@link ExtensibilityNotificationDispatcher}. A GET returns the
+ * notification statistics per subscriber.
  */
 public class ExtensibilitySubscriptionManager extends StatelessService {
 
@@ -72,14 +75,24 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
 
     private AtomicBoolean initialized = new AtomicBoolean();
 
+    private final ExtensibilityNotificationDispatcher dispatcher =
+            new ExtensibilityNotificationDispatcher(this, NOTIFICATION_RETRY_COUNT,
+                    NOTIFICATION_RETRY_WAIT, this::failTask);
+
     public ExtensibilitySubscriptionManager() {
     }
 
     @Override
     public void handleStart(Operation start) {
+        dispatcher.start();
         initialize(start);
     }
 
+    @Override
+    public void handleGet(Operation get) {
+        get.setBody(dispatcher.getStats()).complete();
+    }
+
     @Override
     public void handleStop(Operation delete) {
         initialized.set(false);
@@ -271,6 +284,8 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
 
         // Create callback which will handle response from subscriber client.
         ExtensibilitySubscriptionCallback callbackState = new ExtensibilitySubscriptionCallback();
+        // the link is known in advance so the notification is built while the callback is created
+        callbackState.documentSelfLink = UUID.randomUUID().toString();
         callbackState.taskStateJson = Utils.toJson(state);
         callbackState.taskStateClassName = state.getClass().getSimpleName();
 
@@ -287,6 +302,13 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
 
         callbackState.due = LocalDateTime.now().plusNanos(stagePhaseTimeout.toNanos());
 
+        String callbackLink = UriUtils.buildUriPath(
+                ExtensibilitySubscriptionCallbackService.FACTORY_LINK,
+                callbackState.documentSelfLink);
+        String data = Utils.toJson(buildDataToSend(notificationPayload, replyPayload, state,
+                callbackLink, callbackState));
+
+        // The subscriber may reply right away, so it is notified once the callback exists.
         sendRequest(Operation
                 .createPost(this, ExtensibilitySubscriptionCallbackService.FACTORY_LINK)
                 .setBody(callbackState)
@@ -296,12 +318,8 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
                         return;
                     }
 
-                    ExtensibilitySubscriptionCallback result = o
-                            .getBody(ExtensibilitySubscriptionCallback.class);
-
-                    sendExternalNotification(extensibility,
-                            buildDataToSend(notificationPayload, replyPayload, result),
-                            state, NOTIFICATION_RETRY_COUNT);
+                    dispatcher.send(extensibility.callbackReference, data,
+                            state.documentSelfLink, false);
                 }));
     }
 
@@ -322,77 +340,30 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
                 extensibility.callbackReference, state.documentSelfLink);
         // Task is filtered to provide only fields declared as notification payload.
         T notificationPayloadState = prepareTaskNotificationPayload(notificationPayload, state);
-        sendExternalNotification(extensibility, notificationPayloadState, state,
-                NOTIFICATION_RETRY_COUNT);
+        dispatcher.send(extensibility.callbackReference, Utils.toJson(notificationPayloadState),
+                state.documentSelfLink, Boolean.TRUE.equals(extensibility.batchNotifications));
     }
 
     @SuppressWarnings("unchecked")
     private <T> T prepareTaskNotificationPayload(ServiceTaskCallbackResponse notificationPayload,
             T state) {
-        String stateAsJson = Utils.toJson(state);
-        ServiceTaskCallbackResponse notificationPayloadData = Utils.fromJson(
-                stateAsJson, notificationPayload.getClass());
-        String payLoadAsJson = Utils.toJson(notificationPayloadData);
+        ServiceTaskCallbackResponse notificationPayloadData = ExtensibilityPayloadMapper.map(
+                state, notificationPayload.getClass());
         // Filter task fields in order to leave only notification payload fields.
-        T filteredTask = (T) Utils.fromJson(payLoadAsJson, state.getClass());
+        T filteredTask = (T) ExtensibilityPayloadMapper.map(notificationPayloadData,
+                state.getClass());
         return filteredTask;
     }
 
-    /**
-     * Sends a service document to external url. Supports retry in case of an error and if task
-     * service is provided this method will call failTask when no more retries left.
-     *
-     * @param extensibility extensibility state
-     * @param body          document to send
-     * @param state         - task state
-     * @param retriesLeft   number of retries left before give up
-     */
-    @SuppressWarnings("rawtypes")
-    private <T extends TaskServiceDocument> void sendExternalNotification(
-            ExtensibilitySubscription extensibility,
-            ServiceDocument body, T state,
-            int retriesLeft) {
-
-        sendRequest(Operation.createPost(extensibility.callbackReference)
-                .setBody(body)
-                .setCompletion((o, e) -> {
-                    if (e != null) {
-                        logWarning(
-                                "Retrying [%s] times to notify [%s]. Error: [%s]",
-                                retriesLeft, extensibility.callbackReference,
-                                e.getMessage());
-
-                        if (retriesLeft <= 1) {
-                            logWarning("Cannot notify [%s] for task [%s]. Error: %s",
-                                    extensibility.callbackReference, body.documentSelfLink,
-                                    e.getMessage());
-
-                            failTask(e.getMessage(), state.documentSelfLink);
-                        } else if (o.getStatusCode() == Operation.STATUS_CODE_TIMEOUT) {
-                            // Call to ExtensibilitySubscriptionCallback will resume the service
-                            // task.
-                            logWarning("Request to [%s] for task [%s] expired!",
-                                    extensibility.callbackReference, body.documentSelfLink);
-                        } else {
-                            getHost().schedule(() -> {
-                                sendExternalNotification(extensibility, body, state,
-                                        retriesLeft - 1);
-                            }, NOTIFICATION_RETRY_WAIT, TimeUnit.SECONDS);
-
-                        }
-                    }
-                }));
-    }
-
     @SuppressWarnings("rawtypes")
     private <T extends TaskServiceDocument> ServiceDocument buildDataToSend(
             ServiceTaskCallbackResponse notificationPayload,
-            ServiceTaskCallbackResponse replyPayload,
-            ExtensibilitySubscriptionCallback result) {
+            ServiceTaskCallbackResponse replyPayload, T state, String callbackLink,
+            ExtensibilitySubscriptionCallback callbackState) {
 
         // Notification payload will give information about the task to subscriber.
-        ServiceTaskCallbackResponse notificationPayloadData = Utils.fromJson(
-                result.taskStateJson, notificationPayload.getClass());
+        ServiceTaskCallbackResponse notificationPayloadData = ExtensibilityPayloadMapper.map(
+                state, notificationPayload.getClass());
 
         //Copy enhanced payload (if some enhancements to payload have been made)
         PropertyUtils.mergeObjects(notificationPayload, notificationPayloadData,
@@ -403,15 +374,15 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
 
         // Get service reply payload in order to notify subscriber which fields are acceptable for
         // response.
-        ServiceTaskCallbackResponse replyPayloadData = Utils.fromJson(
-                result.taskStateJson, replyPayload.getClass());
+        ServiceTaskCallbackResponse replyPayloadData = ExtensibilityPayloadMapper.map(
+                state, replyPayload.getClass());
 
         ExtensibilitySubscriptionCallback data = new ExtensibilitySubscriptionCallback();
-        data.serviceCallback = UriUtils.buildUri(getHost(), result.documentSelfLink);
+        data.serviceCallback = UriUtils.buildUri(getHost(), callbackLink);
         data.notificationPayload = Utils.toJson(notificationPayload);
         data.replyPayload = replyPayloadData;
-        data.taskStateClassName = result.taskStateClassName;
-        data.tenantLinks = result.tenantLinks;
+        data.taskStateClassName = callbackState.taskStateClassName;
+        data.tenantLinks = callbackState.tenantLinks;
 
         return data;
     }
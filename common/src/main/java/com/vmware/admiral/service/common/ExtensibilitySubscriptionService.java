@@ -54,6 +54,11 @@ public class ExtensibilitySubscriptionService extends StatefulService {
         @UsageOption(option = PropertyUsageOption.REQUIRED)
         public URI callbackReference;
 
+        @Documentation(description = "Whether asynchronous notifications may be sent in batches, "
+                + "in which case the subscriber receives a JSON array of task states")
+        @UsageOption(option = PropertyUsageOption.OPTIONAL)
+        public Boolean batchNotifications;
+
     }
 
     public ExtensibilitySubscriptionService() {
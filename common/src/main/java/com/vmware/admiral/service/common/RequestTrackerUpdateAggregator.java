@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Coalesces the non-final request tracker updates of the tasks running on the current node. The
+ * updates for the same request tracker are collected for a short window and only the latest one of
+ * every task is sent, which saves most of the intermediate PATCHes to the request status. Final
+ * updates are not delayed: the pending updates of the tracker are flushed first and the final one
+ * is sent only after all the updates in flight for the tracker are completed, so the request
+ * status never goes back to a previous stage.
+ */
+final class RequestTrackerUpdateAggregator {
+    /** The window in milliseconds to coalesce updates in. A value of 0 disables coalescing. */
+    static final long COALESCE_WINDOW_MILLIS = Long.getLong(
+            "com.vmware.admiral.service.tasks.request.tracker.coalesce.window.millis", 500);
+
+    private static final Map<String, TrackerUpdates> trackers = new HashMap<>();
+
+    private static class PendingUpdate {
+        final Service sender;
+        final TaskStatusState status;
+
+        PendingUpdate(Service sender, TaskStatusState status) {
+            this.sender = sender;
+            this.status = status;
+        }
+    }
+
+    /** The updates of a single request tracker. Guarded by {@link #trackers}. */
+    private static class TrackerUpdates {
+        /** The updates waiting for the next flush, <code>null</code> if no flush is scheduled. */
+        Map<String, PendingUpdate> pending;
+        /** The number of sent updates which are not completed yet. */
+        int inFlight;
+        /** The callbacks to run when there are no more updates in flight. */
+        final List<Runnable> onFlushed = new ArrayList<>();
+
+        boolean isIdle() {
+            return pending == null && inFlight == 0 && onFlushed.isEmpty();
+        }
+    }
+
+    private RequestTrackerUpdateAggregator() {
+    }
+
+    static boolean isEnabled() {
+        return COALESCE_WINDOW_MILLIS > 0;
+    }
+
+    /**
+     * Queues an update of the request tracker. A pending update of the same task is replaced.
+     */
+    static void enqueue(Service sender, String requestTrackerLink, TaskStatusState status) {
+        String key = buildKey(sender, requestTrackerLink);
+        boolean scheduleFlush;
+        synchronized (trackers) {
+            TrackerUpdates tracker = trackers.computeIfAbsent(key, k -> new TrackerUpdates());
+            scheduleFlush = tracker.pending == null;
+            if (scheduleFlush) {
+                tracker.pending = new LinkedHashMap<>();
+            }
+            String taskKey = status.phase + status.documentSelfLink;
+            // keep the order of the latest updates
+            tracker.pending.remove(taskKey);
+            tracker.pending.put(taskKey, new PendingUpdate(sender, status));
+        }
+
+        if (scheduleFlush) {
+            sender.getHost().schedule(() -> flush(sender, requestTrackerLink, null),
+                    COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the pending updates of the request tracker and calls the given callback when they and
+     * all the updates sent by previous flushes are completed (successfully or not).
+     */
+    static void flush(Service sender, String requestTrackerLink, Runnable onFlushed) {
+        String key = buildKey(sender, requestTrackerLink);
+        List<PendingUpdate> updates;
+        boolean runNow;
+        synchronized (trackers) {
+            TrackerUpdates tracker = trackers.get(key);
+            if (tracker == null) {
+                updates = null;
+                runNow = true;
+            } else {
+                updates = tracker.pending != null ? new ArrayList<>(tracker.pending.values())
+                        : null;
+                tracker.pending = null;
+                tracker.inFlight += updates != null ? updates.size() : 0;
+                runNow = tracker.inFlight == 0;
+                if (!runNow && onFlushed != null) {
+                    tracker.onFlushed.add(onFlushed);
+                }
+                if (tracker.isIdle()) {
+                    trackers.remove(key);
+                }
+            }
+        }
+
+        if (runNow && onFlushed != null) {
+            onFlushed.run();
+        }
+        if (updates == null) {
+            return;
+        }
+
+        for (PendingUpdate update : updates) {
+            update.sender.sendRequest(Operation
+                    .createPatch(update.sender, requestTrackerLink)
+                    .setBodyNoCloning(update.status)
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            // log but don't fail, a later update will bring the tracker up to date
+                            update.sender.getHost().log(Level.WARNING,
+                                    "Failed to update request tracker: %s. Error: %s",
+                                    requestTrackerLink, Utils.toString(e));
+                        }
+                        completeUpdate(key);
+                    }));
+        }
+    }
+
+    private static void completeUpdate(String key) {
+        List<Runnable> callbacks = null;
+        synchronized (trackers) {
+            TrackerUpdates tracker = trackers.get(key);
+            if (--tracker.inFlight == 0) {
+                callbacks = new ArrayList<>(tracker.onFlushed);
+                tracker.onFlushed.clear();
+            }
+            if (tracker.isIdle()) {
+                trackers.remove(key);
+            }
+        }
+
+        if (callbacks != null) {
+            callbacks.forEach(Runnable::run);
+        }
+    }
+
+    private static String buildKey(Service sender, String requestTrackerLink) {
+        // several hosts may run in the same process (e.g. in tests)
+        return sender.getHost().getId() + requestTrackerLink;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.ServiceClientFactory;
+import com.vmware.admiral.common.util.ServiceClientFactory.ServiceClientStats;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+
+/**
+ * Returns the statistics of the shared service clients of this node, see
+ * {@link ServiceClientFactory#getServiceClientStats()}.
+ */
+public class ServiceClientStatsService extends StatelessService {
+
+    public static final String SELF_LINK = ManagementUriParts.SERVICE_CLIENT_STATS;
+
+    @Override
+    public void handleGet(Operation get) {
+        get.setBody(ServiceClientFactory.getServiceClientStats()).complete();
+    }
+
+    @Override
+    public ServiceDocument getDocumentTemplate() {
+        ServiceDocument d = super.getDocumentTemplate();
+        addServiceRequestRoute(d, Action.GET,
+                "Get the connection pool, request and TLS statistics of the shared service "
+                        + "clients of this node.", ServiceClientStats[].class);
+        return d;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.Test;
+
+import com.vmware.admiral.common.util.ServiceClientFactory.ClientProfile;
+import com.vmware.admiral.common.util.ServiceClientFactory.ServiceClientStats;
+import com.vmware.admiral.common.util.ServiceClientFactory.SharedServiceClient;
+
+/**
+ * Tests for the shared clients of ServiceClientFactory
+ */
+public class ServiceClientFactoryTest {
+
+    private final TrustManager trustManager = new X509TrustManager() {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    };
+
+    @Test
+    public void testAcquireSharedClient() {
+        SharedServiceClient client = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("test", trustManager, null));
+        SharedServiceClient sameClient = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("test", trustManager, null));
+        SharedServiceClient otherClient = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("test", trustManager, null)
+                        .setRequestPayloadSizeLimit(1024));
+        try {
+            assertSame(client, sameClient);
+            assertNotSame(client, otherClient);
+            // same trust material
+            assertSame(client.getSSLContext(), otherClient.getSSLContext());
+
+            ServiceClientStats stats = ServiceClientFactory.getServiceClientStats().stream()
+                    .filter(s -> s.profile.equals(
+                            ClientProfile.create("test", trustManager, null).toString()))
+                    .findFirst().get();
+            assertEquals(2, stats.references);
+            assertEquals(0, stats.pendingRequests);
+        } finally {
+            client.release();
+            sameClient.release();
+            otherClient.release();
+        }
+    }
+
+    @Test
+    public void testClientCreatedAgainWithSharedKeyManager() {
+        DelegatingX509KeyManager keyManager = ServiceClientFactory.getKeyManager("test-restart",
+                trustManager);
+        assertSame(keyManager, ServiceClientFactory.getKeyManager("test-restart", trustManager));
+        assertNotSame(keyManager, ServiceClientFactory.getKeyManager("test-other", trustManager));
+
+        SharedServiceClient client = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("test-restart", trustManager, keyManager));
+        client.release();
+
+        // e.g. a restarted adapter gets the running client
+        SharedServiceClient sameClient = ServiceClientFactory.acquireServiceClient(
+                ClientProfile.create("test-restart", trustManager,
+                        ServiceClientFactory.getKeyManager("test-restart", trustManager)));
+        try {
+            assertSame(client, sameClient);
+        } finally {
+            sameClient.release();
+        }
+    }
+
+    @Test
+    public void testStats() {
+        ClientProfile profile = ClientProfile.create("test-stats", trustManager, null);
+        SharedServiceClient client = ServiceClientFactory.acquireServiceClient(profile);
+        try {
+            ServiceClientStats stats = ServiceClientFactory.getServiceClientStats().stream()
+                    .filter(s -> s.profile.equals(profile.toString()))
+                    .findFirst().get();
+            assertEquals(1, stats.references);
+            assertEquals(0, stats.inUseConnections);
+            assertEquals(0, stats.queuedRequests);
+            assertEquals(0, stats.tlsFullHandshakes);
+        } finally {
+            client.release();
+        }
+    }
+
+    @Test
+    public void testStopUnusedClients() {
+        ClientProfile profile = ClientProfile.create("test-unused", trustManager, null);
+        SharedServiceClient client = ServiceClientFactory.acquireServiceClient(profile);
+        client.release();
+
+        // not stopped before the idle timeout
+        ServiceClientFactory.stopUnusedServiceClients(Long.MAX_VALUE);
+        SharedServiceClient sameClient = ServiceClientFactory.acquireServiceClient(profile);
+        assertSame(client, sameClient);
+        sameClient.release();
+
+        ServiceClientFactory.stopUnusedServiceClients(0);
+        assertTrue(ServiceClientFactory.getServiceClientStats().stream()
+                .noneMatch(s -> s.profile.equals(profile.toString())));
+
+        SharedServiceClient newClient = ServiceClientFactory.acquireServiceClient(profile);
+        assertNotSame(client, newClient);
+        newClient.release();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryElementResult;
+import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryPage;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.services.common.ExampleService;
+import com.vmware.xenon.services.common.ExampleService.ExampleServiceState;
+import com.vmware.xenon.services.common.QueryTask;
+
+public class ServiceDocumentQueryTest {
+    private static final int DOCUMENTS_COUNT = 25;
+    private static final int PAGE_SIZE = 10;
+    private static final int TIMEOUT_SECONDS = 30;
+
+    private VerificationHost host;
+
+    public static class ExampleName {
+        public String name;
+    }
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create();
+        ServiceHost.Arguments args = VerificationHost.buildDefaultServiceHostArguments(0);
+        VerificationHost.initialize(host, args);
+        host.start();
+        host.waitForServiceAvailable(ExampleService.FACTORY_LINK);
+
+        TestContext ctx = host.testCreate(DOCUMENTS_COUNT);
+        for (int i = 0; i < DOCUMENTS_COUNT; i++) {
+            ExampleServiceState state = new ExampleServiceState();
+            state.name = "example-" + i;
+            host.send(Operation.createPost(UriUtils.buildUri(host, ExampleService.FACTORY_LINK))
+                    .setBody(state)
+                    .setCompletion(ctx.getCompletion()));
+        }
+        ctx.await();
+    }
+
+    @After
+    public void tearDown() {
+        if (host != null) {
+            host.tearDown();
+        }
+    }
+
+    @Test
+    public void testQueryPagesWithExpandedDocuments() throws Throwable {
+        QueryTask q = QueryUtil.buildQuery(ExampleServiceState.class, true);
+        QueryUtil.addExpandOption(q);
+        q.querySpec.resultLimit = PAGE_SIZE;
+
+        Set<String> names = new HashSet<>();
+        Set<String> projectedNames = new HashSet<>();
+        AtomicInteger pages = new AtomicInteger();
+        List<Throwable> failures = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        new ServiceDocumentQuery<>(host, ExampleServiceState.class).queryPages(q, page -> {
+            if (page.hasException()) {
+                failures.add(page.getException());
+                done.countDown();
+                return;
+            }
+            pages.incrementAndGet();
+            for (ServiceDocumentQueryElementResult<ExampleServiceState> r : page.getResults()) {
+                assertNotNull(r.getDocumentSelfLink());
+                projectedNames.add(r.getResultAs(ExampleName.class).name);
+                names.add(r.getResult().name);
+            }
+            if (page.isLastPage()) {
+                done.countDown();
+            } else {
+                page.requestNext();
+            }
+        });
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty());
+        assertEquals(DOCUMENTS_COUNT, names.size());
+        assertEquals(names, projectedNames);
+        assertTrue(pages.get() >= DOCUMENTS_COUNT / PAGE_SIZE);
+    }
+
+    @Test
+    public void testQueryPagesWaitsForNextPageRequest() throws Throwable {
+        QueryTask q = QueryUtil.buildQuery(ExampleServiceState.class, true);
+        q.querySpec.resultLimit = PAGE_SIZE;
+
+        List<ServiceDocumentQueryPage<ServiceDocument>> delivered = new ArrayList<>();
+        CountDownLatch firstPage = new CountDownLatch(1);
+
+        new ServiceDocumentQuery<>(host, ServiceDocument.class).queryPages(q, page -> {
+            synchronized (delivered) {
+                delivered.add(page);
+            }
+            firstPage.countDown();
+        });
+
+        assertTrue(firstPage.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // give the prefetched page time to arrive, it must not be delivered without request
+        Thread.sleep(500);
+        synchronized (delivered) {
+            assertEquals(1, delivered.size());
+            assertFalse(delivered.get(0).hasException());
+            assertFalse(delivered.get(0).isLastPage());
+            assertEquals(PAGE_SIZE, delivered.get(0).getResults().size());
+        }
+
+        int links = 0;
+        ServiceDocumentQueryPage<ServiceDocument> page;
+        while (true) {
+            synchronized (delivered) {
+                page = delivered.get(delivered.size() - 1);
+            }
+            links += page.getResults().size();
+            if (page.isLastPage()) {
+                break;
+            }
+            int count;
+            synchronized (delivered) {
+                count = delivered.size();
+            }
+            page.requestNext();
+            waitFor(() -> {
+                synchronized (delivered) {
+                    return delivered.size() > count;
+                }
+            });
+        }
+        assertEquals(DOCUMENTS_COUNT, links);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timeout waiting for the next page");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
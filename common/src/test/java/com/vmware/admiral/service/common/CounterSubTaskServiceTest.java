@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.CounterSubTaskService.CounterSubTaskState;
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class CounterSubTaskServiceTest {
+    private static final String PARENT_LINK = "/test-counter-parent";
+    private static final long COMPLETIONS = 2 * CounterSubTaskService.CHECKPOINT_INTERVAL + 3;
+
+    private VerificationHost host;
+    private final List<ServiceTaskCallbackResponse> parentPatches = new CopyOnWriteArrayList<>();
+
+    /** Records the callbacks of the counter. */
+    public class ParentService extends StatelessService {
+        @Override
+        public void handlePatch(Operation patch) {
+            parentPatches.add(patch.getBody(ServiceTaskCallbackResponse.class));
+            patch.complete();
+        }
+    }
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create();
+        ServiceHost.Arguments args = VerificationHost.buildDefaultServiceHostArguments(0);
+        VerificationHost.initialize(host, args);
+        host.start();
+        host.startFactory(new CounterSubTaskService());
+        host.startServiceAndWait(new ParentService(), PARENT_LINK, null);
+        host.waitForServiceAvailable(CounterSubTaskService.FACTORY_LINK);
+    }
+
+    @After
+    public void tearDown() {
+        if (host != null) {
+            host.tearDown();
+        }
+    }
+
+    @Test
+    public void testInMemoryCounterCheckpoints() throws Throwable {
+        String link = createCounter(true);
+
+        completeTasks(link, CounterSubTaskService.CHECKPOINT_INTERVAL - 1);
+        assertEquals(COMPLETIONS, getCounter(link).completionsRemaining);
+
+        completeTasks(link, 1);
+        CounterSubTaskState state = getCounter(link);
+        assertEquals(COMPLETIONS - CounterSubTaskService.CHECKPOINT_INTERVAL,
+                state.completionsRemaining);
+        assertEquals(CounterSubTaskService.CHECKPOINT_INTERVAL, state.finishedCount);
+        assertEquals(host.getId(), state.inMemoryOwnerId);
+        assertTrue(parentPatches.isEmpty());
+
+        completeTasks(link, COMPLETIONS - CounterSubTaskService.CHECKPOINT_INTERVAL);
+        state = getCounter(link);
+        assertEquals(0, state.completionsRemaining);
+        assertEquals(COMPLETIONS, state.finishedCount);
+        waitForParentPatch(TaskStage.FINISHED);
+    }
+
+    @Test
+    public void testInMemoryCounterKeepsCompletionsOnNodeGroupMaintenance() throws Throwable {
+        String link = createCounter(true);
+        completeTasks(link, CounterSubTaskService.CHECKPOINT_INTERVAL + 1);
+
+        Service counter = host.findService(link);
+        assertNotNull(counter);
+        TestContext ctx = host.testCreate(1);
+        counter.handleNodeGroupMaintenance(Operation.createPost(UriUtils.buildUri(host, link))
+                .setCompletion(ctx.getCompletion()));
+        ctx.await();
+
+        completeTasks(link, COMPLETIONS - CounterSubTaskService.CHECKPOINT_INTERVAL - 1);
+        CounterSubTaskState state = getCounter(link);
+        assertEquals(0, state.completionsRemaining);
+        assertEquals(COMPLETIONS, state.finishedCount);
+        waitForParentPatch(TaskStage.FINISHED);
+    }
+
+    @Test
+    public void testInMemoryCounterFailsOnOwnerChange() throws Throwable {
+        String link = createCounter(true);
+        completeTasks(link, CounterSubTaskService.CHECKPOINT_INTERVAL + 1);
+
+        // simulate a counter pinned to a node that is not the owner anymore
+        CounterSubTaskState state = getCounter(link);
+        state.inMemoryOwnerId = "previous-owner";
+        TestContext ctx = host.testCreate(1);
+        host.send(Operation.createPut(UriUtils.buildUri(host, link))
+                .setBody(state)
+                .setCompletion(ctx.getCompletion()));
+        ctx.await();
+
+        completeTasks(link, 1);
+        state = getCounter(link);
+        assertEquals(0, state.completionsRemaining);
+        assertFalse(state.inMemory);
+        waitForParentPatch(TaskStage.FAILED);
+
+        // late completions are ignored
+        completeTasks(link, 1);
+        assertEquals(1, parentPatches.size());
+    }
+
+    @Test
+    public void testDurableCounterPersistsEveryCompletion() throws Throwable {
+        String link = createCounter(false);
+
+        completeTasks(link, 1);
+        assertEquals(COMPLETIONS - 1, getCounter(link).completionsRemaining);
+
+        completeTasks(link, COMPLETIONS - 1);
+        assertEquals(0, getCounter(link).completionsRemaining);
+        waitForParentPatch(TaskStage.FINISHED);
+    }
+
+    private String createCounter(boolean inMemory) throws Throwable {
+        CounterSubTaskState state = new CounterSubTaskState();
+        state.completionsRemaining = COMPLETIONS;
+        state.inMemory = inMemory;
+        state.serviceTaskCallback = ServiceTaskCallback.create(PARENT_LINK);
+
+        CounterSubTaskState[] result = new CounterSubTaskState[1];
+        TestContext ctx = host.testCreate(1);
+        host.send(Operation
+                .createPost(UriUtils.buildUri(host, CounterSubTaskService.FACTORY_LINK))
+                .setBody(state)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        ctx.failIteration(e);
+                        return;
+                    }
+                    result[0] = o.getBody(CounterSubTaskState.class);
+                    ctx.completeIteration();
+                }));
+        ctx.await();
+        return result[0].documentSelfLink;
+    }
+
+    private void completeTasks(String link, long count) throws Throwable {
+        // sequentially, the completions are counted in the order they arrive
+        for (long i = 0; i < count; i++) {
+            CounterSubTaskState body = new CounterSubTaskState();
+            body.taskInfo.stage = TaskStage.FINISHED;
+            TestContext ctx = host.testCreate(1);
+            host.send(Operation.createPatch(UriUtils.buildUri(host, link))
+                    .setBody(body)
+                    .setCompletion(ctx.getCompletion()));
+            ctx.await();
+        }
+    }
+
+    private CounterSubTaskState getCounter(String link) {
+        return host.getServiceState(null, CounterSubTaskState.class,
+                UriUtils.buildUri(host, link));
+    }
+
+    private void waitForParentPatch(TaskStage expectedStage) throws Throwable {
+        host.waitFor("Parent task was not notified", () -> !parentPatches.isEmpty());
+        assertEquals(1, parentPatches.size());
+        assertEquals(expectedStage, parentPatches.get(0).taskInfo.stage);
+    }
+}
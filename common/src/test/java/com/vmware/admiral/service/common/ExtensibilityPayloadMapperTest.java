@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.Utils;
+
+public class ExtensibilityPayloadMapperTest {
+
+    @Test
+    public void testMapSameAsJson() {
+        TestTaskState task = createTask();
+
+        TestPayload payload = ExtensibilityPayloadMapper.map(task, TestPayload.class);
+        TestPayload expectedPayload = Utils.fromJson(Utils.toJson(task), TestPayload.class);
+        assertEquals(Utils.toJson(expectedPayload), Utils.toJson(payload));
+        assertEquals("resource", payload.resourceName);
+        assertEquals(TaskStage.STARTED, payload.taskInfo.stage);
+    }
+
+    @Test
+    public void testFilterTaskFields() {
+        TestTaskState task = createTask();
+
+        TestTaskState filtered = ExtensibilityPayloadMapper.map(
+                ExtensibilityPayloadMapper.map(task, TestPayload.class), TestTaskState.class);
+        TestTaskState expected = Utils.fromJson(Utils.toJson(Utils.fromJson(
+                Utils.toJson(task), TestPayload.class)), TestTaskState.class);
+
+        assertEquals(Utils.toJson(expected), Utils.toJson(filtered));
+        assertEquals(DefaultSubStage.PROCESSING, filtered.taskSubStage);
+        assertEquals("resource", filtered.resourceName);
+        assertNull(filtered.hostLink);
+        // the default of a field which is not part of the payload is kept
+        assertEquals(1, filtered.count);
+    }
+
+    @Test
+    public void testConvertSubStage() {
+        TestPayload payload = ExtensibilityPayloadMapper.map(createTask(), TestPayload.class);
+        payload.taskSubStage = DefaultSubStage.COMPLETED.name();
+
+        TestTaskState task = ExtensibilityPayloadMapper.map(payload, TestTaskState.class);
+        assertEquals(DefaultSubStage.COMPLETED, task.taskSubStage);
+    }
+
+    private static TestTaskState createTask() {
+        TestTaskState task = new TestTaskState();
+        task.documentSelfLink = "/test-tasks/task";
+        task.taskSubStage = DefaultSubStage.PROCESSING;
+        task.taskInfo = new TaskState();
+        task.taskInfo.stage = TaskStage.STARTED;
+        task.customProperties = Collections.singletonMap("key", "value");
+        task.resourceName = "resource";
+        task.hostLink = "/hosts/host";
+        task.count = 5;
+        return task;
+    }
+
+    private static class TestTaskState extends TaskServiceDocument<DefaultSubStage> {
+        public String resourceName;
+        public String hostLink;
+        public int count = 1;
+    }
+
+    private static class TestPayload extends ServiceTaskCallbackResponse {
+        public String resourceName;
+
+        protected TestPayload() {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class RequestTrackerUpdateAggregatorTest {
+    private static final String TRACKER_LINK = "/test-request-tracker";
+    private static final int TIMEOUT_SECONDS = 30;
+
+    private VerificationHost host;
+    private TrackerService tracker;
+
+    /** Records the updates and holds the completion of the PATCHes until released. */
+    public static class TrackerService extends StatelessService {
+        final List<Operation> held = new CopyOnWriteArrayList<>();
+        final List<String> applied = new CopyOnWriteArrayList<>();
+        volatile boolean hold;
+
+        @Override
+        public void handlePatch(Operation patch) {
+            if (hold) {
+                held.add(patch);
+                return;
+            }
+            apply(patch);
+        }
+
+        void release() {
+            hold = false;
+            held.forEach(this::apply);
+            held.clear();
+        }
+
+        private void apply(Operation patch) {
+            TaskStatusState status = patch.getBody(TaskStatusState.class);
+            applied.add(status.documentSelfLink + ":" + status.taskInfo.stage);
+            patch.complete();
+        }
+    }
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create();
+        ServiceHost.Arguments args = VerificationHost.buildDefaultServiceHostArguments(0);
+        VerificationHost.initialize(host, args);
+        host.start();
+        tracker = new TrackerService();
+        host.startServiceAndWait(tracker, TRACKER_LINK, null);
+    }
+
+    @After
+    public void tearDown() {
+        if (host != null) {
+            host.tearDown();
+        }
+    }
+
+    @Test
+    public void testCoalescesUpdatesOfTheSameTask() throws Throwable {
+        RequestTrackerUpdateAggregator.enqueue(tracker, TRACKER_LINK,
+                status("/task-1", TaskStage.CREATED));
+        RequestTrackerUpdateAggregator.enqueue(tracker, TRACKER_LINK,
+                status("/task-2", TaskStage.STARTED));
+        RequestTrackerUpdateAggregator.enqueue(tracker, TRACKER_LINK,
+                status("/task-1", TaskStage.STARTED));
+
+        flushAndWait();
+        assertEquals(Arrays.asList("/task-2:STARTED", "/task-1:STARTED"), tracker.applied);
+    }
+
+    @Test
+    public void testFinalUpdateWaitsForUpdatesInFlight() throws Throwable {
+        tracker.hold = true;
+        RequestTrackerUpdateAggregator.enqueue(tracker, TRACKER_LINK,
+                status("/task-1", TaskStage.STARTED));
+
+        // the scheduled flush sends the update, it stays in flight
+        host.waitFor("Update was not sent", () -> tracker.held.size() == 1);
+
+        CountDownLatch flushed = new CountDownLatch(1);
+        RequestTrackerUpdateAggregator.flush(tracker, TRACKER_LINK, flushed::countDown);
+        assertFalse(flushed.await(500, TimeUnit.MILLISECONDS));
+
+        tracker.release();
+        assertTrue(flushed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("/task-1:STARTED"), tracker.applied);
+    }
+
+    @Test
+    public void testFlushWithoutUpdatesCompletesImmediately() throws Throwable {
+        CountDownLatch flushed = new CountDownLatch(1);
+        RequestTrackerUpdateAggregator.flush(tracker, TRACKER_LINK, flushed::countDown);
+        assertEquals(0, flushed.getCount());
+        assertTrue(tracker.applied.isEmpty());
+    }
+
+    private void flushAndWait() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        RequestTrackerUpdateAggregator.flush(tracker, TRACKER_LINK, flushed::countDown);
+        assertTrue(flushed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static TaskStatusState status(String taskLink, TaskStage stage) {
+        TaskStatusState status = new TaskStatusState();
+        status.documentSelfLink = taskLink;
+        status.phase = "TestTask";
+        status.taskInfo = new TaskState();
+        status.taskInfo.stage = stage;
+        return status;
+    }
+}
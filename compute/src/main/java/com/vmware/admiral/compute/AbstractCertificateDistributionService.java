@@ -19,7 +19,7 @@ import com.vmware.admiral.common.util.OperationUtil;
 import com.vmware.admiral.common.util.UriUtilsExtended;
 import com.vmware.admiral.compute.container.ShellContainerExecutorService;
 import com.vmware.admiral.compute.container.ShellContainerExecutorService.ShellContainerExecutorState;
-import com.vmware.admiral.log.EventLogService;
+import com.vmware.admiral.log.EventLogIngestionService;
 import com.vmware.admiral.log.EventLogService.EventLogState;
 import com.vmware.admiral.log.EventLogService.EventLogState.EventLogType;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
@@ -105,7 +105,7 @@ public class AbstractCertificateDistributionService extends StatelessService {
         eventLog.resourceType = getClass().getName();
         eventLog.tenantLinks = tenantLinks;
 
-        sendRequest(Operation.createPost(this, EventLogService.FACTORY_LINK)
+        sendRequest(Operation.createPost(this, EventLogIngestionService.SELF_LINK)
                 .setBody(eventLog)
                 .setCompletion((o, e) -> {
                     if (e != null) {
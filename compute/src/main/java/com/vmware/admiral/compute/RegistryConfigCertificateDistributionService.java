@@ -20,6 +20,7 @@ import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryElementResult;
 import com.vmware.admiral.compute.ContainerHostService.ContainerHostType;
 import com.vmware.admiral.service.common.SslTrustCertificateService.SslTrustCertificateState;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
@@ -82,21 +83,25 @@ public class RegistryConfigCertificateDistributionService
         q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
         q.documentExpirationTimeMicros = ServiceDocumentQuery.getDefaultQueryExpiration();
 
-        List<String> hostLinks = new ArrayList<>();
+        // the certificate is uploaded to the hosts of a page while the next page is fetched
         ServiceDocumentQuery<ComputeState> query = new ServiceDocumentQuery<>(getHost(),
                 ComputeState.class);
-        query.query(q, (r) -> {
-            if (r.hasException()) {
+        query.queryPages(q, (page) -> {
+            if (page.hasException()) {
                 logWarning("Exception while retrieving docker host states. Error: %s",
-                        Utils.toString(r.getException()));
-            } else if (r.hasResult()) {
+                        Utils.toString(page.getException()));
+                return;
+            }
+
+            List<String> hostLinks = new ArrayList<>();
+            for (ServiceDocumentQueryElementResult<ComputeState> r : page.getResults()) {
                 hostLinks.add(r.getDocumentSelfLink());
-            } else {
-                logInfo("Retrieved hosts %s", hostLinks);
-                for (String hostLink : hostLinks) {
-                    uploadCertificate(hostLink, registryAddress, certificate, tenantLinks);
-                }
             }
+            logInfo("Retrieved hosts %s", hostLinks);
+            for (String hostLink : hostLinks) {
+                uploadCertificate(hostLink, registryAddress, certificate, tenantLinks);
+            }
+            page.requestNext();
         });
     }
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2016-2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static com.vmware.admiral.compute.ContainerHostService.NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Decides which container hosts take part in a periodic data collection and limits the number of
+ * host collections running at the same time. The decisions are based on in-memory statistics per
+ * host:
+ * <ul>
+ * <li>hosts failing in a row are backed off exponentially</li>
+ * <li>hosts without containers or without changes for several collections are collected less
+ * often</li>
+ * <li>hosts with recent provisioning are always collected and dispatched first</li>
+ * <li>hosts with a pending or in-flight collection are not collected again</li>
+ * </ul>
+ * The statistics are not replicated, so after restart or owner change all hosts are collected.
+ */
+public class ContainerHostDataCollectionScheduler {
+
+    public static final String STAT_NAME_DUE_HOSTS = "dcDueHosts";
+    public static final String STAT_NAME_SKIPPED_HOSTS = "dcSkippedHosts";
+    public static final String STAT_NAME_BACKED_OFF_HOSTS = "dcBackedOffHosts";
+    public static final String STAT_NAME_STABLE_HOSTS = "dcStableHosts";
+    public static final String STAT_NAME_PRIORITY_HOSTS = "dcPriorityHosts";
+    public static final String STAT_NAME_IN_FLIGHT = "dcInFlight";
+    public static final String STAT_NAME_PENDING = "dcPending";
+    public static final String STAT_NAME_DEFERRED_TOTAL = "dcDeferredTotal";
+    public static final String STAT_NAME_EXPIRED_TOTAL = "dcExpiredTotal";
+    public static final String STAT_NAME_AVERAGE_LATENCY_MICROS = "dcAverageLatencyMicros";
+
+    private static final int MAX_IN_FLIGHT = Integer.getInteger(
+            "com.vmware.admiral.compute.container.host.dc.max.in.flight", 50);
+    // the list collections of a host hold its slot too, so the default matches their lock timeout
+    private static final long IN_FLIGHT_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.in.flight.timeout.micros",
+            TimeUnit.MINUTES.toMicros(5));
+    private static final long MAX_BACKOFF_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.max.backoff.micros",
+            TimeUnit.HOURS.toMicros(1));
+    // number of collections without changes after which the interval of a host is extended
+    private static final int STABLE_COLLECTIONS_THRESHOLD = Integer.getInteger(
+            "com.vmware.admiral.compute.container.host.dc.stable.threshold", 3);
+    private static final int MAX_STABLE_INTERVAL_MULTIPLIER = Integer.getInteger(
+            "com.vmware.admiral.compute.container.host.dc.stable.max.multiplier", 4);
+    private static final long PRIORITY_PERIOD_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.priority.period.micros",
+            TimeUnit.MINUTES.toMicros(15));
+    // weight of the last sample in the latency moving average
+    private static final double LATENCY_SMOOTHING_FACTOR = 0.3d;
+
+    static class HostCollectionStats {
+        long lastCollectionMicros;
+        long latencyMicros;
+        int failureStreak;
+        int unchangedStreak;
+        String lastContainersCount;
+        long priorityUntilMicros;
+    }
+
+    private static class InFlightCollection {
+        final String hostLink;
+        final long startMicros;
+
+        InFlightCollection(String hostLink, long startMicros) {
+            this.hostLink = hostLink;
+            this.startMicros = startMicros;
+        }
+    }
+
+    private static class PendingCollection {
+        final String hostLink;
+        final LongConsumer collection;
+
+        PendingCollection(String hostLink, LongConsumer collection) {
+            this.hostLink = hostLink;
+            this.collection = collection;
+        }
+    }
+
+    private final long intervalMicros;
+    private final int maxInFlight;
+    private final Map<String, HostCollectionStats> statsByHost = new HashMap<>();
+    private final Map<Long, InFlightCollection> inFlight = new HashMap<>();
+    private final Deque<PendingCollection> pending = new ArrayDeque<>();
+    // hosts with a pending or in-flight collection
+    private final Set<String> scheduledHosts = new HashSet<>();
+    private long nextCollectionId;
+    private long deferredTotal;
+    private long expiredTotal;
+    private int lastDueHosts;
+    private int lastSkippedHosts;
+
+    public ContainerHostDataCollectionScheduler(long intervalMicros) {
+        this(intervalMicros, MAX_IN_FLIGHT);
+    }
+
+    public ContainerHostDataCollectionScheduler(long intervalMicros, int maxInFlight) {
+        this.intervalMicros = intervalMicros;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Marks the host for a prioritized collection, e.g. after provisioning on it.
+     */
+    public synchronized void markPriority(String hostLink, long nowMicros) {
+        HostCollectionStats stats = getOrCreateStats(hostLink);
+        stats.priorityUntilMicros = nowMicros + PRIORITY_PERIOD_MICROS;
+        stats.unchangedStreak = 0;
+    }
+
+    public synchronized boolean hasPriority(String hostLink, long nowMicros) {
+        HostCollectionStats stats = statsByHost.get(hostLink);
+        return stats != null && stats.priorityUntilMicros > nowMicros;
+    }
+
+    /**
+     * Starts a new periodic round. The due and skipped hosts counters are reset.
+     */
+    public synchronized void startRound() {
+        lastDueHosts = 0;
+        lastSkippedHosts = 0;
+    }
+
+    /**
+     * Returns whether the host should be collected in the current periodic round.
+     */
+    public synchronized boolean isDue(ComputeState host, long nowMicros) {
+        if (scheduledHosts.contains(host.documentSelfLink)) {
+            lastSkippedHosts++;
+            return false;
+        }
+
+        HostCollectionStats stats = getOrCreateStats(host.documentSelfLink);
+
+        String containersCount = host.customProperties == null ? null
+                : host.customProperties.get(NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME);
+        if (!Objects.equals(containersCount, stats.lastContainersCount)) {
+            stats.lastContainersCount = containersCount;
+            stats.unchangedStreak = 0;
+        }
+
+        boolean due = stats.lastCollectionMicros == 0
+                || stats.priorityUntilMicros > nowMicros
+                || nowMicros - stats.lastCollectionMicros + intervalMicros / 10
+                        >= getCollectionInterval(stats);
+        if (due) {
+            lastDueHosts++;
+        } else {
+            lastSkippedHosts++;
+        }
+        return due;
+    }
+
+    /**
+     * Runs the collection if the in-flight limit allows it or queues it otherwise. Prioritized
+     * collections are queued in front of the others. The collection is given an id which must be
+     * passed to {@link #onCollectionCompleted(long, boolean)} when done, otherwise the slot is
+     * released after a timeout. The collection is dropped if the host already has a pending or
+     * in-flight one, a pending one is moved in front when prioritized.
+     */
+    public void submit(String hostLink, boolean priority, LongConsumer collection) {
+        synchronized (this) {
+            if (!scheduledHosts.add(hostLink)) {
+                if (priority) {
+                    prioritizePending(hostLink);
+                }
+                return;
+            }
+            PendingCollection c = new PendingCollection(hostLink, collection);
+            if (priority) {
+                pending.addFirst(c);
+            } else {
+                pending.addLast(c);
+            }
+            if (pending.size() > 1 || inFlight.size() >= maxInFlight) {
+                deferredTotal++;
+            }
+        }
+        runPending();
+    }
+
+    /**
+     * Registers the completion of a host collection and runs the pending collections which fit
+     * in the freed slots.
+     */
+    public void onCollectionCompleted(long collectionId, boolean success) {
+        synchronized (this) {
+            InFlightCollection c = inFlight.remove(collectionId);
+            if (c != null) {
+                scheduledHosts.remove(c.hostLink);
+                HostCollectionStats stats = getOrCreateStats(c.hostLink);
+                long latency = Utils.getSystemNowMicrosUtc() - c.startMicros;
+                stats.latencyMicros = stats.latencyMicros == 0 ? latency
+                        : (long) (LATENCY_SMOOTHING_FACTOR * latency
+                                + (1 - LATENCY_SMOOTHING_FACTOR) * stats.latencyMicros);
+                if (success) {
+                    stats.failureStreak = 0;
+                    stats.unchangedStreak++;
+                } else {
+                    stats.failureStreak++;
+                    stats.unchangedStreak = 0;
+                }
+            }
+        }
+        runPending();
+    }
+
+    /**
+     * Drops the statistics of hosts which are not container hosts anymore.
+     */
+    public synchronized void retainHosts(Collection<String> hostLinks) {
+        statsByHost.keySet().retainAll(hostLinks);
+    }
+
+    public synchronized Map<String, Double> getStats(long nowMicros) {
+        int backedOff = 0;
+        int stable = 0;
+        int priority = 0;
+        long latencySum = 0;
+        int latencyCount = 0;
+        for (HostCollectionStats stats : statsByHost.values()) {
+            if (stats.failureStreak > 0) {
+                backedOff++;
+            } else if (getCollectionInterval(stats) > intervalMicros) {
+                stable++;
+            }
+            if (stats.priorityUntilMicros > nowMicros) {
+                priority++;
+            }
+            if (stats.latencyMicros > 0) {
+                latencySum += stats.latencyMicros;
+                latencyCount++;
+            }
+        }
+
+        Map<String, Double> result = new HashMap<>();
+        result.put(STAT_NAME_DUE_HOSTS, (double) lastDueHosts);
+        result.put(STAT_NAME_SKIPPED_HOSTS, (double) lastSkippedHosts);
+        result.put(STAT_NAME_BACKED_OFF_HOSTS, (double) backedOff);
+        result.put(STAT_NAME_STABLE_HOSTS, (double) stable);
+        result.put(STAT_NAME_PRIORITY_HOSTS, (double) priority);
+        result.put(STAT_NAME_IN_FLIGHT, (double) inFlight.size());
+        result.put(STAT_NAME_PENDING, (double) pending.size());
+        result.put(STAT_NAME_DEFERRED_TOTAL, (double) deferredTotal);
+        result.put(STAT_NAME_EXPIRED_TOTAL, (double) expiredTotal);
+        result.put(STAT_NAME_AVERAGE_LATENCY_MICROS,
+                latencyCount == 0 ? 0d : (double) latencySum / latencyCount);
+        return result;
+    }
+
+    long getCollectionInterval(HostCollectionStats stats) {
+        if (stats.failureStreak > 0) {
+            // base interval for the first failure, doubled for every next one
+            int shift = Math.min(stats.failureStreak - 1, 20);
+            return Math.min(intervalMicros << shift, Math.max(MAX_BACKOFF_MICROS, intervalMicros));
+        }
+        if ("0".equals(stats.lastContainersCount)) {
+            // idle host
+            return intervalMicros * MAX_STABLE_INTERVAL_MULTIPLIER;
+        }
+        int multiplier = Math.min(1 + stats.unchangedStreak / STABLE_COLLECTIONS_THRESHOLD,
+                MAX_STABLE_INTERVAL_MULTIPLIER);
+        return intervalMicros * multiplier;
+    }
+
+    synchronized HostCollectionStats getHostStats(String hostLink) {
+        return statsByHost.get(hostLink);
+    }
+
+    private void prioritizePending(String hostLink) {
+        Iterator<PendingCollection> it = pending.iterator();
+        while (it.hasNext()) {
+            PendingCollection c = it.next();
+            if (c.hostLink.equals(hostLink)) {
+                it.remove();
+                pending.addFirst(c);
+                return;
+            }
+        }
+    }
+
+    private void runPending() {
+        while (true) {
+            PendingCollection toRun;
+            long collectionId;
+            synchronized (this) {
+                long now = Utils.getSystemNowMicrosUtc();
+                expireInFlight(now);
+                if (inFlight.size() >= maxInFlight || pending.isEmpty()) {
+                    return;
+                }
+                toRun = pending.pollFirst();
+                getOrCreateStats(toRun.hostLink).lastCollectionMicros = now;
+                collectionId = ++nextCollectionId;
+                inFlight.put(collectionId, new InFlightCollection(toRun.hostLink, now));
+            }
+            toRun.collection.accept(collectionId);
+        }
+    }
+
+    private void expireInFlight(long nowMicros) {
+        Iterator<Entry<Long, InFlightCollection>> it = inFlight.entrySet().iterator();
+        while (it.hasNext()) {
+            InFlightCollection c = it.next().getValue();
+            if (nowMicros - c.startMicros > IN_FLIGHT_TIMEOUT_MICROS) {
+                it.remove();
+                scheduledHosts.remove(c.hostLink);
+                expiredTotal++;
+                HostCollectionStats stats = statsByHost.get(c.hostLink);
+                if (stats != null) {
+                    stats.failureStreak++;
+                    stats.unchangedStreak = 0;
+                }
+            }
+        }
+    }
+
+    private HostCollectionStats getOrCreateStats(String hostLink) {
+        return statsByHost.computeIfAbsent(hostLink, k -> new HostCollectionStats());
+    }
+}
@@ -57,7 +57,7 @@ import com.vmware.admiral.compute.container.HostNetworkListDataCollection.Networ
 import com.vmware.admiral.compute.container.HostVolumeListDataCollection.VolumeListCallback;
 import com.vmware.admiral.compute.kubernetes.KubernetesEntityDataCollection;
 import com.vmware.admiral.compute.kubernetes.KubernetesEntityDataCollection.EntityListCallback;
-import com.vmware.admiral.log.EventLogService;
+import com.vmware.admiral.log.EventLogIngestionService;
 import com.vmware.admiral.log.EventLogService.EventLogState;
 import com.vmware.admiral.log.EventLogService.EventLogState.EventLogType;
 import com.vmware.admiral.service.common.AbstractCallbackServiceHandler;
@@ -115,6 +115,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
     protected volatile AtomicBoolean scheduled = new AtomicBoolean(false);
     protected long maintenanceIntervalInitial = TimeUnit.SECONDS.toMicros(90);
 
+    private final ContainerHostDataCollectionScheduler scheduler =
+            new ContainerHostDataCollectionScheduler(MAINTENANCE_INTERVAL_MICROS);
+
     public static ServiceDocument buildDefaultStateInstance() {
         ContainerHostDataCollectionState state = new ContainerHostDataCollectionState();
         state.documentSelfLink = HOST_INFO_DATA_COLLECTION_LINK;
@@ -212,7 +215,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
             }
 
             state.lastRunTimeMicros = now;
-            updateHostInfoDataCollection(patch);
+            updateHostInfoDataCollection(patch, false);
         } else {
             if (shouldSkipDC(body)
                     && !DeploymentProfileConfig.getInstance().isTest()) {
@@ -232,6 +235,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 }
                 patch.complete();
 
+                long now = Utils.getSystemNowMicrosUtc();
                 for (ComputeState computeState : qr.computesByLink.values()) {
                     if (LifecycleState.SUSPEND == computeState.lifecycleState) {
                         logInfo("Skipping data collection for host %s as it is marked for removal",
@@ -240,33 +244,14 @@ public class ContainerHostDataCollectionService extends StatefulService {
                     }
 
                     if (!body.remove) {
-                        // if we're adding a host we need to wait for the host info to be populated
-                        // first
-                        updateContainerHostInfo(computeState, (o, error) -> {
-                            if (error != null) {
-                                handleHostNotAvailable(computeState, error);
-                                if (!scheduled.getAndSet(true)) {
-                                    scheduleDataCollection();
-                                }
-                            } else {
-                                handleHostAvailable(computeState);
-                                // TODO multiple operations in parallel for the same RP;
-                                // needs to be reworked
-                                updateResourcePool(computeState,
-                                        qr.rpLinksByComputeLink.get(computeState.documentSelfLink),
-                                        body.remove);
-                                if (ContainerHostUtil.isKubernetesHost(computeState)) {
-                                    updateKubernetesEntities(computeState.documentSelfLink);
-                                } else {
-                                    // These can be changed back to accepting only the self link
-                                    // because the adapter can only be docker.
-                                    updateContainerHostContainers(computeState);
-                                    updateContainerHostNetworks(computeState);
-                                    updateContainerHostVolumes(computeState.documentSelfLink);
-                                }
-                                updateHostStats(computeState);
-                            }
-                        }, null);
+                        // on demand collections follow provisioning or host changes, so the host
+                        // is collected with priority in the next periodic runs too
+                        scheduler.markPriority(computeState.documentSelfLink, now);
+                        Collection<String> rpLinks = qr.rpLinksByComputeLink
+                                .get(computeState.documentSelfLink);
+                        scheduler.submit(computeState.documentSelfLink, true,
+                                collectionId -> updateContainerHostOnDemand(computeState,
+                                        collectionId, rpLinks));
                     } else {
                         // TODO multiple operations in parallel for the same RP;
                         // needs to be reworked
@@ -275,11 +260,36 @@ public class ContainerHostDataCollectionService extends StatefulService {
                                 body.remove);
                     }
                 }
+                publishSchedulerStats();
             });
 
         }
     }
 
+    private void updateContainerHostOnDemand(ComputeState computeState, long collectionId,
+            Collection<String> rpLinks) {
+        // if we're adding a host we need to wait for the host info to be populated
+        // first
+        HostCollection collection = new HostCollection(collectionId);
+        updateContainerHostInfo(computeState, (o, error) -> {
+            if (error != null) {
+                collection.completeHostInfo(false);
+                handleHostNotAvailable(computeState, error);
+                if (!scheduled.getAndSet(true)) {
+                    scheduleDataCollection();
+                }
+            } else {
+                handleHostAvailable(computeState);
+                // TODO multiple operations in parallel for the same RP;
+                // needs to be reworked
+                updateResourcePool(computeState, rpLinks, false);
+                updateHostEntities(computeState, collection);
+                updateHostStats(computeState);
+                collection.completeHostInfo(true);
+            }
+        }, null);
+    }
+
     private boolean shouldSkipDC(ContainerHostDataCollectionState body) {
         if (body.createOrUpdateHost) {
             return false;
@@ -346,7 +356,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
                         logWarning("Error while patching computeState: %s", e);
                         return;
                     }
-                    sendRequest(Operation.createPost(getHost(), EventLogService.FACTORY_LINK)
+                    sendRequest(Operation.createPost(getHost(), EventLogIngestionService.SELF_LINK)
                             .setBodyNoCloning(eventLog)
                             .setCompletion((op, ex) -> {
                                 if (ex != null) {
@@ -407,7 +417,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 return;
             }
 
-            sendRequest(Operation.createPost(getHost(), EventLogService.FACTORY_LINK)
+            sendRequest(Operation.createPost(getHost(), EventLogIngestionService.SELF_LINK)
                     .setBodyNoCloning(eventLog)
                     .setCompletion((op, ex) -> {
                         if (ex != null) {
@@ -668,7 +678,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
         }
 
         logFine("Performing maintenance for: %s", getUri());
-        updateHostInfoDataCollection(post);
+        updateHostInfoDataCollection(post, true);
     }
 
     /**
@@ -680,7 +690,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
     private void scheduleDataCollection() {
         getHost().schedule(() -> {
             try {
-                updateHostInfoDataCollection(Operation.createGet(null));
+                updateHostInfoDataCollection(Operation.createGet(null), false);
             } catch (Exception e) {
                 getHost().log(Level.WARNING, e.getMessage());
                 getHost().log(Level.FINE, Utils.toString(e));
@@ -690,7 +700,11 @@ public class ContainerHostDataCollectionService extends StatefulService {
         }, maintenanceIntervalInitial, TimeUnit.MICROSECONDS);
     }
 
-    private void updateHostInfoDataCollection(Operation maintOp) {
+    /**
+     * Collects the info of all container hosts. When adaptive, only the hosts which are due
+     * according to the {@link ContainerHostDataCollectionScheduler} are collected.
+     */
+    private void updateHostInfoDataCollection(Operation maintOp, boolean adaptive) {
         List<String> descriptionLinks = new ArrayList<>();
         QueryTask q = createDockerComputeDescriptionQuery();
         ServiceDocumentQuery<ComputeDescription> query = new ServiceDocumentQuery<>(getHost(),
@@ -710,13 +724,13 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 descriptionLinks.add(r.getDocumentSelfLink());
                 maintOp.complete();
             } else {
-                findAllContainerHosts(descriptionLinks, maintOp);
+                findAllContainerHosts(descriptionLinks, maintOp, adaptive);
             }
         });
     }
 
     private void findAllContainerHosts(Collection<String> computeDescriptionLinks,
-            Operation maintOp) {
+            Operation maintOp, boolean adaptive) {
         if (computeDescriptionLinks == null || computeDescriptionLinks.isEmpty()) {
             logFine("No docker host descriptions.");
             maintOp.complete();
@@ -728,6 +742,8 @@ public class ContainerHostDataCollectionService extends StatefulService {
             return;
         }
 
+        // not streamed with ServiceDocumentQuery.queryPages: the hosts are needed all together,
+        // grouped by resource pool, to select the due ones and to update the pool capacities
         ResourcePoolQueryHelper rpHelper = ResourcePoolQueryHelper.create(getHost());
         rpHelper.setExpandComputes(true);
         rpHelper.setAdditionalQueryClausesProvider(qb -> {
@@ -748,6 +764,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
             maintOp.complete();
             List<ComputeState> computeList = new ArrayList<ComputeState>(
                     qr.computesByLink.values());
+            if (adaptive) {
+                computeList = selectDueContainerHosts(computeList);
+            }
             final AtomicInteger counter = new AtomicInteger();
             Iterables.partition(computeList, DC_BATCH_SIZE)
                     .forEach(list -> getHost().schedule(() -> {
@@ -762,7 +781,31 @@ public class ContainerHostDataCollectionService extends StatefulService {
         });
     }
 
+    private List<ComputeState> selectDueContainerHosts(List<ComputeState> computeList) {
+        long now = Utils.getSystemNowMicrosUtc();
+        scheduler.retainHosts(computeList.stream()
+                .map(cs -> cs.documentSelfLink)
+                .collect(Collectors.toSet()));
+        scheduler.startRound();
+        List<ComputeState> dueList = computeList.stream()
+                .filter(cs -> scheduler.isDue(cs, now))
+                .sorted(Comparator.comparing(
+                        (ComputeState cs) -> !scheduler.hasPriority(cs.documentSelfLink, now)))
+                .collect(Collectors.toList());
+        logFine("Collecting %d of %d container hosts", dueList.size(), computeList.size());
+        publishSchedulerStats();
+        return dueList;
+    }
+
+    private void publishSchedulerStats() {
+        for (Map.Entry<String, Double> stat : scheduler
+                .getStats(Utils.getSystemNowMicrosUtc()).entrySet()) {
+            setStat(stat.getKey(), stat.getValue());
+        }
+    }
+
     private void updateContainerHosts(List<ComputeState> hosts) {
+        long now = Utils.getSystemNowMicrosUtc();
         for (ComputeState compute : hosts) {
             if (LifecycleState.SUSPEND == compute.lifecycleState) {
                 logInfo("Skipping data collection for host %s as it is marked for removal.",
@@ -770,22 +813,73 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 continue;
             }
 
-            updateContainerHostInfo(compute, (o, error) -> {
-                if (error != null) {
-                    handleHostNotAvailable(compute, error);
-                } else {
-                    handleHostAvailable(compute);
-                }
-            }, null);
-
-            if (PowerState.ON == compute.powerState) {
-                if (ContainerHostUtil.isKubernetesHost(compute)) {
-                    updateKubernetesEntities(compute.documentSelfLink);
-                } else {
-                    updateContainerHostContainers(compute);
-                    updateContainerHostNetworks(compute);
-                    updateContainerHostVolumes(compute.documentSelfLink);
-                }
+            scheduler.submit(compute.documentSelfLink,
+                    scheduler.hasPriority(compute.documentSelfLink, now),
+                    collectionId -> updateContainerHost(compute, collectionId));
+        }
+    }
+
+    private void updateContainerHost(ComputeState compute, long collectionId) {
+        HostCollection collection = new HostCollection(collectionId);
+        // the list collections are registered first, the host info may complete right away
+        if (PowerState.ON == compute.powerState) {
+            updateHostEntities(compute, collection);
+        }
+
+        updateContainerHostInfo(compute, (o, error) -> {
+            collection.completeHostInfo(error == null);
+            if (error != null) {
+                handleHostNotAvailable(compute, error);
+            } else {
+                handleHostAvailable(compute);
+            }
+        }, null);
+    }
+
+    /**
+     * Starts the list data collections of the host. The in-flight slot of the host collection is
+     * held until they are all done.
+     */
+    private void updateHostEntities(ComputeState compute, HostCollection collection) {
+        if (ContainerHostUtil.isKubernetesHost(compute)) {
+            collection.expect(1);
+            updateKubernetesEntities(compute.documentSelfLink, collection::complete);
+        } else {
+            // These can be changed back to accepting only the self link
+            // because the adapter can only be docker.
+            collection.expect(3);
+            updateContainerHostContainers(compute, collection::complete);
+            updateContainerHostNetworks(compute, collection::complete);
+            updateContainerHostVolumes(compute.documentSelfLink, collection::complete);
+        }
+    }
+
+    /**
+     * The in-flight slot of a host collection in the {@link ContainerHostDataCollectionScheduler}.
+     * It is released when the host info and all the list collections of the host are done.
+     */
+    private class HostCollection {
+        private final long collectionId;
+        // the host info until the list collections are expected
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean hostInfoFailed;
+
+        HostCollection(long collectionId) {
+            this.collectionId = collectionId;
+        }
+
+        void expect(int count) {
+            pending.addAndGet(count);
+        }
+
+        void completeHostInfo(boolean success) {
+            hostInfoFailed = !success;
+            complete();
+        }
+
+        void complete() {
+            if (pending.decrementAndGet() == 0) {
+                scheduler.onCollectionCompleted(collectionId, !hostInfoFailed);
             }
         }
     }
@@ -834,6 +928,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
             // trigger an update to set it expecting the next SSL certificate refresh to load it.
             // In case of test we do nothing since it won't be set anyway.
             forceTrustAliasUpdate(computeState);
+            consumer.accept(null, Utils.toServiceErrorResponse(new IllegalStateException(
+                    String.format("Trust alias of host %s is missing, host info is not collected",
+                            computeState.documentSelfLink))));
             return;
         }
 
@@ -848,6 +945,7 @@ public class ContainerHostDataCollectionService extends StatefulService {
                         .setCompletion((op, ex) -> {
                             if (ex != null) {
                                 logSevere(ex);
+                                consumer.accept(null, Utils.toServiceErrorResponse(ex));
                             } else {
                                 updateContainerHostInfo(computeState, consumer, serviceTaskCallback);
                             }
@@ -874,6 +972,8 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 .setBodyNoCloning(request)
                 .setCompletion((o, ex) -> {
                     if (ex != null) {
+                        // the adapter won't call back, release the callback handler
+                        failCallback(serviceTaskCallback, ex);
                         if (ex instanceof ConnectException) {
                             // Change adapter reference. Needed in cluster if the node that the
                             // reference point to is down
@@ -898,75 +998,84 @@ public class ContainerHostDataCollectionService extends StatefulService {
                             }
                         } else {
                             logWarning("Failed request host info: %s", Utils.toString(ex));
-                            return;
                         }
                     }
                 }));
     }
 
-    private void updateKubernetesEntities(String documentSelfLink) {
-        EntityListCallback body = new EntityListCallback();
-        body.computeHostLink = documentSelfLink;
+    private void failCallback(ServiceTaskCallback callback, Throwable ex) {
+        if (callback.isEmpty()) {
+            return;
+        }
+        sendRequest(Operation
+                .createPatch(URI.create(callback.serviceSelfLink))
+                .setBodyNoCloning(callback.getFailedResponse(ex))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failed to fail callback %s: %s", callback.serviceSelfLink,
+                                Utils.toString(e));
+                    }
+                }));
+    }
+
+    /**
+     * Starts a list data collection of the host and calls <code>onCompleted</code> when it is
+     * done, skipped or failed.
+     */
+    private void startListDataCollection(String dataCollectionLink, Object body,
+            Consumer<ServiceTaskCallback> callbackSetter, String name, Runnable onCompleted) {
+        ServiceTaskCallback callback = HostDataCollectionCompletionService.register(getHost(),
+                onCompleted);
+        callbackSetter.accept(callback);
         sendRequest(Operation
-                .createPatch(this, KubernetesEntityDataCollection
-                        .DEFAULT_KUBERNETES_ENTITY_DATA_COLLECTION_LINK)
+                .createPatch(this, dataCollectionLink)
                 .setBodyNoCloning(body)
                 .setCompletion((o, ex) -> {
                     if (ex != null) {
-                        logWarning("Failed request kubernetes dc: %s", Utils.toString(ex));
-                        return;
+                        logWarning("Failed request %s dc: %s", name, Utils.toString(ex));
+                        HostDataCollectionCompletionService.complete(getHost(), callback);
                     }
                 }));
     }
 
-    private void updateContainerHostContainers(ComputeState cs) {
+    private void updateKubernetesEntities(String documentSelfLink, Runnable onCompleted) {
+        EntityListCallback body = new EntityListCallback();
+        body.computeHostLink = documentSelfLink;
+        startListDataCollection(
+                KubernetesEntityDataCollection.DEFAULT_KUBERNETES_ENTITY_DATA_COLLECTION_LINK,
+                body, callback -> body.dataCollectionCallback = callback, "kubernetes",
+                onCompleted);
+    }
+
+    private void updateContainerHostContainers(ComputeState cs, Runnable onCompleted) {
         ContainerListCallback body = new ContainerListCallback();
         body.containerHostLink = cs.documentSelfLink;
         body.hostAdapterReference = cs.endpointLink == null ? cs.adapterManagementReference
                 : getDefaultHostAdapter(getHost());
-        sendRequest(Operation
-                .createPatch(this, HostContainerListDataCollection
-                        .DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK)
-                .setBodyNoCloning(body)
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        logWarning("Failed request host container list dc: %s", Utils.toString(ex));
-                        return;
-                    }
-                }));
+        startListDataCollection(
+                HostContainerListDataCollection.getDataCollectionLink(cs.documentSelfLink),
+                body, callback -> body.dataCollectionCallback = callback, "host container list",
+                onCompleted);
     }
 
-    private void updateContainerHostNetworks(ComputeState cs) {
+    private void updateContainerHostNetworks(ComputeState cs, Runnable onCompleted) {
         NetworkListCallback body = new NetworkListCallback();
         body.containerHostLink = cs.documentSelfLink;
         body.hostAdapterReference = cs.endpointLink == null ? cs.adapterManagementReference
                 : getDefaultHostAdapter(getHost());
-        sendRequest(Operation
-                .createPatch(this, HostNetworkListDataCollection
-                        .DEFAULT_HOST_NETWORK_LIST_DATA_COLLECTION_LINK)
-                .setBodyNoCloning(body)
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        logWarning("Failed request host networks dc: %s", Utils.toString(ex));
-                        return;
-                    }
-                }));
+        startListDataCollection(
+                HostNetworkListDataCollection.DEFAULT_HOST_NETWORK_LIST_DATA_COLLECTION_LINK,
+                body, callback -> body.dataCollectionCallback = callback, "host networks",
+                onCompleted);
     }
 
-    private void updateContainerHostVolumes(String documentSelfLink) {
+    private void updateContainerHostVolumes(String documentSelfLink, Runnable onCompleted) {
         VolumeListCallback body = new VolumeListCallback();
         body.containerHostLink = documentSelfLink;
-        sendRequest(Operation
-                .createPatch(
-                        this,
-                        HostVolumeListDataCollection.DEFAULT_HOST_VOLUME_LIST_DATA_COLLECTION_LINK)
-                .setBodyNoCloning(body)
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        logWarning("Failed request host volumes dc: %s", Utils.toString(ex));
-                        return;
-                    }
-                }));
+        startListDataCollection(
+                HostVolumeListDataCollection.DEFAULT_HOST_VOLUME_LIST_DATA_COLLECTION_LINK,
+                body, callback -> body.dataCollectionCallback = callback, "host volumes",
+                onCompleted);
     }
 
     private void startAndCreateCallbackHandlerService(
@@ -988,9 +1097,10 @@ public class ContainerHostDataCollectionService extends StatefulService {
                     if (e != null) {
                         logWarning("Failure creating callback handler. Error %s",
                                 Utils.toString(e));
+                        actualCallback.accept(null, Utils.toServiceErrorResponse(e));
                         return;
                     }
-                    logInfo("Callback task created with uri: %s, %s", callbackUri, o.getUri());
+                    logFine("Callback task created with uri: %s, %s", callbackUri, o.getUri());
                     caller.accept(ServiceTaskCallback.create(callbackUri.toString()));
                 });
 
@@ -1017,11 +1127,12 @@ public class ContainerHostDataCollectionService extends StatefulService {
             if (err != null && err.stackTrace != null) {
                 logFine("Task failure stack trace: %s", err.stackTrace);
                 logWarning("Task failure error message: %s", err.message);
-                consumer.accept(state, err);
+            }
+            consumer.accept(state, err != null ? err : Utils.toServiceErrorResponse(
+                    new IllegalStateException("Failed updating host info")));
 
-                if (completionCallback != null) {
-                    completionCallback.run();
-                }
+            if (completionCallback != null) {
+                completionCallback.run();
             }
         }
 
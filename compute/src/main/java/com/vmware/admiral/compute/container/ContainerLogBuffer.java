@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vmware.admiral.compute.container.ContainerLogStreamService.ContainerLogChunk;
+
+/**
+ * Bounded in-memory tail of the log of a container. The bytes are kept in a ring and are
+ * addressed by their offset from the beginning of the stream, so a client can ask for everything
+ * after the last offset it has read. When the ring is full the oldest bytes are overwritten and a
+ * read from an overwritten offset continues from the oldest byte still held.
+ * <p>
+ * The buffer is local to the node, so the offsets are only valid on the node which returned them.
+ * Another node, or the same one after the buffer was evicted, starts a new stream from offset 0.
+ */
+class ContainerLogBuffer {
+    private static final byte NEW_LINE = '\n';
+
+    private final byte[] data;
+
+    /** The offset after the last appended byte */
+    private long endOffset;
+
+    /** The timestamp of the last appended log line */
+    private Instant lastTimestamp;
+
+    /** The number of appended log lines with the last timestamp */
+    private int lastTimestampLines;
+
+    private long lastFetchMicros;
+    private long lastSuccessfulFetchMicros;
+    private long lastAccessMicros;
+    private List<Runnable> pendingFetchCallbacks;
+
+    ContainerLogBuffer(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * Appends the lines of a log fetched with timestamps. The lines older than the last appended
+     * one are skipped, so overlapping fetches don't duplicate lines, and the timestamps are
+     * removed. A fetch returns all the lines with the last timestamp again, so as many of them as
+     * were already appended are skipped and the rest are new.
+     */
+    synchronized void appendTimestampedLines(byte[] log) {
+        int skippedLastTimestampLines = 0;
+        int lineStart = 0;
+        while (lineStart < log.length) {
+            int lineEnd = indexOf(log, NEW_LINE, lineStart, log.length);
+            int next = lineEnd < 0 ? log.length : lineEnd + 1;
+
+            int separator = indexOf(log, (byte) ' ', lineStart, next);
+            Instant timestamp = null;
+            if (separator > lineStart) {
+                timestamp = parseTimestamp(new String(log, lineStart, separator - lineStart,
+                        StandardCharsets.US_ASCII));
+            }
+
+            if (timestamp == null) {
+                append(log, lineStart, next - lineStart);
+            } else if (lastTimestamp == null || timestamp.isAfter(lastTimestamp)) {
+                lastTimestamp = timestamp;
+                lastTimestampLines = 1;
+                append(log, separator + 1, next - separator - 1);
+            } else if (timestamp.equals(lastTimestamp)) {
+                if (skippedLastTimestampLines < lastTimestampLines) {
+                    skippedLastTimestampLines++;
+                } else {
+                    lastTimestampLines++;
+                    append(log, separator + 1, next - separator - 1);
+                }
+            }
+            lineStart = next;
+        }
+    }
+
+    synchronized void append(byte[] bytes, int offset, int length) {
+        if (length > data.length) {
+            // only the tail fits in the ring
+            offset += length - data.length;
+            endOffset += length - data.length;
+            length = data.length;
+        }
+
+        int position = (int) (endOffset % data.length);
+        int firstPart = Math.min(length, data.length - position);
+        System.arraycopy(bytes, offset, data, position, firstPart);
+        System.arraycopy(bytes, offset + firstPart, data, 0, length - firstPart);
+        endOffset += length;
+    }
+
+    /**
+     * Reads up to the given number of bytes after the given offset.
+     */
+    synchronized ContainerLogChunk read(long fromOffset, int maxBytes) {
+        long startOffset = Math.max(0, endOffset - data.length);
+
+        ContainerLogChunk chunk = new ContainerLogChunk();
+        chunk.truncated = fromOffset < startOffset;
+        chunk.offset = Math.min(Math.max(fromOffset, startOffset), endOffset);
+        int length = (int) Math.min(endOffset - chunk.offset, maxBytes);
+        chunk.logs = new byte[length];
+
+        int position = (int) (chunk.offset % data.length);
+        int firstPart = Math.min(length, data.length - position);
+        System.arraycopy(data, position, chunk.logs, 0, firstPart);
+        System.arraycopy(data, 0, chunk.logs, firstPart, length - firstPart);
+        chunk.nextOffset = chunk.offset + length;
+        return chunk;
+    }
+
+    synchronized Instant getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    synchronized long getLastFetchMicros() {
+        return lastFetchMicros;
+    }
+
+    synchronized long getLastSuccessfulFetchMicros() {
+        return lastSuccessfulFetchMicros;
+    }
+
+    synchronized long getLastAccessMicros() {
+        return lastAccessMicros;
+    }
+
+    synchronized void setLastAccessMicros(long lastAccessMicros) {
+        this.lastAccessMicros = lastAccessMicros;
+    }
+
+    /**
+     * Registers a callback for the end of a fetch of new logs. Returns {@code true} if the caller
+     * should do the fetch, or {@code false} if a fetch is already in progress and the callback will
+     * be called when it completes.
+     */
+    synchronized boolean startFetch(Runnable callback) {
+        boolean inProgress = pendingFetchCallbacks != null;
+        if (!inProgress) {
+            pendingFetchCallbacks = new ArrayList<>();
+        }
+        pendingFetchCallbacks.add(callback);
+        return !inProgress;
+    }
+
+    /**
+     * Marks the end of a fetch and returns the callbacks waiting for it.
+     */
+    synchronized List<Runnable> completeFetch(long fetchMicros, boolean succeeded) {
+        List<Runnable> callbacks = pendingFetchCallbacks;
+        pendingFetchCallbacks = null;
+        lastFetchMicros = fetchMicros;
+        if (succeeded) {
+            lastSuccessfulFetchMicros = fetchMicros;
+        }
+        return callbacks;
+    }
+
+    private static Instant parseTimestamp(String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.adapter.common.AdapterRequest;
+import com.vmware.admiral.adapter.common.ContainerOperationType;
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.service.common.ServiceTaskCallback;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Serves the tail of the container logs incrementally. The logs of every container are kept in a
+ * bounded {@link ContainerLogBuffer} on the current node and a client asks for the logs after the
+ * last offset it has read. Only the lines after the last fetched one are requested from the
+ * adapter, using the Docker "since" parameter, and the logs are not persisted.
+ * <p>
+ * The offsets are local to the node which served them, every node fills its own buffer from the
+ * time it was first asked for the logs. A client should keep reading from the same node, an offset
+ * sent to another node reads that node's buffer and may skip or repeat logs.
+ */
+public class ContainerLogStreamService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.CONTAINER_LOG_STREAM;
+    public static final String CONTAINER_ID_QUERY_PARAM = "id";
+    public static final String OFFSET_QUERY_PARAM = "offset";
+
+    /**
+     * Adapter request property to return the demultiplexed logs in the response instead of
+     * persisting them in a log document.
+     */
+    public static final String LOG_STREAM_PROP_NAME = "__logStream";
+
+    private static final String TIMESTAMPS_PROP_NAME = "timestamps";
+    private static final String SINCE_PROP_NAME = "since";
+    private static final String TAIL_PROP_NAME = "tail";
+
+    private static final int BUFFER_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.container.log.stream.buffer.size", 1024 * 1024);
+
+    private static final int MAX_BUFFERS = Integer.getInteger(
+            "com.vmware.admiral.compute.container.log.stream.max.buffers", 100);
+
+    private static final int INITIAL_TAIL = Integer.getInteger(
+            "com.vmware.admiral.compute.container.log.stream.initial.tail", 1000);
+
+    private static final long MIN_FETCH_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.log.stream.fetch.interval.micros",
+            TimeUnit.SECONDS.toMicros(1));
+
+    private static final long IDLE_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.log.stream.idle.timeout.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    private final Map<String, ContainerLogBuffer> buffers = new ConcurrentHashMap<>();
+
+    public static class ContainerLogChunk {
+        /** The offset of the first returned byte */
+        public long offset;
+
+        /** The offset to request the next logs from, valid only on the node which returned it */
+        public long nextOffset;
+
+        /** Whether logs between the requested offset and the returned one were discarded */
+        public boolean truncated;
+
+        /** The log data */
+        public byte[] logs;
+    }
+
+    public ContainerLogStreamService() {
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(IDLE_TIMEOUT_MICROS);
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+        String containerId = params.get(CONTAINER_ID_QUERY_PARAM);
+        if (containerId == null || containerId.isEmpty()) {
+            get.fail(new IllegalArgumentException(
+                    "URL parameter 'id' expected with container id as value."));
+            return;
+        }
+
+        long offset;
+        try {
+            offset = Long.parseLong(params.getOrDefault(OFFSET_QUERY_PARAM, "0"));
+        } catch (NumberFormatException e) {
+            get.fail(e);
+            return;
+        }
+
+        ContainerLogBuffer buffer = getBuffer(containerId);
+        long now = Utils.getNowMicrosUtc();
+        buffer.setLastAccessMicros(now);
+
+        Runnable reply = () -> get.setBody(buffer.read(offset, BUFFER_SIZE)).complete();
+        if (now - buffer.getLastFetchMicros() < MIN_FETCH_INTERVAL_MICROS) {
+            reply.run();
+            return;
+        }
+
+        if (buffer.startFetch(reply)) {
+            fetchLogs(containerId, buffer, now);
+        }
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        long cutoffMicros = Utils.getNowMicrosUtc() - IDLE_TIMEOUT_MICROS;
+        Iterator<ContainerLogBuffer> it = buffers.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().getLastAccessMicros() < cutoffMicros) {
+                it.remove();
+            }
+        }
+        post.complete();
+    }
+
+    private ContainerLogBuffer getBuffer(String containerId) {
+        ContainerLogBuffer buffer = buffers.get(containerId);
+        if (buffer != null) {
+            return buffer;
+        }
+
+        if (buffers.size() >= MAX_BUFFERS) {
+            // drop the least recently read log
+            buffers.entrySet().stream()
+                    .min((e1, e2) -> Long.compare(e1.getValue().getLastAccessMicros(),
+                            e2.getValue().getLastAccessMicros()))
+                    .ifPresent(e -> buffers.remove(e.getKey()));
+        }
+        return buffers.computeIfAbsent(containerId,
+                (k) -> new ContainerLogBuffer(BUFFER_SIZE));
+    }
+
+    private void fetchLogs(String containerId, ContainerLogBuffer buffer, long fetchMicros) {
+        sendRequest(Operation.createGet(this,
+                UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK, containerId))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Can't get container %s. Error: %s", containerId,
+                                Utils.toString(e));
+                        completeFetch(buffer, fetchMicros, false);
+                        return;
+                    }
+
+                    ContainerState container = o.getBody(ContainerState.class);
+                    if (container.adapterManagementReference == null
+                            || container.powerState == null
+                            || container.powerState.isUnmanaged()
+                            || container.powerState == ContainerState.PowerState.UNKNOWN) {
+                        logFine("Can't get logs for container %s. Container power state is %s",
+                                containerId, container.powerState);
+                        completeFetch(buffer, fetchMicros, false);
+                        return;
+                    }
+
+                    requestLogs(container, buffer, fetchMicros);
+                }));
+    }
+
+    private void requestLogs(ContainerState container, ContainerLogBuffer buffer,
+            long fetchMicros) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LOG_STREAM_PROP_NAME, Boolean.TRUE.toString());
+        properties.put(TIMESTAMPS_PROP_NAME, Boolean.TRUE.toString());
+        Instant lastTimestamp = buffer.getLastTimestamp();
+        if (lastTimestamp != null) {
+            // "since" has a precision of seconds, the lines already read are skipped by the buffer
+            properties.put(SINCE_PROP_NAME, Long.toString(lastTimestamp.getEpochSecond()));
+        } else if (buffer.getLastSuccessfulFetchMicros() > 0) {
+            properties.put(SINCE_PROP_NAME, Long.toString(
+                    TimeUnit.MICROSECONDS.toSeconds(buffer.getLastSuccessfulFetchMicros())));
+        } else {
+            properties.put(TAIL_PROP_NAME, Integer.toString(INITIAL_TAIL));
+        }
+
+        AdapterRequest request = new AdapterRequest();
+        request.resourceReference = UriUtils.buildPublicUri(getHost(), container.documentSelfLink);
+        request.operationTypeId = ContainerOperationType.FETCH_LOGS.id;
+        request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
+        request.customProperties = properties;
+        sendRequest(Operation
+                .createPatch(getHost(), container.adapterManagementReference.toString())
+                .setBodyNoCloning(request)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Adapter request for container logs %s failed. Error: %s",
+                                container.documentSelfLink, Utils.toString(e));
+                    } else if (o.getBodyRaw() != null) {
+                        buffer.appendTimestampedLines(o.getBody(byte[].class));
+                    }
+                    completeFetch(buffer, fetchMicros, e == null);
+                }));
+    }
+
+    private void completeFetch(ContainerLogBuffer buffer, long fetchMicros, boolean succeeded) {
+        List<Runnable> callbacks = buffer.completeFetch(fetchMicros, succeeded);
+        if (callbacks != null) {
+            callbacks.forEach(Runnable::run);
+        }
+    }
+
+    @Override
+    public ServiceDocument getDocumentTemplate() {
+        ServiceDocument d = super.getDocumentTemplate();
+        addServiceRequestRoute(d, Action.GET,
+                String.format("Get the container logs after an offset. Provide the ContainerState"
+                        + " id in URI query parameter with key \"%s\" and the \"nextOffset\" of"
+                        + " the previous response with key \"%s\".", CONTAINER_ID_QUERY_PARAM,
+                        OFFSET_QUERY_PARAM),
+                ContainerLogChunk.class);
+        return d;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.OperationUtil;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.maintenance.ContainerMetricsStore;
+import com.vmware.admiral.compute.container.maintenance.ContainerMetricsStore.ContainerMetricsSample;
+import com.vmware.admiral.compute.container.maintenance.ContainerMetricsStore.Resolution;
+import com.vmware.admiral.compute.container.maintenance.ContainerStats;
+import com.vmware.photon.controller.model.resources.ResourceState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.AuthorizationContext;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.NodeGroupBroadcastResponse;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Keeps the history of the container stats in a {@link ContainerMetricsStore} and serves range
+ * queries over it. The stats evaluated by the adapter are recorded on the node owning the
+ * container, so a GET is broadcast to all nodes and the results are merged. The stats of all
+ * containers of a host or a composite component are returned in one call.
+ * <p>
+ * The store is not scoped by tenant or project, so only the stats of the containers the caller
+ * can read, and which belong to the project of the request if one is given, are returned. The
+ * nodes are asked with the system authorization context and their results are filtered on the
+ * node which received the request.
+ */
+public class ContainerMetricsService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.CONTAINER_METRICS;
+
+    public static final String CONTAINER_ID_QUERY_PARAM = "id";
+    public static final String HOST_LINK_QUERY_PARAM = "hostLink";
+    public static final String COMPOSITE_COMPONENT_LINK_QUERY_PARAM = "compositeComponentLink";
+    public static final String FROM_QUERY_PARAM = "from";
+    public static final String TO_QUERY_PARAM = "to";
+    public static final String RESOLUTION_QUERY_PARAM = "resolution";
+    public static final String LOCAL_QUERY_PARAM = "local";
+
+    private static final long DEFAULT_RANGE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static final long MAINTENANCE_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.metrics.maintenance.period.micros",
+            TimeUnit.MINUTES.toMicros(10));
+
+    private final ContainerMetricsStore store = new ContainerMetricsStore();
+
+    /**
+     * Stats of a container to record, sent by the container service when new stats are applied.
+     */
+    public static class ContainerMetricsRecord {
+        public String containerLink;
+        public String hostLink;
+        public String compositeComponentLink;
+        public long timeMicros;
+        public ContainerStats stats;
+    }
+
+    public static class ContainerMetricsResponse {
+        /** The resolution of the samples */
+        public Resolution resolution;
+
+        /** The samples in the requested range per container link */
+        public Map<String, List<ContainerMetricsSample>> metrics = new HashMap<>();
+    }
+
+    public ContainerMetricsService() {
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(MAINTENANCE_INTERVAL_MICROS);
+    }
+
+    /**
+     * Whether the given stats are usage stats evaluated from the container host, as opposed to a
+     * health check or a power state update.
+     */
+    public static boolean hasUsageStats(ContainerStats stats) {
+        return stats.healthCheckSuccess == null
+                && (stats.cpuUsage != 0 || stats.memUsage != 0 || stats.memLimit != 0
+                        || stats.networkIn != 0 || stats.networkOut != 0);
+    }
+
+    @Override
+    public void handlePost(Operation post) {
+        if (!post.hasBody()) {
+            post.fail(new IllegalArgumentException("body is required"));
+            return;
+        }
+
+        ContainerMetricsRecord record = post.getBody(ContainerMetricsRecord.class);
+        if (record.containerLink == null || record.stats == null) {
+            post.fail(new IllegalArgumentException("containerLink and stats are required"));
+            return;
+        }
+
+        store.record(record.containerLink, record.hostLink, record.compositeComponentLink,
+                record.timeMicros, record.stats);
+        post.complete();
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+        String containerId = params.get(CONTAINER_ID_QUERY_PARAM);
+        String hostLink = params.get(HOST_LINK_QUERY_PARAM);
+        String compositeComponentLink = params.get(COMPOSITE_COMPONENT_LINK_QUERY_PARAM);
+        if (containerId == null && hostLink == null && compositeComponentLink == null) {
+            get.fail(new IllegalArgumentException(String.format(
+                    "URL parameter '%s', '%s' or '%s' expected.", CONTAINER_ID_QUERY_PARAM,
+                    HOST_LINK_QUERY_PARAM, COMPOSITE_COMPONENT_LINK_QUERY_PARAM)));
+            return;
+        }
+
+        long toMicros;
+        long fromMicros;
+        Resolution resolution;
+        try {
+            toMicros = params.containsKey(TO_QUERY_PARAM)
+                    ? Long.parseLong(params.get(TO_QUERY_PARAM)) : Utils.getNowMicrosUtc();
+            fromMicros = params.containsKey(FROM_QUERY_PARAM)
+                    ? Long.parseLong(params.get(FROM_QUERY_PARAM))
+                    : toMicros - DEFAULT_RANGE_MICROS;
+            resolution = params.containsKey(RESOLUTION_QUERY_PARAM)
+                    ? Resolution.valueOf(params.get(RESOLUTION_QUERY_PARAM))
+                    : selectResolution(fromMicros, Utils.getNowMicrosUtc());
+        } catch (IllegalArgumentException e) {
+            get.fail(e);
+            return;
+        }
+
+        if (Boolean.parseBoolean(params.get(LOCAL_QUERY_PARAM))) {
+            // the local stats are not filtered, only the broadcast of the service may get them
+            if (getHost().isAuthorizationEnabled() && !isSystemUser(get)) {
+                get.fail(Operation.STATUS_CODE_FORBIDDEN);
+                return;
+            }
+            get.setBody(getLocalMetrics(containerId, hostLink, compositeComponentLink,
+                    fromMicros, toMicros, resolution));
+            get.complete();
+            return;
+        }
+
+        // the same range and resolution are queried on all nodes
+        params.put(FROM_QUERY_PARAM, Long.toString(fromMicros));
+        params.put(TO_QUERY_PARAM, Long.toString(toMicros));
+        params.put(RESOLUTION_QUERY_PARAM, resolution.name());
+        params.put(LOCAL_QUERY_PARAM, Boolean.TRUE.toString());
+        broadcastGet(get, params, resolution);
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        int removed = store.removeStale(Utils.getNowMicrosUtc());
+        if (removed > 0) {
+            logFine("Removed the stats history of %d containers", removed);
+        }
+        post.complete();
+    }
+
+    private static boolean isSystemUser(Operation op) {
+        AuthorizationContext ctx = op.getAuthorizationContext();
+        return ctx != null && ctx.isSystemUser();
+    }
+
+    /**
+     * Selects the finest resolution still holding the samples from the given time.
+     */
+    static Resolution selectResolution(long fromMicros, long nowMicros) {
+        for (Resolution resolution : Resolution.values()) {
+            if (nowMicros - fromMicros <= resolution.getRetentionMicros()) {
+                return resolution;
+            }
+        }
+        return Resolution.TEN_MINUTES;
+    }
+
+    private ContainerMetricsResponse getLocalMetrics(String containerId, String hostLink,
+            String compositeComponentLink, long fromMicros, long toMicros,
+            Resolution resolution) {
+        ContainerMetricsResponse response = new ContainerMetricsResponse();
+        response.resolution = resolution;
+
+        List<String> containerLinks;
+        if (containerId != null) {
+            containerLinks = Collections.singletonList(
+                    UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK, containerId));
+        } else {
+            containerLinks = store.findContainerLinks(hostLink, compositeComponentLink);
+        }
+
+        for (String containerLink : containerLinks) {
+            List<ContainerMetricsSample> samples = store.getSamples(containerLink, fromMicros,
+                    toMicros, resolution);
+            if (samples != null) {
+                response.metrics.put(containerLink, samples);
+            }
+        }
+        return response;
+    }
+
+    private void broadcastGet(Operation get, Map<String, String> params, Resolution resolution) {
+        String[] query = new String[params.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            query[i++] = param.getKey();
+            query[i++] = param.getValue();
+        }
+
+        Operation broadcast = Operation
+                .createGet(UriUtils.buildBroadcastRequestUri(
+                        UriUtils.buildUri(getHost(), SELF_LINK, UriUtils.buildUriQuery(query)),
+                        ServiceUriPaths.DEFAULT_NODE_SELECTOR))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        get.fail(e);
+                        return;
+                    }
+
+                    NodeGroupBroadcastResponse broadcastResponse = o
+                            .getBody(NodeGroupBroadcastResponse.class);
+                    if (!broadcastResponse.failures.isEmpty()) {
+                        logWarning("Failed to get container stats from %d nodes",
+                                broadcastResponse.failures.size());
+                    }
+
+                    ContainerMetricsResponse response = new ContainerMetricsResponse();
+                    response.resolution = resolution;
+                    for (String json : broadcastResponse.jsonResponses.values()) {
+                        ContainerMetricsResponse nodeResponse = Utils.fromJson(json,
+                                ContainerMetricsResponse.class);
+                        // a container is owned by a single node, keep the longest history in
+                        // case the owner has changed
+                        nodeResponse.metrics.forEach((link, samples) -> response.metrics.merge(
+                                link, samples, (s1, s2) -> s1.size() >= s2.size() ? s1 : s2));
+                    }
+                    filterAccessibleContainers(get, response);
+                });
+        setAuthorizationContext(broadcast, getSystemAuthorizationContext());
+        sendRequest(broadcast);
+    }
+
+    /**
+     * Keeps the stats of the containers which the caller can read and which belong to the project
+     * of the request, if any. The containers are queried with the authorization context of the
+     * caller.
+     */
+    private void filterAccessibleContainers(Operation get, ContainerMetricsResponse response) {
+        if (response.metrics.isEmpty()) {
+            get.setBody(response).complete();
+            return;
+        }
+
+        QueryTask queryTask = QueryUtil.buildQuery(ContainerState.class, true);
+        QueryUtil.addListValueClause(queryTask, ServiceDocument.FIELD_NAME_SELF_LINK,
+                response.metrics.keySet());
+        String projectLink = OperationUtil.extractProjectFromHeader(get);
+        if (projectLink != null && !projectLink.isEmpty()) {
+            QueryUtil.addListValueClause(queryTask, QuerySpecification.buildCollectionItemName(
+                    ResourceState.FIELD_NAME_TENANT_LINKS),
+                    Collections.singletonList(projectLink));
+        }
+
+        Operation query = Operation.createPost(this, ServiceUriPaths.CORE_QUERY_TASKS)
+                .setBody(queryTask)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        get.fail(e);
+                        return;
+                    }
+
+                    QueryTask result = o.getBody(QueryTask.class);
+                    List<String> containerLinks = result.results != null
+                            && result.results.documentLinks != null
+                                    ? result.results.documentLinks : Collections.emptyList();
+                    response.metrics.keySet().retainAll(containerLinks);
+                    get.setBody(response);
+                    get.complete();
+                });
+        setAuthorizationContext(query, get.getAuthorizationContext());
+        sendRequest(query);
+    }
+
+    @Override
+    public ServiceDocument getDocumentTemplate() {
+        ServiceDocument template = super.getDocumentTemplate();
+        addServiceRequestRoute(template, Action.GET,
+                String.format("Get the stats history of a container (URI query parameter \"%s\")"
+                        + ", or of all containers of a host (\"%s\") or a composite component"
+                        + " (\"%s\"). The range is given in microseconds with \"%s\" and \"%s\""
+                        + " (last hour by default) and the resolution with \"%s\".",
+                        CONTAINER_ID_QUERY_PARAM, HOST_LINK_QUERY_PARAM,
+                        COMPOSITE_COMPONENT_LINK_QUERY_PARAM, FROM_QUERY_PARAM, TO_QUERY_PARAM,
+                        RESOLUTION_QUERY_PARAM),
+                ContainerMetricsResponse.class);
+        return template;
+    }
+}
@@ -26,6 +26,7 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.vmware.admiral.common.serialization.ReleaseConstants;
 import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.admiral.compute.Composable;
+import com.vmware.admiral.compute.container.ContainerMetricsService.ContainerMetricsRecord;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.maintenance.ContainerHealthEvaluator;
 import com.vmware.admiral.compute.container.maintenance.ContainerStats;
@@ -61,6 +62,8 @@ public class ContainerService extends StatefulService {
         public static final String FIELD_NAME_RESOURCE_POOL_LINK = "resourcePoolLink";
         public static final String FIELD_NAME_ENV = "env";
         public static final String FIELD_NAME_POWER_STATE = "powerState";
+        public static final String FIELD_NAME_STATUS = "status";
+        public static final String FIELD_NAME_IS_DELETED = "isDeleted";
         public static final String FIELD_NAME_GROUP_RESOURCE_PLACEMENT_LINK =
                 "groupResourcePlacementLink";
         public static final String CONTAINER_ALLOCATION_STATUS = "allocation";
@@ -360,6 +363,27 @@ public class ContainerService extends StatefulService {
 
         patch.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
         patch.complete();
+
+        if (ContainerMetricsService.hasUsageStats(patchStatsBody)) {
+            recordContainerMetrics(currentState, patchStatsBody);
+        }
+    }
+
+    private void recordContainerMetrics(ContainerState currentState, ContainerStats stats) {
+        ContainerMetricsRecord record = new ContainerMetricsRecord();
+        record.containerLink = getSelfLink();
+        record.hostLink = currentState.parentLink;
+        record.compositeComponentLink = currentState.compositeComponentLink;
+        record.timeMicros = Utils.getNowMicrosUtc();
+        record.stats = stats;
+        sendRequest(Operation.createPost(this, ContainerMetricsService.SELF_LINK)
+                .setBodyNoCloning(record)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logFine("Failed to record the stats history of %s: %s", getSelfLink(),
+                                Utils.toString(e));
+                    }
+                }));
     }
 
     @Override
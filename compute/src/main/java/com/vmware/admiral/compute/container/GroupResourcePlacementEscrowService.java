@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.compute.ResourceType;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementLease;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementLeaseRequest;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.xenon.common.LocalizableValidationException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Node local escrow of the group resource placements. Reservations are made out of instances and
+ * memory leased from the placement to this node, so most of them do not update the placement
+ * document which all nodes contend on.
+ * <p>
+ * The reservations and releases are reported back to the placement periodically, together with a
+ * request to resize the lease to the recent demand of the node, so the leases of idle nodes are
+ * returned to the placement. A lease is only consumed while it is far from its expiration, and
+ * the placement reclaims the leases which have expired, e.g. of a node which has left, after
+ * counting its resources to allocate the reservations which were not reported. While it does,
+ * the live leases are fenced: the reservations are sent to the placement directly and the ones
+ * made out of the lease are reported, so the placement does not count them as the ones of the
+ * expired lease.
+ * <p>
+ * A reservation made out of the lease is completed with the identity and the configuration of the
+ * placement only, its counters are not known to the node.
+ * <p>
+ * The escrow is used for reservations only when enabled with the
+ * {@code com.vmware.admiral.placement.escrow.enabled} system property.
+ */
+public class GroupResourcePlacementEscrowService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.RESOURCE_GROUP_PLACEMENT_ESCROW;
+
+    public static final boolean ESCROW_ENABLED = Boolean.getBoolean(
+            "com.vmware.admiral.placement.escrow.enabled");
+
+    static final long LEASE_DURATION_MICROS = Long.getLong(
+            "com.vmware.admiral.placement.escrow.lease.duration.micros",
+            TimeUnit.MINUTES.toMicros(1));
+
+    // the most instances leased for the demand of the node on top of its pending reservations
+    private static final long MAX_LEASE_INSTANCES = Long.getLong(
+            "com.vmware.admiral.placement.escrow.lease.max.instances", 20);
+
+    private static final long MAINTENANCE_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.placement.escrow.maintenance.period.micros",
+            TimeUnit.SECONDS.toMicros(5));
+
+    /**
+     * Reservation request for the given placement.
+     */
+    public static class EscrowReservationRequest extends ResourcePlacementReservationRequest {
+        public String groupResourcePlacementLink;
+    }
+
+    /**
+     * Creates a PATCH operation which reserves or releases resources of the placement, either
+     * through the escrow of this node or directly on the placement.
+     */
+    public static Operation createReservationPatch(Service sender, String placementLink,
+            ResourcePlacementReservationRequest request) {
+        if (!ESCROW_ENABLED) {
+            return Operation.createPatch(sender, placementLink).setBody(request);
+        }
+
+        EscrowReservationRequest escrowRequest = new EscrowReservationRequest();
+        escrowRequest.groupResourcePlacementLink = placementLink;
+        escrowRequest.resourceCount = request.resourceCount;
+        escrowRequest.resourceDescriptionLink = request.resourceDescriptionLink;
+        escrowRequest.referer = request.referer;
+        return Operation.createPatch(sender, SELF_LINK).setBody(escrowRequest);
+    }
+
+    private final Map<String, PlacementEscrow> escrows = new ConcurrentHashMap<>();
+
+    public GroupResourcePlacementEscrowService() {
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(MAINTENANCE_INTERVAL_MICROS);
+    }
+
+    @Override
+    public void handlePatch(Operation patch) {
+        if (!checkForBody(patch)) {
+            return;
+        }
+
+        EscrowReservationRequest request = patch.getBody(EscrowReservationRequest.class);
+        if (!GroupResourcePlacementService.isReservationServiceTaskReferer(request.referer)) {
+            logWarning("Request not authorized.");
+            patch.fail(Operation.STATUS_CODE_FORBIDDEN);
+            return;
+        }
+        if (request.groupResourcePlacementLink == null
+                || request.groupResourcePlacementLink.isEmpty()) {
+            patch.fail(new LocalizableValidationException(
+                    "'groupResourcePlacementLink' is required.",
+                    "compute.placements.escrow.placement.required"));
+            return;
+        }
+        if (request.resourceDescriptionLink == null
+                || request.resourceDescriptionLink.isEmpty()) {
+            patch.fail(new LocalizableValidationException("'resourceDescriptionLink' is required.",
+                    "compute.placements.resource-desc.required"));
+            return;
+        }
+
+        PlacementEscrow escrow = escrows.computeIfAbsent(request.groupResourcePlacementLink,
+                PlacementEscrow::new);
+        reserve(escrow, new PendingReservation(patch, request), false);
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        long now = Utils.getSystemNowMicrosUtc();
+        for (PlacementEscrow escrow : escrows.values()) {
+            Operation leaseRequest = null;
+            synchronized (escrow) {
+                boolean leased = escrow.expirationTimeMicros > 0;
+                boolean renew = escrow.expirationTimeMicros - now < LEASE_DURATION_MICROS / 2;
+                // report the reservations, renew the lease in use and return an idle one, a
+                // fenced lease is reported until the placement has reclaimed the expired ones
+                if (escrow.reservedInstancesCount != 0 || escrow.reservedMemory != 0
+                        || (leased && (renew || escrow.demandInstancesCount == 0))
+                        || escrow.fenced) {
+                    leaseRequest = createLeaseRequest(escrow);
+                }
+            }
+            send(leaseRequest);
+        }
+        post.complete();
+    }
+
+    private void reserve(PlacementEscrow escrow, PendingReservation reservation,
+            boolean failIfNotAvailable) {
+        GroupResourcePlacementState placement;
+        synchronized (escrow) {
+            placement = escrow.placement;
+        }
+
+        if (placement == null) {
+            if (reservation.request.resourceCount < 0) {
+                // nothing to release the resources to yet
+                forward(reservation);
+                return;
+            }
+            addPending(escrow, reservation);
+            return;
+        }
+
+        if (reservation.memory == null) {
+            getRequestedMemory(placement, reservation.request, (memory, e) -> {
+                if (e != null) {
+                    reservation.operation.fail(e);
+                    return;
+                }
+                reservation.memory = memory;
+                reserve(escrow, reservation, failIfNotAvailable);
+            });
+            return;
+        }
+
+        long instancesCount = reservation.request.resourceCount;
+        long memory = reservation.memory;
+        Exception failure = null;
+        boolean fenced;
+        synchronized (escrow) {
+            placement = escrow.placement;
+            fenced = escrow.fenced;
+            if (fenced) {
+                // the placement reclaims expired leases, see forward(PendingReservation)
+                placement = null;
+            } else if (instancesCount < 0) {
+                release(escrow, instancesCount, memory);
+            } else if (isAvailable(escrow, instancesCount, memory)) {
+                consume(escrow, instancesCount, memory);
+            } else if (failIfNotAvailable) {
+                failure = createNotAvailableException(escrow, instancesCount);
+            } else {
+                placement = null;
+            }
+        }
+
+        if (failure != null) {
+            reservation.operation.fail(failure);
+        } else if (fenced) {
+            forward(reservation);
+        } else if (placement == null) {
+            addPending(escrow, reservation);
+        } else {
+            reservation.operation.setBodyNoCloning(toReservationResponse(placement)).complete();
+        }
+    }
+
+    /**
+     * The counters of the placement as of the last lease request are stale, so they are not
+     * returned.
+     */
+    private static GroupResourcePlacementState toReservationResponse(
+            GroupResourcePlacementState placement) {
+        GroupResourcePlacementState response = new GroupResourcePlacementState();
+        response.documentSelfLink = placement.documentSelfLink;
+        response.documentKind = placement.documentKind;
+        response.name = placement.name;
+        response.resourcePoolLink = placement.resourcePoolLink;
+        response.deploymentPolicyLink = placement.deploymentPolicyLink;
+        response.resourceType = placement.resourceType;
+        response.priority = placement.priority;
+        response.customProperties = placement.customProperties;
+        response.tenantLinks = placement.tenantLinks;
+        return response;
+    }
+
+    private void addPending(PlacementEscrow escrow, PendingReservation reservation) {
+        Operation leaseRequest;
+        synchronized (escrow) {
+            reservation.covered = false;
+            escrow.pending.add(reservation);
+            leaseRequest = createLeaseRequest(escrow);
+        }
+        send(leaseRequest);
+    }
+
+    private boolean isAvailable(PlacementEscrow escrow, long instancesCount, long memory) {
+        if (Utils.getSystemNowMicrosUtc() > escrow.expirationTimeMicros
+                - LEASE_DURATION_MICROS / 4) {
+            // too close to the expiration, the placement may reclaim the lease meanwhile
+            return false;
+        }
+        return (escrow.placement.maxNumberInstances
+                == GroupResourcePlacementService.UNLIMITED_NUMBER_INSTANCES
+                || escrow.instancesCount >= instancesCount)
+                && (escrow.placement.memoryLimit == 0 || escrow.memory >= memory);
+    }
+
+    private void consume(PlacementEscrow escrow, long instancesCount, long memory) {
+        escrow.instancesCount -= instancesCount;
+        escrow.memory -= memory;
+        escrow.reservedInstancesCount += instancesCount;
+        escrow.reservedMemory += memory;
+        escrow.demandInstancesCount += instancesCount;
+        escrow.demandMemory += memory;
+    }
+
+    private void release(PlacementEscrow escrow, long instancesCount, long memory) {
+        // the released resources are added to the lease, the counts are negative
+        escrow.instancesCount -= instancesCount;
+        escrow.memory -= memory;
+        escrow.reservedInstancesCount += instancesCount;
+        escrow.reservedMemory += memory;
+    }
+
+    private LocalizableValidationException createNotAvailableException(PlacementEscrow escrow,
+            long instancesCount) {
+        long availableInstances = escrow.placement.availableInstancesCount
+                + escrow.instancesCount;
+        if (escrow.placement.maxNumberInstances
+                == GroupResourcePlacementService.UNLIMITED_NUMBER_INSTANCES
+                || instancesCount <= escrow.instancesCount) {
+            long availableMemory = escrow.placement.availableMemory + escrow.memory;
+            return new LocalizableValidationException(
+                    "Requested memory is more than the available memory placement: "
+                            + availableMemory,
+                    "compute.placements.too.much.memory.requested", availableMemory);
+        }
+        return new LocalizableValidationException(
+                "Requested instances are more than the available resource placement: "
+                        + availableInstances,
+                "compute.placements.requested.too.many.instances", availableInstances);
+    }
+
+    /**
+     * Creates a request which reports the reservations out of the lease and resizes the lease to
+     * the pending reservations and the demand since the last request, or returns {@code null} if
+     * there is a request in progress. Called with the lock of the escrow held.
+     */
+    private Operation createLeaseRequest(PlacementEscrow escrow) {
+        if (escrow.leasing) {
+            return null;
+        }
+        escrow.leasing = true;
+
+        long pendingInstances = 0;
+        long pendingMemory = 0;
+        for (PendingReservation reservation : escrow.pending) {
+            pendingInstances += reservation.request.resourceCount;
+            if (reservation.memory != null) {
+                pendingMemory += reservation.memory;
+                // the pending reservations with unknown memory are reserved after the response
+                reservation.covered = true;
+            }
+        }
+
+        long demandInstances = Math.min(escrow.demandInstancesCount, MAX_LEASE_INSTANCES);
+        long demandMemory = escrow.demandInstancesCount == 0 ? 0
+                : escrow.demandMemory / escrow.demandInstancesCount * demandInstances;
+        escrow.demandInstancesCount = 0;
+        escrow.demandMemory = 0;
+
+        ResourcePlacementLeaseRequest request = new ResourcePlacementLeaseRequest();
+        request.nodeId = getHost().getId();
+        request.reservedInstancesCount = escrow.reservedInstancesCount;
+        request.reservedMemory = escrow.reservedMemory;
+        request.requiredInstancesCount = pendingInstances;
+        request.requiredMemory = pendingMemory;
+        request.requestedInstancesCount = pendingInstances + demandInstances;
+        request.requestedMemory = pendingMemory + demandMemory;
+        request.fenced = escrow.fenced;
+        request.referer = getSelfLink();
+
+        Operation patch = Operation.createPatch(this, escrow.placementLink)
+                .setBody(request)
+                .setCompletion((o, e) -> handleLeaseResponse(escrow, request, o, e));
+        setAuthorizationContext(patch, getSystemAuthorizationContext());
+        return patch;
+    }
+
+    private void handleLeaseResponse(PlacementEscrow escrow, ResourcePlacementLeaseRequest request,
+            Operation o, Throwable e) {
+        List<PendingReservation> covered = new ArrayList<>();
+        List<PendingReservation> unknownMemory = new ArrayList<>();
+        Operation leaseRequest = null;
+        synchronized (escrow) {
+            escrow.leasing = false;
+            Iterator<PendingReservation> it = escrow.pending.iterator();
+            while (it.hasNext()) {
+                PendingReservation reservation = it.next();
+                if (reservation.covered || e != null) {
+                    covered.add(reservation);
+                } else if (reservation.memory == null) {
+                    // the memory is known once the placement is
+                    unknownMemory.add(reservation);
+                } else {
+                    // made after the request, covered by the next one
+                    continue;
+                }
+                it.remove();
+            }
+
+            if (e == null) {
+                GroupResourcePlacementState placement = o
+                        .getBody(GroupResourcePlacementState.class);
+                ResourcePlacementLease lease = placement.leases != null
+                        ? placement.leases.get(request.nodeId) : null;
+                placement.leases = null;
+                escrow.placement = placement;
+
+                // the reservations made meanwhile are not reported yet
+                escrow.reservedInstancesCount -= request.reservedInstancesCount;
+                escrow.reservedMemory -= request.reservedMemory;
+                if (lease != null) {
+                    escrow.instancesCount = lease.instancesCount - escrow.reservedInstancesCount;
+                    escrow.memory = lease.memory - escrow.reservedMemory;
+                    escrow.expirationTimeMicros = lease.expirationTimeMicros;
+                    escrow.fenced = lease.fenced;
+                } else {
+                    escrow.instancesCount = -escrow.reservedInstancesCount;
+                    escrow.memory = -escrow.reservedMemory;
+                    escrow.expirationTimeMicros = 0;
+                    escrow.fenced = false;
+                }
+
+                if (!escrow.pending.isEmpty()) {
+                    leaseRequest = createLeaseRequest(escrow);
+                }
+            } else if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
+                escrows.remove(escrow.placementLink, escrow);
+            }
+        }
+
+        if (e != null) {
+            logWarning("Failure leasing group placement %s: %s", escrow.placementLink,
+                    e.getMessage());
+            covered.forEach(reservation -> reservation.operation.fail(e));
+            return;
+        }
+
+        send(leaseRequest);
+        covered.forEach(reservation -> reserve(escrow, reservation, true));
+        unknownMemory.forEach(reservation -> reserve(escrow, reservation, false));
+    }
+
+    private void forward(PendingReservation reservation) {
+        ResourcePlacementReservationRequest request = new ResourcePlacementReservationRequest();
+        request.resourceCount = reservation.request.resourceCount;
+        request.resourceDescriptionLink = reservation.request.resourceDescriptionLink;
+        request.referer = reservation.request.referer;
+
+        sendRequest(Operation
+                .createPatch(this, reservation.request.groupResourcePlacementLink)
+                .setBody(request)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        reservation.operation.fail(e);
+                        return;
+                    }
+                    reservation.operation.setBodyNoCloning(o.getBodyRaw()).complete();
+                }));
+    }
+
+    private void getRequestedMemory(GroupResourcePlacementState placement,
+            EscrowReservationRequest request, BiConsumer<Long, Throwable> callback) {
+        sendRequest(Operation
+                .createGet(this, request.resourceDescriptionLink)
+                .setCompletion((o, e) -> {
+                    if (Operation.STATUS_CODE_NOT_FOUND == o.getStatusCode()
+                            || e instanceof CancellationException) {
+                        logWarning("Resource description %s not found. There might be "
+                                + "some inconsistencies with memory allocations",
+                                request.resourceDescriptionLink);
+                        callback.accept(0L, null);
+                        return;
+                    }
+                    if (e != null) {
+                        callback.accept(null, new LocalizableValidationException(
+                                "Unable to get the resource description with link: "
+                                        + request.resourceDescriptionLink,
+                                "compute.resource-placement.unavailable",
+                                request.resourceDescriptionLink));
+                        return;
+                    }
+
+                    Long memoryBytes;
+                    if (ResourceType.fromName(placement.resourceType)
+                            == ResourceType.COMPUTE_TYPE) {
+                        memoryBytes = o.getBody(ComputeDescription.class).totalMemoryBytes;
+                    } else {
+                        memoryBytes = o.getBody(
+                                ContainerDescriptionService.ContainerDescription.class)
+                                .memoryLimit;
+                    }
+                    callback.accept(memoryBytes == null ? 0L
+                            : memoryBytes * request.resourceCount, null);
+                }));
+    }
+
+    private void send(Operation op) {
+        if (op != null) {
+            sendRequest(op);
+        }
+    }
+
+    private static class PendingReservation {
+        final Operation operation;
+        final EscrowReservationRequest request;
+        Long memory;
+        // whether the last lease request accounted for the reservation
+        boolean covered;
+
+        PendingReservation(Operation operation, EscrowReservationRequest request) {
+            this.operation = operation;
+            this.request = request;
+        }
+    }
+
+    // Lease of a placement to this node, guarded by itself.
+    private static class PlacementEscrow {
+        final String placementLink;
+        // as of the last lease request
+        GroupResourcePlacementState placement;
+
+        // left in the lease
+        long instancesCount;
+        long memory;
+        long expirationTimeMicros;
+        // while the placement reclaims expired leases
+        boolean fenced;
+
+        // reserved out of the lease and not reported yet, negative for releases
+        long reservedInstancesCount;
+        long reservedMemory;
+
+        // reserved since the last lease request
+        long demandInstancesCount;
+        long demandMemory;
+
+        final List<PendingReservation> pending = new ArrayList<>();
+        boolean leasing;
+
+        PlacementEscrow(String placementLink) {
+            this.placementLink = placementLink;
+        }
+    }
+}
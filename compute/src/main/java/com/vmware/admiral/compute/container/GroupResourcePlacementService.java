@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.common.ManagementUriParts;
@@ -42,6 +43,7 @@ import com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexingOption
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
 
@@ -59,6 +61,10 @@ import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
  * <p>
  * The resource placements are inspired by the blog-post:
  * https://goldmann.pl/blog/2014/09/11/resource-management-in-docker/
+ * <p>
+ * Part of the available instances and memory may be leased to the
+ * {@link GroupResourcePlacementEscrowService} of a node, which reserves resources out of its lease
+ * and reports them back with a {@link ResourcePlacementLeaseRequest}.
  */
 public class GroupResourcePlacementService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.RESOURCE_GROUP_PLACEMENTS;
@@ -205,6 +211,29 @@ public class GroupResourcePlacementService extends StatefulService {
         @Deprecated
         public Map<String, Long> memoryQuotaPerResourceDesc;
 
+        /** Set by Task. The instances and memory leased to the escrow of each node, by node id. */
+        @Documentation(description = "The instances and memory leased to the escrow of each node.")
+        @UsageOption(option = PropertyUsageOption.SERVICE_USE)
+        @PropertyOptions(indexing = { PropertyIndexingOption.STORE_ONLY })
+        public Map<String, ResourcePlacementLease> leases;
+
+    }
+
+    /**
+     * Instances and memory of a placement leased to the escrow of a node. They are not available
+     * for other reservations until the lease is returned or expires.
+     */
+    public static class ResourcePlacementLease {
+        public long instancesCount;
+        public long memory;
+        public long expirationTimeMicros;
+        /**
+         * Set while expired leases are reclaimed. The node does not reserve out of a fenced lease
+         * and reports the reservations made out of it.
+         */
+        public boolean fenced;
+        /** Whether the node has reported all the reservations made out of the fenced lease. */
+        public boolean fenceAcknowledged;
     }
 
     /**
@@ -216,6 +245,36 @@ public class GroupResourcePlacementService extends StatefulService {
         public String referer;
     }
 
+    /**
+     * An DTO used during PATCH operation by the escrow of a node in order to report the resources
+     * reserved out of its lease and to resize the lease.
+     */
+    public static class ResourcePlacementLeaseRequest {
+        public String nodeId;
+        /** The instances and memory reserved out of the lease since the last request. */
+        public long reservedInstancesCount;
+        public long reservedMemory;
+        /** The lease size the node would like to have. */
+        public long requestedInstancesCount;
+        public long requestedMemory;
+        /** The lease size the node needs for its pending reservations. */
+        public long requiredInstancesCount;
+        public long requiredMemory;
+        /**
+         * Whether the lease of the node was already fenced when the request was made, so the
+         * request reports all the reservations made out of the lease.
+         */
+        public boolean fenced;
+        public String referer;
+        /**
+         * Set by the placement itself. The expired leases to reclaim with their expiration time,
+         * by node id.
+         */
+        public Map<String, Long> reclaimedLeases;
+        /** Set by the placement itself. The resources of the placement counted for the reclaim. */
+        public long resourcesCount;
+    }
+
     /**
      * State with in-line, expanded ResourcePoolLink.
      */
@@ -251,6 +310,9 @@ public class GroupResourcePlacementService extends StatefulService {
         }
     }
 
+    // whether a reclaim of expired leases started by this node is in progress
+    private final AtomicBoolean reclaimingLeases = new AtomicBoolean();
+
     public GroupResourcePlacementService() {
         super(GroupResourcePlacementState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -320,7 +382,9 @@ public class GroupResourcePlacementService extends StatefulService {
             currentState.priority = putBody.priority;
             currentState.customProperties = putBody.customProperties;
 
-            long reserved = currentState.allocatedInstancesCount;
+            // the leased instances are reserved as well
+            long reserved = currentState.allocatedInstancesCount
+                    + getLeasedInstancesCount(currentState);
             if (putBody.maxNumberInstances != UNLIMITED_NUMBER_INSTANCES
                     && putBody.maxNumberInstances < reserved) {
                 put.fail(new LocalizableValidationException("'maxNumberInstances' cannot be less "
@@ -383,11 +447,24 @@ public class GroupResourcePlacementService extends StatefulService {
             return;
         }
 
+        GroupResourcePlacementState state = getState(patch);
+
+        ResourcePlacementLeaseRequest leaseRequest = patch
+                .getBody(ResourcePlacementLeaseRequest.class);
+        if (leaseRequest.reclaimedLeases != null) {
+            handleLeaseReclaim(patch, state, leaseRequest);
+            return;
+        }
+        if (leaseRequest.nodeId != null) {
+            handleLeaseRequest(patch, state, leaseRequest);
+            return;
+        }
+
         ResourcePlacementReservationRequest request = patch
                 .getBody(ResourcePlacementReservationRequest.class);
 
-        GroupResourcePlacementState state = getState(patch);
         adjustStat(ResourcePlacementReservationRequest.class.getSimpleName(), 1);
+        reclaimExpiredLeases(state, null);
 
         final long currentCount = state.maxNumberInstances != UNLIMITED_NUMBER_INSTANCES
                 ? state.availableInstancesCount - request.resourceCount
@@ -490,6 +567,272 @@ public class GroupResourcePlacementService extends StatefulService {
         return true;
     }
 
+    private void handleLeaseRequest(Operation patch, GroupResourcePlacementState state,
+            ResourcePlacementLeaseRequest request) {
+        adjustStat(ResourcePlacementLeaseRequest.class.getSimpleName(), 1);
+
+        if (state.leases == null) {
+            state.leases = new HashMap<>();
+        }
+
+        boolean limitedInstances = state.maxNumberInstances != UNLIMITED_NUMBER_INSTANCES;
+        boolean limitedMemory = state.memoryLimit != 0;
+
+        ResourcePlacementLease lease = state.leases.remove(request.nodeId);
+        long leasedInstances = lease != null && limitedInstances ? lease.instancesCount : 0;
+        long leasedMemory = lease != null && limitedMemory ? lease.memory : 0;
+
+        // 1. Move the resources reserved by the node out of its lease to the placement.
+        long reservedInstances = request.reservedInstancesCount;
+        if (state.allocatedInstancesCount + reservedInstances < 0) {
+            logWarning("Releasing the reported resource placement of %d is more than the "
+                    + "allocated %d", -reservedInstances, state.allocatedInstancesCount);
+            reservedInstances = -state.allocatedInstancesCount;
+        }
+        state.allocatedInstancesCount += reservedInstances;
+        leasedInstances -= reservedInstances;
+        leasedMemory -= request.reservedMemory;
+
+        // Reserved more than leased, e.g. the lease has expired, so take it from the available.
+        if (limitedInstances && leasedInstances < 0) {
+            state.availableInstancesCount += leasedInstances;
+        }
+        if (limitedMemory && leasedMemory < 0) {
+            state.availableMemory += leasedMemory;
+        }
+        leasedInstances = Math.max(leasedInstances, 0);
+        leasedMemory = Math.max(leasedMemory, 0);
+
+        // 2. Resize the lease to the requested size, granting no more than half of the available
+        // resources unless required, so that there are some left for the other nodes.
+        if (limitedInstances) {
+            long delta = leaseDelta(leasedInstances, request.requestedInstancesCount,
+                    request.requiredInstancesCount, state.availableInstancesCount);
+            leasedInstances += delta;
+            state.availableInstancesCount -= delta;
+        }
+        if (limitedMemory) {
+            long delta = leaseDelta(leasedMemory, request.requestedMemory,
+                    request.requiredMemory, state.availableMemory);
+            leasedMemory += delta;
+            state.availableMemory -= delta;
+        }
+
+        if (leasedInstances > 0 || leasedMemory > 0 || request.requestedInstancesCount > 0) {
+            // a lease granted while leases are reclaimed is fenced too
+            boolean fenced = lease != null ? lease.fenced : isFenced(state);
+            boolean fenceAcknowledged = lease != null && lease.fenced && request.fenced;
+            lease = new ResourcePlacementLease();
+            lease.instancesCount = leasedInstances;
+            lease.memory = leasedMemory;
+            lease.expirationTimeMicros = Utils.getSystemNowMicrosUtc()
+                    + GroupResourcePlacementEscrowService.LEASE_DURATION_MICROS;
+            lease.fenced = fenced;
+            lease.fenceAcknowledged = fenceAcknowledged;
+            state.leases.put(request.nodeId, lease);
+        }
+
+        logFine("%s: leased instances [%d] and memory [%d] to node %s with available count [%d]",
+                state.name, leasedInstances, leasedMemory, request.nodeId,
+                state.availableInstancesCount);
+
+        // the reservations of the node are reported, its lease is not reclaimed
+        reclaimExpiredLeases(state, request.nodeId);
+        patch.setBody(state).complete();
+    }
+
+    private static long leaseDelta(long leased, long requested, long required, long available) {
+        long delta = requested - leased;
+        if (delta <= 0) {
+            // return the surplus
+            return delta;
+        }
+        long share = Math.max(required - leased, available / 2);
+        return Math.max(Math.min(delta, Math.min(share, available)), 0);
+    }
+
+    /**
+     * Starts the reclaim of the leases expired for longer than a lease duration, except the one
+     * of the given node. The reservations made out of them and not reported yet are lost with the
+     * node, so the leases are not released before the resources of the placement are counted.
+     * The resources created out of the live leases are counted too, so the live leases are fenced
+     * first: their nodes report all their reservations to the placement and stop reserving out of
+     * them until the reclaim is done. The resources are counted once all the live leases are
+     * reported, see {@link #handleLeaseReclaim(Operation, GroupResourcePlacementState,
+     * ResourcePlacementLeaseRequest)}. Called with the state to update.
+     */
+    private void reclaimExpiredLeases(GroupResourcePlacementState state, String exceptNodeId) {
+        if (state.leases == null || state.leases.isEmpty()) {
+            return;
+        }
+
+        long now = Utils.getSystemNowMicrosUtc();
+        Map<String, Long> expiredLeases = new HashMap<>();
+        for (Map.Entry<String, ResourcePlacementLease> entry : state.leases.entrySet()) {
+            long expirationTimeMicros = entry.getValue().expirationTimeMicros;
+            // a grace period for the tasks of the node to create the reserved resources
+            if (expirationTimeMicros + GroupResourcePlacementEscrowService.LEASE_DURATION_MICROS
+                    < now && !entry.getKey().equals(exceptNodeId)) {
+                expiredLeases.put(entry.getKey(), expirationTimeMicros);
+            }
+        }
+        if (expiredLeases.isEmpty()) {
+            // e.g. the expired lease was renewed meanwhile
+            unfenceLeases(state);
+            return;
+        }
+
+        boolean reported = true;
+        for (Map.Entry<String, ResourcePlacementLease> entry : state.leases.entrySet()) {
+            ResourcePlacementLease lease = entry.getValue();
+            if (expiredLeases.containsKey(entry.getKey())) {
+                continue;
+            }
+            if (!lease.fenced) {
+                lease.fenced = true;
+                lease.fenceAcknowledged = false;
+            }
+            reported &= lease.fenceAcknowledged;
+        }
+        if (!reported || !reclaimingLeases.compareAndSet(false, true)) {
+            return;
+        }
+
+        countResourcesForPlacement(state, (r) -> {
+            if (r.hasException()) {
+                reclaimingLeases.set(false);
+                logWarning("%s: failed to count the resources to reclaim expired leases: %s",
+                        state.name, Utils.toString(r.getException()));
+                return;
+            }
+
+            ResourcePlacementLeaseRequest request = new ResourcePlacementLeaseRequest();
+            request.reclaimedLeases = expiredLeases;
+            request.resourcesCount = r.getCount();
+            request.referer = getSelfLink();
+            Operation patch = Operation.createPatch(getUri())
+                    .setBody(request)
+                    .setCompletion((o, e) -> {
+                        reclaimingLeases.set(false);
+                        if (e != null) {
+                            logWarning("%s: failed to reclaim expired leases: %s", state.name,
+                                    Utils.toString(e));
+                        }
+                    });
+            setAuthorizationContext(patch, getSystemAuthorizationContext());
+            sendRequest(patch);
+        });
+    }
+
+    /**
+     * Reclaims the given expired leases. The resources of the placement which exist but are not
+     * allocated are taken as reserved out of the leases and are allocated, the rest of the leases
+     * is returned to the available resources. Their memory is estimated with the average memory
+     * of the allocated instances, or is the whole leased memory if there are none.
+     * <p>
+     * The live leases must be fenced and reported since before the resources were counted,
+     * otherwise the resources created out of them would be allocated twice. The reclaim is
+     * skipped if a lease is not, and started again with a new count later.
+     */
+    private void handleLeaseReclaim(Operation patch, GroupResourcePlacementState state,
+            ResourcePlacementLeaseRequest request) {
+        boolean limitedInstances = state.maxNumberInstances != UNLIMITED_NUMBER_INSTANCES;
+        boolean limitedMemory = state.memoryLimit != 0;
+
+        Map<String, ResourcePlacementLease> reclaimedLeases = new HashMap<>();
+        if (state.leases != null) {
+            for (Map.Entry<String, ResourcePlacementLease> entry : state.leases.entrySet()) {
+                ResourcePlacementLease lease = entry.getValue();
+                Long expirationTimeMicros = request.reclaimedLeases.get(entry.getKey());
+                if (expirationTimeMicros != null
+                        && lease.expirationTimeMicros == expirationTimeMicros) {
+                    reclaimedLeases.put(entry.getKey(), lease);
+                } else if (!lease.fenceAcknowledged) {
+                    // renewed meanwhile or not reported yet
+                    logFine("%s: lease of node %s is not reported, skipping the reclaim",
+                            state.name, entry.getKey());
+                    patch.setBody(state).complete();
+                    return;
+                }
+            }
+        }
+
+        long leasedInstances = 0;
+        long leasedMemory = 0;
+        for (Map.Entry<String, ResourcePlacementLease> entry : reclaimedLeases.entrySet()) {
+            ResourcePlacementLease lease = entry.getValue();
+            logWarning("%s: reclaiming expired lease of node %s with instances [%d] and "
+                    + "memory [%d]", state.name, entry.getKey(), lease.instancesCount,
+                    lease.memory);
+            state.leases.remove(entry.getKey());
+            leasedInstances += limitedInstances ? lease.instancesCount : 0;
+            leasedMemory += limitedMemory ? lease.memory : 0;
+        }
+        unfenceLeases(state);
+
+        long usedInstances = Math.max(request.resourcesCount - state.allocatedInstancesCount, 0);
+        if (limitedInstances) {
+            usedInstances = Math.min(usedInstances, leasedInstances);
+        }
+
+        long usedMemory = 0;
+        if (limitedMemory && usedInstances > 0) {
+            long allocatedMemory = state.memoryLimit - state.availableMemory
+                    - getLeasedMemory(state) - leasedMemory;
+            usedMemory = state.allocatedInstancesCount > 0
+                    ? Math.min(allocatedMemory / state.allocatedInstancesCount * usedInstances,
+                            leasedMemory)
+                    : leasedMemory;
+        }
+
+        if (usedInstances > 0) {
+            logWarning("%s: allocating [%d] unreported instances and memory [%d] of the "
+                    + "reclaimed leases", state.name, usedInstances, usedMemory);
+        }
+        state.allocatedInstancesCount += usedInstances;
+        if (limitedInstances) {
+            state.availableInstancesCount += leasedInstances - usedInstances;
+        }
+        if (limitedMemory) {
+            state.availableMemory += leasedMemory - usedMemory;
+        }
+
+        patch.setBody(state).complete();
+    }
+
+    private static boolean isFenced(GroupResourcePlacementState state) {
+        return state.leases != null && state.leases.values().stream()
+                .anyMatch(lease -> lease.fenced);
+    }
+
+    private static void unfenceLeases(GroupResourcePlacementState state) {
+        if (state.leases == null) {
+            return;
+        }
+        for (ResourcePlacementLease lease : state.leases.values()) {
+            lease.fenced = false;
+            lease.fenceAcknowledged = false;
+        }
+    }
+
+    private static long getLeasedInstancesCount(GroupResourcePlacementState state) {
+        if (state.leases == null) {
+            return 0;
+        }
+        return state.leases.values().stream()
+                .mapToLong(lease -> lease.instancesCount)
+                .sum();
+    }
+
+    private static long getLeasedMemory(GroupResourcePlacementState state) {
+        if (state.leases == null || state.memoryLimit == 0) {
+            return 0;
+        }
+        return state.leases.values().stream()
+                .mapToLong(lease -> lease.memory)
+                .sum();
+    }
+
     @Override
     public void handleDelete(Operation delete) {
         GroupResourcePlacementState state = getState(delete);
@@ -679,12 +1022,18 @@ public class GroupResourcePlacementService extends StatefulService {
         ResourcePlacementReservationRequest request = patch
                 .getBody(ResourcePlacementReservationRequest.class);
 
-        return request.referer != null
-                && (request.referer
+        return isReservationServiceTaskReferer(request.referer)
+                || GroupResourcePlacementEscrowService.SELF_LINK.equals(request.referer)
+                || getSelfLink().equals(request.referer);
+    }
+
+    static boolean isReservationServiceTaskReferer(String referer) {
+        return referer != null
+                && (referer
                         .startsWith(ManagementUriParts.REQUEST_RESERVATION_TASKS)
-                        || request.referer
+                        || referer
                                 .startsWith(ManagementUriParts.REQUEST_RESERVATION_REMOVAL_TASKS)
-                        || request.referer
+                        || referer
                                 .startsWith(ManagementUriParts.REQUEST_COMPUTE_RESERVATION_TASKS));
 
     }
@@ -17,12 +17,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,6 +42,8 @@ import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.OperationUtil;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryElementResult;
+import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryPage;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.HostConfigCertificateDistributionService;
@@ -70,6 +74,9 @@ import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
 
 /**
  * Synchronize the ContainerStates with a list of container IDs
@@ -82,14 +89,50 @@ public class HostContainerListDataCollection extends StatefulService {
             "__default-list-data-collection";
     public static final String DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK = UriUtils
             .buildUriPath(FACTORY_LINK, DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_ID);
+    private static final String SHARD_ID_SUFFIX = "-shard-";
+
+    /**
+     * Number of data collection documents the container hosts are partitioned on. Each document
+     * is owner selected on its own, so the collection of different shards runs on different nodes
+     * in parallel, while the collection of a given host is still serialized by its shard. The
+     * default document is always the first shard. Must be the same on all nodes.
+     */
+    private static final int DATA_COLLECTION_SHARDS = Math.max(1, Integer.getInteger(
+            "com.vmware.admiral.data.collection.containers.shards", 1));
     protected static final long DATA_COLLECTION_LOCK_TIMEOUT_MILLISECONDS = Long.getLong(
             "com.vmware.admiral.data.collection.lock.timeout.milliseconds", 60000 * 5);
     private static final String SYSTEM_CONTAINER_NAME = "systemContainerName";
+    // the fields of the existing container states needed to synchronize them with the host
+    private static final List<String> CONTAINER_STATE_SYNC_FIELDS = Arrays.asList(
+            ContainerState.FIELD_NAME_ID, ContainerState.FIELD_NAME_NAMES,
+            ContainerState.FIELD_NAME_POWER_STATE, ContainerState.FIELD_NAME_STATUS,
+            ContainerState.FIELD_NAME_SYSTEM, ContainerState.FIELD_NAME_IS_DELETED);
     private static final int SYSTEM_CONTAINER_SSL_RETRIES_COUNT = Integer.getInteger(
             "com.vmware.admiral.system.container.ssl.retries", 3);
     private static final long SYSTEM_CONTAINER_SSL_RETRIES_WAIT = Long.getLong(
             "com.vmware.admiral.system.container.ssl.retries.wait.millis", 1000);
 
+    /**
+     * When enabled, the containers of a docker host are synchronized by applying the container
+     * events that happened since the last collection instead of listing all the containers. A full
+     * list is still done for the first collection of a host on this node, after a failure or when
+     * the last collection is too old (see {@link #INCREMENTAL_SYNC_MAX_GAP_SECONDS}).
+     */
+    private static final boolean INCREMENTAL_SYNC_ENABLED = Boolean.getBoolean(
+            "com.vmware.admiral.data.collection.containers.incremental");
+    private static final long INCREMENTAL_SYNC_MAX_GAP_SECONDS = Long.getLong(
+            "com.vmware.admiral.data.collection.containers.incremental.max.gap.seconds",
+            TimeUnit.MINUTES.toSeconds(30));
+    // events are applied idempotently so an overlap compensates small clock skews with the host
+    private static final long INCREMENTAL_SYNC_OVERLAP_SECONDS = Long.getLong(
+            "com.vmware.admiral.data.collection.containers.incremental.overlap.seconds", 5);
+
+    /**
+     * Per host time (in seconds) up to which the container events are already applied. Kept in
+     * memory only, so after restart or owner change the next collection is a full list.
+     */
+    private final Map<String, Long> eventCursorsByHost = new ConcurrentHashMap<>();
+
     public static class HostContainerListDataCollectionState extends
             TaskServiceDocument<DefaultSubStage> {
         @Documentation(description = "The map of container host links.")
@@ -99,7 +142,30 @@ public class HostContainerListDataCollection extends StatefulService {
         public Map<String, Long> containerHostLinks;
     }
 
+    /**
+     * Container event as reported by the host, e.g. create, start, die, destroy.
+     */
+    public static class ContainerEvent {
+        public static final String ACTION_CREATE = "create";
+        public static final String ACTION_START = "start";
+        public static final String ACTION_RESTART = "restart";
+        public static final String ACTION_UNPAUSE = "unpause";
+        public static final String ACTION_PAUSE = "pause";
+        public static final String ACTION_STOP = "stop";
+        public static final String ACTION_DIE = "die";
+        public static final String ACTION_DESTROY = "destroy";
+
+        public String id;
+        public String action;
+        public String name;
+        public String image;
+        public long timeNanos;
+    }
+
     public static class ContainerListCallback extends ServiceTaskCallbackResponse {
+        public static final String EVENTS_SINCE_PROP_NAME = "since";
+        public static final String EVENTS_UNTIL_PROP_NAME = "until";
+
         private static final String NAME_SEPARATOR = ",";
         public String containerHostLink;
         public URI hostAdapterReference;
@@ -107,6 +173,10 @@ public class HostContainerListDataCollection extends StatefulService {
         public Map<String, String> containerIdsAndImage = new HashMap<>();
         public Map<String, PowerState> containerIdsAndState = new HashMap<>();
         public boolean unlockDataCollectionForHost;
+        /** (Optional) Notified when the data collection of the host is done or skipped. */
+        public ServiceTaskCallback dataCollectionCallback;
+        /** Container events in the order they happened, set only for incremental collection. */
+        public List<ContainerEvent> containerEvents;
 
         public void addIdAndNames(String id, String[] names) {
             AssertUtil.assertNotNull(id, "containerId");
@@ -243,6 +313,9 @@ public class HostContainerListDataCollection extends StatefulService {
         }
     }
 
+    private final HostDataCollectionCallbacks dataCollectionCallbacks =
+            new HostDataCollectionCallbacks(this);
+
     public HostContainerListDataCollection() {
         super(HostContainerListDataCollectionState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -253,14 +326,69 @@ public class HostContainerListDataCollection extends StatefulService {
     }
 
     public static ServiceDocument buildDefaultStateInstance() {
+        return buildStateInstance(DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK);
+    }
+
+    /**
+     * Builds the default data collection state together with the states of all other shards.
+     */
+    public static List<ServiceDocument> buildDefaultStateInstances() {
+        List<ServiceDocument> states = new ArrayList<>(DATA_COLLECTION_SHARDS);
+        for (String link : getDataCollectionLinks()) {
+            states.add(buildStateInstance(link));
+        }
+        return states;
+    }
+
+    /**
+     * Returns the links of all data collection shards, starting with the default one.
+     */
+    public static List<String> getDataCollectionLinks() {
+        List<String> links = new ArrayList<>(DATA_COLLECTION_SHARDS);
+        links.add(DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK);
+        for (int i = 1; i < DATA_COLLECTION_SHARDS; i++) {
+            links.add(DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK + SHARD_ID_SUFFIX + i);
+        }
+        return links;
+    }
+
+    /**
+     * Returns the link of the data collection shard responsible for the given container host.
+     */
+    public static String getDataCollectionLink(String containerHostLink) {
+        AssertUtil.assertNotNull(containerHostLink, "containerHostLink");
+        int shard = (containerHostLink.hashCode() & Integer.MAX_VALUE) % DATA_COLLECTION_SHARDS;
+        if (shard == 0) {
+            return DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK;
+        }
+        return DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK + SHARD_ID_SUFFIX + shard;
+    }
+
+    private static ServiceDocument buildStateInstance(String documentSelfLink) {
         HostContainerListDataCollectionState state = new HostContainerListDataCollectionState();
-        state.documentSelfLink = DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK;
+        state.documentSelfLink = documentSelfLink;
         state.taskInfo = new TaskState();
         state.taskInfo.stage = TaskStage.STARTED;
         state.containerHostLinks = new HashMap<>();
         return state;
     }
 
+    private static boolean isDataCollectionLink(String documentSelfLink) {
+        if (documentSelfLink.endsWith(DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_ID)) {
+            return true;
+        }
+        int idx = documentSelfLink.lastIndexOf(
+                DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_ID + SHARD_ID_SUFFIX);
+        if (idx < 0) {
+            return false;
+        }
+        String shard = documentSelfLink.substring(idx
+                + DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_ID.length()
+                + SHARD_ID_SUFFIX.length());
+        return StringUtils.isNumeric(shard)
+                && Integer.parseInt(shard) < DATA_COLLECTION_SHARDS;
+    }
+
     @Override
     public ServiceDocument getDocumentTemplate() {
         ServiceDocument template = super.getDocumentTemplate();
@@ -278,8 +406,7 @@ public class HostContainerListDataCollection extends StatefulService {
         HostContainerListDataCollectionState initState = post
                 .getBody(HostContainerListDataCollectionState.class);
         if (initState.documentSelfLink == null
-                || !initState.documentSelfLink
-                .endsWith(DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_ID)) {
+                || !isDataCollectionLink(initState.documentSelfLink)) {
             post.fail(new LocalizableValidationException(
                     "Only one instance of containers data collection can be started",
                     "compute.container.data-collection.single"));
@@ -322,6 +449,7 @@ public class HostContainerListDataCollection extends StatefulService {
             logWarning("'containerHostLink' is required");
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return;
         }
 
@@ -331,6 +459,7 @@ public class HostContainerListDataCollection extends StatefulService {
             // host.
             state.containerHostLinks.remove(containerHostLink);
             op.complete();
+            dataCollectionCallbacks.completed(containerHostLink);
             return;
         }
 
@@ -349,56 +478,292 @@ public class HostContainerListDataCollection extends StatefulService {
 
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return; // return since there is an active data collection for this host.
         } else {
             state.containerHostLinks.put(containerHostLink,
                     Instant.now().toEpochMilli() + DATA_COLLECTION_LOCK_TIMEOUT_MILLISECONDS);
+            dataCollectionCallbacks.started(containerHostLink, body.dataCollectionCallback);
             op.complete();
             // continue with the data collection.
         }
 
-        queryExistingContainerStates(body);
+        if (isIncrementalSyncSupported(body)) {
+            syncContainerEvents(body);
+        } else {
+            queryExistingContainerStates(body);
+        }
+    }
+
+    private boolean isIncrementalSyncSupported(ContainerListCallback body) {
+        return INCREMENTAL_SYNC_ENABLED && ManagementUriParts.ADAPTER_DOCKER_HOST
+                .equals(body.hostAdapterReference.getPath());
+    }
+
+    private void syncContainerEvents(ContainerListCallback body) {
+        String containerHostLink = body.containerHostLink;
+        Long since = eventCursorsByHost.get(containerHostLink);
+        long until = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        if (since == null || until - since > INCREMENTAL_SYNC_MAX_GAP_SECONDS) {
+            logFine("No recent container events cursor for host [%s], listing all containers",
+                    containerHostLink);
+            queryExistingContainerStates(body);
+            return;
+        }
+
+        AdapterRequest request = new AdapterRequest();
+        request.operationTypeId = ContainerHostOperationType.LIST_CONTAINER_EVENTS.id;
+        request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
+        request.resourceReference = UriUtils.buildUri(getHost(), containerHostLink);
+        request.customProperties = new HashMap<>();
+        request.customProperties.put(ContainerListCallback.EVENTS_SINCE_PROP_NAME,
+                Long.toString(since - INCREMENTAL_SYNC_OVERLAP_SECONDS));
+        request.customProperties.put(ContainerListCallback.EVENTS_UNTIL_PROP_NAME,
+                Long.toString(until));
+        sendRequest(Operation
+                .createPatch(body.hostAdapterReference)
+                .setBodyNoCloning(request)
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_QUEUE_FOR_SERVICE_AVAILABILITY)
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        // gap in the events, fall back to full list
+                        logWarning("Failed to list container events of host [%s], listing all"
+                                + " containers: %s", containerHostLink, Utils.toString(ex));
+                        eventCursorsByHost.remove(containerHostLink);
+                        queryExistingContainerStates(body);
+                        return;
+                    }
+                    ContainerListCallback callback = o.getBody(ContainerListCallback.class);
+                    callback.containerHostLink = containerHostLink;
+                    callback.hostAdapterReference = body.hostAdapterReference;
+                    applyContainerEvents(callback, until);
+                }));
+    }
+
+    private void applyContainerEvents(ContainerListCallback callback, long until) {
+        String containerHostLink = callback.containerHostLink;
+        if (callback.containerEvents == null || callback.containerEvents.isEmpty()) {
+            eventCursorsByHost.put(containerHostLink, until);
+            unlockCurrentDataCollectionForHost(containerHostLink);
+            return;
+        }
+
+        // only the last event of a container defines its state
+        Map<String, ContainerEvent> lastEventById = new LinkedHashMap<>();
+        Set<String> names = new HashSet<>();
+        for (ContainerEvent event : callback.containerEvents) {
+            lastEventById.remove(event.id);
+            lastEventById.put(event.id, event);
+            if (event.name != null) {
+                // the names are indexed case insensitive, with or without the leading slash
+                String name = event.name.toLowerCase();
+                names.add(name.startsWith("/") ? name.substring(1) : name);
+                names.add(name.startsWith("/") ? name : "/" + name);
+            }
+        }
+
+        // containers which are still provisioning have no id yet, they are matched by names
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_PARENT_LINK, containerHostLink);
+        QueryTask.Query matchClause = new QueryTask.Query();
+        QueryTask.Query idClause = QueryUtil.addListValueClause(ContainerState.FIELD_NAME_ID,
+                lastEventById.keySet(), MatchType.TERM);
+        idClause.occurance = Occurance.SHOULD_OCCUR;
+        matchClause.addBooleanClause(idClause);
+        if (!names.isEmpty()) {
+            QueryTask.Query namesClause = QueryUtil.addListValueClause(
+                    QuerySpecification.buildCollectionItemName(ContainerState.FIELD_NAME_NAMES),
+                    names, MatchType.TERM);
+            namesClause.occurance = Occurance.SHOULD_OCCUR;
+            matchClause.addBooleanClause(namesClause);
+        }
+        queryTask.querySpec.query.addBooleanClause(matchClause);
+        QueryUtil.addBroadcastOption(queryTask);
+
+        List<ContainerState> existingContainerStates = new ArrayList<>();
+        new ServiceDocumentQuery<ContainerState>(getHost(), ContainerState.class)
+                .queryFields(queryTask, CONTAINER_STATE_SYNC_FIELDS, (r) -> {
+                    if (r.hasException()) {
+                        logSevere("Failed to query for ContainerState instances of container"
+                                + " events: %s", Utils.toString(r.getException()));
+                        eventCursorsByHost.remove(containerHostLink);
+                        unlockCurrentDataCollectionForHost(containerHostLink);
+                    } else if (r.hasResult()) {
+                        existingContainerStates.add(r.getResult());
+                    } else {
+                        updateContainerStatesFromEvents(callback, lastEventById,
+                                existingContainerStates, until);
+                    }
+                });
     }
 
+    private void updateContainerStatesFromEvents(ContainerListCallback callback,
+            Map<String, ContainerEvent> lastEventById, List<ContainerState> containerStates,
+            long until) {
+        String containerHostLink = callback.containerHostLink;
+        ContainerListCallback stateChanges = new ContainerListCallback();
+        boolean containersRemoved = false;
+        for (ContainerState existingContainerState : containerStates) {
+            if (existingContainerState.id == null) {
+                removeProvisioningContainerEvent(existingContainerState, lastEventById);
+                continue;
+            }
+            ContainerEvent event = lastEventById.remove(existingContainerState.id);
+            if (event == null) {
+                continue;
+            }
+            if (ContainerEvent.ACTION_DESTROY.equals(event.action)) {
+                boolean active = existingContainerState.powerState == PowerState.RUNNING
+                        || existingContainerState.powerState == PowerState.STOPPED
+                        || existingContainerState.powerState == PowerState.PAUSED;
+                if (active) {
+                    handleMissingContainer(existingContainerState);
+                    containersRemoved = true;
+                }
+            } else {
+                PowerState powerState = getPowerState(event);
+                if (powerState != null) {
+                    stateChanges.containerIdsAndState.put(existingContainerState.id, powerState);
+                    updateExistingContainer(existingContainerState, stateChanges);
+                }
+            }
+        }
+
+        // the remaining events are for containers not known yet
+        ContainerListCallback discovered = new ContainerListCallback();
+        discovered.containerHostLink = containerHostLink;
+        discovered.hostAdapterReference = callback.hostAdapterReference;
+        for (ContainerEvent event : lastEventById.values()) {
+            if (ContainerEvent.ACTION_DESTROY.equals(event.action)) {
+                continue;
+            }
+            if (event.name == null) {
+                // the container could not be created without a name, list all containers
+                logFine("Container event without name for host [%s], listing all containers",
+                        containerHostLink);
+                eventCursorsByHost.remove(containerHostLink);
+                queryExistingContainerStates(callback);
+                return;
+            }
+            discovered.addIdAndNames(event.id, new String[] { event.name });
+            discovered.containerIdsAndImage.put(event.id, event.image);
+        }
+
+        if (discovered.containerIdsAndNames.isEmpty()) {
+            eventCursorsByHost.put(containerHostLink, until);
+            if (containersRemoved) {
+                updateNumberOfContainers(containerHostLink);
+            }
+            unlockCurrentDataCollectionForHost(containerHostLink);
+            return;
+        }
+
+        discoverContainers(discovered, SystemContainerDescriptions.getSystemContainerNames(),
+                false, (e) -> updateEventCursor(containerHostLink, until, e));
+    }
+
+    /**
+     * Removes the event of a container which is still provisioning, the same way the full list
+     * matches it by names. The provisioning sets its id.
+     */
+    private void removeProvisioningContainerEvent(ContainerState containerState,
+            Map<String, ContainerEvent> lastEventById) {
+        if (PowerState.PROVISIONING != containerState.powerState
+                && PowerState.RETIRED != containerState.powerState
+                && PowerState.ERROR != containerState.powerState) {
+            return;
+        }
+        String names = containerNamesToString(containerState.names);
+        lastEventById.values().removeIf((event) -> event.name != null
+                && containerNamesToString(Arrays.asList(event.name)).equals(names));
+    }
+
+    /**
+     * Advances the events cursor of the host after the discovery of the containers succeeds, a
+     * failed discovery is repaired by a full list.
+     */
+    private void updateEventCursor(String containerHostLink, long cursor, Throwable error) {
+        if (error == null) {
+            eventCursorsByHost.put(containerHostLink, cursor);
+        } else {
+            eventCursorsByHost.remove(containerHostLink);
+        }
+    }
+
+    private static PowerState getPowerState(ContainerEvent event) {
+        switch (event.action) {
+        case ContainerEvent.ACTION_START:
+        case ContainerEvent.ACTION_RESTART:
+        case ContainerEvent.ACTION_UNPAUSE:
+            return PowerState.RUNNING;
+        case ContainerEvent.ACTION_PAUSE:
+            return PowerState.PAUSED;
+        case ContainerEvent.ACTION_STOP:
+        case ContainerEvent.ACTION_DIE:
+            return PowerState.STOPPED;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Streams the existing container states of the host page by page, so the next page is
+     * fetched while the current one is processed, and lists the containers on the host once all
+     * pages are read.
+     */
     private void queryExistingContainerStates(ContainerListCallback body) {
         String containerHostLink = body.containerHostLink;
         QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
                 ContainerState.FIELD_NAME_PARENT_LINK, containerHostLink);
-        QueryUtil.addExpandOption(queryTask);
 
         QueryUtil.addBroadcastOption(queryTask);
+        QueryUtil.addSelectFieldsOption(queryTask, CONTAINER_STATE_SYNC_FIELDS.toArray(
+                new String[CONTAINER_STATE_SYNC_FIELDS.size()]));
+        List<ContainerState> existingContainerStates = new ArrayList<>();
         new ServiceDocumentQuery<ContainerState>(getHost(), ContainerState.class)
-                .query(queryTask, processContainerStatesQueryResults(body));
+                .queryPages(queryTask, (page) -> processContainerStatesPage(body,
+                        existingContainerStates, page));
     }
 
-    private Consumer<ServiceDocumentQuery.ServiceDocumentQueryElementResult<ContainerState>> processContainerStatesQueryResults(
-            ContainerListCallback body) {
+    private void processContainerStatesPage(ContainerListCallback body,
+            List<ContainerState> existingContainerStates,
+            ServiceDocumentQueryPage<ContainerState> page) {
         String containerHostLink = body.containerHostLink;
-        List<ContainerState> existingContainerStates = new ArrayList<>();
-        return (r) -> {
-            if (r.hasException()) {
-                logSevere("Failed to query for existing ContainerState instances: %s",
-                        r.getException() instanceof CancellationException
-                                ? r.getException().getMessage()
-                                : Utils.toString(r.getException()));
-                unlockCurrentDataCollectionForHost(containerHostLink);
-            } else if (r.hasResult()) {
-                existingContainerStates.add(r.getResult());
+        if (page.hasException()) {
+            logSevere("Failed to query for existing ContainerState instances: %s",
+                    page.getException() instanceof CancellationException
+                            ? page.getException().getMessage()
+                            : Utils.toString(page.getException()));
+            unlockCurrentDataCollectionForHost(containerHostLink);
+            return;
+        }
+
+        for (ServiceDocumentQueryElementResult<ContainerState> r : page.getResults()) {
+            existingContainerStates.add(r.getResult());
+        }
+        if (!page.isLastPage()) {
+            page.requestNext();
+            return;
+        }
+
+        long listStartSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        listHostContainers(body, (o, ex) -> {
+            if (ex == null) {
+                ContainerListCallback callback = o.getBody(ContainerListCallback.class);
+                if (callback.hostAdapterReference == null) {
+                    callback.hostAdapterReference = ContainerHostDataCollectionService
+                            .getDefaultHostAdapter(getHost());
+                }
+                updateContainerStates(callback, existingContainerStates, containerHostLink,
+                        (e) -> {
+                            if (isIncrementalSyncSupported(body)) {
+                                updateEventCursor(containerHostLink, listStartSeconds, e);
+                            }
+                        });
             } else {
-                listHostContainers(body, (o, ex) -> {
-                    if (ex == null) {
-                        ContainerListCallback callback = o.getBody(ContainerListCallback.class);
-                        if (callback.hostAdapterReference == null) {
-                            callback.hostAdapterReference = ContainerHostDataCollectionService
-                                    .getDefaultHostAdapter(getHost());
-                        }
-                        updateContainerStates(callback, existingContainerStates, containerHostLink);
-                    } else {
-                        unlockCurrentDataCollectionForHost(containerHostLink);
-                    }
-                });
+                unlockCurrentDataCollectionForHost(containerHostLink);
             }
-        };
+        });
     }
 
     private void listHostContainers(ContainerListCallback body, Operation.CompletionHandler c) {
@@ -415,7 +780,8 @@ public class HostContainerListDataCollection extends StatefulService {
     }
 
     private void updateContainerStates(ContainerListCallback callback,
-            List<ContainerState> containerStates, String containerHostLink) {
+            List<ContainerState> containerStates, String containerHostLink,
+            Consumer<Throwable> onDiscovered) {
         final List<String> systemContainersToInstall = SystemContainerDescriptions
                 .getSystemContainerNames();
         for (ContainerState existingContainerState : containerStates) {
@@ -451,6 +817,18 @@ public class HostContainerListDataCollection extends StatefulService {
         }
 
         // finished removing existing ContainerState, now deal with remaining IDs
+        discoverContainers(callback, systemContainersToInstall, true, onDiscovered);
+    }
+
+    /**
+     * Creates container states for the containers in the callback that are not known yet and
+     * unlocks the data collection for the host when done. <code>onDiscovered</code> is called
+     * with the error, if any, before the unlock.
+     */
+    private void discoverContainers(ContainerListCallback callback,
+            List<String> systemContainersToInstall, boolean installMissingSystemContainers,
+            Consumer<Throwable> onDiscovered) {
+        String containerHostLink = callback.containerHostLink;
         List<ContainerState> containersLeft = new ArrayList<>();
         Set<ContainerState> systemContainersToStart = new HashSet<>();
 
@@ -460,6 +838,7 @@ public class HostContainerListDataCollection extends StatefulService {
                     if (ex != null) {
                         logSevere("Failure to retrieve host [%s]. Error: %s",
                                 callback.containerHostLink, Utils.toString(ex));
+                        onDiscovered.accept(ex);
                         unlockCurrentDataCollectionForHost(callback.containerHostLink);
                         return;
                     }
@@ -507,9 +886,11 @@ public class HostContainerListDataCollection extends StatefulService {
                         containersLeft.add(containerState);
                     }
 
-                    for (String systemContainerName : systemContainersToInstall) {
-                        installSystemContainerToHost(containerHostLink,
-                                systemContainerName, null);
+                    if (installMissingSystemContainers) {
+                        for (String systemContainerName : systemContainersToInstall) {
+                            installSystemContainerToHost(containerHostLink,
+                                    systemContainerName, null);
+                        }
                     }
 
                     createDiscoveredContainers(containersLeft, (e) -> {
@@ -521,6 +902,7 @@ public class HostContainerListDataCollection extends StatefulService {
                             handleDiscoveredSystemContainer(container, containerHostLink, null);
                         }
 
+                        onDiscovered.accept(e);
                         unlockCurrentDataCollectionForHost(callback.containerHostLink);
                     });
                 });
@@ -559,6 +941,26 @@ public class HostContainerListDataCollection extends StatefulService {
             return;
         }
 
+        if (existingContainerState.powerState != PowerState.STOPPED
+                && existingContainerState.powerState != PowerState.PROVISIONING) {
+            return;
+        }
+
+        // the existing container state contains only the synchronized fields
+        sendRequest(Operation
+                .createGet(this, existingContainerState.documentSelfLink)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failed to retrieve system container state %s: %s",
+                                existingContainerState.documentSelfLink, Utils.toString(e));
+                        return;
+                    }
+                    updateSystemContainer(containerHostLink, o.getBody(ContainerState.class));
+                }));
+    }
+
+    private void updateSystemContainer(String containerHostLink,
+            ContainerState existingContainerState) {
         if (existingContainerState.powerState == PowerState.STOPPED) {
             logWarning("System container found but is OFF. Starting.");
             startSystemContainer(existingContainerState, null);
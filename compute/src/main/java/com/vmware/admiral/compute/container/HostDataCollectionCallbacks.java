@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import com.vmware.admiral.service.common.ServiceTaskCallback;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Keeps the callbacks of the host list data collections (containers, networks, volumes, etc.)
+ * running on the current node and notifies them when the data collection of the host is done. It
+ * lets {@link ContainerHostDataCollectionService} hold the in-flight slot of a host until all its
+ * collections are completed. The callbacks are not replicated, a callback lost on owner change is
+ * released by the in-flight timeout of {@link ContainerHostDataCollectionScheduler}.
+ */
+public class HostDataCollectionCallbacks {
+
+    private final Service service;
+    private final Map<String, ServiceTaskCallback> callbacksByHost = new ConcurrentHashMap<>();
+
+    public HostDataCollectionCallbacks(Service service) {
+        this.service = service;
+    }
+
+    /**
+     * Registers the callback of a started data collection of the host. A callback left from a
+     * previous collection of the host (e.g. with an expired lock) is notified.
+     */
+    public void started(String hostLink, ServiceTaskCallback callback) {
+        if (callback == null || callback.isEmpty()) {
+            return;
+        }
+        notify(callbacksByHost.put(hostLink, callback));
+    }
+
+    /**
+     * Notifies the callback of the data collection of the host, if any.
+     */
+    public void completed(String hostLink) {
+        notify(callbacksByHost.remove(hostLink));
+    }
+
+    /**
+     * Notifies the given callback, e.g. when the data collection is skipped.
+     */
+    public void notify(ServiceTaskCallback callback) {
+        if (callback == null || callback.isEmpty()) {
+            return;
+        }
+
+        URI callbackReference = URI.create(callback.serviceSelfLink);
+        if (callbackReference.getScheme() == null) {
+            callbackReference = UriUtils.buildUri(service.getHost(), callback.serviceSelfLink);
+        }
+        service.sendRequest(Operation
+                .createPatch(callbackReference)
+                .setBodyNoCloning(callback.getFinishedResponse())
+                .setReferer(service.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        service.getHost().log(Level.WARNING,
+                                "Failed to notify data collection callback %s: %s",
+                                callback.serviceSelfLink, Utils.toString(e));
+                    }
+                }));
+    }
+}
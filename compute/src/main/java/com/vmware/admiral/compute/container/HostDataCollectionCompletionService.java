@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.service.common.ServiceTaskCallback;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Receives the callbacks of the host list data collections started by
+ * {@link ContainerHostDataCollectionService} on the current node and runs the registered
+ * completions, so no callback handler service is started per list collection. The completions
+ * are not replicated, the ones which are never called back are dropped after a timeout.
+ */
+public class HostDataCollectionCompletionService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.HOST_DATA_COLLECTION_COMPLETIONS;
+
+    static final String ID_QUERY_PARAM = "id";
+
+    private static final long COMPLETION_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.dc.in.flight.timeout.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    private static class Completion {
+        final Runnable onCompleted;
+        final long expirationMicros;
+
+        Completion(Runnable onCompleted, long expirationMicros) {
+            this.onCompleted = onCompleted;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    private final Map<String, Completion> completions = new ConcurrentHashMap<>();
+
+    public HostDataCollectionCompletionService() {
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(COMPLETION_TIMEOUT_MICROS);
+    }
+
+    /**
+     * Registers the completion of a list data collection in the service of the given host and
+     * returns the callback to pass to the collection. The completion runs right away and an empty
+     * callback is returned when the service is not started.
+     */
+    public static ServiceTaskCallback register(ServiceHost host, Runnable onCompleted) {
+        Service service = host.findService(SELF_LINK);
+        if (!(service instanceof HostDataCollectionCompletionService)) {
+            onCompleted.run();
+            return ServiceTaskCallback.createEmpty();
+        }
+        return ((HostDataCollectionCompletionService) service).register(onCompleted);
+    }
+
+    /**
+     * Runs the completion of the given callback when the list data collection could not be
+     * started.
+     */
+    public static void complete(ServiceHost host, ServiceTaskCallback callback) {
+        Service service = host.findService(SELF_LINK);
+        if (service instanceof HostDataCollectionCompletionService && !callback.isEmpty()) {
+            ((HostDataCollectionCompletionService) service).complete(URI.create(
+                    callback.serviceSelfLink));
+        }
+    }
+
+    private ServiceTaskCallback register(Runnable onCompleted) {
+        String id = UUID.randomUUID().toString();
+        completions.put(id, new Completion(onCompleted,
+                Utils.getSystemNowMicrosUtc() + COMPLETION_TIMEOUT_MICROS));
+        URI callbackUri = UriUtils.extendUriWithQuery(getUri(), ID_QUERY_PARAM, id);
+        return ServiceTaskCallback.create(callbackUri.toString());
+    }
+
+    @Override
+    public void handlePatch(Operation patch) {
+        // the body is a finished response, skipped and failed collections complete too
+        patch.complete();
+        complete(patch.getUri());
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        long now = Utils.getSystemNowMicrosUtc();
+        Iterator<Completion> it = completions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expirationMicros < now) {
+                // the scheduler has already expired the slot of the host collection
+                it.remove();
+            }
+        }
+        post.complete();
+    }
+
+    private void complete(URI callbackUri) {
+        String id = UriUtils.parseUriQueryParams(callbackUri).get(ID_QUERY_PARAM);
+        Completion completion = id == null ? null : completions.remove(id);
+        if (completion != null) {
+            completion.onCompleted.run();
+        }
+    }
+}
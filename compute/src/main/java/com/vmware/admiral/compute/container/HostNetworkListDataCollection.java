@@ -95,6 +95,8 @@ public class HostNetworkListDataCollection extends StatefulService {
         public URI hostAdapterReference;
         public Map<String, String> networkIdsAndNames = new HashMap<>();
         public boolean unlockDataCollectionForHost;
+        /** (Optional) Notified when the data collection of the host is done or skipped. */
+        public ServiceTaskCallback dataCollectionCallback;
 
         public void addIdAndNames(String id, String name) {
             AssertUtil.assertNotNull(id, "networkId");
@@ -111,6 +113,9 @@ public class HostNetworkListDataCollection extends StatefulService {
         return state;
     }
 
+    private final HostDataCollectionCallbacks dataCollectionCallbacks =
+            new HostDataCollectionCallbacks(this);
+
     public HostNetworkListDataCollection() {
         super(HostNetworkListDataCollectionState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -171,6 +176,7 @@ public class HostNetworkListDataCollection extends StatefulService {
             logFine("'containerHostLink' is required");
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return;
         }
 
@@ -179,6 +185,7 @@ public class HostNetworkListDataCollection extends StatefulService {
             // patch to mark that there is no active list networks data collection for a given host.
             state.containerHostLinks.remove(body.containerHostLink);
             op.complete();
+            dataCollectionCallbacks.completed(body.containerHostLink);
             return;
         }
 
@@ -193,10 +200,12 @@ public class HostNetworkListDataCollection extends StatefulService {
                         (state.containerHostLinks.get(body.containerHostLink))))) {
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return;// return since there is an active data collection for this host.
         } else {
             state.containerHostLinks.put(body.containerHostLink,
                     Instant.now().toEpochMilli() + DATA_COLLECTION_LOCK_TIMEOUT_MILLISECONDS);
+            dataCollectionCallbacks.started(body.containerHostLink, body.dataCollectionCallback);
             op.complete();
             // complete patch operation and continue with the data collection
         }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vmware.admiral.compute.container.HostPortProfileService.HostPortProfileState;
+
+/**
+ * Index of the reserved ports of a {@link HostPortProfileState} which keeps the reserved ports
+ * map of the state up to date.
+ *
+ * The ports in the range of the profile are tracked in a bit set, and the container of each of
+ * them by an index in an array, so a free port is found by scanning the words of the bit set
+ * from a cursor which rotates over the range. The ports of each container are indexed as well,
+ * so releasing them does not walk all reserved ports. Specific ports out of the range are only
+ * tracked by container.
+ */
+class HostPortAllocator {
+
+    // no valid port is above it, also bounds the memory for a misconfigured range
+    private static final int MAX_RANGE_SIZE = 65536;
+    private static final int NOT_IN_RANGE = -1;
+
+    private final Map<Long, String> reservedPorts;
+    private final long startPort;
+    private final int rangeSize;
+    private final BitSet usedPorts;
+    private final int[] portOwners;
+
+    private final List<String> owners = new ArrayList<>();
+    private final Map<String, Integer> ownerIndexes = new HashMap<>();
+    private final Deque<Integer> freeOwnerIndexes = new ArrayDeque<>();
+    private final Map<String, Set<Long>> portsByOwner = new HashMap<>();
+
+    private int cursor;
+    private long documentVersion;
+
+    HostPortAllocator(HostPortProfileState state) {
+        if (state.reservedPorts == null) {
+            state.reservedPorts = new LinkedHashMap<>();
+        }
+        this.reservedPorts = state.reservedPorts;
+        this.startPort = state.startPort;
+        // the end port is not part of the range
+        this.rangeSize = (int) Math.min(state.endPort - state.startPort, MAX_RANGE_SIZE);
+        this.usedPorts = new BitSet(rangeSize);
+        this.portOwners = new int[rangeSize];
+        this.documentVersion = state.documentVersion;
+
+        for (Map.Entry<Long, String> entry : reservedPorts.entrySet()) {
+            index(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Whether the index is up to date with the given state, i.e. no other update has been
+     * applied to the state since the last update through the index.
+     */
+    boolean isIndexOf(HostPortProfileState state) {
+        return state.reservedPorts == reservedPorts
+                && state.startPort == startPort
+                && state.documentVersion == documentVersion;
+    }
+
+    /**
+     * Marks the index as up to date with the state as of after the current update.
+     */
+    void updated(HostPortProfileState state) {
+        documentVersion = state.documentVersion + 1;
+    }
+
+    Set<Long> getAllocatedPorts(String containerLink) {
+        Set<Long> ports = portsByOwner.get(containerLink);
+        return ports == null ? Collections.emptySet() : new HashSet<>(ports);
+    }
+
+    int getAvailablePortCount() {
+        return rangeSize - usedPorts.cardinality();
+    }
+
+    /**
+     * Returns the number of the given ports which are in the range and not reserved.
+     */
+    int getAvailablePortCount(Collection<Long> ports) {
+        int count = 0;
+        for (Long port : ports) {
+            int offset = toOffset(port);
+            if (offset != NOT_IN_RANGE && !usedPorts.get(offset)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reserves the given port for the container, taking it from the container which has it.
+     */
+    void allocate(long port, String containerLink) {
+        String previousOwner = reservedPorts.put(port, containerLink);
+        if (previousOwner != null) {
+            unindex(port, previousOwner);
+        }
+        index(port, containerLink);
+    }
+
+    /**
+     * Reserves any available port in the range for the container and returns it, or returns
+     * {@code null} if there is no available port.
+     */
+    Long allocate(String containerLink) {
+        if (rangeSize <= 0) {
+            return null;
+        }
+        int offset = usedPorts.nextClearBit(cursor);
+        if (offset >= rangeSize) {
+            offset = usedPorts.nextClearBit(0);
+            if (offset >= rangeSize) {
+                return null;
+            }
+        }
+        // start from the next port for the next allocation
+        cursor = offset + 1 < rangeSize ? offset + 1 : 0;
+
+        long port = startPort + offset;
+        reservedPorts.put(port, containerLink);
+        index(port, containerLink);
+        return port;
+    }
+
+    /**
+     * Releases all ports of the container.
+     */
+    void release(String containerLink) {
+        Set<Long> ports = portsByOwner.get(containerLink);
+        if (ports == null) {
+            return;
+        }
+        for (Long port : new ArrayList<>(ports)) {
+            reservedPorts.remove(port);
+            unindex(port, containerLink);
+        }
+    }
+
+    private void index(long port, String containerLink) {
+        portsByOwner.computeIfAbsent(containerLink, (k) -> new HashSet<>()).add(port);
+
+        int offset = toOffset(port);
+        if (offset != NOT_IN_RANGE) {
+            usedPorts.set(offset);
+            portOwners[offset] = getOwnerIndex(containerLink);
+        }
+    }
+
+    private void unindex(long port, String containerLink) {
+        int offset = toOffset(port);
+        if (offset != NOT_IN_RANGE && usedPorts.get(offset)
+                && containerLink.equals(owners.get(portOwners[offset]))) {
+            usedPorts.clear(offset);
+        }
+
+        Set<Long> ports = portsByOwner.get(containerLink);
+        if (ports != null) {
+            ports.remove(port);
+            if (ports.isEmpty()) {
+                portsByOwner.remove(containerLink);
+                Integer ownerIndex = ownerIndexes.remove(containerLink);
+                if (ownerIndex != null) {
+                    owners.set(ownerIndex, null);
+                    freeOwnerIndexes.push(ownerIndex);
+                }
+            }
+        }
+    }
+
+    private int getOwnerIndex(String containerLink) {
+        Integer ownerIndex = ownerIndexes.get(containerLink);
+        if (ownerIndex == null) {
+            ownerIndex = freeOwnerIndexes.poll();
+            if (ownerIndex == null) {
+                ownerIndex = owners.size();
+                owners.add(containerLink);
+            } else {
+                owners.set(ownerIndex, containerLink);
+            }
+            ownerIndexes.put(containerLink, ownerIndex);
+        }
+        return ownerIndex;
+    }
+
+    private int toOffset(long port) {
+        long offset = port - startPort;
+        return offset >= 0 && offset < rangeSize ? (int) offset : NOT_IN_RANGE;
+    }
+}
@@ -37,6 +37,9 @@ import com.vmware.xenon.common.Utils;
  *
  * It tracks reserved port in the port to container map.
  * When port is released, it is removed from the map.
+ *
+ * The reservations are applied through a {@link HostPortAllocator} index of the map, kept
+ * while the state is only updated by reservation requests.
  */
 public class HostPortProfileService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.HOST_PORT_PROFILES;
@@ -94,6 +97,8 @@ public class HostPortProfileService extends StatefulService {
 
     }
 
+    private HostPortAllocator portAllocator;
+
     public HostPortProfileService() {
         super(HostPortProfileState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -122,19 +127,21 @@ public class HostPortProfileService extends StatefulService {
         assertNotEmpty(request.containerLink, "containerLink");
         assertNotNull(request.mode, "mode");
         HostPortProfileState hostPortProfileState = getState(patch);
+        HostPortAllocator allocator = getPortAllocator(hostPortProfileState);
         switch (request.mode) {
         case ALLOCATE:
-            allocatePorts(hostPortProfileState, request);
+            allocatePorts(hostPortProfileState, allocator, request);
             break;
         case RELEASE:
-            releasePorts(hostPortProfileState, request);
+            releasePorts(hostPortProfileState, allocator, request);
             break;
         case UPDATE_ALLOCATION:
-            updatePortAllocationForContainer(hostPortProfileState, request);
+            updatePortAllocationForContainer(hostPortProfileState, allocator, request);
             break;
         default:
             throw new UnsupportedOperationException("This operation is not supported: " + request.mode);
         }
+        allocator.updated(hostPortProfileState);
         patch.setBody(hostPortProfileState);
         patch.complete();
     }
@@ -152,80 +159,78 @@ public class HostPortProfileService extends StatefulService {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Returns the index of the reserved ports of the state, rebuilt if the state has been
+     * updated other than through the index, e.g. by PUT.
+     */
+    private HostPortAllocator getPortAllocator(HostPortProfileState state) {
+        if (portAllocator == null || !portAllocator.isIndexOf(state)) {
+            portAllocator = new HostPortAllocator(state);
+        }
+        return portAllocator;
+    }
+
     /**
      * Update container port allocation.
      * Mark container ports as allocated and release ports that are not used anymore
      */
-    private void updatePortAllocationForContainer(HostPortProfileState state, HostPortProfileReservationRequest request) {
-        Set<Long> previousPorts = getAllocatedPorts(state, request.containerLink);
+    private void updatePortAllocationForContainer(HostPortProfileState state,
+            HostPortAllocator allocator, HostPortProfileReservationRequest request) {
+        Set<Long> previousPorts = allocator.getAllocatedPorts(request.containerLink);
         // First remove all ports, this will remove ports that are not allocated anymore
-        releasePorts(state, request);
+        releasePorts(state, allocator, request);
         // Second mark ports allocated
-        allocateSpecificPorts(state, request);
+        allocateSpecificPorts(allocator, request);
         logInfo("Updating port allocation from [%s] to [%s] for container [%s] and profile [%s]",
                 previousPorts,
-                getAllocatedPorts(state, request.containerLink),
+                allocator.getAllocatedPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
     }
 
     /** Release all ports for HostPortProfileReservationRequest. */
-    private void releasePorts(HostPortProfileState state, HostPortProfileReservationRequest request) {
+    private void releasePorts(HostPortProfileState state, HostPortAllocator allocator,
+            HostPortProfileReservationRequest request) {
         logInfo("Releasing ports [%s] for container [%s] and profile [%s].",
-                getAllocatedPorts(state, request.containerLink),
+                allocator.getAllocatedPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
         // remove container host ports from reserved ports
-        state.reservedPorts.entrySet()
-                .removeIf(p -> request.containerLink.equals(p.getValue()));
+        allocator.release(request.containerLink);
     }
 
     /** Allocate all ports for HostPortProfileReservationRequest. */
-    private void allocatePorts(HostPortProfileState state,
+    private void allocatePorts(HostPortProfileState state, HostPortAllocator allocator,
                                HostPortProfileReservationRequest request) {
-        allocateSpecificPorts(state, request);
-        allocateAdditionalPorts(state, request);
+        // fail before reserving any port, the specific ports take from the available ones
+        int specificAvailablePortCount = request.specificHostPorts == null ? 0
+                : allocator.getAvailablePortCount(request.specificHostPorts);
+        if (allocator.getAvailablePortCount() - specificAvailablePortCount
+                < request.additionalHostPortCount) {
+            throw new LocalizableValidationException(
+                    "Unable to allocate hostPort. There are no available ports left.",
+                    "compute.host.port.unavailable");
+        }
+
+        allocateSpecificPorts(allocator, request);
+        for (long i = 0; i < request.additionalHostPortCount; i++) {
+            allocator.allocate(request.containerLink);
+        }
 
         logInfo("Allocating ports [%s] for container [%s] and profile [%s].",
-                getAllocatedPorts(state, request.containerLink),
+                allocator.getAllocatedPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
     }
 
-    /** Allocate a number of any available ports. */
-    private void allocateAdditionalPorts(HostPortProfileState state,
-                                         HostPortProfileReservationRequest request) {
-        long statIndex = state.startPort;
-
-        for (long i = 0; i < request.additionalHostPortCount; i++) {
-            Long allocatedPort = null;
-            for (long k = statIndex; k < state.endPort; k++) {
-                if (!state.reservedPorts.containsKey(k)) {
-                    allocatedPort = k;
-                    state.reservedPorts.put(allocatedPort, request.containerLink);
-                    // start from the next index for the next allocation
-                    statIndex = k + 1;
-                    break;
-                }
-            }
-            if (allocatedPort == null) {
-                LocalizableValidationException exception =
-                        new LocalizableValidationException(
-                                "Unable to allocate hostPort. There are no available ports left.",
-                                "compute.host.port.unavailable");
-                throw exception;
-            }
-        }
-    }
-
     /** Allocate specific ports. */
-    private void allocateSpecificPorts(HostPortProfileState state,
+    private void allocateSpecificPorts(HostPortAllocator allocator,
                                        HostPortProfileReservationRequest request) {
         if (request.specificHostPorts == null) {
             return;
         }
 
-        request.specificHostPorts.forEach(p -> state.reservedPorts.put(p, request.containerLink));
+        request.specificHostPorts.forEach(p -> allocator.allocate(p, request.containerLink));
     }
 
     @Override
@@ -94,6 +94,8 @@ public class HostVolumeListDataCollection extends StatefulService {
         public String containerHostLink;
         public Map<String, ContainerVolumeState> volumesByName = new HashMap<>();
         public boolean unlockDataCollectionForHost;
+        /** (Optional) Notified when the data collection of the host is done or skipped. */
+        public ServiceTaskCallback dataCollectionCallback;
 
         public void add(ContainerVolumeState volume) {
             AssertUtil.assertNotNull(volume.name, "volumeName");
@@ -111,6 +113,9 @@ public class HostVolumeListDataCollection extends StatefulService {
         return state;
     }
 
+    private final HostDataCollectionCallbacks dataCollectionCallbacks =
+            new HostDataCollectionCallbacks(this);
+
     public HostVolumeListDataCollection() {
         super(HostVolumeListDataCollectionState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -149,6 +154,7 @@ public class HostVolumeListDataCollection extends StatefulService {
             logFine("'containerHostLink' is required");
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return;
         }
 
@@ -158,6 +164,7 @@ public class HostVolumeListDataCollection extends StatefulService {
             // host.
             state.containerHostLinks.remove(body.containerHostLink);
             op.complete();
+            dataCollectionCallbacks.completed(body.containerHostLink);
             return;
         }
 
@@ -174,10 +181,12 @@ public class HostVolumeListDataCollection extends StatefulService {
                         (state.containerHostLinks.get(body.containerHostLink))))) {
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return;// return since there is an active data collection for this host.
         } else {
             state.containerHostLinks.put(body.containerHostLink,
                     Instant.now().toEpochMilli() + DATA_COLLECTION_LOCK_TIMEOUT_MILLISECONDS);
+            dataCollectionCallbacks.started(body.containerHostLink, body.dataCollectionCallback);
             op.complete();
             // continue with the data collection.
         }
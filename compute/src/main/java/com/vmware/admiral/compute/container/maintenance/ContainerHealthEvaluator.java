@@ -20,7 +20,7 @@ import com.vmware.admiral.compute.container.ContainerFactoryService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
-import com.vmware.admiral.log.EventLogService;
+import com.vmware.admiral.log.EventLogIngestionService;
 import com.vmware.admiral.log.EventLogService.EventLogState;
 import com.vmware.admiral.log.EventLogService.EventLogState.EventLogType;
 import com.vmware.xenon.common.Operation;
@@ -141,7 +141,7 @@ public class ContainerHealthEvaluator {
 
         host.log(Level.WARNING, eventLog.description);
 
-        host.sendRequest(Operation.createPost(host, EventLogService.FACTORY_LINK)
+        host.sendRequest(Operation.createPost(host, EventLogIngestionService.SELF_LINK)
                 .setBody(eventLog)
                 .setReferer(ContainerFactoryService.SELF_LINK)
                 .setCompletion((o, e) -> {
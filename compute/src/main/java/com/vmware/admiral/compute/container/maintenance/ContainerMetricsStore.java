@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container.maintenance;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory time series of the container stats. Every container has a ring buffer per resolution
+ * tier (10 seconds, 1 minute and 10 minutes), held in primitive arrays. A sample is added to the
+ * current slot of every tier: the CPU and memory usage are averaged within the slot and the
+ * network counters keep their latest (highest) value. A slot is reused when the ring wraps
+ * around, so the memory per container is fixed.
+ */
+public class ContainerMetricsStore {
+
+    /** Resolution tiers, from the finest to the coarsest one. */
+    public enum Resolution {
+        TEN_SECONDS(TimeUnit.SECONDS.toMicros(10), 180),
+        ONE_MINUTE(TimeUnit.MINUTES.toMicros(1), 360),
+        TEN_MINUTES(TimeUnit.MINUTES.toMicros(10), 288);
+
+        public final long intervalMicros;
+        public final int slots;
+
+        Resolution(long intervalMicros, int slots) {
+            this.intervalMicros = intervalMicros;
+            this.slots = slots;
+        }
+
+        public long getRetentionMicros() {
+            return intervalMicros * slots;
+        }
+    }
+
+    /** A stats sample for a slot of a resolution tier. */
+    public static class ContainerMetricsSample {
+        /** The start of the slot */
+        public long timeMicros;
+
+        /** Average percent of CPU utilization in the slot */
+        public double cpuUsage;
+
+        /** Average memory usage in bytes in the slot */
+        public long memUsage;
+
+        /** Memory limit in bytes */
+        public long memLimit;
+
+        /** Received network traffic in bytes at the end of the slot */
+        public long networkIn;
+
+        /** Sent network traffic in bytes at the end of the slot */
+        public long networkOut;
+    }
+
+    private static final int MEM_USAGE = 0;
+    private static final int MEM_LIMIT = 1;
+    private static final int NETWORK_IN = 2;
+    private static final int NETWORK_OUT = 3;
+    private static final int METRICS_COUNT = 4;
+
+    private final Map<String, ContainerSeries> seriesByContainer = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a stats sample of a container. The host and the composite component of the container
+     * are kept with the series, so the containers of a host or a composite can be looked up
+     * without a query.
+     */
+    public void record(String containerLink, String hostLink, String compositeComponentLink,
+            long timeMicros, ContainerStats stats) {
+        ContainerSeries series = seriesByContainer.computeIfAbsent(containerLink,
+                (k) -> new ContainerSeries());
+        series.record(hostLink, compositeComponentLink, timeMicros, stats);
+    }
+
+    /**
+     * Returns the samples of a container in the given time range with the given resolution, or
+     * {@code null} if there are no stats for the container. Slots without samples are skipped.
+     */
+    public List<ContainerMetricsSample> getSamples(String containerLink, long fromMicros,
+            long toMicros, Resolution resolution) {
+        ContainerSeries series = seriesByContainer.get(containerLink);
+        if (series == null) {
+            return null;
+        }
+        return series.getSamples(fromMicros, toMicros, resolution);
+    }
+
+    /**
+     * Returns the links of the containers with stats that match the given host and composite
+     * component links. A {@code null} link matches all containers.
+     */
+    public List<String> findContainerLinks(String hostLink, String compositeComponentLink) {
+        List<String> containerLinks = new ArrayList<>();
+        for (Map.Entry<String, ContainerSeries> e : seriesByContainer.entrySet()) {
+            ContainerSeries series = e.getValue();
+            if ((hostLink == null || hostLink.equals(series.hostLink))
+                    && (compositeComponentLink == null
+                            || compositeComponentLink.equals(series.compositeComponentLink))) {
+                containerLinks.add(e.getKey());
+            }
+        }
+        return containerLinks;
+    }
+
+    public void remove(String containerLink) {
+        seriesByContainer.remove(containerLink);
+    }
+
+    /**
+     * Removes the series of the containers without samples for longer than the retention of the
+     * coarsest tier, e.g. of the removed containers.
+     */
+    public int removeStale(long nowMicros) {
+        long cutoffMicros = nowMicros - Resolution.TEN_MINUTES.getRetentionMicros();
+        int removed = 0;
+        Iterator<ContainerSeries> it = seriesByContainer.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastSampleMicros < cutoffMicros) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return seriesByContainer.size();
+    }
+
+    /**
+     * Ring buffers of a single container, one per resolution tier.
+     */
+    private static class ContainerSeries {
+        private final RingBuffer[] tiers;
+        private volatile String hostLink;
+        private volatile String compositeComponentLink;
+        private volatile long lastSampleMicros;
+
+        ContainerSeries() {
+            Resolution[] resolutions = Resolution.values();
+            tiers = new RingBuffer[resolutions.length];
+            for (int i = 0; i < resolutions.length; i++) {
+                tiers[i] = new RingBuffer(resolutions[i]);
+            }
+        }
+
+        synchronized void record(String hostLink, String compositeComponentLink,
+                long timeMicros, ContainerStats stats) {
+            this.hostLink = hostLink;
+            this.compositeComponentLink = compositeComponentLink;
+            lastSampleMicros = Math.max(lastSampleMicros, timeMicros);
+            for (RingBuffer tier : tiers) {
+                tier.add(timeMicros, stats);
+            }
+        }
+
+        synchronized List<ContainerMetricsSample> getSamples(long fromMicros, long toMicros,
+                Resolution resolution) {
+            return tiers[resolution.ordinal()].getSamples(fromMicros, toMicros);
+        }
+    }
+
+    /**
+     * Fixed size ring buffer of a resolution tier. A slot is identified by its bucket, i.e. the
+     * sample time divided by the resolution interval, and is reset when a sample of a newer bucket
+     * maps to it. The byte counters are kept as longs and the CPU usage as a double, the usages
+     * are summed up and averaged when read.
+     */
+    private static class RingBuffer {
+        private final long intervalMicros;
+        private final long[] buckets;
+        private final int[] counts;
+        private final double[] cpuUsages;
+        private final long[] values;
+
+        RingBuffer(Resolution resolution) {
+            this.intervalMicros = resolution.intervalMicros;
+            this.buckets = new long[resolution.slots];
+            this.counts = new int[resolution.slots];
+            this.cpuUsages = new double[resolution.slots];
+            this.values = new long[resolution.slots * METRICS_COUNT];
+        }
+
+        void add(long timeMicros, ContainerStats stats) {
+            long bucket = timeMicros / intervalMicros;
+            int slot = (int) (bucket % buckets.length);
+            int offset = slot * METRICS_COUNT;
+            if (buckets[slot] > bucket) {
+                // the slot already holds newer stats, the sample is too old
+                return;
+            }
+            if (buckets[slot] != bucket || counts[slot] == 0) {
+                buckets[slot] = bucket;
+                counts[slot] = 0;
+                cpuUsages[slot] = 0;
+                for (int i = 0; i < METRICS_COUNT; i++) {
+                    values[offset + i] = 0;
+                }
+            }
+
+            counts[slot]++;
+            cpuUsages[slot] += stats.cpuUsage;
+            values[offset + MEM_USAGE] += stats.memUsage;
+            values[offset + MEM_LIMIT] = stats.memLimit;
+            values[offset + NETWORK_IN] = Math.max(values[offset + NETWORK_IN], stats.networkIn);
+            values[offset + NETWORK_OUT] = Math.max(values[offset + NETWORK_OUT],
+                    stats.networkOut);
+        }
+
+        List<ContainerMetricsSample> getSamples(long fromMicros, long toMicros) {
+            long fromBucket = Math.max(fromMicros, 0) / intervalMicros;
+            long toBucket = toMicros / intervalMicros;
+            // only the buckets still held by the ring can be returned
+            fromBucket = Math.max(fromBucket, toBucket - buckets.length + 1);
+
+            List<ContainerMetricsSample> samples = new ArrayList<>();
+            for (long bucket = fromBucket; bucket <= toBucket; bucket++) {
+                int slot = (int) (bucket % buckets.length);
+                if (buckets[slot] != bucket || counts[slot] == 0) {
+                    continue;
+                }
+                int offset = slot * METRICS_COUNT;
+                ContainerMetricsSample sample = new ContainerMetricsSample();
+                sample.timeMicros = bucket * intervalMicros;
+                sample.cpuUsage = cpuUsages[slot] / counts[slot];
+                sample.memUsage = values[offset + MEM_USAGE] / counts[slot];
+                sample.memLimit = values[offset + MEM_LIMIT];
+                sample.networkIn = values[offset + NETWORK_IN];
+                sample.networkOut = values[offset + NETWORK_OUT];
+                samples.add(sample);
+            }
+            return samples;
+        }
+    }
+}
@@ -40,6 +40,7 @@ import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.container.CompositeComponentFactoryService;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentService.CompositeComponent;
+import com.vmware.admiral.compute.container.HostDataCollectionCallbacks;
 import com.vmware.admiral.compute.content.kubernetes.KubernetesUtil;
 import com.vmware.admiral.compute.kubernetes.service.BaseKubernetesState;
 import com.vmware.admiral.compute.kubernetes.service.KubernetesDescriptionService;
@@ -121,8 +122,13 @@ public class KubernetesEntityDataCollection extends StatefulService {
         public String computeHostLink;
         public Map<String, KubernetesEntityData> idToEntityData = new HashMap<>();
         public boolean unlockDataCollectionForHost;
+        /** (Optional) Notified when the data collection of the host is done or skipped. */
+        public ServiceTaskCallback dataCollectionCallback;
     }
 
+    private final HostDataCollectionCallbacks dataCollectionCallbacks =
+            new HostDataCollectionCallbacks(this);
+
     public KubernetesEntityDataCollection() {
         super(KubernetesEntityDataCollectionState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
@@ -205,6 +211,7 @@ public class KubernetesEntityDataCollection extends StatefulService {
             logFine("'computeHostLink' is required");
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return;
         }
 
@@ -213,6 +220,7 @@ public class KubernetesEntityDataCollection extends StatefulService {
             // patch to mark that there is no active entity data collection for a given host.
             state.computeHostLinks.remove(body.computeHostLink);
             op.complete();
+            dataCollectionCallbacks.completed(body.computeHostLink);
             return;
         }
 
@@ -224,9 +232,11 @@ public class KubernetesEntityDataCollection extends StatefulService {
         if (state.computeHostLinks.contains(body.computeHostLink)) {
             op.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
             op.complete();
+            dataCollectionCallbacks.notify(body.dataCollectionCallback);
             return;// return since there is an active data collection for this host.
         } else {
             state.computeHostLinks.add(body.computeHostLink);
+            dataCollectionCallbacks.started(body.computeHostLink, body.dataCollectionCallback);
             op.complete();
         }
 
@@ -11,15 +11,12 @@
 
 package com.vmware.admiral.compute.network;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.net.util.SubnetUtils;
 
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.AssertUtil;
@@ -29,7 +26,6 @@ import com.vmware.photon.controller.model.query.QueryUtils.QueryByPages;
 import com.vmware.photon.controller.model.resources.NetworkService.NetworkState;
 import com.vmware.photon.controller.model.resources.SubnetService.SubnetState;
 import com.vmware.photon.controller.model.support.LifecycleState;
-import com.vmware.photon.controller.model.util.IpHelper;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
@@ -48,6 +44,10 @@ import com.vmware.xenon.services.common.QueryTask.Query;
  * <li>Deallocate a subnet CIDR by issuing a PATCH request and providing a
  * {@link ComputeNetworkCIDRAllocationRequest}.</li>
  * </ol>
+ * The free blocks of the network are kept in memory by a {@link ComputeNetworkCIDRAllocator}
+ * which is updated on each allocation and deallocation, and is rebuilt from the existing subnets
+ * and the allocated CIDRs only when the state has been updated by another node, e.g. after a
+ * restart or an owner change.
  */
 public class ComputeNetworkCIDRAllocationService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.COMPUTE_NETWORK_CIDR_ALLOCATIONS;
@@ -135,6 +135,9 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
         super.toggleOption(ServiceOption.IDEMPOTENT_POST, true);
     }
 
+    // accessed by the PATCH requests only, which are serialized
+    private ComputeNetworkCIDRAllocator allocator;
+
     @Override
     public void handleCreate(Operation post) {
         if (!checkForBody(post)) {
@@ -197,7 +200,7 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
 
         DeferredResult.completed(new AllocationContext(request, state))
                 .thenCompose(this::populateNetwork)
-                .thenCompose(this::prepareAvailableCIDRRangeList)
+                .thenCompose(this::prepareAllocator)
                 .thenCompose(this::allocateCIDR)
                 .whenComplete((context, throwable) -> {
                     if (throwable != null) {
@@ -229,17 +232,17 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
                 });
     }
 
-    // Add already allocated subnets IP ranges and allocated IP ranges to the Context.availableCIDRRanges
-    private DeferredResult<AllocationContext> prepareAvailableCIDRRangeList(
-            AllocationContext context) {
+    // Bring the allocator up to date with the existing subnets and the allocated CIDRs.
+    private DeferredResult<AllocationContext> prepareAllocator(AllocationContext context) {
 
         return DeferredResult.completed(context)
-                // 1. Start with 1 free range that covers the whole network IP range.
-                .thenCompose(this::seedWithOneAvailableSubnet)
-                // 2. Query all network subnets and remove their IP range from the free list.
-                .thenCompose(this::preAllocateWithExistingSubnets)
-                // 3. Remove IP range of all already allocated CIDRs.
-                .thenCompose(this::preAllocateAllocatedCIDRs);
+                // 1. Select the network CIDR to allocate from.
+                .thenCompose(this::selectNetworkCIDR)
+                // 2. Query the CIDRs of all network subnets.
+                .thenCompose(this::queryExistingSubnetCIDRs)
+                // 3. Rebuild the allocator if the state has been updated out of it, otherwise
+                // only reserve the CIDRs of new subnets and release the removed ones.
+                .thenApply(this::updateAllocator);
     }
 
     private DeferredResult<AllocationContext> allocateCIDR(AllocationContext context) {
@@ -249,66 +252,25 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
         AssertUtil.assertNotNull(context.network, "context.network");
 
         int prefixLength = context.request.subnetPrefixLength;
-        long requestedSize = 1 << (32 - prefixLength);
-
-        // Select ranges large enough to accommodate requested subnet size.
-        // Sort them by size (descending) so that we try filling the smallest ranges first.
-        List<IpV4Range> candidateRanges = context.availableCIDRRanges.stream()
-                .filter(ipV4Range -> (ipV4Range.high - ipV4Range.low) >= requestedSize - 1)
-                .sorted(Comparator.comparingLong(item -> (item.high - item.low)))
-                .collect(Collectors.toList());
-        int inverseSubnetMask = IpHelper.safeLongToInt(requestedSize - 1);
-        int subnetMask = ~(inverseSubnetMask);
-
-        IpV4Range createdIpv4Range = null;
-        IpV4Range selectedIpv4Range = null;
-
-        for (IpV4Range ipV4Range : candidateRanges) {
-            long currentLow = ipV4Range.low;
-
-            // Increase the low value to the appropriate start of the requested subnet mask.
-            // Example: /24 sized subnets always start with last 8 bits equal to zero.
-            while ((currentLow & subnetMask) != currentLow) {
-                currentLow++;
-            }
 
-            // Adjust the high value based on the currentLow + requested subnet size.
-            long currentHigh = currentLow + inverseSubnetMask;
+        String allocatedSubnetCIDR = this.allocator.allocate(context.request.subnetId,
+                prefixLength);
 
-            // Does this range still fit after adjusting the low and high end?
-            if (currentHigh <= ipV4Range.high) {
-                createdIpv4Range = new IpV4Range(currentLow, currentHigh);
-                selectedIpv4Range = ipV4Range;
-                break;
-            }
-        }
-
-        if (createdIpv4Range == null) {
+        if (allocatedSubnetCIDR == null) {
             String msg = "Network [" + context.network.name + "] doesn't have an available block "
                     + "of IP addresses that is big enough to allocate /" + prefixLength + "subnet.";
             throw new IllegalStateException(msg);
         }
 
-        updateAvailableCIDRRangesList(selectedIpv4Range, createdIpv4Range,
-                context.availableCIDRRanges);
-
-        String allocatedSubnetCIDR = IpHelper.calculateCidrFromIpV4Range(createdIpv4Range.low,
-                createdIpv4Range.high);
-
         logFine("Newly allocated CIDR: [%s] for subnet id: [%s].", allocatedSubnetCIDR,
                 context.request.subnetId);
 
-        AssertUtil.assertTrue(!context.state.allocatedCIDRs.containsValue(allocatedSubnetCIDR),
-                "Attempt to double allocate the same subnet CIDR: [" +
-                        allocatedSubnetCIDR + "].");
-
-        // Update service document state.
-        context.state.allocatedCIDRs.put(context.request.subnetId, allocatedSubnetCIDR);
+        // The allocator has updated the service document state.
+        this.allocator.updated(context.state);
         return DeferredResult.completed(context);
     }
 
-    private DeferredResult<AllocationContext> seedWithOneAvailableSubnet(
-            AllocationContext context) {
+    private DeferredResult<AllocationContext> selectNetworkCIDR(AllocationContext context) {
 
         AssertUtil.assertTrue(
                 !StringUtils.isEmpty(context.network.subnetCIDR) ||
@@ -319,22 +281,12 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
         if (StringUtils.isEmpty(networkCIDR)) {
             networkCIDR = context.network.subnetCIDR;
         }
-
-        SubnetUtils subnetUtils = new SubnetUtils(networkCIDR);
-
-        subnetUtils.setInclusiveHostCount(true);
-        SubnetUtils.SubnetInfo subnetInfo = subnetUtils.getInfo();
-        Long lowIp = IpHelper.ipStringToLong(subnetInfo.getLowAddress());
-        Long highIp = IpHelper.ipStringToLong(subnetInfo.getHighAddress());
-        IpV4Range ipV4Range = new IpV4Range(lowIp, highIp);
-
-        context.availableCIDRRanges.clear();
-        context.availableCIDRRanges.add(ipV4Range);
+        context.networkCIDR = networkCIDR;
 
         return DeferredResult.completed(context);
     }
 
-    private DeferredResult<AllocationContext> preAllocateWithExistingSubnets(
+    private DeferredResult<AllocationContext> queryExistingSubnetCIDRs(
             AllocationContext context) {
 
         Query.Builder qBuilder = Query.Builder.create()
@@ -351,58 +303,23 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
                 context.network.endpointLink
         );
 
-        return querySubnets.queryDocuments(subnetState ->
-                preAllocateCidr(subnetState.subnetCIDR, context.availableCIDRRanges))
-                .thenApply(aVoid -> context);
-    }
-
-    private DeferredResult<AllocationContext> preAllocateAllocatedCIDRs(
-            AllocationContext context) {
-
-        context.state.allocatedCIDRs.values()
-                .forEach(cidr -> preAllocateCidr(cidr, context.availableCIDRRanges));
-        return DeferredResult.completed(context);
-    }
-
-    private void preAllocateCidr(String cidr, List<IpV4Range> availableCIDRRanges) {
-        SubnetUtils subnetUtils = new SubnetUtils(cidr);
-        subnetUtils.setInclusiveHostCount(true);
-        SubnetUtils.SubnetInfo subnetInfo = subnetUtils.getInfo();
-        Long lowIp = IpHelper.ipStringToLong(subnetInfo.getLowAddress());
-        Long highIp = IpHelper.ipStringToLong(subnetInfo.getHighAddress());
-        IpV4Range ipV4Range = new IpV4Range(lowIp, highIp);
-
-        IpV4Range containingRange = availableCIDRRanges.stream()
-                .filter(range -> (range.low <= ipV4Range.low && range.high >= ipV4Range.high))
-                .findFirst()
-                .orElse(null);
-
-        if (containingRange == null) {
-            // Already preallocated.
-            return;
-        }
-
-        updateAvailableCIDRRangesList(containingRange, ipV4Range, availableCIDRRanges);
+        return querySubnets.queryDocuments(subnetState -> {
+            if (subnetState.subnetCIDR != null) {
+                context.subnetCIDRs.add(subnetState.subnetCIDR);
+            }
+        }).thenApply(aVoid -> context);
     }
 
-    private void updateAvailableCIDRRangesList(IpV4Range selectedRange, IpV4Range createdRange,
-            List<IpV4Range> availableCIDRRanges) {
-
-        availableCIDRRanges.remove(selectedRange);
-
-        // Create a new free range before the createdRange if selectedRange starts
-        // lower than the createdRange.
-        if (createdRange.low > selectedRange.low) {
-            IpV4Range lowRange = new IpV4Range(selectedRange.low, createdRange.low - 1);
-            availableCIDRRanges.add(lowRange);
-        }
-
-        // Create a new free range after the createdRange if selectedRange finish higher than the
-        // createdRange.
-        if (createdRange.high < selectedRange.high) {
-            IpV4Range highRange = new IpV4Range(createdRange.high + 1, selectedRange.high);
-            availableCIDRRanges.add(highRange);
+    private AllocationContext updateAllocator(AllocationContext context) {
+        if (this.allocator != null
+                && this.allocator.isIndexOf(context.state, context.networkCIDR)) {
+            this.allocator.updateSubnetCIDRs(context.subnetCIDRs);
+        } else {
+            logFine("Rebuild CIDR allocator of network CIDR: [%s].", context.networkCIDR);
+            this.allocator = new ComputeNetworkCIDRAllocator(context.state, context.networkCIDR,
+                    context.subnetCIDRs);
         }
+        return context;
     }
 
     private void deallocateCIDR(ComputeNetworkCIDRAllocationState state,
@@ -411,8 +328,16 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
         AssertUtil.assertNotNull(state, "state");
         AssertUtil.assertNotNull(request, "request");
 
-        // Update service document state.
-        String deallocatedCIDR = state.allocatedCIDRs.remove(request.subnetId);
+        // Update service document state. The allocator is rebuilt on the next allocation if it
+        // is not up to date with the state.
+        String deallocatedCIDR;
+        if (this.allocator != null
+                && this.allocator.isIndexOf(state, this.allocator.getNetworkCIDR())) {
+            deallocatedCIDR = this.allocator.deallocate(request.subnetId);
+            this.allocator.updated(state);
+        } else {
+            deallocatedCIDR = state.allocatedCIDRs.remove(request.subnetId);
+        }
         if (deallocatedCIDR == null) {
             this.logWarning("Unable to deallocate CIDR for subnet id [%s].No previous allocation"
                     + " record for this subnet.", request.subnetId);
@@ -448,7 +373,8 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
         ComputeNetworkCIDRAllocationRequest request;
         ComputeNetworkCIDRAllocationState state;
         NetworkState network;
-        List<IpV4Range> availableCIDRRanges = new LinkedList<>();
+        String networkCIDR;
+        List<String> subnetCIDRs = new ArrayList<>();
 
         AllocationContext(ComputeNetworkCIDRAllocationRequest request,
                 ComputeNetworkCIDRAllocationState state) {
@@ -456,14 +382,4 @@ public class ComputeNetworkCIDRAllocationService extends StatefulService {
             this.state = state;
         }
     }
-
-    private static class IpV4Range {
-        IpV4Range(Long low, Long high) {
-            this.low = low;
-            this.high = high;
-        }
-
-        Long low;
-        Long high;
-    }
 }
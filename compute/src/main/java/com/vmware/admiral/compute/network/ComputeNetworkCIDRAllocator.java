@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.net.util.SubnetUtils;
+
+import com.vmware.admiral.compute.network.ComputeNetworkCIDRAllocationService.ComputeNetworkCIDRAllocationState;
+import com.vmware.photon.controller.model.util.IpHelper;
+
+/**
+ * Buddy allocator of the subnet CIDRs of a network which keeps the allocated CIDRs map of a
+ * {@link ComputeNetworkCIDRAllocationState} up to date.
+ *
+ * The free blocks of the network are kept in a sorted set per prefix length, so the smallest free
+ * block which fits a requested prefix length, lowest address first, is found in O(log n) for each
+ * prefix length and split in halves down to the requested size. Released blocks are merged with
+ * their free buddy. The CIDRs of the existing subnets of the network and the allocated CIDRs are
+ * reserved when the allocator is created, and the subnets are kept up to date by their
+ * difference afterwards.
+ *
+ * CIDR blocks are either disjoint or nested. A reserved block which is not free as a whole
+ * overlaps other reserved blocks inside it, and the free blocks inside it are taken as well. The
+ * free blocks are rebuilt from the reserved blocks when such a block is released.
+ */
+class ComputeNetworkCIDRAllocator {
+
+    private static final int MAX_PREFIX_LENGTH = 32;
+
+    private final Map<String, String> allocatedCIDRs;
+    private final String networkCIDR;
+    private final long networkAddress;
+    private final int networkPrefixLength;
+
+    // free block addresses by prefix length
+    private final List<TreeSet<Long>> freeBlocks = new ArrayList<>(MAX_PREFIX_LENGTH + 1);
+
+    // reservation count by block, a block is reserved by its subnet and its allocation
+    private final Map<Long, Integer> reservations = new HashMap<>();
+    // reserved blocks of the network which overlap another reserved block, their free blocks
+    // are taken
+    private final Set<Long> overlappingBlocks = new LinkedHashSet<>();
+    private Set<Long> subnetBlocks = new HashSet<>();
+
+    private long documentVersion;
+
+    ComputeNetworkCIDRAllocator(ComputeNetworkCIDRAllocationState state, String networkCIDR,
+            Collection<String> subnetCIDRs) {
+        if (state.allocatedCIDRs == null) {
+            state.allocatedCIDRs = new HashMap<>();
+        }
+        this.allocatedCIDRs = state.allocatedCIDRs;
+        this.networkCIDR = networkCIDR;
+        long networkBlock = toBlock(networkCIDR);
+        this.networkAddress = getAddress(networkBlock);
+        this.networkPrefixLength = getPrefixLength(networkBlock);
+        this.documentVersion = state.documentVersion;
+
+        for (int i = 0; i <= MAX_PREFIX_LENGTH; i++) {
+            freeBlocks.add(new TreeSet<>());
+        }
+        freeBlocks.get(networkPrefixLength).add(networkAddress);
+
+        updateSubnetCIDRs(subnetCIDRs);
+        for (String cidr : allocatedCIDRs.values()) {
+            reserve(toBlock(cidr));
+        }
+    }
+
+    /**
+     * Whether the allocator is up to date with the given state and network CIDR, i.e. no other
+     * update has been applied to the state since the last update through the allocator.
+     */
+    boolean isIndexOf(ComputeNetworkCIDRAllocationState state, String networkCIDR) {
+        return state.allocatedCIDRs == allocatedCIDRs
+                && this.networkCIDR.equals(networkCIDR)
+                && state.documentVersion == documentVersion;
+    }
+
+    /**
+     * Marks the allocator as up to date with the state as of after the current update.
+     */
+    void updated(ComputeNetworkCIDRAllocationState state) {
+        documentVersion = state.documentVersion + 1;
+    }
+
+    String getNetworkCIDR() {
+        return networkCIDR;
+    }
+
+    /**
+     * Updates the reserved CIDRs of the subnets of the network to the given ones.
+     */
+    void updateSubnetCIDRs(Collection<String> subnetCIDRs) {
+        Set<Long> blocks = new HashSet<>();
+        for (String cidr : subnetCIDRs) {
+            blocks.add(toBlock(cidr));
+        }
+
+        for (Long block : subnetBlocks) {
+            if (!blocks.contains(block)) {
+                release(block);
+            }
+        }
+        for (Long block : blocks) {
+            if (!subnetBlocks.contains(block)) {
+                reserve(block);
+            }
+        }
+        subnetBlocks = blocks;
+    }
+
+    /**
+     * Allocates the lowest CIDR with the given prefix length in the smallest free block of the
+     * network for the subnet and returns it, or returns {@code null} if there is no such block.
+     * The previous CIDR of the subnet, if any, is released.
+     */
+    String allocate(String subnetId, int prefixLength) {
+        if (prefixLength < networkPrefixLength || prefixLength > MAX_PREFIX_LENGTH) {
+            return null;
+        }
+
+        for (int length = prefixLength; length >= networkPrefixLength; length--) {
+            Long address = freeBlocks.get(length).pollFirst();
+            if (address == null) {
+                continue;
+            }
+            // keep the upper halves free down to the requested size
+            for (int l = length + 1; l <= prefixLength; l++) {
+                freeBlocks.get(l).add(address + getBlockSize(l));
+            }
+
+            long block = toBlock(address, prefixLength);
+            reservations.put(block, 1);
+            String cidr = toCIDR(block);
+            String previousCIDR = allocatedCIDRs.put(subnetId, cidr);
+            if (previousCIDR != null) {
+                release(toBlock(previousCIDR));
+            }
+            return cidr;
+        }
+        return null;
+    }
+
+    /**
+     * Releases the CIDR allocated for the subnet and returns it, or returns {@code null} if there
+     * is no CIDR allocated for the subnet.
+     */
+    String deallocate(String subnetId) {
+        String cidr = allocatedCIDRs.remove(subnetId);
+        if (cidr != null) {
+            release(toBlock(cidr));
+        }
+        return cidr;
+    }
+
+    private void reserve(long block) {
+        Integer count = reservations.get(block);
+        if (count != null) {
+            reservations.put(block, count + 1);
+            return;
+        }
+        if (!isInNetwork(block)) {
+            // not part of the network, nothing to release later either
+            return;
+        }
+
+        reservations.put(block, 1);
+        occupy(block);
+    }
+
+    private void release(long block) {
+        Integer count = reservations.get(block);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            reservations.put(block, count - 1);
+            return;
+        }
+
+        reservations.remove(block);
+        if (overlappingBlocks.contains(block)) {
+            // the other blocks inside it stay reserved
+            rebuildFreeBlocks();
+            return;
+        }
+        free(block);
+
+        // the freed block may be one the others overlapped, or inside one of them
+        Iterator<Long> it = overlappingBlocks.iterator();
+        while (it.hasNext()) {
+            long overlappingBlock = it.next();
+            if (take(overlappingBlock)) {
+                it.remove();
+            } else {
+                takeContained(overlappingBlock);
+            }
+        }
+    }
+
+    /**
+     * Takes the given block from the free blocks, or the free blocks inside it if it overlaps
+     * other reserved blocks.
+     */
+    private void occupy(long block) {
+        if (!take(block)) {
+            overlappingBlocks.add(block);
+            takeContained(block);
+        }
+    }
+
+    /**
+     * Rebuilds the free blocks of the network from the reserved blocks, bigger blocks first.
+     */
+    private void rebuildFreeBlocks() {
+        freeBlocks.forEach(TreeSet::clear);
+        freeBlocks.get(networkPrefixLength).add(networkAddress);
+        overlappingBlocks.clear();
+
+        List<Long> blocks = new ArrayList<>(reservations.keySet());
+        blocks.sort(Comparator.comparingInt(ComputeNetworkCIDRAllocator::getPrefixLength)
+                .thenComparing(Comparator.naturalOrder()));
+        for (long block : blocks) {
+            occupy(block);
+        }
+    }
+
+    /**
+     * Removes the given block from the free block which contains it, if any.
+     */
+    private boolean take(long block) {
+        long address = getAddress(block);
+        int prefixLength = getPrefixLength(block);
+
+        for (int length = prefixLength; length >= networkPrefixLength; length--) {
+            if (!freeBlocks.get(length).remove(address & getMask(length))) {
+                continue;
+            }
+            // keep the halves which do not contain the block free
+            for (int l = length + 1; l <= prefixLength; l++) {
+                freeBlocks.get(l).add((address & getMask(l)) ^ getBlockSize(l));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the free blocks inside the given block.
+     */
+    private void takeContained(long block) {
+        long address = getAddress(block);
+        long lastAddress = address + getBlockSize(getPrefixLength(block)) - 1;
+        for (int length = getPrefixLength(block) + 1; length <= MAX_PREFIX_LENGTH; length++) {
+            freeBlocks.get(length).subSet(address, true, lastAddress, true).clear();
+        }
+    }
+
+    private void free(long block) {
+        long address = getAddress(block);
+        int length = getPrefixLength(block);
+
+        while (length > networkPrefixLength
+                && freeBlocks.get(length).remove(address ^ getBlockSize(length))) {
+            length--;
+            address &= getMask(length);
+        }
+        freeBlocks.get(length).add(address);
+    }
+
+    private boolean isInNetwork(long block) {
+        return getPrefixLength(block) >= networkPrefixLength
+                && (getAddress(block) & getMask(networkPrefixLength)) == networkAddress;
+    }
+
+    private static long toBlock(String cidr) {
+        SubnetUtils.SubnetInfo subnetInfo = new SubnetUtils(cidr).getInfo();
+        long address = IpHelper.ipStringToLong(subnetInfo.getNetworkAddress());
+        int prefixLength = Integer.parseInt(cidr.substring(cidr.indexOf('/') + 1));
+        return toBlock(address, prefixLength);
+    }
+
+    private static String toCIDR(long block) {
+        long address = getAddress(block);
+        return IpHelper.calculateCidrFromIpV4Range(address,
+                address + getBlockSize(getPrefixLength(block)) - 1);
+    }
+
+    // a block is the address shifted left by 6 bits, with the prefix length in the lower 6 bits
+    private static long toBlock(long address, int prefixLength) {
+        return address << 6 | prefixLength;
+    }
+
+    private static long getAddress(long block) {
+        return block >>> 6;
+    }
+
+    private static int getPrefixLength(long block) {
+        return (int) (block & 0x3f);
+    }
+
+    private static long getBlockSize(int prefixLength) {
+        return 1L << (MAX_PREFIX_LENGTH - prefixLength);
+    }
+
+    private static long getMask(int prefixLength) {
+        return ~(getBlockSize(prefixLength) - 1) & 0xffffffffL;
+    }
+}
@@ -43,7 +43,7 @@ public class ComputeInitialBootService extends AbstractInitialBootService {
         states.addAll(ProfileService.getAllDefaultDocuments());
         states.add(ContainerHostDataCollectionService.buildDefaultStateInstance());
         states.add(KubernetesEntityDataCollection.buildDefaultStateInstance());
-        states.add(HostContainerListDataCollection.buildDefaultStateInstance());
+        states.addAll(HostContainerListDataCollection.buildDefaultStateInstances());
         states.add(HostNetworkListDataCollection.buildDefaultStateInstance());
         states.add(HostVolumeListDataCollection.buildDefaultStateInstance());
 
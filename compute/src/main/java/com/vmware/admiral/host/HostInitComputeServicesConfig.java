@@ -39,12 +39,16 @@ import com.vmware.admiral.compute.container.ContainerDescriptionService.Containe
 import com.vmware.admiral.compute.container.ContainerFactoryService;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
 import com.vmware.admiral.compute.container.ContainerLogService;
+import com.vmware.admiral.compute.container.ContainerLogStreamService;
+import com.vmware.admiral.compute.container.ContainerMetricsService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerShellService;
 import com.vmware.admiral.compute.container.ContainerStatsService;
 import com.vmware.admiral.compute.container.DeploymentPolicyService;
+import com.vmware.admiral.compute.container.GroupResourcePlacementEscrowService;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService;
 import com.vmware.admiral.compute.container.HostContainerListDataCollection;
+import com.vmware.admiral.compute.container.HostDataCollectionCompletionService;
 import com.vmware.admiral.compute.container.HostNetworkListDataCollection;
 import com.vmware.admiral.compute.container.HostPortProfileService;
 import com.vmware.admiral.compute.container.HostVolumeListDataCollection;
@@ -117,6 +121,12 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
 
     public static void startServices(ServiceHost host, boolean startMockContainerHostService) {
 
+        // the escrow leases are requested and reclaimed with the system authorization context
+        host.addPrivilegedService(GroupResourcePlacementService.class);
+        host.addPrivilegedService(GroupResourcePlacementEscrowService.class);
+        // the container stats are collected from all nodes with the system authorization context
+        host.addPrivilegedService(ContainerMetricsService.class);
+
         startServices(host,
                 ContainerFactoryService.class,
                 ContainerDescriptionFactoryService.class,
@@ -125,12 +135,14 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
                 ContainerVolumeFactoryService.class,
                 ContainerNetworkFactoryService.class,
                 ContainerStatsService.class,
+                ContainerMetricsService.class,
                 EndpointAdapterService.class,
                 RegistryHostConfigService.class,
                 CompositeDescriptionFactoryService.class,
                 CompositeDescriptionCloneService.class,
                 CompositeDescriptionContentService.class, TemplateSearchService.class,
                 CompositeComponentFactoryService.class, ContainerLogService.class,
+                ContainerLogStreamService.class,
                 ContainerShellService.class, ShellContainerExecutorService.class,
                 HostConfigCertificateDistributionService.class,
                 RegistryConfigCertificateDistributionService.class,
@@ -144,7 +156,9 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
                 UrlEncodedReverseProxyService.class,
                 FetchDataGatewayService.class,
                 ClusterService.class,
-                ResourcePoolTransformationService.class);
+                ResourcePoolTransformationService.class,
+                GroupResourcePlacementEscrowService.class,
+                HostDataCollectionCompletionService.class);
 
         startServiceFactories(host, CaSigningCertService.class,
                 GroupResourcePlacementService.class,
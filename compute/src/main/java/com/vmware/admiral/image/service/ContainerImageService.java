@@ -19,8 +19,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
@@ -28,13 +31,15 @@ import com.vmware.admiral.adapter.common.ImageOperationType;
 import com.vmware.admiral.adapter.docker.util.DockerImage;
 import com.vmware.admiral.adapter.registry.service.RegistryAdapterService;
 import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse;
+import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse.RegistrySearchStatus;
 import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse.Result;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.RegistryUtil;
 import com.vmware.admiral.common.util.UriUtilsExtended;
+import com.vmware.admiral.common.util.ValidationUtils;
 import com.vmware.admiral.host.HostInitRegistryAdapterServiceConfig;
-import com.vmware.admiral.log.EventLogService;
+import com.vmware.admiral.log.EventLogIngestionService;
 import com.vmware.admiral.log.EventLogService.EventLogState;
 import com.vmware.admiral.log.EventLogService.EventLogState.EventLogType;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
@@ -53,6 +58,39 @@ public class ContainerImageService extends StatelessService {
     public static final String SELF_LINK = ManagementUriParts.IMAGES;
 
     public static final String TENANT_LINKS_PARAM_NAME = "tenantLinks";
+    public static final String FANOUT_PARAM_NAME = "fanout";
+    public static final String DEADLINE_PARAM_NAME = "deadline";
+
+    private static final boolean FANOUT_SEARCH_DEFAULT = Boolean.getBoolean(
+            "com.vmware.admiral.image.search.fanout");
+    private static final long FANOUT_SEARCH_DEADLINE_MILLIS = Long.getLong(
+            "com.vmware.admiral.image.search.deadline.millis", 5000);
+    private static final long SEARCH_CACHE_TTL_MICROS = Long.getLong(
+            "com.vmware.admiral.image.search.cache.ttl.micros", TimeUnit.SECONDS.toMicros(30));
+    private static final int SEARCH_CACHE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.image.search.cache.size", 1000);
+
+    private static class CachedSearchResponse {
+        final RegistrySearchResponse response;
+        final long expirationMicros;
+
+        CachedSearchResponse(RegistrySearchResponse response, long expirationMicros) {
+            this.response = response;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    // recent fan-out search responses by registry and search parameters
+    private final Map<String, CachedSearchResponse> searchCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedSearchResponse>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, CachedSearchResponse> eldest) {
+                    return size() > SEARCH_CACHE_SIZE;
+                }
+            });
 
     @Override
     public void handleRequest(Operation op) {
@@ -68,6 +106,8 @@ public class ContainerImageService extends StatelessService {
     public void handleGet(Operation op) {
         try {
             handleSearchRequest(op);
+        } catch (LocalizableValidationException x) {
+            ValidationUtils.handleValidationException(op, x);
         } catch (Exception x) {
             logSevere(x);
             op.fail(x);
@@ -96,11 +136,24 @@ public class ContainerImageService extends StatelessService {
 
         String group = queryParams.remove(TENANT_LINKS_PARAM_NAME);
 
+        String fanout = queryParams.remove(FANOUT_PARAM_NAME);
+        String deadline = queryParams.remove(DEADLINE_PARAM_NAME);
+        boolean fanoutSearch = fanout != null ? Boolean.parseBoolean(fanout)
+                : FANOUT_SEARCH_DEFAULT;
+        long deadlineMillis = deadline != null ? parseDeadline(deadline)
+                : FANOUT_SEARCH_DEADLINE_MILLIS;
+
         logFine("Search in group: " + group);
 
         // query for registries and execute an adapter request for each one
-        Consumer<Collection<String>> registryLinksConsumer = (registryLinks) -> handleSearchRequest(
-                op, registryAdapterUri, queryParams, registryLinks, group);
+        Consumer<Collection<String>> registryLinksConsumer = (registryLinks) -> {
+            if (fanoutSearch) {
+                handleFanOutSearchRequest(op, registryAdapterUri, queryParams, registryLinks,
+                        group, deadlineMillis);
+            } else {
+                handleSearchRequest(op, registryAdapterUri, queryParams, registryLinks, group);
+            }
+        };
 
         Consumer<Collection<Throwable>> failureConsumer = (failures) -> op.fail(failures.iterator()
                 .next());
@@ -140,13 +193,7 @@ public class ContainerImageService extends StatelessService {
             return;
         }
 
-        Integer parsedLimit = null;
-        try {
-            parsedLimit = Integer.parseInt(queryParams.get(RegistryAdapterService.LIMIT_PROP_NAME));
-        } catch (Exception e) {
-        }
-
-        final int limit = parsedLimit != null ? parsedLimit : 0;
+        final int limit = getLimit(queryParams);
 
         List<Operation> searchOperations = new ArrayList<Operation>(searchRegistryLinks.size());
         for (String registryLink : searchRegistryLinks) {
@@ -180,7 +227,7 @@ public class ContainerImageService extends StatelessService {
                 }
             }
 
-            logFailures(failures, tenantLink);
+            logFailures(failures != null ? failures.values() : null, tenantLink);
 
             if (failures != null && !failures.isEmpty()) {
                 mergedResponse.isPartialResult = true;
@@ -204,6 +251,190 @@ public class ContainerImageService extends StatelessService {
         join.sendWith(this);
     }
 
+    /**
+     * Searches all registries in parallel and completes with the results received by the
+     * deadline or once the limit is reached, whichever comes first. The status of the search in
+     * each registry is returned with the results. Responses are cached for a short time, so
+     * repeating a search, e.g. while typing, doesn't wait for the same registries again.
+     */
+    private void handleFanOutSearchRequest(Operation op, URI registryAdapterUri,
+            Map<String, String> queryParams, Collection<String> searchRegistryLinks,
+            String tenantLink, long deadlineMillis) {
+
+        if (searchRegistryLinks.isEmpty()) {
+            op.fail(new LocalizableValidationException("No registries found",
+                    "compute.registries.not.found"));
+            return;
+        }
+
+        FanOutSearch search = new FanOutSearch(op, searchRegistryLinks, getLimit(queryParams),
+                tenantLink);
+        List<Operation> searchOperations = new ArrayList<>(searchRegistryLinks.size());
+        for (String registryLink : searchRegistryLinks) {
+            String cacheKey = registryLink + "\n" + new TreeMap<>(queryParams);
+            RegistrySearchResponse cachedResponse = getCachedResponse(cacheKey);
+            if (cachedResponse != null) {
+                search.onResponse(registryLink, cachedResponse, RegistrySearchStatus.CACHED);
+                continue;
+            }
+
+            searchOperations.add(createSearchOperation(registryAdapterUri, queryParams,
+                    registryLink)
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            search.onFailure(registryLink, e);
+                            return;
+                        }
+                        RegistrySearchResponse registryResponse = o
+                                .getBody(RegistrySearchResponse.class);
+                        // responses after the deadline are still cached for the next search
+                        searchCache.put(cacheKey, new CachedSearchResponse(
+                                Utils.clone(registryResponse),
+                                Utils.getNowMicrosUtc() + SEARCH_CACHE_TTL_MICROS));
+                        search.onResponse(registryLink, registryResponse,
+                                RegistrySearchStatus.COMPLETED);
+                    }));
+        }
+
+        if (searchOperations.isEmpty() || search.isCompleted()) {
+            // served from the cache
+            return;
+        }
+        getHost().schedule(search::complete, deadlineMillis, TimeUnit.MILLISECONDS);
+        searchOperations.forEach(this::sendRequest);
+    }
+
+    private RegistrySearchResponse getCachedResponse(String cacheKey) {
+        CachedSearchResponse cached = searchCache.get(cacheKey);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expirationMicros < Utils.getNowMicrosUtc()) {
+            searchCache.remove(cacheKey, cached);
+            return null;
+        }
+        return Utils.clone(cached.response);
+    }
+
+    /**
+     * State of a fan-out search, updated by the completions of the registry searches.
+     */
+    private class FanOutSearch {
+        private final Operation op;
+        private final int limit;
+        private final String tenantLink;
+        private final RegistrySearchResponse mergedResponse = new RegistrySearchResponse();
+        private final List<Throwable> failures = new ArrayList<>();
+        private int pending;
+        private boolean completed;
+
+        FanOutSearch(Operation op, Collection<String> registryLinks, int limit,
+                String tenantLink) {
+            this.op = op;
+            this.limit = limit;
+            this.tenantLink = tenantLink;
+            this.pending = registryLinks.size();
+            mergedResponse.registryStatus = new LinkedHashMap<>();
+            registryLinks.forEach((link) -> mergedResponse.registryStatus.put(link, null));
+        }
+
+        synchronized void onResponse(String registryLink, RegistrySearchResponse response,
+                RegistrySearchStatus status) {
+            if (completed) {
+                return;
+            }
+            mergedResponse.registryStatus.put(registryLink, status);
+            if (response.results != null) {
+                for (Result result : response.results) {
+                    result.name = UriUtilsExtended.extractHostAndPort(result.registry) + "/"
+                            + result.name;
+                }
+                mergedResponse.merge(response);
+            }
+
+            if (--pending == 0 || (limit > 0 && mergedResponse.results != null
+                    && mergedResponse.results.size() >= limit)) {
+                complete();
+            }
+        }
+
+        synchronized void onFailure(String registryLink, Throwable e) {
+            if (completed) {
+                return;
+            }
+            mergedResponse.registryStatus.put(registryLink, RegistrySearchStatus.FAILED);
+            failures.add(e);
+            if (--pending == 0) {
+                complete();
+            }
+        }
+
+        synchronized boolean isCompleted() {
+            return completed;
+        }
+
+        synchronized void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+
+            // the searches which are still running are abandoned
+            RegistrySearchStatus abandoned = pending > 0 && limit > 0
+                    && mergedResponse.results != null && mergedResponse.results.size() >= limit
+                    ? RegistrySearchStatus.CANCELLED : RegistrySearchStatus.TIMED_OUT;
+            mergedResponse.registryStatus.replaceAll((link, status) -> status != null ? status
+                    : abandoned);
+            mergedResponse.isPartialResult = mergedResponse.registryStatus.values().stream()
+                    .anyMatch((status) -> status == RegistrySearchStatus.FAILED
+                            || status == RegistrySearchStatus.TIMED_OUT);
+            if (pending > 0) {
+                logWarning("Registry search completed with %d pending registries: %s", pending,
+                        mergedResponse.registryStatus);
+            }
+
+            if (limit > 0) {
+                mergedResponse.limit(limit);
+            }
+            if (mergedResponse.results == null) {
+                mergedResponse.results = new ArrayList<>();
+            }
+
+            // pagination doesn't make sense when querying over multiple registries
+            mergedResponse.page = -1;
+            mergedResponse.pageSize = -1;
+            mergedResponse.numPages = -1;
+            op.setBody(mergedResponse);
+            op.complete();
+
+            logFailures(failures, tenantLink);
+        }
+    }
+
+    private static long parseDeadline(String deadline) {
+        long deadlineMillis;
+        try {
+            deadlineMillis = Long.parseLong(deadline);
+        } catch (NumberFormatException e) {
+            deadlineMillis = -1;
+        }
+        if (deadlineMillis <= 0) {
+            throw new LocalizableValidationException("Invalid search deadline: " + deadline,
+                    "compute.registries.search.deadline", deadline);
+        }
+        return deadlineMillis;
+    }
+
+    private static int getLimit(Map<String, String> queryParams) {
+        Integer parsedLimit = null;
+        try {
+            parsedLimit = Integer.parseInt(queryParams.get(RegistryAdapterService.LIMIT_PROP_NAME));
+        } catch (Exception e) {
+        }
+
+        return parsedLimit != null ? parsedLimit : 0;
+    }
+
     private Operation createSearchOperation(URI registryAdapterUri,
             Map<String, String> queryParams, String searchRegistryLink) {
 
@@ -220,13 +451,13 @@ public class ContainerImageService extends StatelessService {
         return adapterOp;
     }
 
-    private void logFailures(Map<Long, Throwable> failures, String tenantLink) {
+    private void logFailures(Collection<Throwable> failures, String tenantLink) {
         if (failures == null || failures.isEmpty()) {
             return;
         }
 
-        List<String> errors = new ArrayList<>(failures.values().size());
-        for (Throwable t: failures.values()) {
+        List<String> errors = new ArrayList<>(failures.size());
+        for (Throwable t: failures) {
             logWarning("Failed to perform registry search: %s", t.getMessage());
             errors.add(t.getMessage());
         }
@@ -240,7 +471,7 @@ public class ContainerImageService extends StatelessService {
             eventLog.tenantLinks = Collections.singletonList(tenantLink);
         }
 
-        Operation createEventLog = Operation.createPost(this, EventLogService.FACTORY_LINK)
+        Operation createEventLog = Operation.createPost(this, EventLogIngestionService.SELF_LINK)
                 .setBody(eventLog)
                 .setCompletion((o, e) -> {
                     if (e != null) {
@@ -12,14 +12,18 @@
 package com.vmware.admiral.service.test;
 
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
 import com.vmware.admiral.adapter.common.ContainerHostOperationType;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.ContainerHostService.ContainerHostType;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerEvent;
 import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerListCallback;
 import com.vmware.admiral.compute.container.HostNetworkListDataCollection.NetworkListCallback;
 import com.vmware.admiral.compute.container.HostVolumeListDataCollection.VolumeListCallback;
@@ -40,6 +44,14 @@ public class MockDockerHostAdapterService extends BaseMockAdapterService {
     public static final String VIC_STORAGE_DRIVER_PROP_VALUE = "vSphere Integrated Containers "
             + "v0.8.0-7540-aaae251 Backend Engine";
 
+    private static final Map<String, List<ContainerEvent>> CONTAINER_EVENTS =
+            new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, String>> LAST_CONTAINER_EVENTS_REQUESTS =
+            new ConcurrentHashMap<>();
+    private static final Map<String, Integer> LIST_CONTAINERS_REQUESTS_COUNT =
+            new ConcurrentHashMap<>();
+    private static volatile boolean containerEventsUnavailable;
+
     @Override
     public void handleRequest(Operation op) {
         if (op.getAction() == Action.DELETE) {
@@ -74,6 +86,7 @@ public class MockDockerHostAdapterService extends BaseMockAdapterService {
             ContainerListCallback callbackResponse = new ContainerListCallback();
             callbackResponse.containerHostLink = request.resourceReference.getPath();
             String hostId = Service.getId(request.resourceReference.getPath());
+            LIST_CONTAINERS_REQUESTS_COUNT.merge(hostId, 1, Integer::sum);
             callbackResponse.containerIdsAndNames = new HashMap<>();
             for (String containerId : MockDockerAdapterService.getContainerIds(hostId)) {
                 callbackResponse.containerIdsAndNames.put(containerId,
@@ -87,6 +100,23 @@ public class MockDockerHostAdapterService extends BaseMockAdapterService {
             op.setBody(callbackResponse);
             op.complete();
 
+        } else if (ContainerHostOperationType.LIST_CONTAINER_EVENTS.id
+                .equals(request.operationTypeId)) {
+            String hostId = Service.getId(request.resourceReference.getPath());
+            LAST_CONTAINER_EVENTS_REQUESTS.put(hostId, request.customProperties != null
+                    ? new HashMap<>(request.customProperties) : new HashMap<>());
+            if (containerEventsUnavailable) {
+                op.fail(new IllegalStateException("Container events not available"));
+                return;
+            }
+            ContainerListCallback callbackResponse = new ContainerListCallback();
+            callbackResponse.containerHostLink = request.resourceReference.getPath();
+            // the events are returned once, as for consecutive time windows
+            callbackResponse.containerEvents = takeContainerEvents(hostId);
+            patchTaskStage(request, null, callbackResponse);
+            op.setBody(callbackResponse);
+            op.complete();
+
         } else if (ContainerHostOperationType.LIST_NETWORKS.id.equals(request.operationTypeId)) {
             NetworkListCallback callbackResponse = new NetworkListCallback();
             callbackResponse.containerHostLink = request.resourceReference.getPath();
@@ -124,6 +154,38 @@ public class MockDockerHostAdapterService extends BaseMockAdapterService {
         }
     }
 
+    public static synchronized void addContainerEvent(String hostId, ContainerEvent event) {
+        CONTAINER_EVENTS.computeIfAbsent(hostId, k -> new ArrayList<>()).add(event);
+    }
+
+    private static synchronized List<ContainerEvent> takeContainerEvents(String hostId) {
+        List<ContainerEvent> events = CONTAINER_EVENTS.remove(hostId);
+        return events != null ? events : new ArrayList<>();
+    }
+
+    public static void setContainerEventsUnavailable(boolean unavailable) {
+        containerEventsUnavailable = unavailable;
+    }
+
+    /**
+     * Returns the custom properties (the events time window) of the last list container events
+     * request for the host, or {@code null} if there was no such request.
+     */
+    public static Map<String, String> getLastContainerEventsRequest(String hostId) {
+        return LAST_CONTAINER_EVENTS_REQUESTS.get(hostId);
+    }
+
+    public static int getListContainersRequestsCount(String hostId) {
+        return LIST_CONTAINERS_REQUESTS_COUNT.getOrDefault(hostId, 0);
+    }
+
+    public static synchronized void resetContainerEvents() {
+        CONTAINER_EVENTS.clear();
+        LAST_CONTAINER_EVENTS_REQUESTS.clear();
+        LIST_CONTAINERS_REQUESTS_COUNT.clear();
+        containerEventsUnavailable = false;
+    }
+
     private Map<String, Object> getHostInfoResponse(AdapterRequest mockRequest) {
         Map<String, Object> properties = new HashMap<>();
         properties.put(ContainerHostService.NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME,
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.ContainerHostService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.Utils;
+
+public class ContainerHostDataCollectionSchedulerTest {
+    private static final long INTERVAL_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private ContainerHostDataCollectionScheduler scheduler;
+    private ComputeState host;
+
+    @Before
+    public void setUp() {
+        scheduler = new ContainerHostDataCollectionScheduler(INTERVAL_MICROS, 1);
+        host = new ComputeState();
+        host.documentSelfLink = "/resources/compute/host";
+        host.customProperties = new HashMap<>();
+        host.customProperties.put(ContainerHostService.NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME,
+                "3");
+    }
+
+    @Test
+    public void testHostIsDueAfterInterval() {
+        assertTrue(scheduler.isDue(host, Utils.getSystemNowMicrosUtc()));
+
+        collect(true);
+
+        long now = Utils.getSystemNowMicrosUtc();
+        assertFalse(scheduler.isDue(host, now));
+        assertTrue(scheduler.isDue(host, now + INTERVAL_MICROS));
+    }
+
+    @Test
+    public void testFailingHostIsBackedOff() {
+        scheduler.isDue(host, Utils.getSystemNowMicrosUtc());
+        collect(false);
+        collect(false);
+
+        long now = Utils.getSystemNowMicrosUtc();
+        assertFalse(scheduler.isDue(host, now + INTERVAL_MICROS));
+        assertTrue(scheduler.isDue(host, now + 2 * INTERVAL_MICROS));
+
+        collect(true);
+        now = Utils.getSystemNowMicrosUtc();
+        assertTrue(scheduler.isDue(host, now + INTERVAL_MICROS));
+    }
+
+    @Test
+    public void testStableHostIsCollectedLessOften() {
+        scheduler.isDue(host, Utils.getSystemNowMicrosUtc());
+        for (int i = 0; i < 3; i++) {
+            collect(true);
+        }
+
+        long now = Utils.getSystemNowMicrosUtc();
+        assertFalse(scheduler.isDue(host, now + INTERVAL_MICROS));
+        assertTrue(scheduler.isDue(host, now + 2 * INTERVAL_MICROS));
+
+        // a change of the containers count resets the interval
+        host.customProperties.put(ContainerHostService.NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME,
+                "4");
+        assertTrue(scheduler.isDue(host, now + INTERVAL_MICROS));
+    }
+
+    @Test
+    public void testPriorityHostIsAlwaysDue() {
+        scheduler.isDue(host, Utils.getSystemNowMicrosUtc());
+        collect(true);
+
+        long now = Utils.getSystemNowMicrosUtc();
+        assertFalse(scheduler.isDue(host, now));
+        scheduler.markPriority(host.documentSelfLink, now);
+        assertTrue(scheduler.hasPriority(host.documentSelfLink, now));
+        assertTrue(scheduler.isDue(host, now));
+    }
+
+    @Test
+    public void testInFlightLimit() {
+        List<Long> started = new ArrayList<>();
+        scheduler.submit("/host1", false, started::add);
+        scheduler.submit("/host2", false, started::add);
+        scheduler.submit("/host3", true, started::add);
+        assertEquals(1, started.size());
+        assertEquals(2d, scheduler.getStats(Utils.getSystemNowMicrosUtc())
+                .get(ContainerHostDataCollectionScheduler.STAT_NAME_PENDING), 0);
+
+        // the prioritized collection is dispatched first
+        scheduler.onCollectionCompleted(started.get(0), true);
+        assertEquals(2, started.size());
+        assertEquals(ContainerHostDataCollectionScheduler.STAT_NAME_IN_FLIGHT, 1d,
+                scheduler.getStats(Utils.getSystemNowMicrosUtc())
+                        .get(ContainerHostDataCollectionScheduler.STAT_NAME_IN_FLIGHT), 0);
+        assertTrue(scheduler.getHostStats("/host3").lastCollectionMicros > 0);
+        assertNull(scheduler.getHostStats("/host2"));
+
+        scheduler.onCollectionCompleted(started.get(1), true);
+        assertEquals(3, started.size());
+    }
+
+    @Test
+    public void testScheduledHostIsNotSubmittedAgain() {
+        List<Long> started = new ArrayList<>();
+        scheduler.submit("/host1", false, started::add);
+        scheduler.submit("/host2", false, started::add);
+        scheduler.submit("/host3", false, started::add);
+
+        // in flight and pending hosts are neither due nor queued again
+        ComputeState pendingHost = new ComputeState();
+        pendingHost.documentSelfLink = "/host2";
+        assertFalse(scheduler.isDue(pendingHost, Utils.getSystemNowMicrosUtc()));
+        scheduler.submit("/host1", false, started::add);
+        scheduler.submit("/host2", false, started::add);
+        assertEquals(2d, scheduler.getStats(Utils.getSystemNowMicrosUtc())
+                .get(ContainerHostDataCollectionScheduler.STAT_NAME_PENDING), 0);
+
+        // a prioritized pending host is moved in front
+        scheduler.submit("/host3", true, started::add);
+        scheduler.onCollectionCompleted(started.get(0), true);
+        assertEquals(2, started.size());
+        assertTrue(scheduler.getHostStats("/host3").lastCollectionMicros > 0);
+
+        // the completed host can be submitted again
+        scheduler.submit("/host1", false, started::add);
+        assertEquals(2d, scheduler.getStats(Utils.getSystemNowMicrosUtc())
+                .get(ContainerHostDataCollectionScheduler.STAT_NAME_PENDING), 0);
+    }
+
+    private void collect(boolean success) {
+        List<Long> started = new ArrayList<>();
+        scheduler.submit(host.documentSelfLink, false, started::add);
+        assertEquals(1, started.size());
+        scheduler.onCollectionCompleted(started.get(0), success);
+    }
+}
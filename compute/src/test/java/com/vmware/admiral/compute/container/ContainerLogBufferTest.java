@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ContainerLogStreamService.ContainerLogChunk;
+
+public class ContainerLogBufferTest {
+
+    @Test
+    public void testReadAfterOffset() {
+        ContainerLogBuffer buffer = new ContainerLogBuffer(1024);
+        buffer.appendTimestampedLines(("2017-05-04T10:00:00.1Z line1\n"
+                + "2017-05-04T10:00:00.12Z line2\n").getBytes());
+
+        ContainerLogChunk chunk = buffer.read(0, 1024);
+        assertEquals("line1\nline2\n", new String(chunk.logs));
+        assertEquals(0, chunk.offset);
+        assertEquals(12, chunk.nextOffset);
+        assertFalse(chunk.truncated);
+
+        // an overlapping fetch only appends the new lines
+        buffer.appendTimestampedLines(("2017-05-04T10:00:00.12Z line2\n"
+                + "2017-05-04T10:00:01Z line3\n").getBytes());
+        chunk = buffer.read(chunk.nextOffset, 1024);
+        assertEquals("line3\n", new String(chunk.logs));
+        assertEquals(18, chunk.nextOffset);
+
+        assertEquals(0, buffer.read(chunk.nextOffset, 1024).logs.length);
+    }
+
+    @Test
+    public void testAppendLinesWithEqualTimestamps() {
+        ContainerLogBuffer buffer = new ContainerLogBuffer(1024);
+        buffer.appendTimestampedLines(("2017-05-04T10:00:00.1Z line1\n"
+                + "2017-05-04T10:00:00.1Z line2\n").getBytes());
+
+        ContainerLogChunk chunk = buffer.read(0, 1024);
+        assertEquals("line1\nline2\n", new String(chunk.logs));
+
+        // the lines with the last timestamp already read are skipped, the rest are appended
+        buffer.appendTimestampedLines(("2017-05-04T10:00:00Z line0\n"
+                + "2017-05-04T10:00:00.1Z line1\n"
+                + "2017-05-04T10:00:00.1Z line2\n"
+                + "2017-05-04T10:00:00.1Z line3\n").getBytes());
+        chunk = buffer.read(chunk.nextOffset, 1024);
+        assertEquals("line3\n", new String(chunk.logs));
+
+        buffer.appendTimestampedLines(("2017-05-04T10:00:00.1Z line1\n"
+                + "2017-05-04T10:00:00.1Z line2\n"
+                + "2017-05-04T10:00:00.1Z line3\n"
+                + "2017-05-04T10:00:00.2Z line4\n").getBytes());
+        chunk = buffer.read(chunk.nextOffset, 1024);
+        assertEquals("line4\n", new String(chunk.logs));
+    }
+
+    @Test
+    public void testOverwriteOldestBytes() {
+        ContainerLogBuffer buffer = new ContainerLogBuffer(8);
+        buffer.append("abcdef".getBytes(), 0, 6);
+        buffer.append("ghij".getBytes(), 0, 4);
+
+        ContainerLogChunk chunk = buffer.read(0, 8);
+        assertTrue(chunk.truncated);
+        assertEquals(2, chunk.offset);
+        assertEquals("cdefghij", new String(chunk.logs));
+
+        chunk = buffer.read(7, 2);
+        assertEquals("hi", new String(chunk.logs));
+        assertEquals(9, chunk.nextOffset);
+
+        // a log longer than the buffer keeps its tail
+        buffer.append("0123456789".getBytes(), 0, 10);
+        chunk = buffer.read(0, 8);
+        assertEquals(12, chunk.offset);
+        assertEquals("23456789", new String(chunk.logs));
+    }
+
+    @Test
+    public void testCoalesceFetches() {
+        ContainerLogBuffer buffer = new ContainerLogBuffer(8);
+        AtomicInteger replies = new AtomicInteger();
+        assertTrue(buffer.startFetch(replies::incrementAndGet));
+        assertFalse(buffer.startFetch(replies::incrementAndGet));
+
+        buffer.completeFetch(1, true).forEach(Runnable::run);
+        assertEquals(2, replies.get());
+        assertEquals(1, buffer.getLastSuccessfulFetchMicros());
+        assertTrue(buffer.startFetch(replies::incrementAndGet));
+    }
+}
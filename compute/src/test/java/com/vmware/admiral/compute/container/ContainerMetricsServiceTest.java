@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.util.OperationUtil;
+import com.vmware.admiral.compute.container.ContainerMetricsService.ContainerMetricsResponse;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.maintenance.ContainerMetricsStore;
+import com.vmware.admiral.compute.container.maintenance.ContainerMetricsStore.ContainerMetricsSample;
+import com.vmware.admiral.compute.container.maintenance.ContainerMetricsStore.Resolution;
+import com.vmware.admiral.compute.container.maintenance.ContainerStats;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+public class ContainerMetricsServiceTest extends ComputeBaseTest {
+    private static final String HOST_LINK = "/resources/compute/test-host";
+    private static final String COMPOSITE_COMPONENT_LINK =
+            "/resources/composite-components/test-composite";
+    private static final String PROJECT_LINK = "/projects/test-project";
+
+    private ContainerState containerState;
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(ContainerFactoryService.SELF_LINK,
+                ContainerMetricsService.SELF_LINK);
+        containerState = new ContainerState();
+        containerState.image = "test-image";
+        containerState.parentLink = HOST_LINK;
+        containerState.compositeComponentLink = COMPOSITE_COMPONENT_LINK;
+        containerState.tenantLinks = Collections.singletonList(PROJECT_LINK);
+        containerState = doPost(containerState, ContainerFactoryService.SELF_LINK);
+    }
+
+    @Test
+    public void testGetMetricsOfHostAndComposite() throws Throwable {
+        ContainerStats stats = new ContainerStats();
+        stats.cpuUsage = 20;
+        stats.memUsage = 1000;
+        stats.memLimit = 5000;
+        patchStats(stats);
+
+        // health check updates are not part of the history
+        ContainerStats healthStats = new ContainerStats();
+        healthStats.healthCheckSuccess = true;
+        patchStats(healthStats);
+
+        waitFor(() -> getMetrics(ContainerMetricsService.HOST_LINK_QUERY_PARAM, HOST_LINK)
+                .metrics.containsKey(containerState.documentSelfLink));
+
+        ContainerMetricsResponse response = getMetrics(
+                ContainerMetricsService.COMPOSITE_COMPONENT_LINK_QUERY_PARAM,
+                COMPOSITE_COMPONENT_LINK);
+        assertEquals(Resolution.TEN_SECONDS, response.resolution);
+        List<ContainerMetricsSample> samples = response.metrics
+                .get(containerState.documentSelfLink);
+        assertEquals(1, samples.size());
+        assertEquals(20, samples.get(0).cpuUsage, 0.01);
+        assertEquals(1000, samples.get(0).memUsage);
+        assertEquals(5000, samples.get(0).memLimit);
+
+        assertTrue(getMetrics(ContainerMetricsService.HOST_LINK_QUERY_PARAM, "/unknown-host")
+                .metrics.isEmpty());
+    }
+
+    @Test
+    public void testGetMetricsOfProject() throws Throwable {
+        ContainerStats stats = new ContainerStats();
+        stats.cpuUsage = 20;
+        patchStats(stats);
+
+        waitFor(() -> getMetrics(ContainerMetricsService.HOST_LINK_QUERY_PARAM, HOST_LINK)
+                .metrics.containsKey(containerState.documentSelfLink));
+
+        assertTrue(getMetricsOfProject(PROJECT_LINK).metrics
+                .containsKey(containerState.documentSelfLink));
+        assertTrue(getMetricsOfProject("/projects/other-project").metrics.isEmpty());
+    }
+
+    @Test
+    public void testDownsampling() {
+        ContainerMetricsStore store = new ContainerMetricsStore();
+        String containerLink = containerState.documentSelfLink;
+        long tenMinutesMicros = Resolution.TEN_MINUTES.intervalMicros;
+        long start = Utils.getNowMicrosUtc() / tenMinutesMicros * tenMinutesMicros;
+
+        // a sample every 10 seconds for 2 minutes
+        for (int i = 0; i < 12; i++) {
+            ContainerStats stats = new ContainerStats();
+            stats.cpuUsage = i < 6 ? 10 : 30;
+            stats.networkIn = i * 100;
+            store.record(containerLink, HOST_LINK, null,
+                    start + i * TimeUnit.SECONDS.toMicros(10), stats);
+        }
+
+        long end = start + TimeUnit.MINUTES.toMicros(2);
+        assertEquals(12, store.getSamples(containerLink, start, end, Resolution.TEN_SECONDS)
+                .size());
+
+        List<ContainerMetricsSample> minutes = store.getSamples(containerLink, start, end,
+                Resolution.ONE_MINUTE);
+        assertEquals(2, minutes.size());
+        assertEquals(start, minutes.get(0).timeMicros);
+        assertEquals(10, minutes.get(0).cpuUsage, 0.01);
+        assertEquals(500, minutes.get(0).networkIn);
+        assertEquals(30, minutes.get(1).cpuUsage, 0.01);
+        assertEquals(1100, minutes.get(1).networkIn);
+
+        List<ContainerMetricsSample> tenMinutes = store.getSamples(containerLink, start, end,
+                Resolution.TEN_MINUTES);
+        assertEquals(1, tenMinutes.size());
+        assertEquals(20, tenMinutes.get(0).cpuUsage, 0.01);
+
+        // the ring wraps around and the old slots are overwritten
+        long later = start + Resolution.TEN_SECONDS.getRetentionMicros();
+        ContainerStats stats = new ContainerStats();
+        stats.cpuUsage = 50;
+        store.record(containerLink, HOST_LINK, null, later, stats);
+        List<ContainerMetricsSample> samples = store.getSamples(containerLink, start, later,
+                Resolution.TEN_SECONDS);
+        assertEquals(12, samples.size());
+        assertFalse(samples.stream().anyMatch(s -> s.timeMicros == start));
+
+        assertNull(store.getSamples("/unknown", start, end, Resolution.TEN_SECONDS));
+        assertEquals(1, store.removeStale(later + Resolution.TEN_MINUTES.getRetentionMicros()
+                + 1));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testByteCountersKeepPrecision() {
+        ContainerMetricsStore store = new ContainerMetricsStore();
+        String containerLink = containerState.documentSelfLink;
+        long tenMinutesMicros = Resolution.TEN_MINUTES.intervalMicros;
+        long start = Utils.getNowMicrosUtc() / tenMinutesMicros * tenMinutesMicros;
+
+        ContainerStats stats = new ContainerStats();
+        stats.memUsage = 8_589_934_593L;
+        stats.memLimit = 17_179_869_185L;
+        stats.networkIn = 10_000_000_007L;
+        stats.networkOut = 20_000_000_009L;
+        store.record(containerLink, HOST_LINK, null, start, stats);
+        stats.memUsage = 8_589_934_595L;
+        store.record(containerLink, HOST_LINK, null, start + 1, stats);
+
+        ContainerMetricsSample sample = store.getSamples(containerLink, start, start,
+                Resolution.TEN_SECONDS).get(0);
+        assertEquals(8_589_934_594L, sample.memUsage);
+        assertEquals(17_179_869_185L, sample.memLimit);
+        assertEquals(10_000_000_007L, sample.networkIn);
+        assertEquals(20_000_000_009L, sample.networkOut);
+    }
+
+    private void patchStats(ContainerStats stats) throws Throwable {
+        host.testStart(1);
+        host.sendRequest(Operation
+                .createPatch(UriUtils.buildUri(host, containerState.documentSelfLink))
+                .setBody(stats)
+                .setReferer(host.getUri())
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+    }
+
+    private ContainerMetricsResponse getMetricsOfProject(String projectLink) {
+        ContainerMetricsResponse[] response = new ContainerMetricsResponse[1];
+        host.testStart(1);
+        host.sendRequest(Operation
+                .createGet(UriUtils.buildUri(host, ContainerMetricsService.SELF_LINK,
+                        UriUtils.buildUriQuery(ContainerMetricsService.HOST_LINK_QUERY_PARAM,
+                                HOST_LINK)))
+                .addRequestHeader(OperationUtil.PROJECT_ADMIRAL_HEADER, projectLink)
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.failIteration(e);
+                        return;
+                    }
+                    response[0] = o.getBody(ContainerMetricsResponse.class);
+                    host.completeIteration();
+                }));
+        host.testWait();
+        return response[0];
+    }
+
+    private ContainerMetricsResponse getMetrics(String param, String value) throws Throwable {
+        return getDocument(ContainerMetricsResponse.class, ContainerMetricsService.SELF_LINK,
+                param, value);
+    }
+}
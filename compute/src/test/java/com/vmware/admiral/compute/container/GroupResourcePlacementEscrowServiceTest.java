@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.GroupResourcePlacementEscrowService.EscrowReservationRequest;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementLease;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+
+public class GroupResourcePlacementEscrowServiceTest extends ComputeBaseTest {
+
+    private static final String REFERER = UriUtils.buildUriPath(
+            ManagementUriParts.REQUEST_RESERVATION_TASKS, "test");
+
+    private ContainerDescription containerDescription;
+    private GroupResourcePlacementState placementState;
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(GroupResourcePlacementService.FACTORY_LINK,
+                GroupResourcePlacementEscrowService.SELF_LINK);
+
+        ResourcePoolState poolState = new ResourcePoolState();
+        poolState.id = "escrow-pool-" + UUID.randomUUID().toString();
+        poolState.name = poolState.id;
+        poolState.documentSelfLink = poolState.id;
+        poolState = doPost(poolState, ResourcePoolService.FACTORY_LINK);
+
+        containerDescription = new ContainerDescription();
+        containerDescription.documentSelfLink = "escrow-desc-" + UUID.randomUUID().toString();
+        containerDescription.name = "name";
+        containerDescription.image = "image";
+        containerDescription = doPost(containerDescription,
+                ContainerDescriptionService.FACTORY_LINK);
+
+        GroupResourcePlacementState placement = new GroupResourcePlacementState();
+        placement.name = "escrow-placement";
+        placement.documentSelfLink = "escrow-placement-" + UUID.randomUUID().toString();
+        placement.resourcePoolLink = poolState.documentSelfLink;
+        placement.maxNumberInstances = 10;
+        placementState = doPost(placement, GroupResourcePlacementService.FACTORY_LINK);
+    }
+
+    @Test
+    public void testReserveOutOfLease() throws Throwable {
+        GroupResourcePlacementState placement = reserve(3, false);
+        assertEquals(placementState.documentSelfLink, placement.documentSelfLink);
+
+        // the lease covers the reservation which is not reported yet
+        GroupResourcePlacementState state = getPlacement();
+        ResourcePlacementLease lease = state.leases.get(host.getId());
+        assertNotNull(lease);
+        assertTrue(lease.instancesCount >= 3);
+        assertEquals(10, state.availableInstancesCount + lease.instancesCount
+                + state.allocatedInstancesCount);
+
+        // the reservation is reported and the lease of the idle node is returned
+        waitFor(() -> {
+            GroupResourcePlacementState s = getPlacement();
+            return s.allocatedInstancesCount == 3 && s.availableInstancesCount == 7;
+        });
+
+        reserve(8, true);
+        reserve(-3, false);
+
+        waitFor(() -> {
+            GroupResourcePlacementState s = getPlacement();
+            return s.allocatedInstancesCount == 0 && s.availableInstancesCount == 10;
+        });
+    }
+
+    private GroupResourcePlacementState reserve(long count, boolean expectFailure)
+            throws Throwable {
+        EscrowReservationRequest request = new EscrowReservationRequest();
+        request.groupResourcePlacementLink = placementState.documentSelfLink;
+        request.resourceCount = count;
+        request.resourceDescriptionLink = containerDescription.documentSelfLink;
+        request.referer = REFERER;
+
+        GroupResourcePlacementState[] result = new GroupResourcePlacementState[] { null };
+        host.testStart(1);
+        host.send(Operation
+                .createPatch(UriUtils.buildUri(host, GroupResourcePlacementEscrowService.SELF_LINK))
+                .setBody(request)
+                .setCompletion(expectFailure ? host.getExpectedFailureCompletion()
+                        : (o, e) -> {
+                            if (e != null) {
+                                host.failIteration(e);
+                                return;
+                            }
+                            result[0] = o.getBody(GroupResourcePlacementState.class);
+                            host.completeIteration();
+                        }));
+        host.testWait();
+        return result[0];
+    }
+
+    private GroupResourcePlacementState getPlacement() throws Throwable {
+        return getDocument(GroupResourcePlacementState.class, placementState.documentSelfLink);
+    }
+}
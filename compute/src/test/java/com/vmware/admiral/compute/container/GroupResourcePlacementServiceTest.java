@@ -12,10 +12,13 @@
 package com.vmware.admiral.compute.container;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.Field;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -43,6 +46,8 @@ import com.vmware.admiral.compute.container.ContainerDescriptionService.Containe
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementPoolState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementLease;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementLeaseRequest;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.photon.controller.model.resources.ResourcePoolService;
 import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
@@ -466,6 +471,197 @@ public class GroupResourcePlacementServiceTest extends ComputeBaseTest {
         makeResourcePlacementReservationRequest(-count, descLink, placementState, false);
     }
 
+    @Test
+    public void testResourcePlacementLeaseRequest() throws Throwable {
+        GroupResourcePlacementState placementState = createAndStoreGroupResourcePlacement();
+
+        // no more than half of the available resources are leased unless required
+        ResourcePlacementLeaseRequest request = createLeaseRequest();
+        request.requiredInstancesCount = 4;
+        request.requestedInstancesCount = 6;
+        request.requiredMemory = 4 * CONTAINER_MEMORY;
+        request.requestedMemory = 6 * CONTAINER_MEMORY;
+        placementState = makeResourcePlacementLeaseRequest(request, placementState);
+
+        ResourcePlacementLease lease = placementState.leases.get(request.nodeId);
+        assertEquals(5, lease.instancesCount);
+        assertEquals(5, placementState.availableInstancesCount);
+        assertEquals(0, placementState.allocatedInstancesCount);
+        assertEquals(4 * CONTAINER_MEMORY + CONTAINER_MEMORY / 4, lease.memory);
+        assertEquals(4 * CONTAINER_MEMORY + CONTAINER_MEMORY / 4,
+                placementState.availableMemory);
+        assertTrue(lease.expirationTimeMicros > Utils.getSystemNowMicrosUtc());
+
+        // the leased instances are reserved
+        GroupResourcePlacementState putState = Utils.clone(placementState);
+        putState.maxNumberInstances = 4;
+        try {
+            doOperation(putState, UriUtils.buildUri(host, placementState.documentSelfLink), true,
+                    Action.PUT);
+            fail("expect maxNumberInstances validation error");
+        } catch (LocalizableValidationException e) {
+            // expected
+        }
+
+        // report the reserved resources and return the rest of the lease
+        request = createLeaseRequest();
+        request.reservedInstancesCount = 3;
+        request.reservedMemory = 3 * CONTAINER_MEMORY;
+        placementState = makeResourcePlacementLeaseRequest(request, placementState);
+
+        assertNull(placementState.leases.get(request.nodeId));
+        assertEquals(7, placementState.availableInstancesCount);
+        assertEquals(3, placementState.allocatedInstancesCount);
+        assertEquals(5 * CONTAINER_MEMORY + CONTAINER_MEMORY / 2, placementState.availableMemory);
+
+        // release through the lease
+        request = createLeaseRequest();
+        request.reservedInstancesCount = -3;
+        request.reservedMemory = -3 * CONTAINER_MEMORY;
+        placementState = makeResourcePlacementLeaseRequest(request, placementState);
+
+        assertEquals(10, placementState.availableInstancesCount);
+        assertEquals(0, placementState.allocatedInstancesCount);
+        assertEquals(placementState.memoryLimit, placementState.availableMemory);
+    }
+
+    @Test
+    public void testReclaimExpiredLeaseAllocatesUnreportedResources() throws Throwable {
+        GroupResourcePlacementState placementState = createAndStoreGroupResourcePlacement();
+        placementState = makeResourcePlacementReservationRequest(placementState, 2);
+
+        ResourcePlacementLeaseRequest request = createLeaseRequest();
+        request.nodeId = "leaving-node";
+        request.requiredInstancesCount = 2;
+        request.requestedInstancesCount = 2;
+        request.requiredMemory = 2 * CONTAINER_MEMORY;
+        request.requestedMemory = 2 * CONTAINER_MEMORY;
+        placementState = makeResourcePlacementLeaseRequest(request, placementState);
+
+        ResourcePlacementLease lease = placementState.leases.get(request.nodeId);
+        assertEquals(2, lease.instancesCount);
+        assertEquals(2 * CONTAINER_MEMORY, lease.memory);
+        assertEquals(6, placementState.availableInstancesCount);
+
+        // one resource was created out of the lease and not reported
+        ResourcePlacementLeaseRequest reclaim = new ResourcePlacementLeaseRequest();
+        reclaim.reclaimedLeases = new HashMap<>();
+        reclaim.reclaimedLeases.put(request.nodeId, lease.expirationTimeMicros);
+        reclaim.resourcesCount = 3;
+        reclaim.referer = placementState.documentSelfLink;
+        placementState = makeResourcePlacementLeaseRequest(reclaim, placementState);
+
+        assertNull(placementState.leases.get(request.nodeId));
+        assertEquals(3, placementState.allocatedInstancesCount);
+        assertEquals(7, placementState.availableInstancesCount);
+        assertEquals(5 * CONTAINER_MEMORY + CONTAINER_MEMORY / 2, placementState.availableMemory);
+    }
+
+    @Test
+    public void testReclaimRenewedLeaseIsIgnored() throws Throwable {
+        GroupResourcePlacementState placementState = createAndStoreGroupResourcePlacement();
+
+        ResourcePlacementLeaseRequest request = createLeaseRequest();
+        request.requiredInstancesCount = 2;
+        request.requestedInstancesCount = 2;
+        placementState = makeResourcePlacementLeaseRequest(request, placementState);
+        ResourcePlacementLease lease = placementState.leases.get(request.nodeId);
+
+        ResourcePlacementLeaseRequest reclaim = new ResourcePlacementLeaseRequest();
+        reclaim.reclaimedLeases = new HashMap<>();
+        reclaim.reclaimedLeases.put(request.nodeId, lease.expirationTimeMicros - 1);
+        reclaim.referer = placementState.documentSelfLink;
+        placementState = makeResourcePlacementLeaseRequest(reclaim, placementState);
+
+        assertNotNull(placementState.leases.get(request.nodeId));
+        assertEquals(8, placementState.availableInstancesCount);
+        assertEquals(0, placementState.allocatedInstancesCount);
+    }
+
+    @Test
+    public void testReclaimExpiredLeaseWaitsForLiveLeasesToReport() throws Throwable {
+        GroupResourcePlacementState placementState = createAndStoreGroupResourcePlacement();
+        placementState = makeResourcePlacementReservationRequest(placementState, 2);
+
+        // lease to a node which leaves, expired for longer than a lease duration
+        Field leaseDurationField = GroupResourcePlacementEscrowService.class
+                .getDeclaredField("LEASE_DURATION_MICROS");
+        long leaseDurationMicros = GroupResourcePlacementEscrowService.LEASE_DURATION_MICROS;
+        ResourcePlacementLeaseRequest request = createLeaseRequest();
+        request.nodeId = "leaving-node";
+        request.requiredInstancesCount = 2;
+        request.requestedInstancesCount = 2;
+        request.requiredMemory = 2 * CONTAINER_MEMORY;
+        request.requestedMemory = 2 * CONTAINER_MEMORY;
+        try {
+            setFinalStatic(leaseDurationField, -3 * leaseDurationMicros);
+            placementState = makeResourcePlacementLeaseRequest(request, placementState);
+        } finally {
+            setFinalStatic(leaseDurationField, leaseDurationMicros);
+        }
+
+        // the lease of the live node is fenced, the expired one is not reclaimed yet
+        ResourcePlacementLeaseRequest liveRequest = createLeaseRequest();
+        liveRequest.requiredInstancesCount = 2;
+        liveRequest.requestedInstancesCount = 2;
+        liveRequest.requiredMemory = 2 * CONTAINER_MEMORY;
+        liveRequest.requestedMemory = 2 * CONTAINER_MEMORY;
+        placementState = makeResourcePlacementLeaseRequest(liveRequest, placementState);
+
+        assertNotNull(placementState.leases.get(request.nodeId));
+        ResourcePlacementLease liveLease = placementState.leases.get(liveRequest.nodeId);
+        assertTrue(liveLease.fenced);
+        assertEquals(2, placementState.allocatedInstancesCount);
+        assertEquals(4, placementState.availableInstancesCount);
+
+        // besides the two reserved directly, one resource was created out of the expired lease
+        // and one out of the live lease which is not reported yet
+        createContainer(placementState.documentSelfLink);
+        createContainer(placementState.documentSelfLink);
+
+        // the live node reports its reservation, only the rest is charged to the expired lease
+        liveRequest = createLeaseRequest();
+        liveRequest.reservedInstancesCount = 1;
+        liveRequest.reservedMemory = CONTAINER_MEMORY;
+        liveRequest.requiredInstancesCount = 1;
+        liveRequest.requestedInstancesCount = 1;
+        liveRequest.requiredMemory = CONTAINER_MEMORY;
+        liveRequest.requestedMemory = CONTAINER_MEMORY;
+        liveRequest.fenced = true;
+        makeResourcePlacementLeaseRequest(liveRequest, placementState);
+
+        String placementLink = placementState.documentSelfLink;
+        waitFor(() -> getDocument(GroupResourcePlacementState.class, placementLink)
+                .leases.get(request.nodeId) == null);
+        placementState = getDocument(GroupResourcePlacementState.class, placementLink);
+
+        liveLease = placementState.leases.get(liveRequest.nodeId);
+        assertEquals(1, liveLease.instancesCount);
+        assertFalse(liveLease.fenced);
+        assertEquals(4, placementState.allocatedInstancesCount);
+        assertEquals(5, placementState.availableInstancesCount);
+    }
+
+    private ResourcePlacementLeaseRequest createLeaseRequest() {
+        ResourcePlacementLeaseRequest request = new ResourcePlacementLeaseRequest();
+        request.nodeId = host.getId();
+        request.referer = requestReservationTaskURI.getPath();
+        return request;
+    }
+
+    private GroupResourcePlacementState makeResourcePlacementLeaseRequest(
+            ResourcePlacementLeaseRequest request, GroupResourcePlacementState placementState)
+            throws Throwable {
+        host.testStart(1);
+        host.send(Operation
+                .createPatch(UriUtils.buildUri(host, placementState.documentSelfLink))
+                .setBody(request)
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+
+        return getDocument(GroupResourcePlacementState.class, placementState.documentSelfLink);
+    }
+
     @Test
     public void testMemoryPlacementPatchRequest() throws Throwable {
         GroupResourcePlacementState placementState = createAndStoreGroupResourcePlacement();
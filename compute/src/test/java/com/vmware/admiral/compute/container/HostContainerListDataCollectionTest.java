@@ -13,10 +13,15 @@ package com.vmware.admiral.compute.container;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -26,9 +31,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.vmware.admiral.common.DeploymentProfileConfig;
+import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerEvent;
 import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerListCallback;
 import com.vmware.admiral.compute.container.HostContainerListDataCollection.HostContainerListDataCollectionState;
 import com.vmware.admiral.service.test.MockDockerAdapterService;
@@ -41,6 +48,7 @@ import com.vmware.photon.controller.model.resources.ResourcePoolService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
 
 public class HostContainerListDataCollectionTest extends ComputeBaseTest {
     private static final String TEST_PREEXISTING_CONTAINER_ID = "preexisting-container";
@@ -50,6 +58,7 @@ public class HostContainerListDataCollectionTest extends ComputeBaseTest {
     private ContainerListCallback containerListBody;
     private String systemContainerLink;
     private String image;
+    private long incrementalSyncMaxGapSeconds;
 
     @Before
     public void setUp() throws Throwable {
@@ -92,6 +101,9 @@ public class HostContainerListDataCollectionTest extends ComputeBaseTest {
                 SystemContainerDescriptions.AGENT_CONTAINER_NAME, TEST_HOST_ID);
         image = String.format("%s:%s", SystemContainerDescriptions.AGENT_IMAGE_NAME,
                 SystemContainerDescriptions.getAgentImageVersion());
+
+        incrementalSyncMaxGapSeconds = getPrivateField(
+                getIncrementalSyncField("INCREMENTAL_SYNC_MAX_GAP_SECONDS"), null);
     }
 
     @After
@@ -101,6 +113,11 @@ public class HostContainerListDataCollectionTest extends ComputeBaseTest {
         DeploymentProfileConfig.getInstance().setTest(true);
 
         MockDockerAdapterService.resetContainers();
+
+        MockDockerHostAdapterService.resetContainerEvents();
+        setFinalStatic(getIncrementalSyncField("INCREMENTAL_SYNC_ENABLED"), false);
+        setFinalStatic(getIncrementalSyncField("INCREMENTAL_SYNC_MAX_GAP_SECONDS"),
+                incrementalSyncMaxGapSeconds);
     }
 
     @Test
@@ -152,6 +169,22 @@ public class HostContainerListDataCollectionTest extends ComputeBaseTest {
         assertEquals(Boolean.TRUE, systemContainer.system);
     }
 
+    @Test
+    public void testDataCollectionLinkForHost() throws Throwable {
+        List<String> links = HostContainerListDataCollection.getDataCollectionLinks();
+        assertEquals(HostContainerListDataCollection
+                .DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK, links.get(0));
+
+        String hostLink = UriUtils.buildUriPath(ComputeService.FACTORY_LINK,
+                UUID.randomUUID().toString());
+        String dataCollectionLink = HostContainerListDataCollection
+                .getDataCollectionLink(hostLink);
+        assertTrue(links.contains(dataCollectionLink));
+        // the same host is always handled by the same shard
+        assertEquals(dataCollectionLink,
+                HostContainerListDataCollection.getDataCollectionLink(hostLink));
+    }
+
     @Test
     public void testStateStuckInProvisioningWhenExistsOnHost() throws Throwable {
         testStateStuckInProvisioning(false);
@@ -272,6 +305,181 @@ public class HostContainerListDataCollectionTest extends ComputeBaseTest {
         assertEquals(PowerState.STOPPED, cs.powerState);
     }
 
+    @Test
+    public void testIncrementalSyncAppliesContainerEvents() throws Throwable {
+        setFinalStatic(getIncrementalSyncField("INCREMENTAL_SYNC_ENABLED"), true);
+
+        ContainerState stoppedContainer = createContainer(PowerState.RUNNING);
+        ContainerState startedContainer = createContainer(PowerState.STOPPED);
+        ContainerState destroyedContainer = createContainer(PowerState.RUNNING);
+
+        // there are no container events applied yet, so all containers are listed
+        startAndWaitHostContainerListDataCollection();
+        assertEquals(1, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+        assertNull(MockDockerHostAdapterService.getLastContainerEventsRequest(TEST_HOST_ID));
+
+        String createdContainerId = UUID.randomUUID().toString();
+        String createdContainerName = "name_" + createdContainerId;
+        MockDockerAdapterService.addContainerId(TEST_HOST_ID, createdContainerId,
+                createdContainerId);
+        MockDockerAdapterService.addContainerNames(TEST_HOST_ID, createdContainerId,
+                createdContainerName);
+        String removedContainerId = UUID.randomUUID().toString();
+
+        addContainerEvent(stoppedContainer.id, ContainerEvent.ACTION_DIE, null);
+        addContainerEvent(startedContainer.id, ContainerEvent.ACTION_START, null);
+        addContainerEvent(destroyedContainer.id, ContainerEvent.ACTION_DIE, null);
+        addContainerEvent(destroyedContainer.id, ContainerEvent.ACTION_DESTROY, null);
+        addContainerEvent(createdContainerId, ContainerEvent.ACTION_CREATE,
+                createdContainerName);
+        addContainerEvent(createdContainerId, ContainerEvent.ACTION_START,
+                createdContainerName);
+        // a container created and removed between two collections is not discovered
+        addContainerEvent(removedContainerId, ContainerEvent.ACTION_CREATE, "removed");
+        addContainerEvent(removedContainerId, ContainerEvent.ACTION_DESTROY, "removed");
+
+        startAndWaitHostContainerListDataCollection();
+        assertEquals(1, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+        Map<String, String> window = MockDockerHostAdapterService
+                .getLastContainerEventsRequest(TEST_HOST_ID);
+        assertNotNull(window);
+        long since = Long.parseLong(window.get(ContainerListCallback.EVENTS_SINCE_PROP_NAME));
+        long until = Long.parseLong(window.get(ContainerListCallback.EVENTS_UNTIL_PROP_NAME));
+        assertTrue(since <= until);
+
+        waitForPowerState(stoppedContainer.documentSelfLink, PowerState.STOPPED);
+        waitForPowerState(startedContainer.documentSelfLink, PowerState.RUNNING);
+        waitForPowerState(destroyedContainer.documentSelfLink, PowerState.RETIRED);
+        waitFor(() -> findContainer(createdContainerId) != null);
+        assertEquals(createdContainerName, findContainer(createdContainerId).names.get(0));
+        assertNull(findContainer(removedContainerId));
+
+        // the next window starts where the previous one ended, minus the overlap
+        startAndWaitHostContainerListDataCollection();
+        assertEquals(1, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+        Map<String, String> nextWindow = MockDockerHostAdapterService
+                .getLastContainerEventsRequest(TEST_HOST_ID);
+        long overlap = getPrivateField(
+                getIncrementalSyncField("INCREMENTAL_SYNC_OVERLAP_SECONDS"), null);
+        assertEquals(until - overlap,
+                Long.parseLong(nextWindow.get(ContainerListCallback.EVENTS_SINCE_PROP_NAME)));
+    }
+
+    @Test
+    public void testIncrementalSyncMatchesProvisioningContainerByName() throws Throwable {
+        setFinalStatic(getIncrementalSyncField("INCREMENTAL_SYNC_ENABLED"), true);
+
+        startAndWaitHostContainerListDataCollection();
+        assertNull(MockDockerHostAdapterService.getLastContainerEventsRequest(TEST_HOST_ID));
+
+        // the container is still provisioning, its id is not set yet
+        ContainerState provisioningContainer = new ContainerState();
+        provisioningContainer.names = new ArrayList<>(Collections.singletonList(
+                "name_" + UUID.randomUUID().toString()));
+        provisioningContainer.parentLink = COMPUTE_HOST_LINK;
+        provisioningContainer.powerState = PowerState.PROVISIONING;
+        provisioningContainer.image = "image:ver";
+        provisioningContainer = doPost(provisioningContainer, ContainerFactoryService.SELF_LINK);
+
+        String containerId = UUID.randomUUID().toString();
+        String containerName = provisioningContainer.names.get(0);
+        addContainerEvent(containerId, ContainerEvent.ACTION_CREATE, containerName);
+        addContainerEvent(containerId, ContainerEvent.ACTION_START, containerName);
+
+        startAndWaitHostContainerListDataCollection();
+        assertNotNull(MockDockerHostAdapterService.getLastContainerEventsRequest(TEST_HOST_ID));
+        assertEquals(1, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+
+        // no container is discovered for the events of the provisioning one
+        assertNull(findContainer(containerId));
+        assertEquals(PowerState.PROVISIONING, getDocument(ContainerState.class,
+                provisioningContainer.documentSelfLink).powerState);
+    }
+
+    @Test
+    public void testIncrementalSyncFallsBackToFullList() throws Throwable {
+        setFinalStatic(getIncrementalSyncField("INCREMENTAL_SYNC_ENABLED"), true);
+
+        ContainerState container = createContainer(PowerState.RUNNING);
+
+        startAndWaitHostContainerListDataCollection();
+        startAndWaitHostContainerListDataCollection();
+        assertEquals(1, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+        assertNotNull(MockDockerHostAdapterService.getLastContainerEventsRequest(TEST_HOST_ID));
+
+        // the container events are not available, all containers are listed instead
+        MockDockerHostAdapterService.setContainerEventsUnavailable(true);
+        MockDockerAdapterService.addContainerState(container.id, PowerState.STOPPED);
+        startAndWaitHostContainerListDataCollection();
+        assertEquals(2, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+        waitForPowerState(container.documentSelfLink, PowerState.STOPPED);
+
+        // the full list starts a new cursor
+        MockDockerHostAdapterService.setContainerEventsUnavailable(false);
+        startAndWaitHostContainerListDataCollection();
+        assertEquals(2, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+
+        // the cursor is too old, events may have been lost
+        setFinalStatic(getIncrementalSyncField("INCREMENTAL_SYNC_MAX_GAP_SECONDS"), -1L);
+        startAndWaitHostContainerListDataCollection();
+        assertEquals(3, MockDockerHostAdapterService.getListContainersRequestsCount(TEST_HOST_ID));
+    }
+
+    private ContainerState createContainer(PowerState powerState) throws Throwable {
+        ContainerState cs = new ContainerState();
+        cs.id = UUID.randomUUID().toString();
+        cs.names = new ArrayList<>(Collections.singletonList("name_" + cs.id));
+        cs.parentLink = COMPUTE_HOST_LINK;
+        cs.powerState = powerState;
+        cs.image = "image:ver";
+        cs = doPost(cs, ContainerFactoryService.SELF_LINK);
+
+        String ref = UriUtils.buildUri(host, cs.documentSelfLink).toString();
+        MockDockerAdapterService.addContainerId(TEST_HOST_ID, cs.id, ref);
+        MockDockerAdapterService.addContainerNames(TEST_HOST_ID, cs.id, cs.names.get(0));
+        MockDockerAdapterService.addContainerImage(TEST_HOST_ID, cs.id, cs.image);
+        MockDockerAdapterService.addContainerState(cs.id, powerState);
+        return cs;
+    }
+
+    private static void addContainerEvent(String containerId, String action, String name) {
+        ContainerEvent event = new ContainerEvent();
+        event.id = containerId;
+        event.action = action;
+        event.name = name;
+        event.image = "image:ver";
+        MockDockerHostAdapterService.addContainerEvent(TEST_HOST_ID, event);
+    }
+
+    private static Field getIncrementalSyncField(String name) throws Exception {
+        return HostContainerListDataCollection.class.getDeclaredField(name);
+    }
+
+    private void waitForPowerState(String containerLink, PowerState powerState)
+            throws Throwable {
+        waitFor(() -> powerState == getDocument(ContainerState.class, containerLink).powerState);
+    }
+
+    private ContainerState findContainer(String containerId) throws Throwable {
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_ID, containerId);
+        QueryUtil.addExpandOption(queryTask);
+
+        List<ContainerState> containerStates = new ArrayList<>();
+        host.testStart(1);
+        new ServiceDocumentQuery<>(host, ContainerState.class).query(queryTask, (r) -> {
+            if (r.hasException()) {
+                host.failIteration(r.getException());
+            } else if (r.hasResult()) {
+                containerStates.add(r.getResult());
+            } else {
+                host.completeIteration();
+            }
+        });
+        host.testWait();
+        return containerStates.isEmpty() ? null : containerStates.get(0);
+    }
+
     private void testStateStuckInProvisioning(boolean isSystemContainerMissingOnHost)
             throws Throwable {
         String systemContainerId = extractId(systemContainerLink);
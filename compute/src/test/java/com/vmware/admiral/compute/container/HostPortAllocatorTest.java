@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.HostPortProfileService.HostPortProfileState;
+
+public class HostPortAllocatorTest {
+
+    private static final String CONTAINER1 = "/resources/containers/c1";
+    private static final String CONTAINER2 = "/resources/containers/c2";
+
+    private HostPortProfileState state;
+
+    @Before
+    public void setUp() {
+        state = new HostPortProfileState();
+        state.startPort = 100;
+        state.endPort = 105;
+        state.reservedPorts = new HashMap<>();
+        state.reservedPorts.put(101L, CONTAINER1);
+    }
+
+    @Test
+    public void testAllocate() {
+        HostPortAllocator allocator = new HostPortAllocator(state);
+        assertEquals(4, allocator.getAvailablePortCount());
+
+        assertEquals(Long.valueOf(100), allocator.allocate(CONTAINER2));
+        // the reserved port is skipped
+        assertEquals(Long.valueOf(102), allocator.allocate(CONTAINER2));
+        assertEquals(CONTAINER2, state.reservedPorts.get(102L));
+
+        allocator.release(CONTAINER1);
+        assertFalse(state.reservedPorts.containsKey(101L));
+
+        // the cursor rotates over the range, released ports are taken last
+        assertEquals(Long.valueOf(103), allocator.allocate(CONTAINER1));
+        assertEquals(Long.valueOf(104), allocator.allocate(CONTAINER1));
+        assertEquals(Long.valueOf(101), allocator.allocate(CONTAINER1));
+        assertNull(allocator.allocate(CONTAINER1));
+
+        assertEquals(new HashSet<>(Arrays.asList(100L, 102L)),
+                allocator.getAllocatedPorts(CONTAINER2));
+        assertEquals(new HashSet<>(Arrays.asList(101L, 103L, 104L)),
+                allocator.getAllocatedPorts(CONTAINER1));
+    }
+
+    @Test
+    public void testAllocateSpecificPorts() {
+        HostPortAllocator allocator = new HostPortAllocator(state);
+
+        // a reserved port is taken from its container
+        allocator.allocate(101L, CONTAINER2);
+        // a port out of the range
+        allocator.allocate(200L, CONTAINER2);
+
+        assertTrue(allocator.getAllocatedPorts(CONTAINER1).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(101L, 200L)),
+                allocator.getAllocatedPorts(CONTAINER2));
+        assertEquals(4, allocator.getAvailablePortCount());
+        assertEquals(1, allocator.getAvailablePortCount(Arrays.asList(101L, 102L, 200L)));
+
+        allocator.release(CONTAINER2);
+        assertTrue(state.reservedPorts.isEmpty());
+        assertEquals(5, allocator.getAvailablePortCount());
+    }
+
+    @Test
+    public void testIsIndexOf() {
+        HostPortAllocator allocator = new HostPortAllocator(state);
+        assertTrue(allocator.isIndexOf(state));
+
+        allocator.updated(state);
+        assertFalse(allocator.isIndexOf(state));
+        state.documentVersion++;
+        assertTrue(allocator.isIndexOf(state));
+
+        state.reservedPorts = new HashMap<>(state.reservedPorts);
+        assertFalse(allocator.isIndexOf(state));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.network.ComputeNetworkCIDRAllocationService.ComputeNetworkCIDRAllocationState;
+
+public class ComputeNetworkCIDRAllocatorTest {
+
+    private static final String NETWORK_CIDR = "192.168.0.0/16";
+
+    private ComputeNetworkCIDRAllocationState state;
+
+    @Before
+    public void setUp() {
+        state = new ComputeNetworkCIDRAllocationState();
+        state.allocatedCIDRs = new HashMap<>();
+    }
+
+    @Test
+    public void testAllocateSmallestFreeBlock() {
+        ComputeNetworkCIDRAllocator allocator = new ComputeNetworkCIDRAllocator(state,
+                NETWORK_CIDR, Collections.emptyList());
+
+        assertEquals("192.168.0.0/24", allocator.allocate("s1", 24));
+        // the free /24 is split instead of a bigger block
+        assertEquals("192.168.1.0/28", allocator.allocate("s2", 28));
+        assertEquals("192.168.2.0/24", allocator.allocate("s3", 24));
+        assertEquals("192.168.1.16/28", allocator.allocate("s4", 28));
+        assertEquals("192.168.128.0/17", allocator.allocate("s5", 17));
+        assertEquals("192.168.1.16/28", state.allocatedCIDRs.get("s4"));
+
+        assertNull(allocator.allocate("s6", 17));
+        assertNull(allocator.allocate("s6", 15));
+    }
+
+    @Test
+    public void testDeallocateMergesBuddies() {
+        ComputeNetworkCIDRAllocator allocator = new ComputeNetworkCIDRAllocator(state,
+                "192.168.0.0/29", Collections.emptyList());
+
+        assertEquals("192.168.0.0/31", allocator.allocate("s1", 31));
+        assertEquals("192.168.0.2/31", allocator.allocate("s2", 31));
+        assertNull(allocator.allocate("s3", 29));
+
+        assertEquals("192.168.0.0/31", allocator.deallocate("s1"));
+        assertNull(allocator.deallocate("s1"));
+        assertFalse(state.allocatedCIDRs.containsKey("s1"));
+        assertEquals("192.168.0.2/31", allocator.deallocate("s2"));
+
+        assertEquals("192.168.0.0/29", allocator.allocate("s3", 29));
+    }
+
+    @Test
+    public void testExistingSubnetsAreReserved() {
+        state.allocatedCIDRs.put("s1", "192.168.1.0/24");
+        ComputeNetworkCIDRAllocator allocator = new ComputeNetworkCIDRAllocator(state,
+                NETWORK_CIDR, Arrays.asList("192.168.0.0/24", "192.168.1.0/24", "10.0.0.0/8",
+                        "0.0.0.0/0"));
+
+        assertEquals("192.168.2.0/24", allocator.allocate("s2", 24));
+
+        // the subnet of the deallocated CIDR still exists
+        allocator.deallocate("s1");
+        assertEquals("192.168.3.0/24", allocator.allocate("s3", 24));
+
+        allocator.updateSubnetCIDRs(Collections.singletonList("192.168.0.0/24"));
+        assertEquals("192.168.1.0/24", allocator.allocate("s4", 24));
+
+        allocator.updateSubnetCIDRs(Collections.emptyList());
+        assertEquals("192.168.0.0/24", allocator.allocate("s5", 24));
+    }
+
+    @Test
+    public void testOverlappingCIDRIsReservedWhenFreed() {
+        state.allocatedCIDRs.put("s1", "192.168.1.0/24");
+        ComputeNetworkCIDRAllocator allocator = new ComputeNetworkCIDRAllocator(state,
+                NETWORK_CIDR, Collections.singletonList("192.168.0.0/23"));
+
+        // the allocated CIDR is still reserved after the subnet which contains it is removed
+        allocator.updateSubnetCIDRs(Collections.emptyList());
+        assertEquals("192.168.0.0/24", allocator.allocate("s2", 24));
+        assertEquals("192.168.2.0/24", allocator.allocate("s3", 24));
+
+        allocator.deallocate("s1");
+        assertEquals("192.168.1.0/24", allocator.allocate("s4", 24));
+    }
+
+    @Test
+    public void testPartiallyOverlappingSubnetIsReserved() {
+        ComputeNetworkCIDRAllocator allocator = new ComputeNetworkCIDRAllocator(state,
+                NETWORK_CIDR, Collections.emptyList());
+        assertEquals("192.168.0.0/24", allocator.allocate("s1", 24));
+
+        // the free half of the added subnet is not allocated
+        allocator.updateSubnetCIDRs(Collections.singletonList("192.168.0.0/23"));
+        assertEquals("192.168.2.0/24", allocator.allocate("s2", 24));
+
+        // the deallocated CIDR is inside the subnet
+        assertEquals("192.168.0.0/24", allocator.deallocate("s1"));
+        assertEquals("192.168.3.0/24", allocator.allocate("s3", 24));
+
+        allocator.updateSubnetCIDRs(Collections.emptyList());
+        assertEquals("192.168.0.0/24", allocator.allocate("s4", 24));
+        assertEquals("192.168.1.0/24", allocator.allocate("s5", 24));
+        assertEquals("192.168.4.0/24", allocator.allocate("s6", 24));
+    }
+
+    @Test
+    public void testReallocateReleasesPreviousCIDR() {
+        ComputeNetworkCIDRAllocator allocator = new ComputeNetworkCIDRAllocator(state,
+                NETWORK_CIDR, Collections.emptyList());
+
+        assertEquals("192.168.0.0/24", allocator.allocate("s1", 24));
+        assertEquals("192.168.1.0/24", allocator.allocate("s1", 24));
+        assertEquals(1, state.allocatedCIDRs.size());
+        assertEquals("192.168.0.0/24", allocator.allocate("s2", 24));
+    }
+
+    @Test
+    public void testIsIndexOf() {
+        ComputeNetworkCIDRAllocator allocator = new ComputeNetworkCIDRAllocator(state,
+                NETWORK_CIDR, Collections.emptyList());
+        assertTrue(allocator.isIndexOf(state, NETWORK_CIDR));
+        assertFalse(allocator.isIndexOf(state, "10.0.0.0/8"));
+
+        allocator.updated(state);
+        assertFalse(allocator.isIndexOf(state, NETWORK_CIDR));
+        state.documentVersion++;
+        assertTrue(allocator.isIndexOf(state, NETWORK_CIDR));
+
+        state.allocatedCIDRs = new HashMap<>(state.allocatedCIDRs);
+        assertFalse(allocator.isIndexOf(state, NETWORK_CIDR));
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.image.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.adapter.common.AdapterRequest;
+import com.vmware.admiral.adapter.registry.service.RegistryAdapterService;
+import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse;
+import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse.RegistrySearchStatus;
+import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse.Result;
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.host.HostInitRegistryAdapterServiceConfig;
+import com.vmware.admiral.service.common.RegistryService;
+import com.vmware.admiral.service.common.RegistryService.RegistryState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+
+public class ContainerImageServiceTest extends BaseTestCase {
+    private static final String ADAPTER_LINK = "/test-registry-adapter";
+    private static final String SEARCH_TERM = "nginx";
+
+    private URI originalRegistryAdapterReference;
+    private String fastRegistryLink;
+    private String slowRegistryLink;
+    private String failingRegistryLink;
+    private final Map<String, AtomicInteger> searches = new ConcurrentHashMap<>();
+    private final List<Operation> heldSearches = new CopyOnWriteArrayList<>();
+
+    /**
+     * Answers the searches in the fast registry, fails the ones in the failing registry and
+     * never answers the ones in the slow registry.
+     */
+    public class TestRegistryAdapterService extends StatelessService {
+        @Override
+        public void handlePatch(Operation patch) {
+            AdapterRequest request = patch.getBody(AdapterRequest.class);
+            String registryLink = request.resourceReference.getPath();
+            searches.computeIfAbsent(registryLink, (k) -> new AtomicInteger()).incrementAndGet();
+
+            if (registryLink.equals(slowRegistryLink)) {
+                heldSearches.add(patch);
+                return;
+            }
+            if (registryLink.equals(failingRegistryLink)) {
+                patch.fail(new IllegalStateException("registry unavailable"));
+                return;
+            }
+
+            RegistrySearchResponse response = new RegistrySearchResponse();
+            response.results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                Result result = new Result();
+                result.name = "library/" + SEARCH_TERM + i;
+                result.registry = "https://fast.registry.com:5000";
+                response.results.add(result);
+            }
+            response.numResults = response.results.size();
+            patch.setBody(response).complete();
+        }
+    }
+
+    @Before
+    public void setUp() throws Throwable {
+        host.startFactory(new RegistryService());
+        waitForServiceAvailability(RegistryService.FACTORY_LINK);
+        host.startServiceAndWait(new TestRegistryAdapterService(), ADAPTER_LINK, null);
+        host.startServiceAndWait(new ContainerImageService(), ContainerImageService.SELF_LINK,
+                null);
+
+        originalRegistryAdapterReference = HostInitRegistryAdapterServiceConfig
+                .registryAdapterReference;
+        HostInitRegistryAdapterServiceConfig.registryAdapterReference = UriUtils.buildUri(host,
+                ADAPTER_LINK);
+
+        fastRegistryLink = createRegistry("https://fast.registry.com:5000");
+        slowRegistryLink = createRegistry("https://slow.registry.com:5000");
+        failingRegistryLink = createRegistry("https://failing.registry.com:5000");
+    }
+
+    @After
+    public void tearDown() {
+        HostInitRegistryAdapterServiceConfig.registryAdapterReference =
+                originalRegistryAdapterReference;
+    }
+
+    @Test
+    public void testFanOutSearchCompletesAtDeadline() throws Throwable {
+        RegistrySearchResponse response = search(ContainerImageService.FANOUT_PARAM_NAME, "true",
+                ContainerImageService.DEADLINE_PARAM_NAME, "500");
+
+        assertEquals(2, response.results.size());
+        assertTrue(response.results.get(0).name.startsWith("fast.registry.com:5000/library/"));
+        assertEquals(RegistrySearchStatus.COMPLETED,
+                response.registryStatus.get(fastRegistryLink));
+        assertEquals(RegistrySearchStatus.TIMED_OUT,
+                response.registryStatus.get(slowRegistryLink));
+        assertEquals(RegistrySearchStatus.FAILED,
+                response.registryStatus.get(failingRegistryLink));
+        assertTrue(response.isPartialResult);
+    }
+
+    @Test
+    public void testFanOutSearchCompletesAtLimit() throws Throwable {
+        // the deadline is far beyond the test timeout, the limit completes the search
+        RegistrySearchResponse response = search(ContainerImageService.FANOUT_PARAM_NAME, "true",
+                ContainerImageService.DEADLINE_PARAM_NAME, "3600000",
+                RegistryAdapterService.LIMIT_PROP_NAME, "1");
+
+        assertEquals(1, response.results.size());
+        assertEquals(RegistrySearchStatus.COMPLETED,
+                response.registryStatus.get(fastRegistryLink));
+        assertEquals(RegistrySearchStatus.CANCELLED,
+                response.registryStatus.get(slowRegistryLink));
+    }
+
+    @Test
+    public void testFanOutSearchServesCachedResponses() throws Throwable {
+        search(ContainerImageService.FANOUT_PARAM_NAME, "true",
+                ContainerImageService.DEADLINE_PARAM_NAME, "500");
+        assertEquals(1, searches.get(fastRegistryLink).get());
+
+        RegistrySearchResponse response = search(ContainerImageService.FANOUT_PARAM_NAME, "true",
+                ContainerImageService.DEADLINE_PARAM_NAME, "500");
+
+        assertEquals(1, searches.get(fastRegistryLink).get());
+        assertEquals(RegistrySearchStatus.CACHED, response.registryStatus.get(fastRegistryLink));
+        assertEquals(2, response.results.size());
+        // failures are not cached
+        assertEquals(2, searches.get(failingRegistryLink).get());
+    }
+
+    @Test
+    public void testSearchWithoutFanOutHasNoRegistryStatus() throws Throwable {
+        // the search waits for every registry, so none of them is slow
+        slowRegistryLink = null;
+
+        RegistrySearchResponse response = search(ContainerImageService.FANOUT_PARAM_NAME,
+                "false");
+
+        assertEquals(4, response.results.size());
+        assertNull(response.registryStatus);
+        assertTrue(response.isPartialResult);
+    }
+
+    @Test
+    public void testFanOutSearchWithInvalidDeadline() throws Throwable {
+        assertEquals(Operation.STATUS_CODE_BAD_REQUEST,
+                searchWithFailure(ContainerImageService.DEADLINE_PARAM_NAME, "soon"));
+        assertEquals(Operation.STATUS_CODE_BAD_REQUEST,
+                searchWithFailure(ContainerImageService.DEADLINE_PARAM_NAME, "-1"));
+        assertFalse(searches.containsKey(fastRegistryLink));
+    }
+
+    private RegistrySearchResponse search(String... keyValues) throws Throwable {
+        RegistrySearchResponse response = getDocument(RegistrySearchResponse.class,
+                ContainerImageService.SELF_LINK, withSearchTerm(keyValues));
+        assertNotNull(response);
+        return response;
+    }
+
+    private int searchWithFailure(String... keyValues) throws Throwable {
+        URI uri = UriUtils.extendUriWithQuery(UriUtils.buildUri(host,
+                ContainerImageService.SELF_LINK), withSearchTerm(keyValues));
+        int[] statusCode = new int[1];
+        TestContext ctx = testCreate(1);
+        host.send(Operation.createGet(uri)
+                .setCompletion((o, e) -> {
+                    if (e == null) {
+                        ctx.failIteration(new IllegalStateException("Search should fail"));
+                        return;
+                    }
+                    statusCode[0] = o.getStatusCode();
+                    ctx.completeIteration();
+                }));
+        ctx.await();
+        return statusCode[0];
+    }
+
+    private static String[] withSearchTerm(String... keyValues) {
+        String[] result = new String[keyValues.length + 2];
+        result[0] = RegistryAdapterService.SEARCH_QUERY_PROP_NAME;
+        result[1] = SEARCH_TERM;
+        System.arraycopy(keyValues, 0, result, 2, keyValues.length);
+        return result;
+    }
+
+    private String createRegistry(String address) throws Throwable {
+        RegistryState registryState = new RegistryState();
+        registryState.address = address;
+        registryState.endpointType = RegistryState.DOCKER_REGISTRY_ENDPOINT_TYPE;
+        registryState = doPost(registryState, RegistryService.FACTORY_LINK);
+        assertNotNull("Failed to create registry", registryState);
+
+        return registryState.documentSelfLink;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ComputeBaseTest;
+import com.vmware.admiral.log.EventLogService.EventLogState;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.UriUtils;
+
+public class EventLogIngestionServiceTest extends ComputeBaseTest {
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(EventLogService.FACTORY_LINK,
+                EventLogIngestionService.SELF_LINK);
+    }
+
+    @Test
+    public void testDeduplicateEvents() throws Throwable {
+        String eventLogLink = null;
+        for (int i = 0; i < 5; i++) {
+            EventLogState accepted = ingest(createEventLog("Host [host] is not reachable."));
+            if (eventLogLink == null) {
+                eventLogLink = accepted.documentSelfLink;
+            }
+            assertEquals(eventLogLink, accepted.documentSelfLink);
+        }
+        EventLogState other = ingest(createEventLog("Host [host] has been marked [ON]."));
+        assertNotEquals(eventLogLink, other.documentSelfLink);
+
+        String link = eventLogLink;
+        waitFor(() -> {
+            EventLogState eventLog = getDocumentNoWait(EventLogState.class, link);
+            return eventLog != null && eventLog.occurrences == 5;
+        });
+        waitFor(() -> {
+            EventLogState eventLog = getDocumentNoWait(EventLogState.class,
+                    other.documentSelfLink);
+            return eventLog != null && eventLog.occurrences == 1;
+        });
+
+        // more occurrences within the window update the same event log
+        ingest(createEventLog("Host [host] is not reachable."));
+        waitFor(() -> {
+            EventLogState eventLog = getDocumentNoWait(EventLogState.class, link);
+            return eventLog.occurrences == 6;
+        });
+    }
+
+    private EventLogState ingest(EventLogState eventLog) throws Throwable {
+        URI uri = UriUtils.buildUri(host, EventLogIngestionService.SELF_LINK);
+        return doOperation(eventLog, uri, EventLogState.class, false, Action.POST);
+    }
+
+    private static EventLogState createEventLog(String description) {
+        EventLogState eventLog = new EventLogState();
+        eventLog.resourceType = "Host";
+        eventLog.eventLogType = EventLogState.EventLogType.WARNING;
+        eventLog.description = description;
+        return eventLog;
+    }
+}
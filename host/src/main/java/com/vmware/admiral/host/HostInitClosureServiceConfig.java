@@ -19,6 +19,8 @@ import java.util.logging.Level;
 import com.vmware.admiral.closures.drivers.DriverRegistry;
 import com.vmware.admiral.closures.drivers.DriverRegistryImpl;
 import com.vmware.admiral.closures.drivers.docker.ClosureDockerClientFactoryImpl;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPoolService;
 import com.vmware.admiral.closures.drivers.docker.DockerDriverBase;
 import com.vmware.admiral.closures.services.adapter.AdmiralAdapterFactoryService;
 import com.vmware.admiral.closures.services.closure.ClosureFactoryService;
@@ -35,6 +37,7 @@ import com.vmware.xenon.common.Utils;
 public class HostInitClosureServiceConfig extends HostInitServiceHelper {
 
     private static final DriverRegistry driverRegistry = new DriverRegistryImpl();
+    private static final ClosureRunnerPool runnerPool = new ClosureRunnerPool();
 
     public static void startServices(ServiceHost host, boolean startMockHostAdapterInstance) {
         List<FactoryService> factoryServices = initializeFactoryService(
@@ -43,6 +46,7 @@ public class HostInitClosureServiceConfig extends HostInitServiceHelper {
         registerExecutionDrivers(host);
 
         HostInitClosureServiceConfig.startFactoryServices(host, factoryServices);
+        startRunnerPoolService(host);
     }
 
     private static List<FactoryService> initializeFactoryService(
@@ -65,7 +69,7 @@ public class HostInitClosureServiceConfig extends HostInitServiceHelper {
         Map<String, String> runtimes = driverRegistry.getSupportedRuntimes();
         runtimes.forEach((r, image) -> driverRegistry
                 .register(r, new DockerDriverBase(host, driverRegistry, new
-                        ClosureDockerClientFactoryImpl(host)) {
+                        ClosureDockerClientFactoryImpl(host), runnerPool) {
                     @Override
                     public String getDockerImage() {
                         return image;
@@ -73,6 +77,19 @@ public class HostInitClosureServiceConfig extends HostInitServiceHelper {
                 }));
     }
 
+    private static void startRunnerPoolService(ServiceHost host) {
+        host.startService(
+                Operation.createPost(UriUtils.buildUri(host, ClosureRunnerPoolService.SELF_LINK))
+                        .setCompletion((o, ex) -> {
+                            if (ex != null) {
+                                host.log(Level.SEVERE, "Failed to start service %s: %s",
+                                        o.getUri(), Utils.toString(ex));
+                                host.stop();
+                            }
+                        }),
+                new ClosureRunnerPoolService(runnerPool, new ClosureDockerClientFactoryImpl(host)));
+    }
+
     private static void startFactoryServices(ServiceHost host,
             List<FactoryService> factoryServices) {
         for (Service factoryService : factoryServices) {
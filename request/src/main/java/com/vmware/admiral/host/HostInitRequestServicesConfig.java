@@ -28,6 +28,7 @@ import com.vmware.admiral.request.ContainerRemovalTaskFactoryService;
 import com.vmware.admiral.request.ContainerVolumeAllocationTaskService;
 import com.vmware.admiral.request.ContainerVolumeProvisionTaskService;
 import com.vmware.admiral.request.ContainerVolumeRemovalTaskService;
+import com.vmware.admiral.request.PlacementHostIndexService;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService;
 import com.vmware.admiral.request.RequestBrokerFactoryService;
 import com.vmware.admiral.request.RequestBrokerGraphService;
@@ -81,7 +82,8 @@ public class HostInitRequestServicesConfig extends HostInitServiceHelper {
                 NotificationsService.class,
                 RequestInitialBootService.class,
                 TagAssignmentService.class,
-                RequestBrokerGraphService.class);
+                RequestBrokerGraphService.class,
+                PlacementHostIndexService.class);
 
         startServiceFactories(host,
                 ProvisionContainerHostsTaskService.class,
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import static com.vmware.admiral.common.util.PropertyUtils.getPropertyLong;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.CommonContinuousQueries.ContinuousQueryId;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.ContainerHostService;
+import com.vmware.admiral.compute.ContainerHostService.ContainerHostType;
+import com.vmware.admiral.compute.ContainerHostUtil;
+import com.vmware.admiral.compute.EpzComputeEnumerationTaskService;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+/**
+ * Node local index of the placement host candidates. Keeps the powered-on computes with the
+ * properties needed for placement (host type, available memory, cluster store, plugins) and their
+ * placement zones, and the compute descriptions with their supported children. The index is
+ * loaded on start and then updated from continuous queries, so the host selection can read the
+ * candidates with a single local POST instead of querying the index on every request.
+ */
+public class PlacementHostIndexService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.REQUEST_PLACEMENT_HOST_INDEX;
+
+    public static final String STAT_NAME_INDEXED_HOSTS = "indexedHostsCount";
+    public static final String STAT_NAME_CANDIDATE_LOOKUPS = "candidateLookupsCount";
+
+    /**
+     * Request for the host candidates supporting the given resource type in the given placement
+     * zones.
+     */
+    public static class HostCandidatesRequest {
+        public String resourceType;
+        public String zoneId;
+        public Collection<String> resourcePoolLinks;
+    }
+
+    /**
+     * Host candidates by host link. When the index is not loaded yet <code>ready</code> is false
+     * and the caller should query the candidates itself.
+     */
+    public static class HostCandidatesResponse {
+        public boolean ready;
+        public Map<String, HostSelection> hostSelectionMap;
+    }
+
+    private static class IndexedDescription {
+        List<String> supportedChildren;
+        String zoneId;
+        long updateTimeMicros;
+    }
+
+    private static class IndexedHost {
+        String descriptionLink;
+        Set<String> resourcePoolLinks;
+        String deploymentPolicyLink;
+        Long availableMemory;
+        String clusterStore;
+        String plugins;
+        String name;
+        ContainerHostType hostType;
+        long updateTimeMicros;
+    }
+
+    private final Map<String, IndexedHost> hosts = new ConcurrentHashMap<>();
+    private final Map<String, IndexedDescription> descriptions = new ConcurrentHashMap<>();
+
+    /** Links deleted while the index is loading, so that the load doesn't add them back. */
+    private final Set<String> deletedWhileLoading = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean hostsLoaded;
+    private volatile boolean descriptionsLoaded;
+
+    public PlacementHostIndexService() {
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+    }
+
+    @Override
+    public void handleStart(Operation startPost) {
+        startPost.complete();
+
+        // subscribe before loading so no update in between is missed
+        CommonContinuousQueries.subscribeTo(getHost(),
+                ContinuousQueryId.LOCAL_COMPUTE_DESCRIPTIONS, this::onDescriptionsChange);
+        CommonContinuousQueries.subscribeTo(getHost(), ContinuousQueryId.LOCAL_COMPUTES,
+                this::onComputesChange);
+
+        loadDescriptions();
+        loadHosts();
+    }
+
+    @Override
+    public void handlePost(Operation post) {
+        if (!post.hasBody()) {
+            post.fail(new IllegalArgumentException("body is required"));
+            return;
+        }
+
+        HostCandidatesRequest request = post.getBody(HostCandidatesRequest.class);
+        HostCandidatesResponse response = new HostCandidatesResponse();
+        response.ready = hostsLoaded && descriptionsLoaded;
+        if (response.ready) {
+            response.hostSelectionMap = getCandidates(request);
+        }
+        adjustStat(STAT_NAME_CANDIDATE_LOOKUPS, 1);
+        post.setBodyNoCloning(response).complete();
+    }
+
+    private Map<String, HostSelection> getCandidates(HostCandidatesRequest request) {
+        Set<String> descriptionLinks = new HashSet<>();
+        descriptions.forEach((link, desc) -> {
+            if (desc.supportedChildren != null
+                    && desc.supportedChildren.contains(request.resourceType)
+                    && (request.zoneId == null || request.zoneId.isEmpty()
+                            || request.zoneId.equals(desc.zoneId))) {
+                descriptionLinks.add(link);
+            }
+        });
+
+        Map<String, HostSelection> hostSelectionMap = new LinkedHashMap<>();
+        if (descriptionLinks.isEmpty() || request.resourcePoolLinks == null) {
+            return hostSelectionMap;
+        }
+
+        hosts.forEach((link, host) -> {
+            if (!descriptionLinks.contains(host.descriptionLink)) {
+                return;
+            }
+            Set<String> resourcePoolLinks = new HashSet<>(host.resourcePoolLinks);
+            resourcePoolLinks.retainAll(request.resourcePoolLinks);
+            if (resourcePoolLinks.isEmpty()) {
+                return;
+            }
+
+            HostSelection hostSelection = new HostSelection();
+            hostSelection.hostLink = link;
+            hostSelection.resourcePoolLinks = resourcePoolLinks;
+            hostSelection.deploymentPolicyLink = host.deploymentPolicyLink;
+            hostSelection.availableMemory = host.availableMemory;
+            hostSelection.clusterStore = host.clusterStore;
+            hostSelection.plugins = host.plugins;
+            hostSelection.name = host.name;
+            hostSelection.hostType = host.hostType;
+            hostSelectionMap.put(link, hostSelection);
+        });
+        return hostSelectionMap;
+    }
+
+    private void loadDescriptions() {
+        QueryTask q = QueryUtil.buildQuery(ComputeDescription.class, false);
+        QueryUtil.addExpandOption(q);
+        new ServiceDocumentQuery<>(getHost(), ComputeDescription.class).query(q, (r) -> {
+            if (r.hasException()) {
+                logSevere("Failed to load compute descriptions: %s",
+                        Utils.toString(r.getException()));
+            } else if (r.hasResult()) {
+                updateDescription(r.getResult(), true);
+            } else {
+                descriptionsLoaded = true;
+                onLoaded();
+            }
+        });
+    }
+
+    private void loadHosts() {
+        QueryTask q = QueryUtil.buildPropertyQuery(ComputeState.class,
+                ComputeState.FIELD_NAME_POWER_STATE, PowerState.ON.toString());
+        QueryUtil.addExpandOption(q);
+        new ServiceDocumentQuery<>(getHost(), ComputeState.class).query(q, (r) -> {
+            if (r.hasException()) {
+                logSevere("Failed to load placement hosts: %s", Utils.toString(r.getException()));
+            } else if (r.hasResult()) {
+                updateHost(r.getResult(), true);
+            } else {
+                hostsLoaded = true;
+                onLoaded();
+            }
+        });
+    }
+
+    private void onLoaded() {
+        if (hostsLoaded && descriptionsLoaded) {
+            deletedWhileLoading.clear();
+            setStat(STAT_NAME_INDEXED_HOSTS, hosts.size());
+            logInfo("Loaded %d placement hosts", hosts.size());
+        }
+    }
+
+    private void onDescriptionsChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        for (Object document : queryTask.results.documents.values()) {
+            ComputeDescription description = Utils.fromJson(document, ComputeDescription.class);
+            if (Action.DELETE.toString().equals(description.documentUpdateAction)) {
+                remove(descriptions, description.documentSelfLink);
+            } else {
+                updateDescription(description, false);
+            }
+        }
+    }
+
+    private void onComputesChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        for (Object document : queryTask.results.documents.values()) {
+            ComputeState compute = Utils.fromJson(document, ComputeState.class);
+            if (Action.DELETE.toString().equals(compute.documentUpdateAction)
+                    || compute.powerState != PowerState.ON) {
+                remove(hosts, compute.documentSelfLink);
+            } else {
+                updateHost(compute, false);
+            }
+        }
+        setStat(STAT_NAME_INDEXED_HOSTS, hosts.size());
+    }
+
+    private void remove(Map<String, ?> index, String link) {
+        if (!hostsLoaded || !descriptionsLoaded) {
+            deletedWhileLoading.add(link);
+        }
+        index.remove(link);
+    }
+
+    private void updateDescription(ComputeDescription description, boolean fromLoad) {
+        if (fromLoad && deletedWhileLoading.contains(description.documentSelfLink)) {
+            return;
+        }
+        IndexedDescription indexed = new IndexedDescription();
+        indexed.supportedChildren = description.supportedChildren;
+        indexed.zoneId = description.zoneId;
+        indexed.updateTimeMicros = description.documentUpdateTimeMicros;
+        // keep the latest version in case the load and the notifications race
+        descriptions.merge(description.documentSelfLink, indexed,
+                (current, update) -> update.updateTimeMicros >= current.updateTimeMicros
+                        ? update : current);
+    }
+
+    private void updateHost(ComputeState compute, boolean fromLoad) {
+        if (fromLoad && deletedWhileLoading.contains(compute.documentSelfLink)) {
+            return;
+        }
+        IndexedHost indexed = new IndexedHost();
+        indexed.descriptionLink = compute.descriptionLink;
+        indexed.resourcePoolLinks = getResourcePoolLinks(compute);
+        indexed.name = compute.name != null ? compute.name : "N/A";
+        indexed.hostType = ContainerHostUtil.getDeclaredContainerHostType(compute);
+        indexed.updateTimeMicros = compute.documentUpdateTimeMicros;
+        if (compute.customProperties != null) {
+            indexed.deploymentPolicyLink = compute.customProperties
+                    .get(ContainerHostService.CUSTOM_PROPERTY_DEPLOYMENT_POLICY);
+            indexed.availableMemory = getPropertyLong(compute.customProperties,
+                    ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME)
+                            .orElse(Long.MAX_VALUE);
+            indexed.clusterStore = compute.customProperties
+                    .get(ContainerHostService.DOCKER_HOST_CLUSTER_STORE_PROP_NAME);
+            indexed.plugins = compute.customProperties
+                    .get(ContainerHostService.DOCKER_HOST_PLUGINS_PROP_NAME);
+        } else {
+            indexed.availableMemory = Long.MAX_VALUE;
+        }
+        hosts.merge(compute.documentSelfLink, indexed,
+                (current, update) -> update.updateTimeMicros >= current.updateTimeMicros
+                        ? update : current);
+    }
+
+    /**
+     * Returns the placement zones of the compute: the one it is assigned to and the elastic ones
+     * it is enumerated in by {@link EpzComputeEnumerationTaskService}.
+     */
+    private static Set<String> getResourcePoolLinks(ComputeState compute) {
+        Set<String> resourcePoolLinks = new HashSet<>();
+        if (compute.resourcePoolLink != null) {
+            resourcePoolLinks.add(compute.resourcePoolLink);
+        }
+        if (compute.customProperties != null) {
+            compute.customProperties.forEach((key, value) -> {
+                if (key.startsWith(EpzComputeEnumerationTaskService.EPZ_CUSTOM_PROP_NAME_PREFIX)
+                        && EpzComputeEnumerationTaskService.EPZ_CUSTOM_PROP_VALUE.equals(value)) {
+                    resourcePoolLinks.add(UriUtils.buildUriPath(ResourcePoolService.FACTORY_LINK,
+                            key.substring(EpzComputeEnumerationTaskService
+                                    .EPZ_CUSTOM_PROP_NAME_PREFIX.length())));
+                }
+            });
+        }
+        return resourcePoolLinks;
+    }
+}
@@ -44,11 +44,14 @@ import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry.ComponentMeta;
 import com.vmware.admiral.compute.container.CompositeDescriptionFactoryService;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.admiral.request.PlacementHostIndexService.HostCandidatesRequest;
+import com.vmware.admiral.request.PlacementHostIndexService.HostCandidatesResponse;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState.SubStage;
 import com.vmware.admiral.request.allocation.filter.AffinityFilters;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelectionFilterException;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilterPipeline;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
@@ -73,6 +76,8 @@ public class PlacementHostSelectionTaskService
     public static final String DISPLAY_NAME = "Host Selection";
     private static final int QUERY_RETRY_COUNT = Integer.getInteger(
             "com.vmware.admiral.service.placement.query.retries", 2);
+    private static final boolean USE_HOST_INDEX = Boolean.parseBoolean(System.getProperty(
+            "com.vmware.admiral.service.placement.host.index.enabled", "true"));
 
     // cached component description
     private volatile ReservationComponentDescription description;
@@ -133,7 +138,11 @@ public class PlacementHostSelectionTaskService
     protected void handleStartedStagePatch(PlacementHostSelectionTaskState state) {
         switch (state.taskSubStage) {
         case CREATED:
-            selectBasedOnDescAndResourcePool(state, description, QUERY_RETRY_COUNT);
+            if (USE_HOST_INDEX) {
+                selectFromHostIndex(state, description);
+            } else {
+                selectBasedOnDescAndResourcePool(state, description, QUERY_RETRY_COUNT);
+            }
             break;
         case FILTER:
             selection(state, null);
@@ -171,6 +180,44 @@ public class PlacementHostSelectionTaskService
         Map<String, HostSelection> hostSelectionMap;
     }
 
+    /**
+     * Reads the host candidates from the {@link PlacementHostIndexService}. Falls back to querying
+     * them when the index is not available or not loaded yet, or has no candidates (the index may
+     * be behind and the query path reports the errors and retries).
+     */
+    private void selectFromHostIndex(PlacementHostSelectionTaskState state,
+            ReservationComponentDescription desc) {
+        if (desc == null) {
+            getDescription(state, (contDesc) -> this.selectFromHostIndex(state, contDesc));
+            return;
+        }
+
+        HostCandidatesRequest request = new HostCandidatesRequest();
+        request.resourceType = state.resourceType;
+        request.zoneId = desc.getCommonDescription().zoneId;
+        request.resourcePoolLinks = state.resourcePoolLinks;
+
+        sendRequest(Operation.createPost(this, PlacementHostIndexService.SELF_LINK)
+                .setBodyNoCloning(request)
+                .setCompletion((o, e) -> {
+                    HostCandidatesResponse response = e == null
+                            ? o.getBody(HostCandidatesResponse.class) : null;
+                    if (response == null || !response.ready
+                            || response.hostSelectionMap == null
+                            || response.hostSelectionMap.isEmpty()) {
+                        if (e != null) {
+                            logFine("Placement host index not available: %s", e.getMessage());
+                        }
+                        selectBasedOnDescAndResourcePool(state, desc, QUERY_RETRY_COUNT);
+                        return;
+                    }
+
+                    proceedTo(SubStage.FILTER, s -> {
+                        s.hostSelectionMap = response.hostSelectionMap;
+                    });
+                }));
+    }
+
     private void selectBasedOnDescAndResourcePool(PlacementHostSelectionTaskState state,
             ReservationComponentDescription desc, int retries) {
         if (desc == null) {
@@ -374,20 +421,12 @@ public class PlacementHostSelectionTaskService
 
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings("rawtypes")
     private void filter(final PlacementHostSelectionTaskState state,
             final Map<String, HostSelection> hostSelectionMap,
             final Queue<HostSelectionFilter> filters) {
-        if (isNoSelection(hostSelectionMap)) {
-            failTask(null, new LocalizableValidationException("Compute state not found",
-                    "request.placement.compute.missing"));
-            return;
-        } else {
-            final HostSelectionFilter filter = filters.poll();
-            if (filter == null) {
-                complete(state, hostSelectionMap);
-            } else {
-                filter.filter(state, hostSelectionMap, (filteredHostSelectionMap, e) -> {
+        new HostSelectionFilterPipeline(getHost(), state, filters).run(hostSelectionMap,
+                (filteredHostSelectionMap, e) -> {
                     if (e != null) {
                         if (e instanceof HostSelectionFilterException) {
                             failTask("Allocation Filter Error: " + e.getMessage(), null);
@@ -396,10 +435,13 @@ public class PlacementHostSelectionTaskService
                         }
                         return;
                     }
-                    filter(state, filteredHostSelectionMap, filters);
+                    if (isNoSelection(filteredHostSelectionMap)) {
+                        failTask(null, new LocalizableValidationException(
+                                "Compute state not found", "request.placement.compute.missing"));
+                        return;
+                    }
+                    complete(state, filteredHostSelectionMap);
                 });
-            }
-        }
     }
 
     private void complete(final PlacementHostSelectionTaskState state,
@@ -15,6 +15,7 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexin
 import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption.REQUIRED;
 import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption.SINGLE_ASSIGNMENT;
 
+import com.vmware.admiral.compute.container.GroupResourcePlacementEscrowService;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
@@ -97,8 +98,9 @@ public class ReservationRemovalTaskService
                 reservationRequest.resourceCount, reservationRequest.resourceDescriptionLink,
                 Service.getId(groupPlacementState.documentSelfLink));
 
-        sendRequest(Operation.createPatch(this, groupPlacementState.documentSelfLink)
-                .setBody(reservationRequest)
+        sendRequest(GroupResourcePlacementEscrowService
+                .createReservationPatch(this, groupPlacementState.documentSelfLink,
+                        reservationRequest)
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         failTask("Failure releasing group placement", e);
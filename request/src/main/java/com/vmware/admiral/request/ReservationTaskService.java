@@ -39,6 +39,7 @@ import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry.ComponentMeta;
 import com.vmware.admiral.compute.container.CompositeDescriptionFactoryService;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.admiral.compute.container.GroupResourcePlacementEscrowService;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
@@ -498,9 +499,8 @@ public class ReservationTaskService
                 reservationRequest.resourceCount, reservationRequest.resourceDescriptionLink,
                 Service.getId(placementLink));
 
-        sendRequest(Operation
-                .createPatch(this, placementLink)
-                .setBody(reservationRequest)
+        sendRequest(GroupResourcePlacementEscrowService
+                .createReservationPatch(this, placementLink, reservationRequest)
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         logWarning("Failure reserving group placement: %s. Retrying with the next"
@@ -13,11 +13,14 @@ package com.vmware.admiral.request.allocation.filter;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryElementResult;
 import com.vmware.admiral.compute.container.CompositeComponentFactoryService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
@@ -32,6 +35,11 @@ public abstract class BaseAffinityHostFilter
     protected final String affinityPropertyName;
     protected Collection<String> affinityNames;
 
+    /** Results of the description query, prefetched by {@link HostSelectionFilterPipeline}. */
+    private List<ServiceDocumentQueryElementResult<ContainerDescription>> prefetchedDescriptions;
+    /** Containers of the placement context, prefetched by {@link HostSelectionFilterPipeline}. */
+    private List<ContainerState> prefetchedContainers;
+
     protected BaseAffinityHostFilter(ServiceHost host, String affinityPropertyName) {
         this.host = host;
         this.affinityPropertyName = affinityPropertyName;
@@ -54,6 +62,31 @@ public abstract class BaseAffinityHostFilter
         findContainerDescriptions(state, hostSelectionMap, callback, getDescQuery());
     }
 
+    /**
+     * Whether the filter will query the container descriptions from {@link #getDescQuery()} for
+     * the given placement, so the query can be prefetched.
+     */
+    protected boolean usesDescQuery(PlacementHostSelectionTaskState state) {
+        return isActive();
+    }
+
+    /**
+     * Whether the filter reads the containers of the placement context in
+     * {@link #findContainers}, so they can be prefetched.
+     */
+    protected boolean usesContextContainers() {
+        return true;
+    }
+
+    void setPrefetchedDescriptions(
+            List<ServiceDocumentQueryElementResult<ContainerDescription>> descriptions) {
+        this.prefetchedDescriptions = descriptions;
+    }
+
+    void setPrefetchedContainers(List<ContainerState> containers) {
+        this.prefetchedContainers = containers;
+    }
+
     public Collection<String> getAffinity() {
         if (affinityNames == null) {
             affinityNames = getAffinityConstraints().keySet();
@@ -72,10 +105,8 @@ public abstract class BaseAffinityHostFilter
             final Map<String, HostSelection> filteredHostSelectionMap,
             final HostSelectionFilterCompletion callback, final QueryTask descQuery) {
 
-        descQuery.taskInfo.isDirect = false;
         final Map<String, DescName> containerDescLinksWithNames = new HashMap<>();
-        new ServiceDocumentQuery<>(host, ContainerDescription.class)
-                .query(descQuery,
+        queryDescriptions(descQuery,
                         (r) -> {
                             if (r.hasException()) {
                                 host.log(
@@ -115,16 +146,90 @@ public abstract class BaseAffinityHostFilter
                         });
     }
 
-    protected void findContainers(final PlacementHostSelectionTaskState state,
-            final Map<String, HostSelection> initHostSelectionMap,
-            final Map<String, DescName> containerDescLinksWithNames,
-            final HostSelectionFilterCompletion callback) {
+    /**
+     * Prepares the description query of the filter for execution.
+     */
+    static QueryTask prepareDescQuery(QueryTask descQuery) {
+        descQuery.taskInfo.isDirect = false;
+        QueryUtil.addSelectFieldsOption(descQuery, ContainerDescription.FIELD_NAME_NAME,
+                ContainerDescription.FIELD_NAME_AFFINITY);
+        return descQuery;
+    }
+
+    /**
+     * Builds the query for the containers of the placement context with the fields used by the
+     * filters.
+     */
+    static QueryTask buildContextContainersQuery(PlacementHostSelectionTaskState state) {
         QueryTask q = QueryUtil.buildPropertyQuery(ContainerState.class,
                 ContainerState.FIELD_NAME_COMPOSITE_COMPONENT_LINK, UriUtils.buildUriPath(
                         CompositeComponentFactoryService.SELF_LINK, state.contextId));
         q.taskInfo.isDirect = false;
         q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
-        QueryUtil.addExpandOption(q);
+        QueryUtil.addSelectFieldsOption(q, ContainerState.FIELD_NAME_PARENT_LINK,
+                ContainerState.FIELD_NAME_DESCRIPTION_LINK, ContainerState.FIELD_NAME_NAMES);
+        return q;
+    }
+
+    private void queryDescriptions(QueryTask descQuery,
+            Consumer<ServiceDocumentQueryElementResult<ContainerDescription>> handler) {
+        if (prefetchedDescriptions != null) {
+            prefetchedDescriptions.forEach(handler);
+            handler.accept(ServiceDocumentQuery.noResult());
+            return;
+        }
+        new ServiceDocumentQuery<>(host, ContainerDescription.class)
+                .query(prepareDescQuery(descQuery), handler);
+    }
+
+    protected void findContainers(final PlacementHostSelectionTaskState state,
+            final Map<String, HostSelection> initHostSelectionMap,
+            final Map<String, DescName> containerDescLinksWithNames,
+            final HostSelectionFilterCompletion callback) {
+        final Map<String, HostSelection> filteredHostSelectionMap = new HashMap<>();
+        final Consumer<ServiceDocumentQueryElementResult<ContainerState>> handler = (r) -> {
+            if (r.hasException()) {
+                host.log(
+                        Level.WARNING,
+                        "Exception while selecting containers with contextId [%s]. Error: [%s]",
+                        state.contextId, r.getException().getMessage());
+                callback.complete(null, r.getException());
+            } else if (r.hasResult()) {
+                final HostSelection hostSelection = initHostSelectionMap
+                        .get(r.getResult().parentLink);
+                filteredHostSelectionMap.put(r.getResult().parentLink,
+                        hostSelection);
+                final DescName descName = containerDescLinksWithNames
+                        .get(r.getResult().descriptionLink);
+                DescName newDescName = new DescName(descName);
+                newDescName.addResourceNames(r.getResult().names);
+                hostSelection.addDesc(newDescName);
+            } else {
+                try {
+                    final Map<String, HostSelection> hostSelectionMap =
+                            applyAffinityConstraints(state,
+                                    initHostSelectionMap, filteredHostSelectionMap);
+                    host.log(Level.INFO, "Selected host links for %s: %s - %s",
+                            affinityPropertyName, getAffinity(),
+                            hostSelectionMap.keySet());
+                    callback.complete(hostSelectionMap, null);
+                } catch (Throwable e) {
+                    callback.complete(null, e);
+                }
+            }
+        };
+
+        if (prefetchedContainers != null) {
+            // the same clauses as the query below, applied in memory
+            prefetchedContainers.stream()
+                    .filter(c -> containerDescLinksWithNames.containsKey(c.descriptionLink)
+                            && initHostSelectionMap.containsKey(c.parentLink))
+                    .forEach(c -> handler.accept(ServiceDocumentQuery.result(c, 1)));
+            handler.accept(ServiceDocumentQuery.noResult());
+            return;
+        }
+
+        QueryTask q = buildContextContainersQuery(state);
 
         // Add componentDescriptions clause:
         QueryUtil.addListValueClause(q,
@@ -134,40 +239,7 @@ public abstract class BaseAffinityHostFilter
         QueryUtil.addListValueClause(q,
                 ContainerState.FIELD_NAME_PARENT_LINK, initHostSelectionMap.keySet());
 
-        final Map<String, HostSelection> filteredHostSelectionMap = new HashMap<>();
-        new ServiceDocumentQuery<ContainerState>(host, ContainerState.class)
-                .query(q,
-                        (r) -> {
-                            if (r.hasException()) {
-                                host.log(
-                                        Level.WARNING,
-                                        "Exception while selecting containers with contextId [%s]. Error: [%s]",
-                                        state.contextId, r.getException().getMessage());
-                                callback.complete(null, r.getException());
-                            } else if (r.hasResult()) {
-                                final HostSelection hostSelection = initHostSelectionMap
-                                        .get(r.getResult().parentLink);
-                                filteredHostSelectionMap.put(r.getResult().parentLink,
-                                        hostSelection);
-                                final DescName descName = containerDescLinksWithNames
-                                        .get(r.getResult().descriptionLink);
-                                DescName newDescName = new DescName(descName);
-                                newDescName.addResourceNames(r.getResult().names);
-                                hostSelection.addDesc(newDescName);
-                            } else {
-                                try {
-                                    final Map<String, HostSelection> hostSelectionMap =
-                                            applyAffinityConstraints(state,
-                                                    initHostSelectionMap, filteredHostSelectionMap);
-                                    host.log(Level.INFO, "Selected host links for %s: %s - %s",
-                                            affinityPropertyName, getAffinity(),
-                                            hostSelectionMap.keySet());
-                                    callback.complete(hostSelectionMap, null);
-                                } catch (Throwable e) {
-                                    callback.complete(null, e);
-                                }
-                            }
-                        });
+        new ServiceDocumentQuery<ContainerState>(host, ContainerState.class).query(q, handler);
     }
 
     protected Map<String, HostSelection> applyAffinityConstraints(
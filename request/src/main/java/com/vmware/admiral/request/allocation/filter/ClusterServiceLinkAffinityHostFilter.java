@@ -58,6 +58,16 @@ public class ClusterServiceLinkAffinityHostFilter extends BaseAffinityHostFilter
         findCompositeDescriptions(state, hostSelectionMap, callback);
     }
 
+    @Override
+    protected boolean usesDescQuery(PlacementHostSelectionTaskState state) {
+        return false;
+    }
+
+    @Override
+    protected boolean usesContextContainers() {
+        return false;
+    }
+
     @Override
     public boolean isActive() {
         return true;
@@ -81,7 +91,7 @@ public class ClusterServiceLinkAffinityHostFilter extends BaseAffinityHostFilter
                 .setTermMatchValue(contextLink);
         q.querySpec.query.addBooleanClause(contextClause);
 
-        QueryUtil.addExpandOption(q);
+        QueryUtil.addSelectFieldsOption(q, ContainerState.FIELD_NAME_DESCRIPTION_LINK);
 
         List<String> descriptionLinks = new ArrayList<>();
         new ServiceDocumentQuery<ContainerState>(host, ContainerState.class).query(q,
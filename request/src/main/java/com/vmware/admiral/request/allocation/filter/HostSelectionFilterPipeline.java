@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.allocation.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.common.util.ServiceDocumentQuery.ServiceDocumentQueryElementResult;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelectionFilterCompletion;
+import com.vmware.xenon.common.ServiceHost;
+
+/**
+ * Applies the host selection filters of a placement. Before the filters run, the data the active
+ * {@link BaseAffinityHostFilter}s need is queried in a single concurrent round: the description
+ * query of every filter and the containers of the placement context, which are shared by all of
+ * them. The filters then apply their constraints in memory over the prefetched data, so the
+ * placement doesn't wait for two sequential queries per active affinity filter. A filter whose
+ * prefetch failed queries its data itself.
+ */
+public class HostSelectionFilterPipeline {
+    private final ServiceHost host;
+    private final PlacementHostSelectionTaskState state;
+
+    @SuppressWarnings("rawtypes")
+    private final Queue<HostSelectionFilter> filters;
+
+    @SuppressWarnings("rawtypes")
+    public HostSelectionFilterPipeline(ServiceHost host, PlacementHostSelectionTaskState state,
+            Queue<HostSelectionFilter> filters) {
+        this.host = host;
+        this.state = state;
+        this.filters = filters;
+    }
+
+    /**
+     * Prefetches the data of the filters and applies them one after another to the given hosts.
+     * The callback is completed with the hosts left after the last filter, or with the first
+     * failure.
+     */
+    public void run(Map<String, HostSelection> hostSelectionMap,
+            HostSelectionFilterCompletion callback) {
+        prefetch(() -> filter(hostSelectionMap, callback));
+    }
+
+    private void prefetch(Runnable onPrefetched) {
+        List<BaseAffinityHostFilter> descFilters = new ArrayList<>();
+        boolean prefetchContainers = false;
+        for (HostSelectionFilter<?> filter : filters) {
+            if (filter instanceof BaseAffinityHostFilter) {
+                BaseAffinityHostFilter affinityFilter = (BaseAffinityHostFilter) filter;
+                if (affinityFilter.usesDescQuery(state)) {
+                    descFilters.add(affinityFilter);
+                    prefetchContainers |= affinityFilter.usesContextContainers();
+                }
+            }
+        }
+
+        if (descFilters.isEmpty()) {
+            onPrefetched.run();
+            return;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(
+                descFilters.size() + (prefetchContainers ? 1 : 0));
+        Runnable countDown = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                onPrefetched.run();
+            }
+        };
+
+        for (BaseAffinityHostFilter filter : descFilters) {
+            prefetchDescriptions(filter, countDown);
+        }
+
+        if (prefetchContainers) {
+            prefetchContainers(descFilters, countDown);
+        }
+    }
+
+    private void prefetchDescriptions(BaseAffinityHostFilter filter, Runnable onDone) {
+        List<ServiceDocumentQueryElementResult<ContainerDescription>> results = new ArrayList<>();
+        new ServiceDocumentQuery<>(host, ContainerDescription.class).query(
+                BaseAffinityHostFilter.prepareDescQuery(filter.getDescQuery()), (r) -> {
+                    if (r.hasException()) {
+                        host.log(Level.WARNING, "Failed to prefetch container descriptions for"
+                                + " %s: %s", filter.getClass().getSimpleName(),
+                                r.getException().getMessage());
+                        onDone.run();
+                    } else if (r.hasResult()) {
+                        results.add(r);
+                    } else {
+                        filter.setPrefetchedDescriptions(results);
+                        onDone.run();
+                    }
+                });
+    }
+
+    private void prefetchContainers(List<BaseAffinityHostFilter> descFilters, Runnable onDone) {
+        List<ContainerState> containers = new ArrayList<>();
+        new ServiceDocumentQuery<>(host, ContainerState.class).query(
+                BaseAffinityHostFilter.buildContextContainersQuery(state), (r) -> {
+                    if (r.hasException()) {
+                        host.log(Level.WARNING, "Failed to prefetch containers for context %s: %s",
+                                state.contextId, r.getException().getMessage());
+                        onDone.run();
+                    } else if (r.hasResult()) {
+                        containers.add(r.getResult());
+                    } else {
+                        List<ContainerState> shared = Collections.unmodifiableList(containers);
+                        descFilters.forEach(f -> f.setPrefetchedContainers(shared));
+                        onDone.run();
+                    }
+                });
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void filter(Map<String, HostSelection> hostSelectionMap,
+            HostSelectionFilterCompletion callback) {
+        if (hostSelectionMap == null || hostSelectionMap.isEmpty()) {
+            callback.complete(hostSelectionMap, null);
+            return;
+        }
+
+        final HostSelectionFilter filter = filters.poll();
+        if (filter == null) {
+            callback.complete(hostSelectionMap, null);
+            return;
+        }
+
+        filter.filter(state, hostSelectionMap, (filteredHostSelectionMap, e) -> {
+            if (e != null) {
+                callback.complete(null, e);
+                return;
+            }
+            filter(filteredHostSelectionMap, callback);
+        });
+    }
+}
@@ -67,6 +67,12 @@ public class ServiceAffinityHostFilter extends BaseAffinityHostFilter {
         findContainerDescriptions(state, hostSelectionMap, callback, getDescQuery());
     }
 
+    @Override
+    protected boolean usesDescQuery(PlacementHostSelectionTaskState state) {
+        return isActive()
+                || state.getCustomProperty(RequestUtils.CLUSTERING_OPERATION_CUSTOM_PROP) != null;
+    }
+
     @Override
     protected QueryTask getDescQuery() {
         //Get all container descriptions whose names are in the affinity constraints of this one
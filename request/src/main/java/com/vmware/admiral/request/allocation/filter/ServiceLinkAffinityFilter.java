@@ -43,6 +43,11 @@ public class ServiceLinkAffinityFilter extends BaseAffinityHostFilter {
         this.networks = desc.networks;
     }
 
+    @Override
+    protected boolean usesContextContainers() {
+        return false;
+    }
+
     @Override
     public boolean isActive() {
         return serviceLinks != null && serviceLinks.length > 0;
@@ -69,7 +74,8 @@ public class ServiceLinkAffinityFilter extends BaseAffinityHostFilter {
                         CompositeComponentFactoryService.SELF_LINK, state.contextId));
         q.taskInfo.isDirect = false;
         q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
-        QueryUtil.addExpandOption(q);
+        QueryUtil.addSelectFieldsOption(q, ContainerState.FIELD_NAME_PARENT_LINK,
+                ContainerState.FIELD_NAME_DESCRIPTION_LINK, ContainerState.FIELD_NAME_NAMES);
 
         // Add componentDescriptions clause:
         QueryUtil.addListValueClause(q,
@@ -65,6 +65,13 @@ public class VolumesFromAffinityHostFilter extends BaseAffinityHostFilter {
         return hasOutgoingAffinities();
     }
 
+    @Override
+    protected boolean usesDescQuery(
+            PlacementHostSelectionTaskService.PlacementHostSelectionTaskState state) {
+        return isActive()
+                || state.getCustomProperty(RequestUtils.CLUSTERING_OPERATION_CUSTOM_PROP) != null;
+    }
+
     @Override
     protected QueryTask getDescQuery() {
         //Get all container descriptions whose names are in the volumes from of this one
@@ -50,6 +50,7 @@ import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.ComputeConstants;
 import com.vmware.admiral.compute.ResourceType;
 import com.vmware.admiral.compute.VsphereConstants;
+import com.vmware.admiral.compute.container.GroupResourcePlacementEscrowService;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
@@ -700,9 +701,8 @@ public class ComputeReservationTaskService extends
                 reservationRequest.resourceCount, reservationRequest.resourceDescriptionLink,
                 Service.getId(placementLink));
 
-        sendRequest(Operation
-                .createPatch(this, placementLink)
-                .setBody(reservationRequest)
+        sendRequest(GroupResourcePlacementEscrowService
+                .createReservationPatch(this, placementLink, reservationRequest)
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         logWarning("Failure reserving group placement: %s. Retrying with the next"
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.vmware.admiral.compute.ResourceType;
+import com.vmware.admiral.request.PlacementHostIndexService.HostCandidatesRequest;
+import com.vmware.admiral.request.PlacementHostIndexService.HostCandidatesResponse;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+
+public class PlacementHostIndexServiceTest extends RequestBaseTest {
+
+    @Test
+    public void testHostCandidates() throws Throwable {
+        host.waitForServiceAvailable(PlacementHostIndexService.SELF_LINK);
+
+        waitFor(() -> getCandidates(ResourceType.CONTAINER_TYPE.getName())
+                .containsKey(computeHost.documentSelfLink));
+
+        HostSelection hostSelection = getCandidates(ResourceType.CONTAINER_TYPE.getName())
+                .get(computeHost.documentSelfLink);
+        assertNotNull(hostSelection.hostType);
+        assertEquals(Collections.singleton(resourcePool.documentSelfLink),
+                hostSelection.resourcePoolLinks);
+
+        // hosts not supporting the resource type are not candidates
+        assertTrue(getCandidates("unknown-type").isEmpty());
+
+        // powered-off hosts are removed from the index
+        ComputeState patch = new ComputeState();
+        patch.powerState = PowerState.OFF;
+        doPatch(patch, computeHost.documentSelfLink);
+
+        waitFor(() -> !getCandidates(ResourceType.CONTAINER_TYPE.getName())
+                .containsKey(computeHost.documentSelfLink));
+    }
+
+    private Map<String, HostSelection> getCandidates(String resourceType) {
+        HostCandidatesRequest request = new HostCandidatesRequest();
+        request.resourceType = resourceType;
+        request.resourcePoolLinks = Collections.singletonList(resourcePool.documentSelfLink);
+
+        HostCandidatesResponse response = host.getTestRequestSender().sendAndWait(Operation
+                .createPost(UriUtils.buildUri(host, PlacementHostIndexService.SELF_LINK))
+                .setBody(request), HostCandidatesResponse.class);
+        return response.ready ? response.hostSelectionMap : Collections.emptyMap();
+    }
+}
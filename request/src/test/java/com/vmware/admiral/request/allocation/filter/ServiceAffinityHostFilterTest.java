@@ -21,8 +21,14 @@ import static com.vmware.admiral.request.allocation.filter.AffinityConstraint.Af
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -30,6 +36,7 @@ import com.vmware.admiral.compute.container.CompositeComponentFactoryService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
 import com.vmware.admiral.request.util.TestRequestStateFactory;
 import com.vmware.admiral.request.utils.RequestUtils;
 import com.vmware.xenon.common.UriUtils;
@@ -212,6 +219,40 @@ public class ServiceAffinityHostFilterTest extends BaseAffinityHostFilterTest {
         }
     }
 
+    @Test
+    public void testSelectContainerHostWithPrefetchedDataInPipeline() throws Throwable {
+        ContainerDescription desc1 = createDescriptions(CONTAINER_NAME, 5, null).get(0);
+        ContainerState container = createContainer(desc1, initialHostLinks.get(1));
+        createContainerWithDifferentContextId(desc1, initialHostLinks.get(0));
+
+        String[] affinity = new String[] { CONTAINER_NAME };
+        ContainerDescription desc = createDescriptions("random-name38", 1, affinity).get(0);
+
+        @SuppressWarnings("rawtypes")
+        Queue<HostSelectionFilter> filters = new ConcurrentLinkedQueue<>();
+        filters.add(new PodAffinityHostFilter(host, desc));
+        filters.add(new ServiceAffinityHostFilter(host, desc));
+        filters.add(new ServiceAntiAffinityHostFilter(host, desc));
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Map<String, HostSelection> selected = new HashMap<>();
+        host.testStart(1);
+        new HostSelectionFilterPipeline(host, state, filters).run(prepareHostSelectionMap(),
+                (filteredHostSelectionMap, e) -> {
+                    if (e != null) {
+                        error.set(e);
+                    } else {
+                        selected.putAll(filteredHostSelectionMap);
+                    }
+                    host.completeIteration();
+                });
+        host.testWait();
+
+        assertNull(error.get());
+        assertEquals(Collections.singleton(container.parentLink), selected.keySet());
+        assertNotNull(selected.get(container.parentLink).descNames.get(CONTAINER_NAME));
+    }
+
     private List<ContainerDescription> createDescriptions(String name, int count,
             String[] affinity) throws Throwable {
         // loop a few times to make sure the right host is not chosen by chance
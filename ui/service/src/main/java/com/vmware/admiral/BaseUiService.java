@@ -15,8 +15,10 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -112,35 +114,53 @@ public abstract class BaseUiService extends StatelessService {
         }
     }
 
-    // As defined in ServiceHost
+    // As defined in ServiceHost, but with a few services serving all resources
     protected void startUiFileContentServices() throws Throwable {
-        Map<Path, String> pathToURIPath = new HashMap<>();
+        startUiResourceServices(Utils.getServiceUiResourcePath(this));
+    }
 
-        Path baseResourcePath = Utils.getServiceUiResourcePath(this);
+    /**
+     * Starts the services serving the UI resources found in the given path, a namespace owner for
+     * each directory in the root of this service and a service for each file in the root,
+     * instead of a service for each resource.
+     */
+    protected void startUiResourceServices(Path baseResourcePath) {
+        Map<String, URL> resources = new HashMap<>();
         try {
-            pathToURIPath = discoverUiResources(baseResourcePath, this);
+            resources = indexUiResources(baseResourcePath, this);
         } catch (Throwable e) {
             log(Level.WARNING, "Error enumerating UI resources for %s: %s", this.getSelfLink(),
                     Utils.toString(e));
         }
 
-        if (pathToURIPath.isEmpty()) {
+        if (resources.isEmpty()) {
             log(Level.WARNING, "No custom UI resources found for %s", this.getClass().getName());
             return;
         }
 
-        for (Entry<Path, String> e : pathToURIPath.entrySet()) {
-            String value = e.getValue();
-
+        UiResourceIndex index = new UiResourceIndex(resources);
+        for (Entry<String, Boolean> e : getUiResourceServiceLinks(resources.keySet())
+                .entrySet()) {
             Operation post = Operation
-                    .createPost(UriUtils.buildUri(getHost(), value));
-            RestrictiveFileContentService fcs = new RestrictiveFileContentService(
-                    e.getKey().toFile());
-            getHost().startService(post, fcs);
+                    .createPost(UriUtils.buildUri(getHost(), e.getKey()));
+            getHost().startService(post, new UiResourceService(index, e.getValue()));
+        }
+    }
+
+    // Find UI resources for this service (e.g. html, css, js) by URI path
+    protected Map<String, URL> indexUiResources(Path path, Service s) throws Throwable {
+        Map<String, URL> resources = new HashMap<>();
+        for (Entry<Path, String> e : discoverUiResources(path, s).entrySet()) {
+            resources.put(e.getValue(), e.getKey().toUri().toURL());
         }
+
+        if (resources.isEmpty()) {
+            discoverJarResources(path, s, resources);
+        }
+        return resources;
     }
 
-    // Find UI resources for this service (e.g. html, css, js)
+    // Find UI resources for this service (e.g. html, css, js) in the resource sandbox
     protected Map<Path, String> discoverUiResources(Path path, Service s)
             throws Throwable {
         Map<Path, String> pathToURIPath = new HashMap<>();
@@ -151,26 +171,41 @@ public abstract class BaseUiService extends StatelessService {
         if (getHost().getState().resourceSandboxFileReference != null) {
             discoverFileResources(s, pathToURIPath, baseUriPath, prefix);
         }
-
-        if (pathToURIPath.isEmpty()) {
-            discoverJarResources(path, s, pathToURIPath, baseUriPath, prefix);
-        }
         return pathToURIPath;
     }
 
-    private void discoverJarResources(Path path, Service s, Map<Path, String> pathToURIPath,
-            Path baseUriPath, String prefix) throws URISyntaxException, IOException {
+    // Index the resources in the jar without copying them to the sandbox
+    private void discoverJarResources(Path path, Service s, Map<String, URL> resources)
+            throws URISyntaxException, IOException {
+        Path baseUriPath = Paths.get(getSelfLink());
+        String prefix = path.toString().replace('\\', '/');
         for (ResourceEntry entry : FileUtils.findResources(s.getClass(), prefix)) {
-            Path resourcePath = path.resolve(entry.suffix);
             Path uriPath = baseUriPath.resolve(entry.suffix);
-            Path outputPath = getHost().copyResourceToSandbox(entry.url, resourcePath);
-            if (outputPath == null) {
-                // Failed to copy one resource, disable user interface for this service.
-                s.toggleOption(ServiceOption.HTML_USER_INTERFACE, false);
+            resources.put(uriPath.toString().replace('\\', '/'), entry.url);
+        }
+    }
+
+    /**
+     * Returns the links of the services serving the given resources, mapped to whether the
+     * service is a namespace owner for a directory.
+     */
+    private Map<String, Boolean> getUiResourceServiceLinks(Collection<String> resourcePaths) {
+        String root = getSelfLink();
+        if (!root.endsWith(UriUtils.URI_PATH_CHAR)) {
+            root += UriUtils.URI_PATH_CHAR;
+        }
+
+        Map<String, Boolean> links = new HashMap<>();
+        for (String resourcePath : resourcePaths) {
+            int end = resourcePath.startsWith(root)
+                    ? resourcePath.indexOf(UriUtils.URI_PATH_CHAR, root.length()) : -1;
+            if (end < 0) {
+                links.put(resourcePath, false);
             } else {
-                pathToURIPath.put(outputPath, uriPath.toString().replace('\\', '/'));
+                links.put(resourcePath.substring(0, end), true);
             }
         }
+        return links;
     }
 
     private void discoverFileResources(Service s, Map<Path, String> pathToURIPath,
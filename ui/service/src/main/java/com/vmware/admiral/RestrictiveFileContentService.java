@@ -26,14 +26,25 @@ public class RestrictiveFileContentService extends FileContentService {
 
     @Override
     public void handleGet(Operation op) {
+        if (failIfNotProxied(op)) {
+            return;
+        }
+
+        super.handleGet(op);
+    }
+
+    /**
+     * In embedded mode UI resources are served only through the UI proxy, fails the operation
+     * with not found otherwise.
+     */
+    static boolean failIfNotProxied(Operation op) {
         if (op != null && ConfigurationUtil.isEmbedded() && op.getRequestHeader(ConfigurationUtil.UI_PROXY_FORWARD_HEADER) == null) {
             Exception notFound = new ServiceHost.ServiceNotFoundException(op.getUri().toString());
             notFound.setStackTrace(new StackTraceElement[] {});
             op.setContentType(Operation.MEDIA_TYPE_APPLICATION_JSON).fail(
                     Operation.STATUS_CODE_NOT_FOUND, notFound, null);
-            return;
+            return true;
         }
-
-        super.handleGet(op);
+        return false;
     }
 }
@@ -11,16 +11,10 @@
 
 package com.vmware.admiral;
 
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.logging.Level;
 
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.xenon.common.Operation;
-import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
 public class UiComputeService extends BaseUiService {
@@ -29,25 +23,8 @@ public class UiComputeService extends BaseUiService {
 
     @Override
     protected void startUiFileContentServices() throws Throwable {
-        Map<Path, String> pathToURIPath = new HashMap<>();
-
         String servicePath = Utils.buildServicePath(UiOgService.class);
-        Path baseResourcePath = Paths.get(Utils.UI_DIRECTORY_NAME, servicePath);
-        try {
-            pathToURIPath = discoverUiResources(baseResourcePath, this);
-        } catch (Throwable e) {
-            log(Level.WARNING, "Error enumerating UI resources for %s: %s", this.getSelfLink(),
-                    Utils.toString(e));
-        }
-        for (Entry<Path, String> e : pathToURIPath.entrySet()) {
-            String value = e.getValue();
-
-            Operation post = Operation
-                    .createPost(UriUtils.buildUri(getHost(), value));
-            RestrictiveFileContentService fcs = new RestrictiveFileContentService(
-                    e.getKey().toFile());
-            getHost().startService(post, fcs);
-        }
+        startUiResourceServices(Paths.get(Utils.UI_DIRECTORY_NAME, servicePath));
     }
 
     @Override
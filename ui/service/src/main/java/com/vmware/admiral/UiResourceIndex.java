@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.vmware.xenon.common.FileUtils;
+import com.vmware.xenon.common.Operation;
+
+/**
+ * Index of the UI resources of a UI service by URI path. The resources are read from their
+ * location, e.g. the jar, on first request and kept in memory up to a total size, least recently
+ * used first out, so they are not extracted to the sandbox.
+ */
+public class UiResourceIndex {
+
+    private static final long MAX_CACHED_BYTES = Long.getLong(
+            "com.vmware.admiral.ui.resource.cache.max.bytes", 64 * 1024 * 1024);
+
+    // e.g. main.3f2a1b4c5d6e7f801234.bundle.js, the content of which never changes
+    private static final Pattern HASHED_RESOURCE_PATTERN = Pattern
+            .compile("[.-][0-9a-f]{16,}\\.[^/]+$");
+
+    /**
+     * Content of a UI resource with its strong entity tag.
+     */
+    public static class UiResource {
+        public final byte[] content;
+        public final String etag;
+        public final String contentType;
+        public final boolean immutable;
+
+        UiResource(byte[] content, String etag, String contentType, boolean immutable) {
+            this.content = content;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.immutable = immutable;
+        }
+    }
+
+    private final Map<String, URL> resources;
+
+    // guarded by this
+    private final Map<String, UiResource> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    public UiResourceIndex(Map<String, URL> resources) {
+        this.resources = Collections.unmodifiableMap(new HashMap<>(resources));
+    }
+
+    public Map<String, URL> getResources() {
+        return resources;
+    }
+
+    /**
+     * Returns the resource with the given URI path or {@code null} if there is no such resource.
+     */
+    public UiResource get(String path) throws IOException {
+        URL url = resources.get(path);
+        if (url == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            UiResource resource = cache.get(path);
+            if (resource != null) {
+                return resource;
+            }
+        }
+
+        byte[] content;
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            content = out.toByteArray();
+        }
+
+        UiResource resource = new UiResource(content, computeEtag(content),
+                getContentType(path), HASHED_RESOURCE_PATTERN.matcher(path).find());
+        // a big resource would evict many small ones, so it is read each time
+        if (content.length <= MAX_CACHED_BYTES / 4) {
+            cache(path, resource);
+        }
+        return resource;
+    }
+
+    private synchronized void cache(String path, UiResource resource) {
+        UiResource previous = cache.put(path, resource);
+        if (previous != null) {
+            cachedBytes -= previous.content.length;
+        }
+        cachedBytes += resource.content.length;
+
+        Iterator<UiResource> it = cache.values().iterator();
+        while (cachedBytes > MAX_CACHED_BYTES && it.hasNext()) {
+            cachedBytes -= it.next().content.length;
+            it.remove();
+        }
+    }
+
+    private static String computeEtag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            StringBuilder sb = new StringBuilder("\"");
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getContentType(String path) {
+        try {
+            // by the extension of the path, the URL of a resource in a jar has no path
+            String contentType = FileUtils.getContentType(new URI(null, null, path, null));
+            return contentType != null ? contentType
+                    : Operation.MEDIA_TYPE_APPLICATION_OCTET_STREAM;
+        } catch (URISyntaxException e) {
+            return Operation.MEDIA_TYPE_APPLICATION_OCTET_STREAM;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral;
+
+import java.util.regex.Pattern;
+
+import com.vmware.admiral.UiResourceIndex.UiResource;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+
+/**
+ * Serves the UI resources of a {@link UiResourceIndex}. Started for each directory in the root of
+ * a UI service as a namespace owner and for each file in the root, so a handful of services serve
+ * all UI resources.
+ * <p>
+ * Responses carry a strong ETag, so a browser revalidating a resource with If-None-Match gets a
+ * 304 without content. Resources with a content hash in their name are cached by the browser for
+ * long. Compressible resources are gzip encoded for clients which accept it.
+ */
+public class UiResourceService extends StatelessService {
+
+    private static final long IMMUTABLE_MAX_AGE_SECONDS = Long.getLong(
+            "com.vmware.admiral.ui.resource.immutable.max.age.seconds", 365L * 24 * 60 * 60);
+    private static final int MIN_COMPRESSED_SIZE = 1024;
+
+    private static final int STATUS_CODE_NOT_MODIFIED = 304;
+    private static final String ETAG_HEADER = "etag";
+    private static final String IF_NONE_MATCH_HEADER = "if-none-match";
+    private static final String CACHE_CONTROL_HEADER = "cache-control";
+    private static final String ACCEPT_ENCODING_HEADER = "accept-encoding";
+    private static final String CONTENT_ENCODING_HEADER = "content-encoding";
+    private static final String GZIP_ENCODING = "gzip";
+
+    private static final Pattern COMPRESSIBLE_CONTENT_TYPE_PATTERN = Pattern
+            .compile("^(text/.*|application/(javascript|json|xml)|image/svg\\+xml)");
+
+    private final UiResourceIndex index;
+
+    public UiResourceService(UiResourceIndex index, boolean namespaceOwner) {
+        this.index = index;
+        if (namespaceOwner) {
+            this.options.add(ServiceOption.URI_NAMESPACE_OWNER);
+        }
+    }
+
+    @Override
+    public void authorizeRequest(Operation op) {
+        // No authorization required, like for the UI service itself.
+        op.complete();
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        if (RestrictiveFileContentService.failIfNotProxied(get)) {
+            return;
+        }
+
+        UiResource resource;
+        try {
+            resource = index.get(get.getUri().getPath());
+        } catch (Exception e) {
+            logWarning("Failed to read UI resource %s: %s", get.getUri().getPath(),
+                    e.getMessage());
+            get.fail(e);
+            return;
+        }
+        if (resource == null) {
+            Exception notFound = new ServiceHost.ServiceNotFoundException(
+                    get.getUri().toString());
+            notFound.setStackTrace(new StackTraceElement[] {});
+            get.setContentType(Operation.MEDIA_TYPE_APPLICATION_JSON).fail(
+                    Operation.STATUS_CODE_NOT_FOUND, notFound, null);
+            return;
+        }
+
+        get.addResponseHeader(ETAG_HEADER, resource.etag);
+        get.addResponseHeader(CACHE_CONTROL_HEADER, resource.immutable
+                ? "public, max-age=" + IMMUTABLE_MAX_AGE_SECONDS + ", immutable"
+                : "no-cache");
+
+        String ifNoneMatch = get.getRequestHeader(IF_NONE_MATCH_HEADER);
+        if (ifNoneMatch != null
+                && (ifNoneMatch.contains(resource.etag) || ifNoneMatch.trim().equals("*"))) {
+            get.setStatusCode(STATUS_CODE_NOT_MODIFIED);
+            get.complete();
+            return;
+        }
+
+        // the body is compressed when the response is encoded, based on the content encoding
+        String acceptEncoding = get.getRequestHeader(ACCEPT_ENCODING_HEADER);
+        if (acceptEncoding != null && acceptEncoding.contains(GZIP_ENCODING)
+                && resource.content.length >= MIN_COMPRESSED_SIZE
+                && COMPRESSIBLE_CONTENT_TYPE_PATTERN.matcher(resource.contentType).find()) {
+            get.addResponseHeader(CONTENT_ENCODING_HEADER, GZIP_ENCODING);
+        }
+
+        get.setContentType(resource.contentType)
+                .setBodyNoCloning(resource.content)
+                .complete();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.UiResourceIndex.UiResource;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+
+public class UiResourceServiceTest {
+
+    private static final String INDEX_PATH = "/ogui/index.html";
+    private static final String BUNDLE_PATH = "/ogui/js/main.0123456789abcdef0123.bundle.js";
+
+    private byte[] indexContent;
+    private UiResourceIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        StringBuilder sb = new StringBuilder("<html>");
+        for (int i = 0; i < 100; i++) {
+            sb.append("<div>content</div>");
+        }
+        indexContent = sb.append("</html>").toString().getBytes(StandardCharsets.UTF_8);
+
+        Map<String, URL> resources = new HashMap<>();
+        resources.put(INDEX_PATH, createFile(indexContent));
+        resources.put(BUNDLE_PATH, createFile("var a;".getBytes(StandardCharsets.UTF_8)));
+        index = new UiResourceIndex(resources);
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        UiResource resource = index.get(INDEX_PATH);
+        assertArrayEquals(indexContent, resource.content);
+        assertTrue(resource.etag.startsWith("\"") && resource.etag.endsWith("\""));
+        assertFalse(resource.immutable);
+        assertTrue(index.get(BUNDLE_PATH).immutable);
+
+        // served from memory
+        assertSame(resource, index.get(INDEX_PATH));
+        assertNull(index.get("/ogui/missing.html"));
+    }
+
+    @Test
+    public void testGet() {
+        Operation get = get(INDEX_PATH);
+        assertEquals(Operation.STATUS_CODE_OK, get.getStatusCode());
+        assertArrayEquals(indexContent, (byte[]) get.getBodyRaw());
+        assertNotNull(get.getResponseHeader("etag"));
+        assertEquals("no-cache", get.getResponseHeader("cache-control"));
+        assertNull(get.getResponseHeader("content-encoding"));
+
+        Operation bundleGet = get(BUNDLE_PATH);
+        assertTrue(bundleGet.getResponseHeader("cache-control").contains("immutable"));
+    }
+
+    @Test
+    public void testGetNotModified() {
+        String etag = get(INDEX_PATH).getResponseHeader("etag");
+
+        Operation get = get(INDEX_PATH, "if-none-match", etag);
+        assertEquals(304, get.getStatusCode());
+        assertNull(get.getBodyRaw());
+
+        get = get(INDEX_PATH, "if-none-match", "\"other\"");
+        assertEquals(Operation.STATUS_CODE_OK, get.getStatusCode());
+    }
+
+    @Test
+    public void testGetGzip() {
+        Operation get = get(INDEX_PATH, "accept-encoding", "gzip, deflate");
+        assertEquals("gzip", get.getResponseHeader("content-encoding"));
+
+        // too small to compress
+        get = get(BUNDLE_PATH, "accept-encoding", "gzip, deflate");
+        assertNull(get.getResponseHeader("content-encoding"));
+    }
+
+    @Test
+    public void testGetNotFound() {
+        Operation get = get("/ogui/missing.html");
+        assertEquals(Operation.STATUS_CODE_NOT_FOUND, get.getStatusCode());
+    }
+
+    private Operation get(String path, String... headers) {
+        Operation get = new Operation().setUri(UriUtils.buildUri("http://localhost" + path));
+        for (int i = 0; i < headers.length; i += 2) {
+            get.addRequestHeader(headers[i], headers[i + 1]);
+        }
+
+        AtomicReference<Operation> result = new AtomicReference<>();
+        get.setCompletion((o, e) -> result.set(o));
+        new UiResourceService(index, true).handleGet(get);
+
+        assertNotNull(result.get());
+        return result.get();
+    }
+
+    private static URL createFile(byte[] content) throws Exception {
+        File file = File.createTempFile("ui-resource", null);
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        return file.toURI().toURL();
+    }
+}